@@ -0,0 +1,57 @@
+package ar.edu.itba.ss.neighbor_detection.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry point for benchmarks.
+ * It accepts the same arguments as JMH (e.g {@code -p amountOfParticles=1000}),
+ * and always adds the GC profiler, so allocation rate is reported together with throughput.
+ * Listing and help options (e.g {@code -l}, {@code -lp} or {@code -h}) are handled as JMH does, without running.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Entry point.
+     *
+     * @param args Execution arguments (JMH command line options).
+     * @throws CommandLineOptionException If the arguments are not valid.
+     * @throws RunnerException            If benchmarks could not be run.
+     * @throws IOException                If the help could not be shown.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if (commandLineOptions.shouldListProfilers()) {
+            commandLineOptions.listProfilers();
+            return;
+        }
+        if (commandLineOptions.shouldListResultFormats()) {
+            commandLineOptions.listResultFormats();
+            return;
+        }
+        if (commandLineOptions.shouldList()) {
+            new Runner(commandLineOptions).list();
+            return;
+        }
+        if (commandLineOptions.shouldListWithParams()) {
+            new Runner(commandLineOptions).listWithParams(commandLineOptions);
+            return;
+        }
+        final Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,52 @@
+package ar.edu.itba.ss.neighbor_detection.benchmark;
+
+import ar.edu.itba.ss.neighbor_detection.GridPlanner;
+import ar.edu.itba.ss.neighbor_detection.ParticleStore;
+
+import java.util.Random;
+
+/**
+ * Helper class to create reproducible spaces for benchmarks.
+ */
+final class BenchmarkSpaces {
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private BenchmarkSpaces() {
+    }
+
+    /**
+     * Creates a {@link ParticleStore} with point-like particles uniformly distributed in a squared space.
+     *
+     * @param amountOfParticles The amount of particles.
+     * @param density           The amount of particles per unit of area
+     *                          (used to calculate the side length of the space).
+     * @param seed              The seed for the random positions.
+     * @return The created {@link ParticleStore}.
+     */
+    static ParticleStore uniform(int amountOfParticles, double density, long seed) {
+        final double sideLength = Math.sqrt(amountOfParticles / density);
+        final Random random = new Random(seed);
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        for (int i = 0; i < amountOfParticles; i++) {
+            x[i] = random.nextDouble() * sideLength;
+            y[i] = random.nextDouble() * sideLength;
+        }
+        return new ParticleStore(sideLength, x, y, new double[amountOfParticles]);
+    }
+
+    /**
+     * Calculates the amount of cells per side for the given side length and interaction radius,
+     * as a fraction of the biggest valid value.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param interactionRadius The interaction radius.
+     * @param fraction          The fraction of the biggest valid value to be used (between 0 and 1).
+     * @return The amount of cells per side (at least 1).
+     */
+    static int cellsPerSide(double sideLength, double interactionRadius, double fraction) {
+        return Math.max(1, (int) (GridPlanner.maxCellsPerSide(sideLength, interactionRadius) * fraction));
+    }
+}
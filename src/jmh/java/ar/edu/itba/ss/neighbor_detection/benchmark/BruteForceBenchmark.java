@@ -0,0 +1,92 @@
+package ar.edu.itba.ss.neighbor_detection.benchmark;
+
+import ar.edu.itba.ss.neighbor_detection.BruteForceEngine;
+import ar.edu.itba.ss.neighbor_detection.CellIndexEngine;
+import ar.edu.itba.ss.neighbor_detection.NeighborList;
+import ar.edu.itba.ss.neighbor_detection.ParticleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks comparing the cell index method against brute force.
+ * The amount of particles is kept small, as brute force is quadratic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BruteForceBenchmark {
+
+    /**
+     * The amount of particles.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int amountOfParticles;
+
+    /**
+     * The amount of particles per unit of area.
+     */
+    @Param({"0.5", "2.0"})
+    public double density;
+
+    /**
+     * The interaction radius.
+     */
+    @Param({"0.5", "1.0"})
+    public double interactionRadius;
+
+    /**
+     * The seed used to generate the particles.
+     */
+    @Param({"42"})
+    public long seed;
+
+    /**
+     * The particles.
+     */
+    private ParticleStore store;
+
+    /**
+     * The amount of cells per side.
+     */
+    private int M;
+
+    /**
+     * Creates the particles.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = BenchmarkSpaces.uniform(amountOfParticles, density, seed);
+        M = BenchmarkSpaces.cellsPerSide(store.getSideLength(), interactionRadius, 1.0);
+    }
+
+    /**
+     * @return The neighbors calculated by brute force.
+     */
+    @Benchmark
+    public NeighborList bruteForce() {
+        return new BruteForceEngine().detect(store, interactionRadius, M);
+    }
+
+    /**
+     * @return The neighbors calculated by the cell index method.
+     */
+    @Benchmark
+    public NeighborList cellIndex() {
+        return new CellIndexEngine().detect(store, interactionRadius, M);
+    }
+}
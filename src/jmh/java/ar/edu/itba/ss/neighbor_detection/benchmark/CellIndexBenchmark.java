@@ -0,0 +1,119 @@
+package ar.edu.itba.ss.neighbor_detection.benchmark;
+
+import ar.edu.itba.ss.neighbor_detection.CellIndexEngine;
+import ar.edu.itba.ss.neighbor_detection.NeighborList;
+import ar.edu.itba.ss.neighbor_detection.ParallelCellIndexEngine;
+import ar.edu.itba.ss.neighbor_detection.ParticleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the cell index method engines, sweeping the amount of particles, the density,
+ * the interaction radius and the amount of cells per side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CellIndexBenchmark {
+
+    /**
+     * The amount of particles.
+     */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int amountOfParticles;
+
+    /**
+     * The amount of particles per unit of area.
+     */
+    @Param({"0.5", "2.0"})
+    public double density;
+
+    /**
+     * The interaction radius.
+     */
+    @Param({"0.5", "1.0"})
+    public double interactionRadius;
+
+    /**
+     * The amount of cells per side, as a fraction of the biggest valid value.
+     */
+    @Param({"1.0", "0.5", "0.25"})
+    public double cellsFraction;
+
+    /**
+     * The seed used to generate the particles.
+     */
+    @Param({"42"})
+    public long seed;
+
+    /**
+     * The particles.
+     */
+    private ParticleStore store;
+
+    /**
+     * The amount of cells per side.
+     */
+    private int M;
+
+    /**
+     * The serial engine.
+     */
+    private CellIndexEngine serialEngine;
+
+    /**
+     * The parallel engine.
+     */
+    private ParallelCellIndexEngine parallelEngine;
+
+    /**
+     * Creates the particles and the engines.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = BenchmarkSpaces.uniform(amountOfParticles, density, seed);
+        M = BenchmarkSpaces.cellsPerSide(store.getSideLength(), interactionRadius, cellsFraction);
+        serialEngine = new CellIndexEngine();
+        parallelEngine = new ParallelCellIndexEngine();
+    }
+
+    /**
+     * Releases the parallel engine's workers.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelEngine.close();
+    }
+
+    /**
+     * @return The neighbors calculated by the serial engine.
+     */
+    @Benchmark
+    public NeighborList serial() {
+        return serialEngine.detect(store, interactionRadius, M);
+    }
+
+    /**
+     * @return The neighbors calculated by the parallel engine.
+     */
+    @Benchmark
+    public NeighborList parallel() {
+        return parallelEngine.detect(store, interactionRadius, M);
+    }
+}
@@ -0,0 +1,143 @@
+package ar.edu.itba.ss.neighbor_detection.benchmark;
+
+import ar.edu.itba.ss.neighbor_detection.DistanceKernel;
+import ar.edu.itba.ss.neighbor_detection.DistanceKernels;
+import ar.edu.itba.ss.neighbor_detection.ScalarDistanceKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks comparing the scalar {@link DistanceKernel} against the one provided by {@link DistanceKernels}
+ * (which is vectorized when running in Java 17 or newer with {@code --add-modules jdk.incubator.vector}
+ * and {@code -Dneighbor_detection.vectorKernel=true}).
+ * Each invocation checks every particle of a cell against the candidates after it in the range gathered
+ * from the cell and its half stencil cells (i.e upper, upper-right, right and lower-right cells),
+ * which is what the cell index method does for each cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DistanceKernelBenchmark {
+
+    /**
+     * Room left at the end of the arrays, as the cell index method does (so whole vectors can be used).
+     */
+    private static final int PADDING = 16;
+
+    /**
+     * The amount of particles in each cell (so the gathered range holds 5 times this amount of candidates).
+     */
+    @Param({"4", "16", "64"})
+    public int occupancy;
+
+    /**
+     * The seed used to generate the candidates.
+     */
+    @Param({"42"})
+    public long seed;
+
+    /**
+     * The 'x' value of each candidate's position.
+     */
+    private double[] x;
+
+    /**
+     * The 'y' value of each candidate's position.
+     */
+    private double[] y;
+
+    /**
+     * The radius of each candidate.
+     */
+    private double[] radius;
+
+    /**
+     * The positions of the accepted candidates.
+     */
+    private int[] positions;
+
+    /**
+     * The squared distances of the accepted candidates.
+     */
+    private double[] squaredDistances;
+
+    /**
+     * The scalar kernel.
+     */
+    private DistanceKernel scalarKernel;
+
+    /**
+     * The kernel provided for this JVM.
+     */
+    private DistanceKernel providedKernel;
+
+    /**
+     * Creates the candidates (in cells of side 1, with an interaction radius of 1).
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(seed);
+        // The cell itself, and then its upper, upper-right, right and lower-right cells
+        final int[][] cells = {{0, 0}, {0, 1}, {1, 1}, {1, 0}, {1, -1}};
+        final int candidates = cells.length * occupancy;
+        x = new double[candidates + PADDING];
+        y = new double[candidates + PADDING];
+        radius = new double[candidates + PADDING];
+        for (int k = 0; k < candidates; k++) {
+            x[k] = cells[k / occupancy][0] + random.nextDouble();
+            y[k] = cells[k / occupancy][1] + random.nextDouble();
+        }
+        positions = new int[candidates];
+        squaredDistances = new double[candidates + PADDING];
+        scalarKernel = new ScalarDistanceKernel();
+        providedKernel = DistanceKernels.get();
+    }
+
+    /**
+     * @return The amount of accepted candidates, using the scalar kernel.
+     */
+    @Benchmark
+    public int scalar() {
+        return filterAll(scalarKernel);
+    }
+
+    /**
+     * @return The amount of accepted candidates, using the kernel provided for this JVM.
+     */
+    @Benchmark
+    public int provided() {
+        return filterAll(providedKernel);
+    }
+
+    /**
+     * Filters the candidates after each particle of the cell, as the sweep of the cell index method does.
+     *
+     * @param kernel The {@link DistanceKernel} to be used.
+     * @return The amount of accepted candidates.
+     */
+    private int filterAll(DistanceKernel kernel) {
+        final int candidates = positions.length;
+        int accepted = 0;
+        for (int a = 0; a < occupancy; a++) {
+            accepted += kernel.filter(x[a], y[a], 1.0 + radius[a], x, y, radius, a + 1, candidates,
+                    positions, squaredDistances);
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,127 @@
+package ar.edu.itba.ss.neighbor_detection.benchmark;
+
+import ar.edu.itba.ss.neighbor_detection.BandedNeighborList;
+import ar.edu.itba.ss.neighbor_detection.CellIndexEngine;
+import ar.edu.itba.ss.neighbor_detection.MultiRadiusDetector;
+import ar.edu.itba.ss.neighbor_detection.NeighborList;
+import ar.edu.itba.ss.neighbor_detection.ParticleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks comparing the single pass of the {@link MultiRadiusDetector} against a {@link CellIndexEngine} run
+ * with the biggest radius only, and against one run per radius.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MultiRadiusBenchmark {
+
+    /**
+     * The interaction radii.
+     */
+    private static final double[] RADII = {0.25, 0.5, 1.0, 2.0};
+
+    /**
+     * The amount of particles.
+     */
+    @Param({"100000", "1000000"})
+    public int amountOfParticles;
+
+    /**
+     * The amount of particles per unit of area.
+     */
+    @Param({"0.5"})
+    public double density;
+
+    /**
+     * The seed used to generate the particles.
+     */
+    @Param({"42"})
+    public long seed;
+
+    /**
+     * The particles.
+     */
+    private ParticleStore store;
+
+    /**
+     * The amount of cells per side (the biggest valid one for the biggest radius).
+     */
+    private int M;
+
+    /**
+     * The engine used for single radius runs.
+     */
+    private CellIndexEngine engine;
+
+    /**
+     * The multi-radius detector.
+     */
+    private MultiRadiusDetector detector;
+
+    /**
+     * Creates the particles, the engine and the detector.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = BenchmarkSpaces.uniform(amountOfParticles, density, seed);
+        M = BenchmarkSpaces.cellsPerSide(store.getSideLength(), RADII[RADII.length - 1], 1.0);
+        engine = new CellIndexEngine();
+        detector = new MultiRadiusDetector();
+    }
+
+    /**
+     * @return The neighbors of all the radii, calculated in a single pass.
+     */
+    @Benchmark
+    public BandedNeighborList singlePass() {
+        return detector.detect(store, RADII, M);
+    }
+
+    /**
+     * @return The neighbors of all the radii, calculated in a single pass, with the biggest band sorted by distance.
+     */
+    @Benchmark
+    public BandedNeighborList singlePassSortingBiggestBand() {
+        final BandedNeighborList neighbors = detector.detect(store, RADII, M);
+        neighbors.sortByDistance(RADII.length - 1);
+        return neighbors;
+    }
+
+    /**
+     * @return The neighbors for the biggest radius.
+     */
+    @Benchmark
+    public NeighborList biggestRadius() {
+        return engine.detect(store, RADII[RADII.length - 1], M);
+    }
+
+    /**
+     * Calculates the neighbors with one run per radius.
+     *
+     * @param blackhole The {@link Blackhole} consuming each run's neighbors.
+     */
+    @Benchmark
+    public void runPerRadius(Blackhole blackhole) {
+        for (double radius : RADII) {
+            blackhole.consume(engine.detect(store, radius, M));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * {@link NeighborEngine} that chooses, for each detection, between a brute force engine, a cell index engine
+ * and a k-d tree engine, using statistics of the occupancy of the grid measured over a sample of the particles.
+ * <p>
+ * For each sampled particle, the amount of particles in its own and adjacent cells is estimated.
+ * The cell index method checks all of them, while the tree checks only those within reach
+ * (estimated from the same count and the ratio between the reach and the checked area),
+ * but pays for building the tree and for traversing it from the root for each particle.
+ * When particles are clustered, or when cells are much bigger than the reach,
+ * the cell index method checks far more pairs than needed, and the tree is chosen.
+ * Only squared spaces are supported.
+ */
+public class AdaptiveEngine implements NeighborEngine {
+
+    /**
+     * The biggest amount of sampled particles.
+     */
+    private static final int SAMPLE_SIZE = 2048;
+
+    /**
+     * The relative cost of checking a pair of particles.
+     */
+    private static final double PAIR_CHECK_COST = 1.0;
+
+    /**
+     * The relative cost of visiting a cell (once for binning and once for sweeping).
+     */
+    private static final double CELL_VISIT_COST = 2.0;
+
+    /**
+     * The relative cost of visiting a node of the tree (including building it),
+     * which is far higher than the one of checking a pair, as nodes are scattered in memory.
+     */
+    private static final double TREE_NODE_COST = 25.0;
+
+    /**
+     * The engine used when all pairs are checked.
+     */
+    private final NeighborEngine bruteForceEngine;
+
+    /**
+     * The engine used when the grid is well balanced.
+     */
+    private final NeighborEngine cellIndexEngine;
+
+    /**
+     * The engine used when the grid is unbalanced (or too coarse for the reach).
+     */
+    private final NeighborEngine treeEngine;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public AdaptiveEngine() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, using a {@link BruteForceEngine}, a {@link CellIndexEngine} and a {@link KdTreeEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public AdaptiveEngine(BoundaryCondition boundaryCondition) {
+        this(new BruteForceEngine(boundaryCondition), new CellIndexEngine(boundaryCondition),
+                new KdTreeEngine(boundaryCondition));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param bruteForceEngine The engine used when all pairs are checked.
+     * @param cellIndexEngine  The engine used when the grid is well balanced.
+     * @param treeEngine       The engine used when the grid is unbalanced (or too coarse for the reach).
+     * @throws IllegalArgumentException If the engines do not use the same boundary conditions.
+     */
+    public AdaptiveEngine(NeighborEngine bruteForceEngine, NeighborEngine cellIndexEngine,
+                          NeighborEngine treeEngine) throws IllegalArgumentException {
+        Assert.notNull(bruteForceEngine, "The brute force engine must not be null.");
+        Assert.notNull(cellIndexEngine, "The cell index engine must not be null.");
+        Assert.notNull(treeEngine, "The tree engine must not be null.");
+        if (cellIndexEngine.getBoundaryCondition() != bruteForceEngine.getBoundaryCondition()
+                || treeEngine.getBoundaryCondition() != bruteForceEngine.getBoundaryCondition()) {
+            throw new IllegalArgumentException("All the engines must use the same boundary conditions");
+        }
+        this.bruteForceEngine = bruteForceEngine;
+        this.cellIndexEngine = cellIndexEngine;
+        this.treeEngine = treeEngine;
+    }
+
+    @Override
+    public BoundaryCondition getBoundaryCondition() {
+        return bruteForceEngine.getBoundaryCondition();
+    }
+
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        return select(store, interactionRadius, M).detect(store, interactionRadius, M);
+    }
+
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        select(store, interactionRadius, M).detect(store, interactionRadius, M, consumer);
+    }
+
+    /**
+     * Chooses the engine with the lowest expected cost for the given parameters.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side the cell index method would use.
+     * @return The chosen {@link NeighborEngine}.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public NeighborEngine select(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        store.checkSquared("AdaptiveEngine");
+        CellIndexEngine.validate(store.getSideLength(), interactionRadius, store.getMaxRadius(), M);
+        final double amountOfParticles = store.size();
+        final double bruteForceCost = PAIR_CHECK_COST * amountOfParticles * (amountOfParticles - 1) / 2;
+        if (store.size() <= KdTreeEngine.LEAF_SIZE) {
+            return bruteForceEngine;
+        }
+
+        // Sampled particles, binned into the grid (sorted by cell, so occupancies are found with binary searches)
+        final int step = Math.max(1, store.size() / SAMPLE_SIZE);
+        final int sampleSize = (store.size() + step - 1) / step;
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final double factor = M / store.getSideLength();
+        final long[] sampledCells = new long[sampleSize];
+        double radiusSum = 0;
+        for (int s = 0; s < sampleSize; s++) {
+            final int i = s * step;
+            sampledCells[s] = (long) CellIndexEngine.cellIndex(y[i], factor, M) * M
+                    + CellIndexEngine.cellIndex(x[i], factor, M);
+            radiusSum += radius[i];
+        }
+        Arrays.sort(sampledCells);
+
+        // Particles in the own and adjacent cells of each sampled particle (i.e those the cell index method checks)
+        double checkedSum = 0;
+        for (int s = 0; s < sampleSize; s++) {
+            final int i = s * step;
+            final int row = CellIndexEngine.cellIndex(y[i], factor, M);
+            final int column = CellIndexEngine.cellIndex(x[i], factor, M);
+            for (int neighborRow = Math.max(0, row - 1); neighborRow <= Math.min(M - 1, row + 1); neighborRow++) {
+                for (int neighborColumn = Math.max(0, column - 1); neighborColumn <= Math.min(M - 1, column + 1);
+                     neighborColumn++) {
+                    checkedSum += occupancy(sampledCells, (long) neighborRow * M + neighborColumn);
+                }
+            }
+        }
+        // Each sampled particle is always counted in its own cell, while the others are a sample of the rest
+        final double checked = 1
+                + (checkedSum / sampleSize - 1) * (amountOfParticles - 1) / Math.max(1, sampleSize - 1);
+        final double cellIndexCost = PAIR_CHECK_COST * amountOfParticles * checked / 2
+                + CELL_VISIT_COST * M * (double) M;
+
+        // The tree checks the particles within a box around the reach (and those sharing its leaves),
+        // after descending from the root and visiting the nodes overlapping that box
+        final double cellSide = store.getSideLength() / M;
+        final double checkedSide = Math.min(3, M) * cellSide;
+        final double reach = interactionRadius + 2 * radiusSum / sampleSize;
+        final double inBox = checked * Math.min(1, 4 * reach * reach / (checkedSide * checkedSide));
+        final double levels = Math.log(amountOfParticles / KdTreeEngine.LEAF_SIZE + 1) / Math.log(2);
+        final double visitedNodes = 2 * levels + 2 * inBox / KdTreeEngine.LEAF_SIZE;
+        final double treeCost = PAIR_CHECK_COST * amountOfParticles * (inBox + KdTreeEngine.LEAF_SIZE) / 2
+                + TREE_NODE_COST * amountOfParticles * visitedNodes;
+
+        if (bruteForceCost <= cellIndexCost && bruteForceCost <= treeCost) {
+            return bruteForceEngine;
+        }
+        return cellIndexCost <= treeCost ? cellIndexEngine : treeEngine;
+    }
+
+    /**
+     * Counts the sampled particles in the given cell.
+     *
+     * @param sampledCells The cells of the sampled particles, sorted.
+     * @param cell         The cell.
+     * @return The amount of sampled particles in the cell.
+     */
+    private static int occupancy(long[] sampledCells, long cell) {
+        return firstNotBefore(sampledCells, cell + 1) - firstNotBefore(sampledCells, cell);
+    }
+
+    /**
+     * Finds the first position whose value is not lower than the given one.
+     *
+     * @param sorted The sorted values.
+     * @param value  The value.
+     * @return The position (or the length of the array if all values are lower).
+     */
+    private static int firstNotBefore(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
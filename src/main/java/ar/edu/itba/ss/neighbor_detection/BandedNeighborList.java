@@ -0,0 +1,322 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Neighbors of each particle for several interaction radii at once, stored in compressed sparse row (CSR) form.
+ * <p>
+ * Each neighbor entry is placed in the bucket of its band, which is the index of the smallest radius for which
+ * it is a neighbor. The entries of particle {@code i} and band {@code b} are the ones between
+ * {@code bandOffsets[i * B + b]} (inclusive) and {@code bandOffsets[i * B + b + 1]} (exclusive),
+ * where {@code B} is the amount of bands, so the neighbors of a particle for the radius of band {@code b}
+ * are a prefix of its entries.
+ * <p>
+ * The distance (between borders) to each neighbor is calculated, and the entries of a bucket are sorted by it,
+ * only when {@link #sortByDistance(int)} is called for their band (or when all distances are asked for),
+ * so callers only pay for the bands they use.
+ */
+public class BandedNeighborList {
+
+    /**
+     * The amount of particles each parallel task handles.
+     */
+    private static final int BLOCK = 4096;
+
+    /**
+     * Buckets up to this length are sorted with an insertion sort only.
+     */
+    private static final int INSERTION_SORT_LENGTH = 32;
+
+    /**
+     * The interaction radii, in ascending order.
+     */
+    private final double[] radii;
+
+    /**
+     * For each particle and band, the position in the entry arrays where its bucket starts
+     * (with an extra value at the end).
+     */
+    private final int[] bandOffsets;
+
+    /**
+     * The neighbors of all the particles, one after the other.
+     */
+    private final int[] neighborIds;
+
+    /**
+     * The {@link ParticleStore} holding the particles, from which distances are calculated.
+     */
+    private final ParticleStore particles;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The distance (between borders) to each neighbor (only meaningful for the bands already calculated).
+     */
+    private final double[] distances;
+
+    /**
+     * Whether the distances of each band are already calculated.
+     */
+    private final boolean[] calculated;
+
+    /**
+     * Whether the buckets of each band are already sorted by distance.
+     */
+    private final boolean[] sorted;
+
+    /**
+     * Constructor.
+     *
+     * @param radii             The interaction radii, in ascending order.
+     * @param bandOffsets       For each particle and band, the position in the neighbor ids array where its
+     *                          bucket starts (with an extra value at the end, holding the length of that array).
+     * @param neighborIds       The neighbors of all the particles, one after the other.
+     * @param particles         The {@link ParticleStore} holding the particles, which must not change afterwards.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the arguments are {@code null} or are not consistent.
+     * @implNote The given arrays and store are not copied.
+     */
+    BandedNeighborList(double[] radii, int[] bandOffsets, int[] neighborIds, ParticleStore particles,
+                       BoundaryCondition boundaryCondition) throws IllegalArgumentException {
+        Assert.notNull(radii, "The radii array must not be null.");
+        Assert.notNull(bandOffsets, "The band offsets array must not be null.");
+        Assert.notNull(neighborIds, "The neighbor ids array must not be null.");
+        Assert.notNull(particles, "The particle store must not be null.");
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        if (radii.length == 0 || bandOffsets.length != particles.size() * radii.length + 1 || bandOffsets[0] != 0
+                || bandOffsets[bandOffsets.length - 1] != neighborIds.length) {
+            throw new IllegalArgumentException("The band offsets array is not consistent with the entries");
+        }
+        this.radii = radii;
+        this.bandOffsets = bandOffsets;
+        this.neighborIds = neighborIds;
+        this.particles = particles;
+        this.boundaryCondition = boundaryCondition;
+        this.distances = new double[neighborIds.length];
+        this.calculated = new boolean[radii.length];
+        this.sorted = new boolean[radii.length];
+    }
+
+    /**
+     * @return The amount of particles.
+     */
+    public int size() {
+        return particles.size();
+    }
+
+    /**
+     * @return The interaction radii, in ascending order (i.e indexed by band).
+     */
+    public double[] getRadii() {
+        return radii.clone();
+    }
+
+    /**
+     * @return For each particle and band, the position in the entry arrays where its bucket starts
+     * (with an extra value at the end).
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public int[] getBandOffsets() {
+        return bandOffsets;
+    }
+
+    /**
+     * @return The neighbors of all the particles, one after the other.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public int[] getNeighborIds() {
+        return neighborIds;
+    }
+
+    /**
+     * @return The distance (between borders) to each neighbor, calculating the ones not calculated yet.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public synchronized double[] getDistances() {
+        for (int band = 0; band < radii.length; band++) {
+            calculateDistances(band);
+        }
+        return distances;
+    }
+
+    /**
+     * @param particle The index of the particle.
+     * @return The amount of neighbors of the given {@code particle} for the biggest radius.
+     */
+    public int getNeighborCount(int particle) {
+        return bandOffsets[(particle + 1) * radii.length] - bandOffsets[particle * radii.length];
+    }
+
+    /**
+     * @param particle The index of the particle.
+     * @param band     The band (i.e the index of the radius).
+     * @return The amount of neighbors of the given {@code particle} for the radius of the given {@code band}
+     * (i.e the length of the prefix of its entries whose band is at most the given one).
+     * @throws IllegalArgumentException If the band is not valid.
+     */
+    public int getNeighborCount(int particle, int band) throws IllegalArgumentException {
+        validateBand(band);
+        return bandOffsets[particle * radii.length + band + 1] - bandOffsets[particle * radii.length];
+    }
+
+    /**
+     * Calculates the distances of the given {@code band}, and sorts the bucket of that band of each particle
+     * by distance (and then by neighbor id). Once all the bands up to {@code b} are sorted, the neighbors of each
+     * particle for the radius of band {@code b} are sorted by distance too
+     * (except for distances rounded right at a radius). Sorting an already sorted band does nothing.
+     *
+     * @param band The band (i.e the index of the radius).
+     * @throws IllegalArgumentException If the band is not valid.
+     * @implNote Particles are handled in parallel, in the {@link java.util.concurrent.ForkJoinPool}
+     * calling this method.
+     */
+    public synchronized void sortByDistance(int band) throws IllegalArgumentException {
+        validateBand(band);
+        if (sorted[band]) {
+            return;
+        }
+        calculateDistances(band);
+        final int bands = radii.length;
+        forEachBlock(block -> {
+            long[] keys = new long[0];
+            for (int i = block * BLOCK; i < Math.min(size(), (block + 1) * BLOCK); i++) {
+                final int from = bandOffsets[i * bands + band];
+                final int length = bandOffsets[i * bands + band + 1] - from;
+                if (length > INSERTION_SORT_LENGTH && keys.length < length) {
+                    keys = new long[length];
+                }
+                sort(from, from + length, keys);
+            }
+        });
+        sorted[band] = true;
+    }
+
+    /**
+     * Builds the {@link NeighborList} for the radius of the given {@code band},
+     * which is the same one a detection with that radius would build.
+     *
+     * @param band The band (i.e the index of the radius).
+     * @return The built {@link NeighborList}.
+     * @throws IllegalArgumentException If the band is not valid.
+     */
+    public synchronized NeighborList toNeighborList(int band) throws IllegalArgumentException {
+        validateBand(band);
+        final int amountOfParticles = size();
+        final int bands = radii.length;
+        final int[] offsets = new int[amountOfParticles + 1];
+        for (int i = 0; i < amountOfParticles; i++) {
+            offsets[i + 1] = offsets[i] + bandOffsets[i * bands + band + 1] - bandOffsets[i * bands];
+        }
+        final int[] bandNeighborIds = new int[offsets[amountOfParticles]];
+        forEachBlock(block -> {
+            for (int i = block * BLOCK; i < Math.min(amountOfParticles, (block + 1) * BLOCK); i++) {
+                System.arraycopy(neighborIds, bandOffsets[i * bands], bandNeighborIds, offsets[i],
+                        offsets[i + 1] - offsets[i]);
+                Arrays.sort(bandNeighborIds, offsets[i], offsets[i + 1]);
+            }
+        });
+        return new NeighborList(offsets, bandNeighborIds);
+    }
+
+    /**
+     * Calculates the distances of the entries of the given {@code band}, if they are not calculated yet.
+     *
+     * @param band The band.
+     */
+    private void calculateDistances(int band) {
+        if (calculated[band]) {
+            return;
+        }
+        final int bands = radii.length;
+        final double[] x = particles.getX();
+        final double[] y = particles.getY();
+        final double[] radius = particles.getRadius();
+        final double width = particles.getWidth();
+        final double height = particles.getHeight();
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        forEachBlock(block -> {
+            for (int i = block * BLOCK; i < Math.min(size(), (block + 1) * BLOCK); i++) {
+                for (int k = bandOffsets[i * bands + band]; k < bandOffsets[i * bands + band + 1]; k++) {
+                    final int j = neighborIds[k];
+                    final double dx = periodic ? BruteForceEngine.minimumImage(x[i] - x[j], width) : x[i] - x[j];
+                    final double dy = periodic ? BruteForceEngine.minimumImage(y[i] - y[j], height) : y[i] - y[j];
+                    distances[k] = Math.sqrt(dx * dx + dy * dy) - radius[i] - radius[j];
+                }
+            }
+        });
+        calculated[band] = true;
+    }
+
+    /**
+     * Runs the given action for each block of {@link #BLOCK} particles, in parallel.
+     *
+     * @param action The action, which receives the index of the block.
+     */
+    private void forEachBlock(IntConsumer action) {
+        IntStream.range(0, (size() + BLOCK - 1) / BLOCK).parallel().forEach(action);
+    }
+
+    /**
+     * Sorts the given range of entries by distance, and then by neighbor id.
+     *
+     * @param from The first position of the range (inclusive).
+     * @param to   The last position of the range (exclusive).
+     * @param keys A scratch array, at least as long as the range when it is longer than
+     *             {@link #INSERTION_SORT_LENGTH}.
+     * @implNote Long ranges are first sorted with {@link Arrays#sort(long[], int, int)} by keys packing their
+     * distance (rounded to a float, which keeps their order) with their position. Entries are then almost sorted
+     * (except for rounded ties), so the final insertion sort with the exact comparison takes linear time.
+     */
+    private void sort(int from, int to, long[] keys) {
+        final int length = to - from;
+        if (length > INSERTION_SORT_LENGTH) {
+            for (int k = 0; k < length; k++) {
+                final int bits = Float.floatToIntBits((float) distances[from + k]);
+                // Flipping all but the sign bit of negative values makes their order the same as the one of ints
+                final int sortable = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+                keys[k] = ((long) sortable << 32) | k;
+            }
+            Arrays.sort(keys, 0, length);
+            final int[] ids = Arrays.copyOfRange(neighborIds, from, to);
+            final double[] values = Arrays.copyOfRange(distances, from, to);
+            for (int k = 0; k < length; k++) {
+                final int source = (int) keys[k];
+                neighborIds[from + k] = ids[source];
+                distances[from + k] = values[source];
+            }
+        }
+        for (int k = from + 1; k < to; k++) {
+            final int id = neighborIds[k];
+            final double distance = distances[k];
+            int position = k;
+            while (position > from && (distances[position - 1] > distance
+                    || (distances[position - 1] == distance && neighborIds[position - 1] > id))) {
+                neighborIds[position] = neighborIds[position - 1];
+                distances[position] = distances[position - 1];
+                position--;
+            }
+            neighborIds[position] = id;
+            distances[position] = distance;
+        }
+    }
+
+    /**
+     * Checks that the given band is valid.
+     *
+     * @param band The band.
+     * @throws IllegalArgumentException If the band is not valid.
+     */
+    private void validateBand(int band) throws IllegalArgumentException {
+        if (band < 0 || band >= radii.length) {
+            throw new IllegalArgumentException("There is no band " + band);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs batches of {@link Scenario}s concurrently in a work-stealing pool, streaming the timings and
+ * {@link DetectionMetrics} of each one to a CSV file as soon as it finishes.
+ * <p>
+ * Rows are flushed one by one, so when a batch is run again with the same file,
+ * scenarios already in it are skipped, and a long sweep can be resumed after a crash.
+ * <p>
+ * Besides the amount of concurrent scenarios, a memory budget is shared among the running ones:
+ * each scenario waits until its {@link Scenario#estimatedBytes() estimated memory} is available,
+ * so big scenarios run alone (or with few small ones), while small ones use all the workers.
+ */
+public class BatchRunner {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class);
+
+    /**
+     * The header of the CSV file.
+     */
+    static final String HEADER = "side_length,amount_of_particles,interaction_radius,max_radius,requested_m," +
+            "boundary_condition,seed,m,generation_nanos,detection_nanos,binning_nanos,sweep_nanos,assembly_nanos," +
+            "examined_pairs,accepted_pairs,pair_efficiency,empty_cell_ratio,allocated_bytes,status";
+
+    /**
+     * The amount of CSV columns identifying a {@link Scenario}.
+     */
+    private static final int KEY_COLUMNS = 7;
+
+    /**
+     * The fraction of the maximum heap that running scenarios may use.
+     */
+    private static final double HEAP_FRACTION = 0.75;
+
+    /**
+     * The amount of bytes each permit of the memory budget stands for.
+     */
+    private static final long BYTES_PER_PERMIT = 1 << 20;
+
+    /**
+     * The amount of scenarios run concurrently.
+     */
+    private final int parallelism;
+
+    /**
+     * The amount of bytes the running scenarios may use at the same time.
+     */
+    private final long memoryBudget;
+
+    /**
+     * Constructor, using a memory budget of a fraction of the maximum heap.
+     *
+     * @param parallelism The amount of scenarios run concurrently.
+     * @throws IllegalArgumentException If the parallelism is not positive.
+     */
+    public BatchRunner(int parallelism) throws IllegalArgumentException {
+        this(parallelism, (long) (Runtime.getRuntime().maxMemory() * HEAP_FRACTION));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism  The amount of scenarios run concurrently.
+     * @param memoryBudget The amount of bytes the running scenarios may use at the same time
+     *                     (scenarios estimated to need more than this are not run, and are recorded as errors).
+     * @throws IllegalArgumentException If the parallelism or the memory budget are not positive.
+     */
+    public BatchRunner(int parallelism, long memoryBudget) throws IllegalArgumentException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive");
+        }
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Creates a {@link BatchRunner} running as many scenarios concurrently as processors are available,
+     * sharing a fraction of the maximum heap among them.
+     *
+     * @return The created {@link BatchRunner}.
+     */
+    public static BatchRunner forAvailableResources() {
+        return new BatchRunner(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return The amount of scenarios run concurrently.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return The amount of bytes the running scenarios may use at the same time.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Runs the given scenarios, appending a row to the given CSV file as each one finishes.
+     * Scenarios already in the file are skipped.
+     * A scenario that fails (e.g because its grid is not valid, or because it runs out of memory),
+     * or that is estimated to need more memory than the budget, is recorded with the error as its status,
+     * so it is not run again.
+     *
+     * @param scenarios The {@link Scenario}s to be run.
+     * @param output    The {@link Path} of the CSV file (created if it does not exist).
+     * @return The amount of scenarios that were run (i.e not skipped).
+     * @throws UncheckedIOException If the CSV file can not be read or written.
+     */
+    public int run(List<Scenario> scenarios, Path output) throws UncheckedIOException {
+        Assert.notNull(scenarios, "The scenarios must not be null.");
+        Assert.notNull(output, "The output path must not be null.");
+        final Set<String> done = prepare(output);
+        final List<Scenario> pending = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            if (done.add(key(scenario))) {
+                pending.add(scenario);
+            }
+        }
+        LOGGER.info("Running {} scenarios ({} already done) with parallelism {} and a memory budget of {} bytes.",
+                pending.size(), scenarios.size() - pending.size(), parallelism, memoryBudget);
+
+        final int budgetPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget / BYTES_PER_PERMIT));
+        // Fair, so a big scenario waiting for memory is not starved by the small ones submitted after it
+        final Semaphore budget = new Semaphore(budgetPermits, true);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            final List<Future<?>> futures = new ArrayList<>(pending.size());
+            for (Scenario scenario : pending) {
+                futures.add(pool.submit(() -> {
+                    final String row = run(scenario, budget, budgetPermits);
+                    // Rows are written whole, so a crash can only leave the last one incomplete
+                    synchronized (writer) {
+                        try {
+                            writer.write(row);
+                            writer.write(System.lineSeparator());
+                            writer.flush();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running scenarios", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("A scenario failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return pending.size();
+    }
+
+    /**
+     * Runs the given scenario once its estimated memory is available in the given budget,
+     * or records it as an error if it is estimated to need more than the whole budget.
+     *
+     * @param scenario      The {@link Scenario} to be run.
+     * @param budget        The {@link Semaphore} holding the available memory, in permits.
+     * @param budgetPermits The amount of permits of the whole budget.
+     * @return The CSV row with the results.
+     * @throws InterruptedException If interrupted while waiting for memory.
+     */
+    private String run(Scenario scenario, Semaphore budget, int budgetPermits) throws InterruptedException {
+        final long estimatedBytes = scenario.estimatedBytes();
+        final long permits = Math.max(1, (estimatedBytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT);
+        if (permits > budgetPermits) {
+            LOGGER.warn("Scenario {} is estimated to need {} bytes, more than the memory budget.",
+                    scenario, estimatedBytes);
+            return errorRow(scenario, "error: estimated " + estimatedBytes + " bytes exceed the memory budget of "
+                    + memoryBudget + " bytes");
+        }
+        budget.acquire((int) permits);
+        try {
+            return run(scenario);
+        } finally {
+            budget.release((int) permits);
+        }
+    }
+
+    /**
+     * Runs the given scenario with a {@link CellIndexEngine}, measuring it with its own {@link DetectionMetrics}.
+     *
+     * @param scenario The {@link Scenario} to be run.
+     * @return The CSV row with the results (or with the error, if the scenario failed).
+     */
+    private static String run(Scenario scenario) {
+        final DetectionMetrics metrics = new DetectionMetrics();
+        final StringBuilder row = new StringBuilder(key(scenario));
+        try {
+            final long generationStart = System.nanoTime();
+            final ParticleStore store = scenario.generate();
+            final long generationNanos = System.nanoTime() - generationStart;
+            final int M = scenario.getM() == 0 ?
+                    new GridPlanner().plan(store, scenario.getInteractionRadius(), scenario.getBoundaryCondition())
+                    : scenario.getM();
+            final long detectionStart = System.nanoTime();
+            new CellIndexEngine(scenario.getBoundaryCondition(), metrics)
+                    .detect(store, scenario.getInteractionRadius(), M);
+            final long detectionNanos = System.nanoTime() - detectionStart;
+            row.append(',').append(M)
+                    .append(',').append(generationNanos)
+                    .append(',').append(detectionNanos)
+                    .append(',').append(metrics.getBinningNanos())
+                    .append(',').append(metrics.getSweepNanos())
+                    .append(',').append(metrics.getAssemblyNanos())
+                    .append(',').append(metrics.getExaminedPairs())
+                    .append(',').append(metrics.getAcceptedPairs())
+                    .append(',').append(metrics.getPairEfficiency())
+                    .append(',').append(metrics.getEmptyCellRatio())
+                    .append(',').append(metrics.getAllocatedBytes())
+                    .append(",ok");
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Scenario {} is not valid: {}", scenario, e.getMessage());
+            return errorRow(scenario, status(e));
+        } catch (RuntimeException | OutOfMemoryError e) {
+            // The scenario's data is unreachable once here, so the rest of the batch can go on
+            LOGGER.error("Scenario {} failed.", scenario, e);
+            return errorRow(scenario, status(e));
+        }
+        return row.toString();
+    }
+
+    /**
+     * Builds the CSV row of a failed scenario.
+     *
+     * @param scenario The {@link Scenario}.
+     * @param status   The status column.
+     * @return The CSV row, with empty results.
+     */
+    private static String errorRow(Scenario scenario, String status) {
+        return key(scenario) + ",,,,,,,,,,,," + status;
+    }
+
+    /**
+     * Creates the CSV file if it does not exist, or else drops its last row if it is incomplete,
+     * and reads the keys of the scenarios already in it.
+     *
+     * @param output The {@link Path} of the CSV file.
+     * @return The keys of the scenarios already run.
+     * @throws UncheckedIOException If the CSV file can not be read or written.
+     */
+    private static Set<String> prepare(Path output) throws UncheckedIOException {
+        final Set<String> done = new HashSet<>();
+        try {
+            if (!Files.exists(output) || Files.size(output) == 0) {
+                Files.write(output, (HEADER + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                return done;
+            }
+            truncateIncompleteRow(output);
+            try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+                final String header = reader.readLine();
+                if (!HEADER.equals(header)) {
+                    throw new IllegalArgumentException("The file " + output + " is not a scenarios CSV file");
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] columns = line.split(",", KEY_COLUMNS + 1);
+                    if (columns.length > KEY_COLUMNS) {
+                        done.add(line.substring(0, line.length() - columns[KEY_COLUMNS].length() - 1));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return done;
+    }
+
+    /**
+     * Drops the bytes after the last line separator of the given file (i.e a row being written during a crash).
+     *
+     * @param file The {@link Path} of the file.
+     * @throws IOException If the file can not be read or written.
+     */
+    private static void truncateIncompleteRow(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            while (end > 0) {
+                buffer.clear();
+                channel.read(buffer, end - 1);
+                if (buffer.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < channel.size()) {
+                LOGGER.warn("Dropping the incomplete last row of {}.", file);
+                channel.truncate(end);
+            }
+        }
+    }
+
+    /**
+     * Builds the CSV columns identifying the given scenario.
+     *
+     * @param scenario The {@link Scenario}.
+     * @return The key columns, separated by commas.
+     */
+    private static String key(Scenario scenario) {
+        return scenario.getSideLength() +
+                "," + scenario.getAmountOfParticles() +
+                "," + scenario.getInteractionRadius() +
+                "," + scenario.getMaxRadius() +
+                "," + scenario.getM() +
+                "," + scenario.getBoundaryCondition() +
+                "," + scenario.getSeed();
+    }
+
+    /**
+     * Builds the status column for a failed scenario.
+     *
+     * @param e The {@link Throwable} thrown by the scenario.
+     * @return The status (including the type of error, unless the scenario was not valid),
+     * without characters that would break the CSV format.
+     */
+    private static String status(Throwable e) {
+        final String type = e instanceof IllegalArgumentException ? "" : e.getClass().getSimpleName() + " ";
+        return ("error: " + type + e.getMessage()).replaceAll("[,\r\n\"]", " ");
+    }
+}
@@ -0,0 +1,17 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Boundary conditions of a space.
+ */
+public enum BoundaryCondition {
+
+    /**
+     * The space is closed by its borders, so particles near opposite borders are not neighbors.
+     */
+    OPEN,
+
+    /**
+     * The space wraps around its borders, and distances are calculated with the minimum image convention.
+     */
+    PERIODIC
+}
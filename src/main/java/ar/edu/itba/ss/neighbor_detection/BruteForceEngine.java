@@ -0,0 +1,97 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+/**
+ * Brute force implementation, which checks every pair of particles.
+ * It is meant to be used as a reference (i.e to check results and to compare performance).
+ * Only squared spaces are supported.
+ */
+public class BruteForceEngine implements NeighborEngine {
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public BruteForceEngine() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public BruteForceEngine(BoundaryCondition boundaryCondition) {
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        this.boundaryCondition = boundaryCondition;
+    }
+
+    @Override
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final PairBuffer pairs = new PairBuffer(store.size());
+        detect(store, interactionRadius, M, pairs);
+        return NeighborList.fromPairs(store.size(), pairs);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote The amount of cells per side is only validated, as no grid is used.
+     */
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        store.checkSquared("BruteForceEngine");
+        CellIndexEngine.validate(store.getSideLength(), interactionRadius, store.getMaxRadius(), M,
+                boundaryCondition);
+
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final int amountOfParticles = store.size();
+        final double sideLength = store.getSideLength();
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        for (int i = 0; i < amountOfParticles; i++) {
+            for (int j = i + 1; j < amountOfParticles; j++) {
+                final double dx = periodic ? minimumImage(x[i] - x[j], sideLength) : x[i] - x[j];
+                final double dy = periodic ? minimumImage(y[i] - y[j], sideLength) : y[i] - y[j];
+                final double limit = interactionRadius + radius[i] + radius[j];
+                final double squaredDistance = dx * dx + dy * dy;
+                if (squaredDistance <= limit * limit) {
+                    consumer.accept(i, j, squaredDistance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the minimum image convention to the given difference between coordinates.
+     *
+     * @param difference The difference between coordinates (between {@code -sideLength} and {@code sideLength}).
+     * @param sideLength The length of the side of the space.
+     * @return The difference between the nearest images.
+     */
+    static double minimumImage(double difference, double sideLength) {
+        if (difference > sideLength / 2) {
+            return difference - sideLength;
+        }
+        if (difference < -sideLength / 2) {
+            return difference + sideLength;
+        }
+        return difference;
+    }
+}
@@ -0,0 +1,325 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * A grid of {@code Mx * My} cells (i.e {@code Mx} columns and {@code My} rows, being {@code M * M} cells
+ * for squared grids), in which particle indexes are binned using a counting sort,
+ * so the particles of each cell are stored in a contiguous range.
+ * The particles of cell {@code c} are the values of {@code cellParticles}
+ * between {@code cellStart[c]} (inclusive) and {@code cellStart[c + 1]} (exclusive).
+ * Cells are numbered row by row (i.e {@code cell = row * Mx + column}),
+ * and the origin of the grid is the lower left corner.
+ * Particle positions and radii are also copied in cell order, so each cell's particles can be checked
+ * as a contiguous block of memory.
+ */
+public class CellGrid {
+
+    /**
+     * The width of the space (i.e its length along the 'x' axis).
+     */
+    private final double width;
+
+    /**
+     * The height of the space (i.e its length along the 'y' axis).
+     */
+    private final double height;
+
+    /**
+     * The amount of cells along the 'x' axis (i.e columns).
+     */
+    private final int Mx;
+
+    /**
+     * The amount of cells along the 'y' axis (i.e rows).
+     */
+    private final int My;
+
+    /**
+     * The amount of columns divided by the width.
+     */
+    private final double xFactor;
+
+    /**
+     * The amount of rows divided by the height.
+     */
+    private final double yFactor;
+
+    /**
+     * For each cell, the position in {@code cellParticles} where its particles start.
+     * It has one extra value at the end, holding the amount of binned particles.
+     */
+    private final int[] cellStart;
+
+    /**
+     * The particle indexes, sorted by cell.
+     */
+    private int[] cellParticles;
+
+    /**
+     * The cell of each particle.
+     */
+    private int[] particleCell;
+
+    /**
+     * The 'x' value of each particle's position, sorted by cell.
+     */
+    private double[] sortedX;
+
+    /**
+     * The 'y' value of each particle's position, sorted by cell.
+     */
+    private double[] sortedY;
+
+    /**
+     * The radius of each particle, sorted by cell.
+     */
+    private double[] sortedRadius;
+
+    /**
+     * The biggest amount of particles in a single cell.
+     */
+    private int maxOccupancy;
+
+    /**
+     * Constructor, for a squared grid.
+     *
+     * @param sideLength The length of the side of the space.
+     * @param M          The amount of cells per side.
+     * @throws IllegalArgumentException If the side length is not positive, or if {@code M} is not positive.
+     */
+    public CellGrid(double sideLength, int M) throws IllegalArgumentException {
+        this(sideLength, sideLength, M, M);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param width  The width of the space (i.e its length along the 'x' axis).
+     * @param height The height of the space (i.e its length along the 'y' axis).
+     * @param Mx     The amount of cells along the 'x' axis (i.e columns).
+     * @param My     The amount of cells along the 'y' axis (i.e rows).
+     * @throws IllegalArgumentException If the width or the height are not positive,
+     *                                  or if {@code Mx} or {@code My} are not positive,
+     *                                  or if there are too many cells.
+     */
+    public CellGrid(double width, double height, int Mx, int My) throws IllegalArgumentException {
+        if (Double.compare(width, 0.0) <= 0 || Double.compare(height, 0.0) <= 0) {
+            throw new IllegalArgumentException("The width and the height must be positive");
+        }
+        if (Mx <= 0 || My <= 0) {
+            throw new IllegalArgumentException("There must be at least one grid per side");
+        }
+        if ((long) Mx * My >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("There are too many cells. Values were: Mx = " + Mx
+                    + ", My = " + My + ".");
+        }
+        this.width = width;
+        this.height = height;
+        this.Mx = Mx;
+        this.My = My;
+        this.xFactor = Mx / width;
+        this.yFactor = My / height;
+        this.cellStart = new int[Mx * My + 1];
+        this.cellParticles = new int[0];
+        this.particleCell = new int[0];
+        this.sortedX = new double[0];
+        this.sortedY = new double[0];
+        this.sortedRadius = new double[0];
+        this.maxOccupancy = 0;
+    }
+
+    /**
+     * Bins the particles of the given {@link ParticleStore} into this grid,
+     * replacing any previously binned particles.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @implNote Internal arrays are reused when they are big enough,
+     * so binning again the same amount of particles does not allocate memory.
+     */
+    public void bin(ParticleStore store) {
+        Assert.notNull(store, "The particle store must not be null.");
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final int amountOfParticles = store.size();
+        if (cellParticles.length < amountOfParticles) {
+            cellParticles = new int[amountOfParticles];
+            particleCell = new int[amountOfParticles];
+            sortedX = new double[amountOfParticles];
+            sortedY = new double[amountOfParticles];
+            sortedRadius = new double[amountOfParticles];
+        }
+
+        for (int i = 0; i < amountOfParticles; i++) {
+            particleCell[i] = cellOf(x[i], y[i]);
+        }
+        countingSort(particleCell, amountOfParticles, cellStart, cellParticles);
+        for (int position = 0; position < amountOfParticles; position++) {
+            final int i = cellParticles[position];
+            sortedX[position] = x[i];
+            sortedY[position] = y[i];
+            sortedRadius[position] = radius[i];
+        }
+        maxOccupancy = 0;
+        for (int cell = 0; cell < cellStart.length - 1; cell++) {
+            maxOccupancy = Math.max(maxOccupancy, cellStart[cell + 1] - cellStart[cell]);
+        }
+    }
+
+    /**
+     * Sorts particle indexes by cell, using a counting sort.
+     *
+     * @param particleCell      The cell of each particle.
+     * @param amountOfParticles The amount of particles.
+     * @param cellStart         An array with one position per cell, plus one, where the position in
+     *                          {@code cellParticles} in which each cell starts is stored.
+     * @param cellParticles     An array where particle indexes, sorted by cell, are stored.
+     * @implNote Particles in the same cell stay in ascending order.
+     */
+    static void countingSort(int[] particleCell, int amountOfParticles, int[] cellStart, int[] cellParticles) {
+        final int amountOfCells = cellStart.length - 1;
+        // Count particles per cell
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < amountOfParticles; i++) {
+            cellStart[particleCell[i]]++;
+        }
+        // Calculate the end of each cell
+        for (int cell = 1; cell < amountOfCells; cell++) {
+            cellStart[cell] += cellStart[cell - 1];
+        }
+        cellStart[amountOfCells] = amountOfParticles;
+        // Place particles backwards, so each cell end becomes the cell start, and particles stay in ascending order
+        for (int i = amountOfParticles - 1; i >= 0; i--) {
+            cellParticles[--cellStart[particleCell[i]]] = i;
+        }
+    }
+
+    /**
+     * Calculates the cell to which the given position belongs to.
+     *
+     * @param x The 'x' value of the position.
+     * @param y The 'y' value of the position.
+     * @return The cell for the given position.
+     * @implNote Positions laying on the upper or right border belong to the last row or column.
+     */
+    public int cellOf(double x, double y) {
+        return CellIndexEngine.cellIndex(y, yFactor, My) * Mx + CellIndexEngine.cellIndex(x, xFactor, Mx);
+    }
+
+    /**
+     * @return The length of the side of the space.
+     * @throws IllegalStateException If the grid is not squared.
+     */
+    public double getSideLength() throws IllegalStateException {
+        checkSquared();
+        return width;
+    }
+
+    /**
+     * @return The amount of cells per side.
+     * @throws IllegalStateException If the grid is not squared.
+     */
+    public int getM() throws IllegalStateException {
+        checkSquared();
+        return Mx;
+    }
+
+    /**
+     * @return The width of the space (i.e its length along the 'x' axis).
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the space (i.e its length along the 'y' axis).
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The amount of cells along the 'x' axis (i.e columns).
+     */
+    public int getMx() {
+        return Mx;
+    }
+
+    /**
+     * @return The amount of cells along the 'y' axis (i.e rows).
+     */
+    public int getMy() {
+        return My;
+    }
+
+    /**
+     * @return For each cell, the position in the cell particles array where its particles start
+     * (with an extra value at the end).
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public int[] getCellStart() {
+        return cellStart;
+    }
+
+    /**
+     * @return The particle indexes, sorted by cell.
+     * @implNote The backing array is returned (i.e it is not copied), and it might be longer than needed.
+     */
+    public int[] getCellParticles() {
+        return cellParticles;
+    }
+
+    /**
+     * @return The cell of each particle.
+     * @implNote The backing array is returned (i.e it is not copied), and it might be longer than needed.
+     */
+    public int[] getParticleCell() {
+        return particleCell;
+    }
+
+    /**
+     * @return The 'x' value of each particle's position, sorted by cell.
+     * @implNote The backing array is returned (i.e it is not copied), and it might be longer than needed.
+     */
+    public double[] getSortedX() {
+        return sortedX;
+    }
+
+    /**
+     * @return The 'y' value of each particle's position, sorted by cell.
+     * @implNote The backing array is returned (i.e it is not copied), and it might be longer than needed.
+     */
+    public double[] getSortedY() {
+        return sortedY;
+    }
+
+    /**
+     * @return The radius of each particle, sorted by cell.
+     * @implNote The backing array is returned (i.e it is not copied), and it might be longer than needed.
+     */
+    public double[] getSortedRadius() {
+        return sortedRadius;
+    }
+
+    /**
+     * @return The biggest amount of particles in a single cell.
+     */
+    public int getMaxOccupancy() {
+        return maxOccupancy;
+    }
+
+    /**
+     * Checks that both the space and the amount of cells along each axis are the same.
+     *
+     * @throws IllegalStateException If the grid is not squared.
+     */
+    private void checkSquared() throws IllegalStateException {
+        if (Double.compare(width, height) != 0 || Mx != My) {
+            throw new IllegalStateException("The grid is not squared. Values were: width = " + width
+                    + ", height = " + height + ", Mx = " + Mx + ", My = " + My + ".");
+        }
+    }
+}
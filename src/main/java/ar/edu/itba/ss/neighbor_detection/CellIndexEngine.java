@@ -0,0 +1,440 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+/**
+ * Cell index method implementation working over a {@link ParticleStore},
+ * which uses particle indexes and primitive arrays only.
+ * The space might be split into {@code Mx} columns and {@code My} rows (being {@code Mx = My = M} for the
+ * {@link NeighborEngine} methods), so cells are kept close to the reach along both axes even for rectangular spaces,
+ * and each axis has its own boundary conditions (e.g a channel that is periodic along the flow,
+ * but closed by its walls).
+ */
+public class CellIndexEngine implements NeighborEngine {
+
+    /**
+     * The offsets (in rows and columns) of the half stencil of a cell
+     * (i.e upper, upper-right, right and lower-right cells).
+     */
+    static final int[][] HALF_STENCIL = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}};
+
+    /**
+     * Extra room left at the end of candidate buffers, so vectorized {@link DistanceKernel}s can check
+     * the last candidates of a block with a whole vector (of up to this amount of lanes).
+     */
+    static final int KERNEL_PADDING = 16;
+
+    /**
+     * The boundary conditions along the 'x' axis.
+     */
+    private final BoundaryCondition xBoundaryCondition;
+
+    /**
+     * The boundary conditions along the 'y' axis.
+     */
+    private final BoundaryCondition yBoundaryCondition;
+
+    /**
+     * The {@link DetectionMetrics} in which runs are recorded.
+     */
+    private final DetectionMetrics metrics;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public CellIndexEngine() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public CellIndexEngine(BoundaryCondition boundaryCondition) {
+        this(boundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param metrics           The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public CellIndexEngine(BoundaryCondition boundaryCondition, DetectionMetrics metrics) {
+        this(boundaryCondition, boundaryCondition, metrics);
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param xBoundaryCondition The boundary conditions along the 'x' axis.
+     * @param yBoundaryCondition The boundary conditions along the 'y' axis.
+     */
+    public CellIndexEngine(BoundaryCondition xBoundaryCondition, BoundaryCondition yBoundaryCondition) {
+        this(xBoundaryCondition, yBoundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param xBoundaryCondition The boundary conditions along the 'x' axis.
+     * @param yBoundaryCondition The boundary conditions along the 'y' axis.
+     * @param metrics            The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public CellIndexEngine(BoundaryCondition xBoundaryCondition, BoundaryCondition yBoundaryCondition,
+                           DetectionMetrics metrics) {
+        Assert.notNull(xBoundaryCondition, "The boundary condition along the 'x' axis must not be null.");
+        Assert.notNull(yBoundaryCondition, "The boundary condition along the 'y' axis must not be null.");
+        Assert.notNull(metrics, "The metrics must not be null.");
+        this.xBoundaryCondition = xBoundaryCondition;
+        this.yBoundaryCondition = yBoundaryCondition;
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException If the boundary conditions along each axis are not the same.
+     */
+    @Override
+    public BoundaryCondition getBoundaryCondition() throws IllegalStateException {
+        if (xBoundaryCondition != yBoundaryCondition) {
+            throw new IllegalStateException("The boundary conditions along each axis are not the same. " +
+                    "Values were: x = " + xBoundaryCondition + ", y = " + yBoundaryCondition + ".");
+        }
+        return xBoundaryCondition;
+    }
+
+    /**
+     * @return The boundary conditions along the 'x' axis.
+     */
+    public BoundaryCondition getXBoundaryCondition() {
+        return xBoundaryCondition;
+    }
+
+    /**
+     * @return The boundary conditions along the 'y' axis.
+     */
+    public BoundaryCondition getYBoundaryCondition() {
+        return yBoundaryCondition;
+    }
+
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        return detect(store, interactionRadius, M, M);
+    }
+
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        detect(store, interactionRadius, M, M, consumer);
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store}.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param Mx                The amount of cells along the 'x' axis (i.e columns).
+     * @param My                The amount of cells along the 'y' axis (i.e rows).
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public NeighborList detect(ParticleStore store, double interactionRadius, int Mx, int My)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        final PairBuffer pairs = new PairBuffer(store.size());
+        run(store, interactionRadius, Mx, My, pairs);
+        final long start = System.nanoTime();
+        final NeighborList neighbors = NeighborList.fromPairs(store.size(), pairs);
+        metrics.recordAssembly(System.nanoTime() - start);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+        return neighbors;
+    }
+
+    /**
+     * Streams each pair of interacting particles in the given {@code store} to the given {@code consumer}.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param Mx                The amount of cells along the 'x' axis (i.e columns).
+     * @param My                The amount of cells along the 'y' axis (i.e rows).
+     * @param consumer          The {@link PairConsumer} to which each pair is reported (only once).
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public void detect(ParticleStore store, double interactionRadius, int Mx, int My, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        run(store, interactionRadius, Mx, My, consumer);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+    }
+
+    /**
+     * @return The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Bins the particles and sweeps the whole grid, recording the time spent in each phase.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param Mx                The amount of cells along the 'x' axis (i.e columns).
+     * @param My                The amount of cells along the 'y' axis (i.e rows).
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    private void run(ParticleStore store, double interactionRadius, int Mx, int My, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        validate(store.getWidth(), interactionRadius, store.getMaxRadius(), Mx, xBoundaryCondition);
+        validate(store.getHeight(), interactionRadius, store.getMaxRadius(), My, yBoundaryCondition);
+
+        final long start = System.nanoTime();
+        final CellGrid grid = new CellGrid(store.getWidth(), store.getHeight(), Mx, My);
+        grid.bin(store);
+        final long binned = System.nanoTime();
+        metrics.recordBinning(binned - start);
+        metrics.recordOccupancy(grid.getCellStart());
+        sweepRows(grid, store, interactionRadius, xBoundaryCondition, yBoundaryCondition, 0, My, consumer, metrics);
+        metrics.recordSweep(System.nanoTime() - binned);
+    }
+
+    /**
+     * Checks all the particles in the given rows of cells against their same cell particles
+     * and against the particles in the half stencil cells (i.e upper, upper-right, right and lower-right cells),
+     * so each pair of particles is checked only once.
+     * <p>
+     * For each cell, its particles and the ones of its half stencil cells are first gathered into contiguous
+     * candidate buffers, with the cell's own particles at the beginning. Along periodic axes,
+     * stencil cells wrap around the borders, and their particles are gathered shifted to their image next
+     * to the checked cell (the shift being calculated once per pair of cells).
+     * Each particle is then checked against all the candidates after it in a single call to the
+     * {@link DistanceKernel} provided by {@link DistanceKernels#get()}, so blocks are long enough
+     * for vectorized kernels even when cells hold a few particles.
+     * The amount of examined and accepted pairs is recorded once, when all rows are checked.
+     *
+     * @param grid              The {@link CellGrid} in which particles are already binned.
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param fromRow           The first row to be checked (inclusive).
+     * @param toRow             The last row to be checked (exclusive).
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     * @param metrics           The {@link DetectionMetrics} in which examined and accepted pairs are recorded.
+     * @see #sweepRows(CellGrid, ParticleStore, double, BoundaryCondition, BoundaryCondition, int, int,
+     * PairConsumer, DetectionMetrics)
+     */
+    static void sweepRows(CellGrid grid, ParticleStore store, double interactionRadius,
+                          BoundaryCondition boundaryCondition, int fromRow, int toRow, PairConsumer consumer,
+                          DetectionMetrics metrics) {
+        sweepRows(grid, store, interactionRadius, boundaryCondition, boundaryCondition, fromRow, toRow,
+                consumer, metrics);
+    }
+
+    /**
+     * Checks all the particles in the given rows of cells, as {@link #sweepRows(CellGrid, ParticleStore,
+     * double, BoundaryCondition, int, int, PairConsumer, DetectionMetrics)} does,
+     * with different boundary conditions along each axis.
+     *
+     * @param grid               The {@link CellGrid} in which particles are already binned.
+     * @param store              The {@link ParticleStore} holding the particles.
+     * @param interactionRadius  The interaction radius.
+     * @param xBoundaryCondition The boundary conditions along the 'x' axis.
+     * @param yBoundaryCondition The boundary conditions along the 'y' axis.
+     * @param fromRow            The first row to be checked (inclusive).
+     * @param toRow              The last row to be checked (exclusive).
+     * @param consumer           The {@link PairConsumer} to which neighbor pairs are reported.
+     * @param metrics            The {@link DetectionMetrics} in which examined and accepted pairs are recorded.
+     */
+    static void sweepRows(CellGrid grid, ParticleStore store, double interactionRadius,
+                          BoundaryCondition xBoundaryCondition, BoundaryCondition yBoundaryCondition,
+                          int fromRow, int toRow, PairConsumer consumer, DetectionMetrics metrics) {
+        final DistanceKernel kernel = DistanceKernels.get();
+        final double[] x = grid.getSortedX();
+        final double[] y = grid.getSortedY();
+        final double[] radius = grid.getSortedRadius();
+        final int[] cellStart = grid.getCellStart();
+        final int[] cellParticles = grid.getCellParticles();
+        final int Mx = grid.getMx();
+        final int My = grid.getMy();
+        final double width = grid.getWidth();
+        final double height = grid.getHeight();
+        final boolean xPeriodic = xBoundaryCondition == BoundaryCondition.PERIODIC;
+        final boolean yPeriodic = yBoundaryCondition == BoundaryCondition.PERIODIC;
+        // Candidate and kernel result buffers, owned by this sweep
+        final int capacity = (HALF_STENCIL.length + 1) * grid.getMaxOccupancy();
+        final double[] candidateX = new double[capacity + KERNEL_PADDING];
+        final double[] candidateY = new double[capacity + KERNEL_PADDING];
+        final double[] candidateRadius = new double[capacity + KERNEL_PADDING];
+        final int[] candidateIds = new int[capacity];
+        final int[] positions = new int[capacity];
+        final double[] squaredDistances = new double[capacity + KERNEL_PADDING];
+        long examined = 0;
+        long totalAccepted = 0;
+
+        for (int row = fromRow; row < toRow; row++) {
+            for (int column = 0; column < Mx; column++) {
+                final int cell = row * Mx + column;
+                final int start = cellStart[cell];
+                final int end = cellStart[cell + 1];
+                if (start == end) {
+                    continue;
+                }
+                // The cell's own particles go first, so each one is checked only against those after it
+                int candidates = gather(x, y, radius, cellParticles, start, end, 0, 0,
+                        candidateX, candidateY, candidateRadius, candidateIds, 0);
+                for (int[] offset : HALF_STENCIL) {
+                    int neighborRow = row + offset[0];
+                    int neighborColumn = column + offset[1];
+                    double shiftX = 0;
+                    double shiftY = 0;
+                    if (neighborColumn >= Mx) {
+                        if (!xPeriodic) {
+                            continue;
+                        }
+                        shiftX = width;
+                        neighborColumn -= Mx;
+                    }
+                    if (neighborRow < 0 || neighborRow >= My) {
+                        if (!yPeriodic) {
+                            continue;
+                        }
+                        shiftY = neighborRow < 0 ? -height : height;
+                        neighborRow = Math.floorMod(neighborRow, My);
+                    }
+                    final int neighborCell = neighborRow * Mx + neighborColumn;
+                    candidates = gather(x, y, radius, cellParticles, cellStart[neighborCell],
+                            cellStart[neighborCell + 1], shiftX, shiftY,
+                            candidateX, candidateY, candidateRadius, candidateIds, candidates);
+                }
+                for (int a = 0; a < end - start; a++) {
+                    final int accepted = kernel.filter(candidateX[a], candidateY[a],
+                            interactionRadius + candidateRadius[a], candidateX, candidateY, candidateRadius,
+                            a + 1, candidates, positions, squaredDistances);
+                    examined += candidates - a - 1;
+                    totalAccepted += accepted;
+                    report(candidateIds[a], accepted, positions, squaredDistances, candidateIds, consumer);
+                }
+            }
+        }
+        metrics.recordPairs(examined, totalAccepted);
+    }
+
+    /**
+     * Copies the particles of a cell into the candidate buffers, shifting their positions.
+     *
+     * @param x               The 'x' value of each particle's position, sorted by cell.
+     * @param y               The 'y' value of each particle's position, sorted by cell.
+     * @param radius          The radius of each particle, sorted by cell.
+     * @param cellParticles   The particle indexes, sorted by cell.
+     * @param from            The position where the cell's particles start (inclusive).
+     * @param to              The position where the cell's particles end (exclusive).
+     * @param shiftX          The shift added to the 'x' values.
+     * @param shiftY          The shift added to the 'y' values.
+     * @param candidateX      The 'x' value of each candidate's position.
+     * @param candidateY      The 'y' value of each candidate's position.
+     * @param candidateRadius The radius of each candidate.
+     * @param candidateIds    The particle index of each candidate.
+     * @param candidates      The amount of candidates already in the buffers.
+     * @return The amount of candidates in the buffers after copying the cell's particles.
+     */
+    private static int gather(double[] x, double[] y, double[] radius, int[] cellParticles, int from, int to,
+                              double shiftX, double shiftY, double[] candidateX, double[] candidateY,
+                              double[] candidateRadius, int[] candidateIds, int candidates) {
+        for (int position = from; position < to; position++, candidates++) {
+            candidateX[candidates] = x[position] + shiftX;
+            candidateY[candidates] = y[position] + shiftY;
+            candidateRadius[candidates] = radius[position];
+            candidateIds[candidates] = cellParticles[position];
+        }
+        return candidates;
+    }
+
+    /**
+     * Reports the pairs accepted by a {@link DistanceKernel} to the given {@code consumer}.
+     *
+     * @param i                The index of the checked particle.
+     * @param accepted         The amount of accepted candidates.
+     * @param positions        The positions of the accepted candidates.
+     * @param squaredDistances The squared distance between centers of each accepted candidate.
+     * @param particleIds      The particle index of each candidate position.
+     * @param consumer         The {@link PairConsumer} to which neighbor pairs are reported.
+     */
+    private static void report(int i, int accepted, int[] positions, double[] squaredDistances,
+                               int[] particleIds, PairConsumer consumer) {
+        for (int k = 0; k < accepted; k++) {
+            consumer.accept(i, particleIds[positions[k]], squaredDistances[k]);
+        }
+    }
+
+    /**
+     * Calculates the cell (row or column) for the given coordinate.
+     *
+     * @param coordinate The coordinate value.
+     * @param factor     The amount of cells per side divided by the side length.
+     * @param M          The amount of cells per side.
+     * @return The row or column for the given coordinate.
+     * @implNote The origin of the grid is the lower left corner.
+     * Particles laying on the upper or right border belong to the last row or column.
+     */
+    static int cellIndex(double coordinate, double factor, int M) {
+        final int index = (int) (coordinate * factor);
+        return index >= M ? M - 1 : index;
+    }
+
+    /**
+     * Checks that the given parameters are valid for the cell index method, with open boundary conditions.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param interactionRadius The interaction radius.
+     * @param maxRadius         The biggest particle radius.
+     * @param M                 The amount of cells per side.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     * @see #validate(double, double, double, int, BoundaryCondition)
+     */
+    static void validate(double sideLength, double interactionRadius, double maxRadius, int M)
+            throws IllegalArgumentException {
+        validate(sideLength, interactionRadius, maxRadius, M, BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Checks that the given parameters are valid for the cell index method.
+     * The side of a cell must be greater than the interaction radius plus twice the biggest particle radius
+     * (i.e the biggest distance between the centers of two neighbors),
+     * or else neighbors laying in non adjacent cells would be missed.
+     * With periodic boundary conditions, there must be at least 3 cells per side,
+     * so each pair of particles has only one image within reach.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param interactionRadius The interaction radius.
+     * @param maxRadius         The biggest particle radius.
+     * @param M                 The amount of cells per side.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    static void validate(double sideLength, double interactionRadius, double maxRadius, int M,
+                         BoundaryCondition boundaryCondition) throws IllegalArgumentException {
+        if (M <= 0) {
+            throw new IllegalArgumentException("There must be at least one grid per side");
+        }
+        if (Double.compare(interactionRadius, 0) < 0) {
+            throw new IllegalArgumentException("The interaction radius must be positive");
+        }
+        if (M != 1 && Double.compare((sideLength / M), interactionRadius + 2 * maxRadius) <= 0) {
+            throw new IllegalArgumentException("The interaction radius plus twice the biggest particle radius " +
+                    "must be lower than the space side length divided by the amount of grids per side. " +
+                    "Values were: L = " + sideLength + ", M = " + M + ", r = " + interactionRadius +
+                    ", max radius = " + maxRadius + ". Use a GridPlanner to choose M.");
+        }
+        if (boundaryCondition == BoundaryCondition.PERIODIC && M < 3) {
+            throw new IllegalArgumentException("Periodic boundary conditions need at least 3 cells per side");
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+/**
+ * Cell index method implementation for cubic spaces, working over a {@link ParticleStore3D}.
+ * The space is split into {@code M * M * M} cubic cells, and each cell is checked against itself
+ * and against the 13 cells of its half shell, so each pair of particles is checked only once.
+ */
+public class CellIndexEngine3D {
+
+    /**
+     * The offsets (in 'x', 'y' and 'z') of the 13 cells in the half shell of a cell
+     * (i.e those neighbor cells that come after it, when cells are numbered plane by plane, row by row).
+     */
+    private static final int[][] HALF_SHELL = halfShell();
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The {@link DetectionMetrics} in which runs are recorded.
+     */
+    private final DetectionMetrics metrics;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public CellIndexEngine3D() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public CellIndexEngine3D(BoundaryCondition boundaryCondition) {
+        this(boundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param metrics           The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public CellIndexEngine3D(BoundaryCondition boundaryCondition, DetectionMetrics metrics) {
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        Assert.notNull(metrics, "The metrics must not be null.");
+        this.boundaryCondition = boundaryCondition;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The boundary conditions of the space.
+     */
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    /**
+     * @return The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store}.
+     *
+     * @param store             The {@link ParticleStore3D} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public NeighborList detect(ParticleStore3D store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        final PairBuffer pairs = new PairBuffer(store.size());
+        run(store, interactionRadius, M, pairs);
+        final long start = System.nanoTime();
+        final NeighborList neighbors = NeighborList.fromPairs(store.size(), pairs);
+        metrics.recordAssembly(System.nanoTime() - start);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+        return neighbors;
+    }
+
+    /**
+     * Streams each pair of interacting particles in the given {@code store} to the given {@code consumer}.
+     *
+     * @param store             The {@link ParticleStore3D} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param consumer          The {@link PairConsumer} to which each pair is reported (only once).
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public void detect(ParticleStore3D store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        run(store, interactionRadius, M, consumer);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+    }
+
+    /**
+     * Bins the particles and sweeps the whole grid, recording the time spent in each phase,
+     * and the amount of examined and accepted pairs.
+     *
+     * @param store             The {@link ParticleStore3D} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    private void run(ParticleStore3D store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final double sideLength = store.getSideLength();
+        CellIndexEngine.validate(sideLength, interactionRadius, store.getMaxRadius(), M, boundaryCondition);
+
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] z = store.getZ();
+        final double[] radius = store.getRadius();
+        final int amountOfParticles = store.size();
+
+        // Bin particles into cells
+        final long binningStart = System.nanoTime();
+        final double factor = M / sideLength;
+        final int[] particleCell = new int[amountOfParticles];
+        for (int i = 0; i < amountOfParticles; i++) {
+            particleCell[i] = (CellIndexEngine.cellIndex(z[i], factor, M) * M
+                    + CellIndexEngine.cellIndex(y[i], factor, M)) * M
+                    + CellIndexEngine.cellIndex(x[i], factor, M);
+        }
+        final int[] cellStart = new int[M * M * M + 1];
+        final int[] cellParticles = new int[amountOfParticles];
+        CellGrid.countingSort(particleCell, amountOfParticles, cellStart, cellParticles);
+        final long binned = System.nanoTime();
+        metrics.recordBinning(binned - binningStart);
+        metrics.recordOccupancy(cellStart);
+
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        long examined = 0;
+        long accepted = 0;
+        for (int cz = 0; cz < M; cz++) {
+            for (int cy = 0; cy < M; cy++) {
+                for (int cx = 0; cx < M; cx++) {
+                    final int cell = (cz * M + cy) * M + cx;
+                    final int start = cellStart[cell];
+                    final int end = cellStart[cell + 1];
+                    if (start == end) {
+                        continue;
+                    }
+                    // Same cell particles
+                    for (int a = start; a < end; a++) {
+                        for (int b = a + 1; b < end; b++) {
+                            if (report(cellParticles[a], cellParticles[b], 0, 0, 0, x, y, z, radius,
+                                    interactionRadius, consumer)) {
+                                accepted++;
+                            }
+                        }
+                    }
+                    examined += (long) (end - start) * (end - start - 1) / 2;
+                    // Half shell cells, with the shift to be applied to their particles (when wrapping around)
+                    for (int[] offset : HALF_SHELL) {
+                        int nx = cx + offset[0];
+                        int ny = cy + offset[1];
+                        int nz = cz + offset[2];
+                        double shiftX = 0;
+                        double shiftY = 0;
+                        double shiftZ = 0;
+                        if (nx < 0 || nx >= M || ny < 0 || ny >= M || nz < 0 || nz >= M) {
+                            if (!periodic) {
+                                continue;
+                            }
+                            shiftX = nx < 0 ? -sideLength : nx >= M ? sideLength : 0;
+                            shiftY = ny < 0 ? -sideLength : ny >= M ? sideLength : 0;
+                            shiftZ = nz < 0 ? -sideLength : nz >= M ? sideLength : 0;
+                            nx = Math.floorMod(nx, M);
+                            ny = Math.floorMod(ny, M);
+                            nz = Math.floorMod(nz, M);
+                        }
+                        final int neighborCell = (nz * M + ny) * M + nx;
+                        final int neighborEnd = cellStart[neighborCell + 1];
+                        for (int a = start; a < end; a++) {
+                            final int i = cellParticles[a];
+                            for (int b = cellStart[neighborCell]; b < neighborEnd; b++) {
+                                if (report(i, cellParticles[b], shiftX, shiftY, shiftZ, x, y, z, radius,
+                                        interactionRadius, consumer)) {
+                                    accepted++;
+                                }
+                            }
+                        }
+                        examined += (long) (end - start) * (neighborEnd - cellStart[neighborCell]);
+                    }
+                }
+            }
+        }
+        metrics.recordPairs(examined, accepted);
+        metrics.recordSweep(System.nanoTime() - binned);
+    }
+
+    /**
+     * Reports the given pair to the {@code consumer} if the particles are neighbors.
+     *
+     * @param i                 The first particle index.
+     * @param j                 The second particle index.
+     * @param shiftX            The shift in the 'x' axis applied to the second particle.
+     * @param shiftY            The shift in the 'y' axis applied to the second particle.
+     * @param shiftZ            The shift in the 'z' axis applied to the second particle.
+     * @param x                 The 'x' value of each particle's position.
+     * @param y                 The 'y' value of each particle's position.
+     * @param z                 The 'z' value of each particle's position.
+     * @param radius            The radius of each particle.
+     * @param interactionRadius The interaction radius.
+     * @param consumer          The {@link PairConsumer} to which the pair is reported.
+     * @return {@code true} if the particles are neighbors, or {@code false} otherwise.
+     */
+    private static boolean report(int i, int j, double shiftX, double shiftY, double shiftZ,
+                               double[] x, double[] y, double[] z, double[] radius,
+                               double interactionRadius, PairConsumer consumer) {
+        final double dx = x[i] - x[j] - shiftX;
+        final double dy = y[i] - y[j] - shiftY;
+        final double dz = z[i] - z[j] - shiftZ;
+        final double limit = interactionRadius + radius[i] + radius[j];
+        final double squaredDistance = dx * dx + dy * dy + dz * dz;
+        if (squaredDistance <= limit * limit) {
+            consumer.accept(i, j, squaredDistance);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Builds the offsets of the half shell of a cell.
+     *
+     * @return The 13 offsets (in 'x', 'y' and 'z').
+     */
+    private static int[][] halfShell() {
+        final int[][] offsets = new int[13][];
+        int index = 0;
+        for (int dz = -1; dz <= 1; dz++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dz > 0 || (dz == 0 && dy > 0) || (dz == 0 && dy == 0 && dx > 0)) {
+                        offsets[index++] = new int[]{dx, dy, dz};
+                    }
+                }
+            }
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,685 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Neighbors of each particle, stored as delta encoded varints in a chain of buffers,
+ * which can be held in the heap or off-heap (i.e in direct {@link ByteBuffer}s).
+ * <p>
+ * The record of each particle starts at the position held in the offsets array, and holds the amount of neighbors,
+ * followed by the neighbor ids in ascending order, each one encoded as the gap to the previous one
+ * (minus one, so consecutive ids take a single byte). All values are encoded as unsigned LEB128 varints
+ * (i.e seven bits per byte, with the highest bit set in all but the last byte).
+ * When particles that are close in space are also close in the particle ordering
+ * (e.g after being sorted by a {@link SpatialReorderer}), most entries take one or two bytes
+ * instead of the four bytes of a {@link NeighborList} (and the tens of bytes of a map of linked lists).
+ * <p>
+ * Positions are {@code long} values over the whole chain, in which each buffer holds up to {@code 2^30} bytes
+ * (and records never span two buffers), so results with billions of entries can be held,
+ * while the record of each particle is still read from a single buffer.
+ * <p>
+ * Instances are immutable, so they can be read concurrently.
+ */
+public final class CompressedNeighborList {
+
+    /**
+     * The base 2 logarithm of the biggest amount of bytes held in each buffer.
+     */
+    static final int DEFAULT_BUFFER_SHIFT = 30;
+
+    /**
+     * The least amount of neighbor entries buffered by default while detecting in chunks.
+     */
+    private static final int MIN_CHUNK_ENTRIES = 1 << 20;
+
+    /**
+     * The fraction of the maximum heap used by default to buffer the neighbor entries of a chunk.
+     */
+    private static final double CHUNK_HEAP_FRACTION = 0.25;
+
+    /**
+     * The capacity of the first buffer when the length of the encoded data is not known beforehand.
+     */
+    private static final int INITIAL_BUFFER_CAPACITY = 1 << 16;
+
+    /**
+     * For each particle, the position in the chain of buffers where its record starts.
+     * It has one extra value at the end, holding the position after the last record.
+     */
+    private final long[] offsets;
+
+    /**
+     * The buffers holding the encoded records of all the particles, one after the other.
+     */
+    private final ByteBuffer[] buffers;
+
+    /**
+     * The base 2 logarithm of the biggest amount of bytes held in each buffer.
+     */
+    private final int bufferShift;
+
+    /**
+     * The total amount of neighbor entries.
+     */
+    private final long entryCount;
+
+    /**
+     * Constructor.
+     *
+     * @param offsets     For each particle, the position in the chain of buffers where its record starts
+     *                    (with an extra value at the end).
+     * @param buffers     The buffers holding the encoded records of all the particles.
+     * @param bufferShift The base 2 logarithm of the biggest amount of bytes held in each buffer.
+     * @param entryCount  The total amount of neighbor entries.
+     */
+    private CompressedNeighborList(long[] offsets, ByteBuffer[] buffers, int bufferShift, long entryCount) {
+        this.offsets = offsets;
+        this.buffers = buffers;
+        this.bufferShift = bufferShift;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Compresses the given {@link NeighborList}, holding the encoded data in the heap.
+     *
+     * @param neighborList The {@link NeighborList} to be compressed.
+     * @return The built {@link CompressedNeighborList}.
+     */
+    public static CompressedNeighborList of(NeighborList neighborList) {
+        return of(neighborList, false);
+    }
+
+    /**
+     * Compresses the given {@link NeighborList}.
+     *
+     * @param neighborList The {@link NeighborList} to be compressed.
+     * @param offHeap      Whether the encoded data is held off-heap (i.e in direct {@link ByteBuffer}s).
+     * @return The built {@link CompressedNeighborList}.
+     */
+    public static CompressedNeighborList of(NeighborList neighborList, boolean offHeap) {
+        return of(neighborList, offHeap, DEFAULT_BUFFER_SHIFT);
+    }
+
+    /**
+     * Compresses the given {@link NeighborList}.
+     *
+     * @param neighborList The {@link NeighborList} to be compressed.
+     * @param offHeap      Whether the encoded data is held off-heap (i.e in direct {@link ByteBuffer}s).
+     * @param bufferShift  The base 2 logarithm of the biggest amount of bytes held in each buffer.
+     * @return The built {@link CompressedNeighborList}.
+     * @throws IllegalStateException If the record of a particle does not fit in a single buffer.
+     */
+    static CompressedNeighborList of(NeighborList neighborList, boolean offHeap, int bufferShift)
+            throws IllegalStateException {
+        Assert.notNull(neighborList, "The neighbor list must not be null.");
+        final int[] neighborOffsets = neighborList.getOffsets();
+        final int[] neighborIds = neighborList.getNeighborIds();
+        final int amountOfParticles = neighborList.size();
+
+        // Records are measured first, so buffers are allocated only once (unless records are left out of a buffer)
+        final int[] lengths = new int[amountOfParticles];
+        long length = 0;
+        for (int i = 0; i < amountOfParticles; i++) {
+            lengths[i] = recordLength(neighborIds, neighborOffsets[i], neighborOffsets[i + 1]);
+            length += lengths[i];
+        }
+        final BufferChain chain = new BufferChain(bufferShift, offHeap, length);
+        final long[] offsets = new long[amountOfParticles + 1];
+        for (int i = 0; i < amountOfParticles; i++) {
+            offsets[i] = chain.place(lengths[i]);
+            encode(neighborIds, neighborOffsets[i], neighborOffsets[i + 1], chain.buffer(offsets[i]),
+                    chain.position(offsets[i]));
+        }
+        offsets[amountOfParticles] = chain.length();
+        return new CompressedNeighborList(offsets, chain.finish(), bufferShift, neighborIds.length);
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store} with the given {@code engine},
+     * compressing them without building a {@link NeighborList} for all the particles at once.
+     *
+     * @param engine            The {@link NeighborEngine} used to detect interacting pairs.
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param offHeap           Whether the encoded data is held off-heap (i.e in direct {@link ByteBuffer}s).
+     * @return The built {@link CompressedNeighborList}.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     * @throws IllegalStateException    If the record of a particle does not fit in a single buffer.
+     * @implNote Chunks of {@link #defaultChunkEntries()} entries are used (i.e a quarter of the maximum heap),
+     * so the engine runs only twice (once to count, and once to collect) unless the uncompressed result
+     * is far bigger than the heap.
+     * @see #detect(NeighborEngine, ParticleStore, double, int, boolean, int)
+     */
+    public static CompressedNeighborList detect(NeighborEngine engine, ParticleStore store, double interactionRadius,
+                                                int M, boolean offHeap)
+            throws IllegalArgumentException, IllegalStateException {
+        return detect(engine, store, interactionRadius, M, offHeap, defaultChunkEntries());
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store} with the given {@code engine},
+     * compressing them without building a {@link NeighborList} for all the particles at once.
+     *
+     * @param engine            The {@link NeighborEngine} used to detect interacting pairs.
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param offHeap           Whether the encoded data is held off-heap (i.e in direct {@link ByteBuffer}s).
+     * @param chunkEntries      The biggest amount of neighbor entries buffered (uncompressed, as ints) at once.
+     * @return The built {@link CompressedNeighborList}.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     * @throws IllegalStateException    If the record of a particle does not fit in a single buffer.
+     * @implNote The engine runs once to count the neighbors of each particle, and then once for each chunk
+     * of consecutive particles whose neighbors fit in {@code chunkEntries}, keeping only their pairs,
+     * so peak memory is bounded by the chunk size plus the compressed result, at the cost of running the engine
+     * {@code 1 + ceil(entries / chunkEntries)} times (e.g 17 times for {@code 10^9} entries in chunks of
+     * {@code 2^26}, which take 256 MB).
+     * The consumer is thread safe, so engines that report pairs concurrently can be used.
+     */
+    public static CompressedNeighborList detect(NeighborEngine engine, ParticleStore store, double interactionRadius,
+                                                int M, boolean offHeap, int chunkEntries)
+            throws IllegalArgumentException, IllegalStateException {
+        return detect(engine, store, interactionRadius, M, offHeap, chunkEntries, DEFAULT_BUFFER_SHIFT);
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store} with the given {@code engine},
+     * compressing them without building a {@link NeighborList} for all the particles at once.
+     *
+     * @param engine            The {@link NeighborEngine} used to detect interacting pairs.
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param offHeap           Whether the encoded data is held off-heap (i.e in direct {@link ByteBuffer}s).
+     * @param chunkEntries      The biggest amount of neighbor entries buffered (uncompressed, as ints) at once.
+     * @param bufferShift       The base 2 logarithm of the biggest amount of bytes held in each buffer.
+     * @return The built {@link CompressedNeighborList}.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     * @throws IllegalStateException    If the record of a particle does not fit in a single buffer.
+     */
+    static CompressedNeighborList detect(NeighborEngine engine, ParticleStore store, double interactionRadius,
+                                         int M, boolean offHeap, int chunkEntries, int bufferShift)
+            throws IllegalArgumentException, IllegalStateException {
+        Assert.notNull(engine, "The neighbor engine must not be null.");
+        Assert.notNull(store, "The particle store must not be null.");
+        if (chunkEntries <= 0) {
+            throw new IllegalArgumentException("The amount of entries per chunk must be positive");
+        }
+        final int amountOfParticles = store.size();
+        final AtomicIntegerArray counts = new AtomicIntegerArray(amountOfParticles);
+        engine.detect(store, interactionRadius, M, (i, j, squaredDistance) -> {
+            counts.incrementAndGet(i);
+            counts.incrementAndGet(j);
+        });
+
+        final long[] offsets = new long[amountOfParticles + 1];
+        // The length of the encoded data is not known, so records are encoded into buffers that grow
+        final BufferChain chain = new BufferChain(bufferShift, offHeap, 0);
+        long entryCount = 0;
+        int from = 0;
+        while (from < amountOfParticles) {
+            // The chunk takes at least one particle, even if its neighbors do not fit
+            int to = from;
+            long chunkSize = 0;
+            while (to < amountOfParticles && (to == from || chunkSize + counts.get(to) <= chunkEntries)) {
+                chunkSize += counts.get(to++);
+            }
+            final int[] chunkOffsets = new int[to - from + 1];
+            for (int i = from; i < to; i++) {
+                chunkOffsets[i - from + 1] = chunkOffsets[i - from] + counts.get(i);
+            }
+            final int[] chunkIds = new int[chunkOffsets[to - from]];
+            final AtomicIntegerArray cursors = new AtomicIntegerArray(Arrays.copyOf(chunkOffsets, to - from));
+            final int chunkFrom = from;
+            final int chunkTo = to;
+            engine.detect(store, interactionRadius, M, (i, j, squaredDistance) -> {
+                if (i >= chunkFrom && i < chunkTo) {
+                    chunkIds[cursors.getAndIncrement(i - chunkFrom)] = j;
+                }
+                if (j >= chunkFrom && j < chunkTo) {
+                    chunkIds[cursors.getAndIncrement(j - chunkFrom)] = i;
+                }
+            });
+
+            for (int i = from; i < to; i++) {
+                final int start = chunkOffsets[i - from];
+                final int end = chunkOffsets[i - from + 1];
+                Arrays.sort(chunkIds, start, end);
+                offsets[i] = chain.place(recordLength(chunkIds, start, end));
+                encode(chunkIds, start, end, chain.buffer(offsets[i]), chain.position(offsets[i]));
+            }
+            entryCount += chunkIds.length;
+            from = to;
+        }
+        offsets[amountOfParticles] = chain.length();
+        return new CompressedNeighborList(offsets, chain.finish(), bufferShift, entryCount);
+    }
+
+    /**
+     * @return The amount of neighbor entries buffered by default while detecting in chunks,
+     * which take a quarter of the maximum heap (but never less than {@code 2^20} entries).
+     */
+    public static int defaultChunkEntries() {
+        final long entries = (long) (Runtime.getRuntime().maxMemory() * CHUNK_HEAP_FRACTION) / Integer.BYTES;
+        // Some JVMs can not allocate arrays as long as Integer.MAX_VALUE
+        return (int) Math.max(MIN_CHUNK_ENTRIES, Math.min(Integer.MAX_VALUE - 8, entries));
+    }
+
+    /**
+     * @return The amount of particles.
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return The total amount of neighbor entries.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return The amount of interacting pairs (i.e half the amount of neighbor entries).
+     */
+    public long getPairCount() {
+        return entryCount / 2;
+    }
+
+    /**
+     * @return Whether the encoded data is held off-heap.
+     */
+    public boolean isOffHeap() {
+        return buffers.length > 0 && buffers[0].isDirect();
+    }
+
+    /**
+     * @return The amount of buffers holding the encoded data.
+     */
+    public int getBufferCount() {
+        return buffers.length;
+    }
+
+    /**
+     * @return The amount of bytes used by this list (i.e the encoded data and the offsets).
+     */
+    public long getEncodedBytes() {
+        long bytes = (long) Long.BYTES * offsets.length;
+        for (ByteBuffer buffer : buffers) {
+            bytes += buffer.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * @param particle The index of the particle.
+     * @return The amount of neighbors of the given {@code particle}.
+     */
+    public int getNeighborCount(int particle) {
+        return decoder(particle).next();
+    }
+
+    /**
+     * @param particle The index of the particle.
+     * @return The neighbors of the given {@code particle}, in ascending order.
+     */
+    public int[] getNeighbors(int particle) {
+        final Decoder decoder = decoder(particle);
+        final int[] neighbors = new int[decoder.next()];
+        decodeIds(decoder, neighbors, 0, neighbors.length);
+        return neighbors;
+    }
+
+    /**
+     * Decodes the neighbors of the given {@code particle} into the given array, so it can be reused.
+     *
+     * @param particle    The index of the particle.
+     * @param destination The array into which the neighbors are decoded, in ascending order.
+     * @return The amount of neighbors of the given {@code particle}.
+     * @throws IllegalArgumentException If the array is too short.
+     */
+    public int getNeighbors(int particle, int[] destination) throws IllegalArgumentException {
+        Assert.notNull(destination, "The destination array must not be null.");
+        final Decoder decoder = decoder(particle);
+        final int count = decoder.next();
+        if (destination.length < count) {
+            throw new IllegalArgumentException("The destination array can not hold " + count + " neighbors");
+        }
+        decodeIds(decoder, destination, 0, count);
+        return count;
+    }
+
+    /**
+     * Performs the given {@code action} for each neighbor of the given {@code particle}, in ascending order.
+     *
+     * @param particle The index of the particle.
+     * @param action   The action to be performed.
+     */
+    public void forEachNeighbor(int particle, IntConsumer action) {
+        Assert.notNull(action, "The action must not be null.");
+        final Decoder decoder = decoder(particle);
+        final int count = decoder.next();
+        int id = -1;
+        for (int k = 0; k < count; k++) {
+            id += decoder.next() + 1;
+            action.accept(id);
+        }
+    }
+
+    /**
+     * Decompresses this list into a {@link NeighborList}.
+     *
+     * @return The built {@link NeighborList}.
+     * @throws IllegalStateException If there are too many entries to be held in a {@link NeighborList}.
+     */
+    public NeighborList toNeighborList() throws IllegalStateException {
+        if (entryCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("There are too many neighbor entries to be held in a neighbor list");
+        }
+        final int amountOfParticles = size();
+        final int[] neighborOffsets = new int[amountOfParticles + 1];
+        final int[] neighborIds = new int[(int) entryCount];
+        for (int i = 0; i < amountOfParticles; i++) {
+            final Decoder decoder = decoder(i);
+            final int count = decoder.next();
+            decodeIds(decoder, neighborIds, neighborOffsets[i], count);
+            neighborOffsets[i + 1] = neighborOffsets[i] + count;
+        }
+        return new NeighborList(neighborOffsets, neighborIds);
+    }
+
+    /**
+     * @param particle The index of the particle.
+     * @return A {@link Decoder} positioned at the start of the record of the given {@code particle}.
+     */
+    private Decoder decoder(int particle) {
+        final long offset = offsets[particle];
+        return new Decoder(buffers[(int) (offset >>> bufferShift)], (int) (offset & ((1L << bufferShift) - 1)));
+    }
+
+    /**
+     * Decodes the given amount of neighbor ids.
+     *
+     * @param decoder     The {@link Decoder}, positioned after the amount of neighbors.
+     * @param destination The array into which ids are decoded.
+     * @param from        The position in the array of the first id.
+     * @param count       The amount of ids.
+     */
+    private static void decodeIds(Decoder decoder, int[] destination, int from, int count) {
+        int id = -1;
+        for (int k = from; k < from + count; k++) {
+            id += decoder.next() + 1;
+            destination[k] = id;
+        }
+    }
+
+    /**
+     * Calculates the length of the record holding the given sorted ids.
+     *
+     * @param ids  The ids.
+     * @param from The position of the first id (inclusive).
+     * @param to   The position of the last id (exclusive).
+     * @return The amount of bytes of the record.
+     */
+    private static int recordLength(int[] ids, int from, int to) {
+        int length = varintLength(to - from);
+        int previous = -1;
+        for (int k = from; k < to; k++) {
+            length += varintLength(ids[k] - previous - 1);
+            previous = ids[k];
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the record holding the given sorted ids into the given buffer.
+     *
+     * @param ids      The ids.
+     * @param from     The position of the first id (inclusive).
+     * @param to       The position of the last id (exclusive).
+     * @param buffer   The {@link ByteBuffer} into which the record is encoded.
+     * @param position The position in the buffer where the record starts.
+     */
+    private static void encode(int[] ids, int from, int to, ByteBuffer buffer, int position) {
+        int current = writeVarint(buffer, position, to - from);
+        int previous = -1;
+        for (int k = from; k < to; k++) {
+            current = writeVarint(buffer, current, ids[k] - previous - 1);
+            previous = ids[k];
+        }
+    }
+
+    /**
+     * Calculates the amount of bytes of the varint encoding of the given non negative value.
+     *
+     * @param value The value.
+     * @return The amount of bytes.
+     */
+    private static int varintLength(int value) {
+        // Seven bits per byte (and one byte for zero)
+        return 1 + (31 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+    }
+
+    /**
+     * Writes the varint encoding of the given non negative value.
+     *
+     * @param buffer   The {@link ByteBuffer} into which the value is written.
+     * @param position The position in the buffer.
+     * @param value    The value.
+     * @return The position after the written bytes.
+     */
+    private static int writeVarint(ByteBuffer buffer, int position, int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            buffer.put(position++, (byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put(position++, (byte) remaining);
+        return position;
+    }
+
+    /**
+     * Allocates a buffer.
+     *
+     * @param capacity The capacity of the buffer.
+     * @param offHeap  Whether the buffer is direct.
+     * @return The allocated {@link ByteBuffer}.
+     */
+    private static ByteBuffer allocate(int capacity, boolean offHeap) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * A chain of buffers in which records are placed one after the other,
+     * starting a new buffer when a record does not fit in the rest of the current one.
+     * The last buffer grows (doubling its capacity) when it is not big enough.
+     */
+    private static final class BufferChain {
+
+        /**
+         * The base 2 logarithm of the biggest amount of bytes held in each buffer.
+         */
+        private final int shift;
+
+        /**
+         * Whether buffers are direct.
+         */
+        private final boolean offHeap;
+
+        /**
+         * The buffers, the last of which is the one being filled.
+         */
+        private final List<ByteBuffer> buffers;
+
+        /**
+         * The expected amount of bytes still to be placed (or zero if it is not known), used to size new buffers.
+         */
+        private long expected;
+
+        /**
+         * The position in the chain after the last placed record.
+         */
+        private long length;
+
+        /**
+         * Constructor.
+         *
+         * @param shift    The base 2 logarithm of the biggest amount of bytes held in each buffer.
+         * @param offHeap  Whether buffers are direct.
+         * @param expected The expected amount of bytes to be placed (or zero if it is not known).
+         * @throws IllegalArgumentException If the shift is not valid.
+         */
+        private BufferChain(int shift, boolean offHeap, long expected) throws IllegalArgumentException {
+            if (shift < 1 || shift > DEFAULT_BUFFER_SHIFT) {
+                throw new IllegalArgumentException("The buffer shift must be between 1 and " + DEFAULT_BUFFER_SHIFT);
+            }
+            this.shift = shift;
+            this.offHeap = offHeap;
+            this.buffers = new ArrayList<>();
+            this.expected = expected;
+            this.length = 0;
+        }
+
+        /**
+         * Places a record of the given length after the last one, making room for it.
+         *
+         * @param recordLength The length of the record.
+         * @return The position in the chain where the record starts.
+         * @throws IllegalStateException If the record does not fit in a single buffer.
+         */
+        private long place(int recordLength) throws IllegalStateException {
+            final long bufferSize = 1L << shift;
+            if (recordLength > bufferSize) {
+                throw new IllegalStateException("The record of a particle does not fit in a single buffer");
+            }
+            long start = length;
+            if (position(start) + recordLength > bufferSize) {
+                // Records never span two buffers, so the rest of the current one is left out
+                start = (start | (bufferSize - 1)) + 1;
+            }
+            final int index = (int) (start >>> shift);
+            final int end = position(start) + recordLength;
+            if (index == buffers.size()) {
+                if (index > 0) {
+                    resizeLast(usedInLast());
+                }
+                final long wanted = expected > 0 ? expected : INITIAL_BUFFER_CAPACITY;
+                buffers.add(allocate((int) Math.max(end, Math.min(bufferSize, wanted)), offHeap));
+            } else if (buffers.get(index).capacity() < end) {
+                resizeLast((int) Math.max(end, Math.min(bufferSize, 2L * buffers.get(index).capacity())));
+            }
+            expected = Math.max(0, expected - recordLength);
+            length = start + recordLength;
+            return start;
+        }
+
+        /**
+         * @param offset A position in the chain.
+         * @return The buffer holding the given position.
+         */
+        private ByteBuffer buffer(long offset) {
+            return buffers.get((int) (offset >>> shift));
+        }
+
+        /**
+         * @param offset A position in the chain.
+         * @return The given position inside its buffer.
+         */
+        private int position(long offset) {
+            return (int) (offset & ((1L << shift) - 1));
+        }
+
+        /**
+         * @return The position in the chain after the last placed record.
+         */
+        private long length() {
+            return length;
+        }
+
+        /**
+         * Trims the last buffer to the end of the last record.
+         *
+         * @return The buffers.
+         */
+        private ByteBuffer[] finish() {
+            if (!buffers.isEmpty()) {
+                resizeLast(usedInLast());
+            }
+            return buffers.toArray(new ByteBuffer[buffers.size()]);
+        }
+
+        /**
+         * @return The amount of bytes of the last buffer holding records.
+         */
+        private int usedInLast() {
+            return (int) (length - ((long) (buffers.size() - 1) << shift));
+        }
+
+        /**
+         * Replaces the last buffer with one of the given capacity (unless it already has it), copying its records.
+         *
+         * @param capacity The capacity, which must be enough to hold the records placed in the last buffer.
+         */
+        private void resizeLast(int capacity) {
+            final ByteBuffer last = buffers.get(buffers.size() - 1);
+            if (last.capacity() == capacity) {
+                return;
+            }
+            final ByteBuffer source = last.duplicate();
+            source.clear().limit(usedInLast());
+            final ByteBuffer resized = allocate(capacity, offHeap);
+            resized.put(source).clear();
+            buffers.set(buffers.size() - 1, resized);
+        }
+    }
+
+    /**
+     * Reads consecutive varints from a buffer, using absolute reads (so the buffer can be shared).
+     */
+    private static final class Decoder {
+
+        /**
+         * The {@link ByteBuffer} being read.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The position of the next byte to be read.
+         */
+        private int position;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer   The {@link ByteBuffer} to be read.
+         * @param position The position of the first byte to be read.
+         */
+        private Decoder(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        /**
+         * @return The next value.
+         */
+        private int next() {
+            int value = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = buffer.get(position++);
+                value |= (current & 0x7F) << shift;
+                shift += 7;
+            } while (current < 0);
+            return value;
+        }
+    }
+}
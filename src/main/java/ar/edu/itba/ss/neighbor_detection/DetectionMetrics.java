@@ -0,0 +1,386 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the cell index engines: time spent in each phase, examined versus accepted pairs,
+ * cell occupancy and allocated bytes.
+ * <p>
+ * Values are accumulated in {@link LongAdder}s, and engines record them once per phase
+ * (never per pair), so metrics can be left on in production.
+ * They can be read from code, or through JMX once {@link #register()} is called.
+ */
+public class DetectionMetrics implements DetectionMetricsMXBean {
+
+    /**
+     * The JMX object name of the default metrics.
+     */
+    public static final String OBJECT_NAME = "ar.edu.itba.ss.neighbor_detection:type=DetectionMetrics";
+
+    /**
+     * The amount of buckets of the occupancy histogram.
+     */
+    private static final int HISTOGRAM_BUCKETS = 16;
+
+    /**
+     * The metrics used by engines unless others are given.
+     */
+    private static final DetectionMetrics DEFAULT = new DetectionMetrics();
+
+    /**
+     * The {@link com.sun.management.ThreadMXBean} used to measure allocated bytes
+     * (or {@code null} if the JVM does not support it).
+     */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationsBean();
+
+    /**
+     * The amount of detection runs.
+     */
+    private final LongAdder runs;
+
+    /**
+     * The time spent binning particles into cells, in nanoseconds.
+     */
+    private final LongAdder binningNanos;
+
+    /**
+     * The time spent checking pairs of particles, in nanoseconds.
+     */
+    private final LongAdder sweepNanos;
+
+    /**
+     * The time spent building neighbor lists, in nanoseconds.
+     */
+    private final LongAdder assemblyNanos;
+
+    /**
+     * The amount of candidate pairs whose distance was checked.
+     */
+    private final LongAdder examinedPairs;
+
+    /**
+     * The amount of candidate pairs that were neighbors.
+     */
+    private final LongAdder acceptedPairs;
+
+    /**
+     * The amount of cells per occupancy bucket.
+     */
+    private final LongAdder[] occupancyHistogram;
+
+    /**
+     * The bytes allocated by the threads calling the engines and by the workers of the engines.
+     */
+    private final LongAdder allocatedBytes;
+
+    /**
+     * Constructor.
+     */
+    public DetectionMetrics() {
+        this.runs = new LongAdder();
+        this.binningNanos = new LongAdder();
+        this.sweepNanos = new LongAdder();
+        this.assemblyNanos = new LongAdder();
+        this.examinedPairs = new LongAdder();
+        this.acceptedPairs = new LongAdder();
+        this.occupancyHistogram = new LongAdder[HISTOGRAM_BUCKETS];
+        for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+            this.occupancyHistogram[bucket] = new LongAdder();
+        }
+        this.allocatedBytes = new LongAdder();
+    }
+
+    /**
+     * @return The metrics used by engines unless others are given.
+     */
+    public static DetectionMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server, with the given name.
+     * Nothing is done if the name is already registered.
+     *
+     * @param name The JMX object name.
+     * @throws IllegalArgumentException If the name is not a valid object name.
+     * @throws IllegalStateException    If the metrics can not be registered.
+     */
+    public void register(String name) throws IllegalArgumentException, IllegalStateException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(name));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // Already registered
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid object name: " + name, e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the detection metrics", e);
+        }
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server, with the {@link #OBJECT_NAME}.
+     *
+     * @throws IllegalStateException If the metrics can not be registered.
+     */
+    public void register() throws IllegalStateException {
+        register(OBJECT_NAME);
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getBinningNanos() {
+        return binningNanos.sum();
+    }
+
+    @Override
+    public long getSweepNanos() {
+        return sweepNanos.sum();
+    }
+
+    @Override
+    public long getAssemblyNanos() {
+        return assemblyNanos.sum();
+    }
+
+    @Override
+    public long getExaminedPairs() {
+        return examinedPairs.sum();
+    }
+
+    @Override
+    public long getAcceptedPairs() {
+        return acceptedPairs.sum();
+    }
+
+    @Override
+    public double getPairEfficiency() {
+        final long examined = examinedPairs.sum();
+        return examined == 0 ? 0 : (double) acceptedPairs.sum() / examined;
+    }
+
+    @Override
+    public long getCells() {
+        long cells = 0;
+        for (LongAdder bucket : occupancyHistogram) {
+            cells += bucket.sum();
+        }
+        return cells;
+    }
+
+    @Override
+    public double getEmptyCellRatio() {
+        final long cells = getCells();
+        return cells == 0 ? 0 : (double) occupancyHistogram[0].sum() / cells;
+    }
+
+    @Override
+    public long[] getOccupancyHistogram() {
+        final long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+            histogram[bucket] = occupancyHistogram[bucket].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return ALLOCATIONS == null ? -1 : allocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        runs.reset();
+        binningNanos.reset();
+        sweepNanos.reset();
+        assemblyNanos.reset();
+        examinedPairs.reset();
+        acceptedPairs.reset();
+        for (LongAdder bucket : occupancyHistogram) {
+            bucket.reset();
+        }
+        allocatedBytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionMetrics{" +
+                "runs=" + getRuns() +
+                ", binningNanos=" + getBinningNanos() +
+                ", sweepNanos=" + getSweepNanos() +
+                ", assemblyNanos=" + getAssemblyNanos() +
+                ", examinedPairs=" + getExaminedPairs() +
+                ", acceptedPairs=" + getAcceptedPairs() +
+                ", emptyCellRatio=" + getEmptyCellRatio() +
+                ", allocatedBytes=" + getAllocatedBytes() +
+                '}';
+    }
+
+    /**
+     * Records the binning of particles into cells.
+     *
+     * @param nanos The time spent binning, in nanoseconds.
+     */
+    void recordBinning(long nanos) {
+        binningNanos.add(nanos);
+    }
+
+    /**
+     * Records the occupancy of the cells of a grid.
+     *
+     * @param cellStart For each cell, the position where its particles start (with an extra value at the end).
+     */
+    void recordOccupancy(int[] cellStart) {
+        // Accumulated locally first, so each bucket is added only once
+        final long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int cell = 0; cell < cellStart.length - 1; cell++) {
+            final int occupancy = cellStart[cell + 1] - cellStart[cell];
+            final int bucket = 32 - Integer.numberOfLeadingZeros(occupancy);
+            histogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)]++;
+        }
+        for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+            if (histogram[bucket] != 0) {
+                occupancyHistogram[bucket].add(histogram[bucket]);
+            }
+        }
+    }
+
+    /**
+     * Records the checking of pairs of particles.
+     *
+     * @param nanos The time spent checking pairs, in nanoseconds.
+     */
+    void recordSweep(long nanos) {
+        sweepNanos.add(nanos);
+    }
+
+    /**
+     * Records the amount of examined and accepted pairs.
+     *
+     * @param examined The amount of candidate pairs whose distance was checked.
+     * @param accepted The amount of candidate pairs that were neighbors.
+     */
+    void recordPairs(long examined, long accepted) {
+        examinedPairs.add(examined);
+        acceptedPairs.add(accepted);
+    }
+
+    /**
+     * Records the building of a neighbor list.
+     *
+     * @param nanos The time spent building the list, in nanoseconds.
+     */
+    void recordAssembly(long nanos) {
+        assemblyNanos.add(nanos);
+    }
+
+    /**
+     * Records a whole detection run.
+     *
+     * @param allocatedBytes The bytes allocated by the calling thread during the run
+     *                       (as measured with {@link #currentThreadAllocatedBytes()}).
+     * @implNote Only the calling thread is measured here, so engines running tasks in other threads
+     * must also record the bytes allocated by each task with {@link #recordingAllocations(Runnable)}.
+     */
+    void recordRun(long allocatedBytes) {
+        runs.increment();
+        recordAllocation(allocatedBytes);
+    }
+
+    /**
+     * Records bytes allocated while running an engine.
+     *
+     * @param allocatedBytes The allocated bytes (as measured with {@link #currentThreadAllocatedBytes()}).
+     */
+    void recordAllocation(long allocatedBytes) {
+        if (allocatedBytes > 0) {
+            this.allocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    /**
+     * Wraps the given task so the bytes it allocates in the thread running it are recorded.
+     * Used for the tasks that engines run in their workers.
+     *
+     * @param task The task.
+     * @return A {@link Runnable} that runs the task and records its allocated bytes.
+     * @implNote This method must be called from the thread calling the engine.
+     * If the task ends up running in that same thread (e.g. when it is joined before a worker takes it),
+     * its bytes are not recorded here, as they are already measured by {@link #recordRun(long)}.
+     */
+    Runnable recordingAllocations(Runnable task) {
+        final Thread caller = Thread.currentThread();
+        return () -> {
+            if (Thread.currentThread() == caller) {
+                task.run();
+                return;
+            }
+            final long allocated = currentThreadAllocatedBytes();
+            try {
+                task.run();
+            } finally {
+                recordAllocation(currentThreadAllocatedBytes() - allocated);
+            }
+        };
+    }
+
+    /**
+     * Wraps the given task so the bytes it allocates in the thread running it are recorded.
+     * Used for the tasks that engines run in their workers.
+     *
+     * @param task The task.
+     * @param <T>  The type of the task's result.
+     * @return A {@link Callable} that runs the task and records its allocated bytes.
+     * @implNote As with {@link #recordingAllocations(Runnable)}, the bytes allocated by the task
+     * are not recorded here if it runs in the thread that called this method.
+     */
+    <T> Callable<T> recordingAllocations(Callable<T> task) {
+        final Thread caller = Thread.currentThread();
+        return () -> {
+            if (Thread.currentThread() == caller) {
+                return task.call();
+            }
+            final long allocated = currentThreadAllocatedBytes();
+            try {
+                return task.call();
+            } finally {
+                recordAllocation(currentThreadAllocatedBytes() - allocated);
+            }
+        };
+    }
+
+    /**
+     * @return The bytes allocated so far by the current thread (or {@code -1} if the JVM can not measure them).
+     */
+    static long currentThreadAllocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return The {@link com.sun.management.ThreadMXBean} used to measure allocated bytes
+     * (or {@code null} if the JVM does not support it).
+     */
+    private static com.sun.management.ThreadMXBean allocationsBean() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,71 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Management interface of {@link DetectionMetrics}, exposed through JMX.
+ * All values are accumulated since the metrics were created (or since they were last reset).
+ */
+public interface DetectionMetricsMXBean {
+
+    /**
+     * @return The amount of detection runs.
+     */
+    long getRuns();
+
+    /**
+     * @return The time spent binning particles into cells, in nanoseconds.
+     */
+    long getBinningNanos();
+
+    /**
+     * @return The time spent checking pairs of particles, in nanoseconds.
+     */
+    long getSweepNanos();
+
+    /**
+     * @return The time spent building neighbor lists from the accepted pairs, in nanoseconds.
+     */
+    long getAssemblyNanos();
+
+    /**
+     * @return The amount of candidate pairs whose distance was checked.
+     */
+    long getExaminedPairs();
+
+    /**
+     * @return The amount of candidate pairs that were neighbors.
+     */
+    long getAcceptedPairs();
+
+    /**
+     * @return The fraction of examined pairs that were neighbors (or zero if no pair was examined).
+     */
+    double getPairEfficiency();
+
+    /**
+     * @return The amount of visited cells.
+     */
+    long getCells();
+
+    /**
+     * @return The fraction of visited cells that were empty (or zero if no cell was visited).
+     */
+    double getEmptyCellRatio();
+
+    /**
+     * @return The amount of cells per occupancy bucket, where bucket 0 counts empty cells,
+     * and bucket {@code k > 0} counts cells holding from {@code 2^(k - 1)} to {@code 2^k - 1} particles
+     * (the last bucket counts all bigger occupancies).
+     */
+    long[] getOccupancyHistogram();
+
+    /**
+     * @return The bytes allocated while running the engines, both by the calling threads
+     * and by the workers of parallel engines (or {@code -1} if the JVM can not measure them).
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Resets all values to zero.
+     */
+    void reset();
+}
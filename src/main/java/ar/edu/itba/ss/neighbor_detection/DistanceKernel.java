@@ -0,0 +1,32 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Defines behaviour for an object that filters a contiguous block of candidate particles,
+ * keeping those that are neighbors of a given particle.
+ * Implementations are stateless, so they can be shared among threads.
+ */
+public interface DistanceKernel {
+
+    /**
+     * Checks the particle at the given position against the candidates between {@code from} and {@code to}.
+     *
+     * @param xi                  The 'x' value of the checked particle's position (with any shift already applied).
+     * @param yi                  The 'y' value of the checked particle's position (with any shift already applied).
+     * @param reach               The interaction radius plus the radius of the checked particle.
+     * @param x                   The 'x' value of each candidate's position.
+     * @param y                   The 'y' value of each candidate's position.
+     * @param radius              The radius of each candidate.
+     * @param from                The first candidate position (inclusive).
+     * @param to                  The last candidate position (exclusive).
+     * @param positions           An array where the positions of the accepted candidates are stored
+     *                            (it must have room for {@code to - from} values).
+     * @param squaredDistances    An array where the squared distance between centers of each accepted candidate
+     *                            is stored (it must have room for {@code to - from} values).
+     * @return The amount of accepted candidates.
+     * @implNote Implementations may read candidates after {@code to}, and write squared distances after
+     * the accepted ones, as long as they fit in the arrays (values there are never reported),
+     * so callers can leave some room at the end of their arrays to let whole vectors be used.
+     */
+    int filter(double xi, double yi, double reach, double[] x, double[] y, double[] radius, int from, int to,
+               int[] positions, double[] squaredDistances);
+}
@@ -0,0 +1,35 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Provides the {@link DistanceKernel} to be used in this JVM.
+ *
+ * @implNote This is the Java 8 version, which always provides a {@link ScalarDistanceKernel}.
+ * The jar is a multi-release jar, and the Java 17 version of this class provides a vectorized kernel
+ * when the {@value #VECTOR_KERNEL_PROPERTY} system property is {@code true} and the {@code jdk.incubator.vector}
+ * module is available (i.e {@code --add-modules jdk.incubator.vector}).
+ */
+public final class DistanceKernels {
+
+    /**
+     * The system property that enables the vectorized kernel (ignored by this version).
+     */
+    public static final String VECTOR_KERNEL_PROPERTY = "neighbor_detection.vectorKernel";
+
+    /**
+     * The kernel to be used.
+     */
+    private static final DistanceKernel KERNEL = new ScalarDistanceKernel();
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private DistanceKernels() {
+    }
+
+    /**
+     * @return The best {@link DistanceKernel} available in this JVM.
+     */
+    public static DistanceKernel get() {
+        return KERNEL;
+    }
+}
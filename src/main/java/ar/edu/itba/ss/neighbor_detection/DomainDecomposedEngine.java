@@ -0,0 +1,287 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Cell index method implementation that splits the space into slabs of rows, one per rank,
+ * and runs a {@link DomainWorker} per rank, each of them in its own thread, exchanging halos
+ * through a {@link HaloTransport}.
+ * <p>
+ * This engine runs all ranks in the same JVM (which is useful to test a transport, or to check results),
+ * while bigger systems can run each {@link DomainWorker} in its own process, with its own slab of particles.
+ * Either way, results are the same as the ones of the {@link CellIndexEngine}.
+ * Only squared spaces are supported.
+ * <p>
+ * Runs are recorded in a {@link DetectionMetrics}: the binning phase is the split of particles into slabs,
+ * and the sweep phase is the time until all ranks finish (halo exchange and local binning included),
+ * while each rank records the occupancy of its own cells and its examined and accepted pairs.
+ */
+public class DomainDecomposedEngine implements NeighborEngine, AutoCloseable {
+
+    /**
+     * The amount of ranks.
+     */
+    private final int amountOfRanks;
+
+    /**
+     * Provides the {@link HaloTransport} used by the ranks in each run.
+     */
+    private final Supplier<HaloTransport> transports;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The {@link ExecutorService} in which ranks run (with a thread per rank, as ranks wait for each other).
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The {@link DetectionMetrics} in which runs are recorded.
+     */
+    private final DetectionMetrics metrics;
+
+    /**
+     * Constructor, using a new {@link InProcessHaloTransport} in each run,
+     * so messages left by a failed (or timed out) run are dropped together with its transport.
+     *
+     * @param amountOfRanks     The amount of ranks.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the amount of ranks is not positive.
+     */
+    public DomainDecomposedEngine(int amountOfRanks, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException {
+        this(amountOfRanks, InProcessHaloTransport::new, boundaryCondition);
+    }
+
+    /**
+     * Constructor, using the same transport in all runs.
+     *
+     * @param amountOfRanks     The amount of ranks.
+     * @param transport         The {@link HaloTransport} used by the ranks.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the amount of ranks is not positive.
+     * @implNote The transport is owned by the caller, who must discard (or clear) it if a run fails,
+     * as messages sent by the ranks that did not fail may not have been received.
+     */
+    public DomainDecomposedEngine(int amountOfRanks, HaloTransport transport, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException {
+        this(amountOfRanks, supplierOf(transport), boundaryCondition);
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param amountOfRanks     The amount of ranks.
+     * @param transports        Provides the {@link HaloTransport} used by the ranks in each run.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the amount of ranks is not positive.
+     */
+    public DomainDecomposedEngine(int amountOfRanks, Supplier<HaloTransport> transports,
+                                  BoundaryCondition boundaryCondition) throws IllegalArgumentException {
+        this(amountOfRanks, transports, boundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param amountOfRanks     The amount of ranks.
+     * @param transports        Provides the {@link HaloTransport} used by the ranks in each run.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param metrics           The {@link DetectionMetrics} in which runs are recorded.
+     * @throws IllegalArgumentException If the amount of ranks is not positive.
+     */
+    public DomainDecomposedEngine(int amountOfRanks, Supplier<HaloTransport> transports,
+                                  BoundaryCondition boundaryCondition, DetectionMetrics metrics)
+            throws IllegalArgumentException {
+        if (amountOfRanks <= 0) {
+            throw new IllegalArgumentException("The amount of ranks must be positive");
+        }
+        Assert.notNull(transports, "The transports supplier must not be null.");
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        Assert.notNull(metrics, "The metrics must not be null.");
+        this.amountOfRanks = amountOfRanks;
+        this.transports = transports;
+        this.boundaryCondition = boundaryCondition;
+        this.metrics = metrics;
+        this.executor = Executors.newFixedThreadPool(amountOfRanks, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param transport A {@link HaloTransport}.
+     * @return A {@link Supplier} that always provides the given {@code transport}.
+     */
+    private static Supplier<HaloTransport> supplierOf(HaloTransport transport) {
+        Assert.notNull(transport, "The transport must not be null.");
+        return () -> transport;
+    }
+
+    /**
+     * @return The amount of ranks.
+     */
+    public int getAmountOfRanks() {
+        return amountOfRanks;
+    }
+
+    /**
+     * @return The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        final PairBuffer[] buffers = new PairBuffer[amountOfRanks];
+        for (int rank = 0; rank < amountOfRanks; rank++) {
+            buffers[rank] = new PairBuffer(store.size() / amountOfRanks + 1);
+        }
+        run(store, interactionRadius, M, buffers);
+        final long start = System.nanoTime();
+        final NeighborList neighbors = NeighborList.fromPairs(store.size(), buffers);
+        metrics.recordAssembly(System.nanoTime() - start);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+        return neighbors;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote The {@code consumer} is called concurrently from all ranks, so it must be thread safe.
+     */
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        final PairConsumer[] consumers = new PairConsumer[amountOfRanks];
+        for (int rank = 0; rank < amountOfRanks; rank++) {
+            consumers[rank] = consumer;
+        }
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        run(store, interactionRadius, M, consumers);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+    }
+
+    /**
+     * Splits the particles into slabs and runs all ranks, waiting for all of them to finish.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param consumers         The {@link PairConsumer} of each rank.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     * @throws UncheckedIOException     If halos can not be exchanged.
+     */
+    private void run(ParticleStore store, double interactionRadius, int M, PairConsumer[] consumers)
+            throws IllegalArgumentException, UncheckedIOException {
+        Assert.notNull(store, "The particle store must not be null.");
+        store.checkSquared("DomainDecomposedEngine");
+        CellIndexEngine.validate(store.getSideLength(), interactionRadius, store.getMaxRadius(), M,
+                boundaryCondition);
+        if (amountOfRanks > M) {
+            throw new IllegalArgumentException("Each rank must own at least one row");
+        }
+
+        // Split particles by the rank owning their rows
+        final long start = System.nanoTime();
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final double factor = M / store.getSideLength();
+        final int[] rowRank = new int[M];
+        for (int rank = 0; rank < amountOfRanks; rank++) {
+            for (int row = DomainWorker.firstRow(rank, amountOfRanks, M);
+                 row < DomainWorker.firstRow(rank + 1, amountOfRanks, M); row++) {
+                rowRank[row] = rank;
+            }
+        }
+        final int[] particleRank = new int[store.size()];
+        final int[] sizes = new int[amountOfRanks];
+        for (int i = 0; i < store.size(); i++) {
+            particleRank[i] = rowRank[CellIndexEngine.cellIndex(y[i], factor, M)];
+            sizes[particleRank[i]]++;
+        }
+        final int[][] ids = new int[amountOfRanks][];
+        for (int rank = 0; rank < amountOfRanks; rank++) {
+            ids[rank] = new int[sizes[rank]];
+            sizes[rank] = 0;
+        }
+        for (int i = 0; i < store.size(); i++) {
+            ids[particleRank[i]][sizes[particleRank[i]]++] = i;
+        }
+
+        final long split = System.nanoTime();
+        metrics.recordBinning(split - start);
+
+        final HaloTransport transport = transports.get();
+        Assert.notNull(transport, "The transport must not be null.");
+        final List<Future<?>> futures = new ArrayList<>(amountOfRanks);
+        for (int rank = 0; rank < amountOfRanks; rank++) {
+            final int[] rankIds = ids[rank];
+            final double[] rankX = new double[rankIds.length];
+            final double[] rankY = new double[rankIds.length];
+            final double[] rankRadius = new double[rankIds.length];
+            for (int k = 0; k < rankIds.length; k++) {
+                rankX[k] = x[rankIds[k]];
+                rankY[k] = y[rankIds[k]];
+                rankRadius[k] = radius[rankIds[k]];
+            }
+            final ParticleStore local = new ParticleStore(store.getSideLength(), rankX, rankY, rankRadius);
+            final DomainWorker worker = new DomainWorker(rank, amountOfRanks, transport, boundaryCondition,
+                    metrics);
+            final PairConsumer consumer = consumers[rank];
+            futures.add(executor.submit(metrics.recordingAllocations(() -> {
+                worker.detect(local, rankIds, interactionRadius, M, consumer);
+                return null;
+            })));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the ranks", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("A rank failed", e.getCause());
+        }
+        metrics.recordSweep(System.nanoTime() - split);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,384 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A rank of a domain decomposition, which owns a slab of rows of the {@code M * M} grid.
+ * <p>
+ * Rows are split among ranks as evenly as possible (rank {@code k} owns the rows from
+ * {@code k * M / ranks}, inclusive, to {@code (k + 1) * M / ranks}, exclusive).
+ * Each rank sends its lowest row to the rank below and its highest row to the rank above
+ * (wrapping around with periodic boundary conditions), and receives them as a halo of ghost cells.
+ * Then, it runs the cell index method over its own rows (with the half stencil of the {@link CellIndexEngine}),
+ * so each pair of particles is reported by exactly one rank,
+ * and the union of the pairs of all ranks is the same as in the single-node run.
+ * <p>
+ * Each worker only needs its own particles, and messages go through a {@link HaloTransport},
+ * so ranks can run in different threads or in different processes.
+ * The occupancy of its own cells and its examined and accepted pairs are recorded in a {@link DetectionMetrics}.
+ */
+public class DomainWorker {
+
+    /**
+     * The tag of the messages going to the rank above (i.e the sender's highest row).
+     */
+    private static final int UPWARDS = 0;
+
+    /**
+     * The tag of the messages going to the rank below (i.e the sender's lowest row).
+     */
+    private static final int DOWNWARDS = 1;
+
+    /**
+     * The amount of bytes used by each particle in a halo message (id, 'x', 'y' and radius).
+     */
+    private static final int PARTICLE_BYTES = Integer.BYTES + 3 * Double.BYTES;
+
+    /**
+     * The rank of this worker.
+     */
+    private final int rank;
+
+    /**
+     * The amount of ranks.
+     */
+    private final int amountOfRanks;
+
+    /**
+     * The {@link HaloTransport} used to exchange halos.
+     */
+    private final HaloTransport transport;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The {@link DetectionMetrics} in which cell occupancy and pairs are recorded.
+     */
+    private final DetectionMetrics metrics;
+
+    /**
+     * Constructor, recording cell occupancy and pairs in the default {@link DetectionMetrics}.
+     *
+     * @param rank              The rank of this worker.
+     * @param amountOfRanks     The amount of ranks.
+     * @param transport         The {@link HaloTransport} used to exchange halos.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the amount of ranks is not positive,
+     *                                  or if the rank is not between 0 and the amount of ranks.
+     */
+    public DomainWorker(int rank, int amountOfRanks, HaloTransport transport, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException {
+        this(rank, amountOfRanks, transport, boundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rank              The rank of this worker.
+     * @param amountOfRanks     The amount of ranks.
+     * @param transport         The {@link HaloTransport} used to exchange halos.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param metrics           The {@link DetectionMetrics} in which cell occupancy and pairs are recorded.
+     * @throws IllegalArgumentException If the amount of ranks is not positive,
+     *                                  or if the rank is not between 0 and the amount of ranks.
+     */
+    public DomainWorker(int rank, int amountOfRanks, HaloTransport transport, BoundaryCondition boundaryCondition,
+                        DetectionMetrics metrics) throws IllegalArgumentException {
+        if (amountOfRanks <= 0) {
+            throw new IllegalArgumentException("The amount of ranks must be positive");
+        }
+        if (rank < 0 || rank >= amountOfRanks) {
+            throw new IllegalArgumentException("The rank must be between 0 and the amount of ranks");
+        }
+        Assert.notNull(transport, "The transport must not be null.");
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        Assert.notNull(metrics, "The metrics must not be null.");
+        this.rank = rank;
+        this.amountOfRanks = amountOfRanks;
+        this.transport = transport;
+        this.boundaryCondition = boundaryCondition;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Calculates the first row owned by the given rank.
+     *
+     * @param rank          The rank.
+     * @param amountOfRanks The amount of ranks.
+     * @param M             The amount of cells per side.
+     * @return The first row owned by the rank (or {@code M} for {@code rank == amountOfRanks}).
+     */
+    public static int firstRow(int rank, int amountOfRanks, int M) {
+        return (int) ((long) rank * M / amountOfRanks);
+    }
+
+    /**
+     * Exchanges halos with the neighbor ranks and streams each pair of interacting particles
+     * checked by this rank to the given {@code consumer}.
+     * All ranks must call this method with the same interaction radius and amount of cells per side,
+     * as each of them waits for the halos of its neighbors.
+     *
+     * @param local             The {@link ParticleStore} holding the particles of this rank
+     *                          (its side length is the one of the whole space).
+     * @param ids               The global index of each particle of this rank (used to report pairs).
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side of the whole grid.
+     * @param consumer          The {@link PairConsumer} to which pairs are reported, with global indexes.
+     * @throws IllegalArgumentException If any of the parameters is not valid,
+     *                                  or if any particle does not belong to the rows of this rank.
+     * @throws IOException              If halos can not be exchanged.
+     * @implNote The biggest particle radius of all ranks must be taken into account when choosing {@code M}.
+     */
+    public void detect(ParticleStore local, int[] ids, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException, IOException {
+        Assert.notNull(local, "The particle store must not be null.");
+        Assert.notNull(ids, "The ids must not be null.");
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        if (ids.length != local.size()) {
+            throw new IllegalArgumentException("There must be one id per particle");
+        }
+        final double sideLength = local.getSideLength();
+        CellIndexEngine.validate(sideLength, interactionRadius, local.getMaxRadius(), M, boundaryCondition);
+        if (amountOfRanks > M) {
+            throw new IllegalArgumentException("Each rank must own at least one row");
+        }
+        final int fromRow = firstRow(rank, amountOfRanks, M);
+        final int toRow = firstRow(rank + 1, amountOfRanks, M);
+        final int rows = toRow - fromRow;
+        final double factor = M / sideLength;
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+
+        // Row of each own particle in the local grid (row 0 and row 'rows + 1' are the halo)
+        final double[] x = local.getX();
+        final double[] y = local.getY();
+        final double[] radius = local.getRadius();
+        final int[] localRow = new int[local.size()];
+        for (int i = 0; i < local.size(); i++) {
+            final int row = CellIndexEngine.cellIndex(y[i], factor, M);
+            if (row < fromRow || row >= toRow) {
+                throw new IllegalArgumentException("Particle " + ids[i] + " does not belong to rank " + rank);
+            }
+            localRow[i] = row - fromRow + 1;
+        }
+
+        // Exchange halos
+        final boolean hasBelow = periodic || rank > 0;
+        final boolean hasAbove = periodic || rank < amountOfRanks - 1;
+        final int below = Math.floorMod(rank - 1, amountOfRanks);
+        final int above = Math.floorMod(rank + 1, amountOfRanks);
+        if (hasBelow) {
+            transport.send(rank, below, DOWNWARDS, pack(local, ids, localRow, 1));
+        }
+        if (hasAbove) {
+            transport.send(rank, above, UPWARDS, pack(local, ids, localRow, rows));
+        }
+        // Particles coming from the other side of the space are shifted next to this slab (when checking them)
+        final ByteBuffer lowerHalo = hasBelow
+                ? transport.receive(below, rank, UPWARDS) : ByteBuffer.allocate(Integer.BYTES);
+        final ByteBuffer upperHalo = hasAbove
+                ? transport.receive(above, rank, DOWNWARDS) : ByteBuffer.allocate(Integer.BYTES);
+        final int lowerCount = lowerHalo.getInt(lowerHalo.position());
+        final int upperCount = upperHalo.getInt(upperHalo.position());
+
+        // Put own and halo particles together, and bin them into the local grid
+        final int total = local.size() + lowerCount + upperCount;
+        final int[] allIds = new int[total];
+        final double[] allX = new double[total];
+        final double[] allY = new double[total];
+        final double[] allRadius = new double[total];
+        final double[] allShiftY = new double[total];
+        final int[] particleCell = new int[total];
+        for (int i = 0; i < local.size(); i++) {
+            allIds[i] = ids[i];
+            allX[i] = x[i];
+            allY[i] = y[i];
+            allRadius[i] = radius[i];
+            particleCell[i] = localRow[i] * M + CellIndexEngine.cellIndex(x[i], factor, M);
+        }
+        final int next = unpack(lowerHalo, 0, rank == 0 ? -sideLength : 0, local.size(),
+                allIds, allX, allY, allRadius, allShiftY, particleCell, factor, M);
+        unpack(upperHalo, rows + 1, rank == amountOfRanks - 1 ? sideLength : 0, next,
+                allIds, allX, allY, allRadius, allShiftY, particleCell, factor, M);
+        final int[] cellStart = new int[(rows + 2) * M + 1];
+        final int[] cellParticles = new int[total];
+        CellGrid.countingSort(particleCell, total, cellStart, cellParticles);
+        // Halo cells are owned (and recorded) by the neighbor ranks
+        metrics.recordOccupancy(Arrays.copyOfRange(cellStart, M, (rows + 1) * M + 1));
+
+        sweep(allIds, allX, allY, allRadius, allShiftY, cellStart, cellParticles, rows, M, sideLength,
+                interactionRadius, consumer);
+    }
+
+    /**
+     * Checks the particles of the own rows of the local grid against their same cell particles
+     * and against the particles of their half stencil cells (which might be halo cells).
+     *
+     * @param ids               The global index of each particle.
+     * @param x                 The 'x' value of each particle's position.
+     * @param y                 The 'y' value of each particle's position.
+     * @param radius            The radius of each particle.
+     * @param shiftY            The shift in the 'y' axis of each particle (not zero for halo particles
+     *                          coming from the other side of the space).
+     * @param cellStart         For each local cell, the position in {@code cellParticles} where its particles start.
+     * @param cellParticles     The particle indexes, sorted by local cell.
+     * @param rows              The amount of own rows.
+     * @param M                 The amount of cells per row.
+     * @param sideLength        The length of the side of the space.
+     * @param interactionRadius The interaction radius.
+     * @param consumer          The {@link PairConsumer} to which pairs are reported, with global indexes.
+     */
+    private void sweep(int[] ids, double[] x, double[] y, double[] radius, double[] shiftY, int[] cellStart,
+                       int[] cellParticles, int rows, int M, double sideLength, double interactionRadius,
+                       PairConsumer consumer) {
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        long examined = 0;
+        long accepted = 0;
+        for (int row = 1; row <= rows; row++) {
+            for (int column = 0; column < M; column++) {
+                final int cell = row * M + column;
+                final int start = cellStart[cell];
+                final int end = cellStart[cell + 1];
+                for (int a = start; a < end; a++) {
+                    for (int b = a + 1; b < end; b++) {
+                        if (report(cellParticles[a], cellParticles[b], 0, ids, x, y, radius, shiftY,
+                                interactionRadius, consumer)) {
+                            accepted++;
+                        }
+                    }
+                    examined += end - a - 1;
+                }
+                if (start == end) {
+                    continue;
+                }
+                for (int[] offset : CellIndexEngine.HALF_STENCIL) {
+                    // Halo rows are always there (empty when there is no neighbor rank), so only columns wrap
+                    int neighborColumn = column + offset[1];
+                    double shiftX = 0;
+                    if (neighborColumn >= M) {
+                        if (!periodic) {
+                            continue;
+                        }
+                        shiftX = sideLength;
+                        neighborColumn -= M;
+                    }
+                    final int neighborCell = (row + offset[0]) * M + neighborColumn;
+                    for (int a = start; a < end; a++) {
+                        for (int b = cellStart[neighborCell]; b < cellStart[neighborCell + 1]; b++) {
+                            if (report(cellParticles[a], cellParticles[b], shiftX, ids, x, y, radius, shiftY,
+                                    interactionRadius, consumer)) {
+                                accepted++;
+                            }
+                        }
+                    }
+                    examined += (long) (end - start) * (cellStart[neighborCell + 1] - cellStart[neighborCell]);
+                }
+            }
+        }
+        metrics.recordPairs(examined, accepted);
+    }
+
+    /**
+     * Reports the given pair to the {@code consumer} if the particles are neighbors.
+     *
+     * @param i                 The local index of the first particle (an own particle).
+     * @param j                 The local index of the second particle (an own or a halo particle).
+     * @param shiftX            The shift in the 'x' axis added to the second particle.
+     * @param ids               The global index of each particle.
+     * @param x                 The 'x' value of each particle's position.
+     * @param y                 The 'y' value of each particle's position.
+     * @param radius            The radius of each particle.
+     * @param shiftY            The shift in the 'y' axis added to each particle.
+     * @param interactionRadius The interaction radius.
+     * @param consumer          The {@link PairConsumer} to which the pair is reported.
+     * @return {@code true} if the particles are neighbors, or {@code false} otherwise.
+     * @implNote Shifts are added to the second particle, and the distance is calculated with the same
+     * operations (and in the same order) as the {@link ScalarDistanceKernel} used by the {@link CellIndexEngine}
+     * on its shifted candidates, so the calculated distances are bit for bit the same (and so are the results).
+     */
+    private static boolean report(int i, int j, double shiftX, int[] ids, double[] x, double[] y, double[] radius,
+                               double[] shiftY, double interactionRadius, PairConsumer consumer) {
+        final double candidateX = x[j] + shiftX;
+        final double candidateY = y[j] + shiftY[j];
+        final double dx = x[i] - candidateX;
+        final double dy = y[i] - candidateY;
+        final double reach = interactionRadius + radius[i];
+        final double limit = reach + radius[j];
+        final double squaredDistance = dx * dx + dy * dy;
+        if (squaredDistance <= limit * limit) {
+            consumer.accept(ids[i], ids[j], squaredDistance);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Packs the particles of the given local row into a halo message.
+     *
+     * @param local    The {@link ParticleStore} holding the particles of this rank.
+     * @param ids      The global index of each particle of this rank.
+     * @param localRow The local row of each particle of this rank.
+     * @param row      The local row to be packed.
+     * @return The message (the amount of particles, followed by the id, 'x', 'y' and radius of each of them).
+     */
+    private static ByteBuffer pack(ParticleStore local, int[] ids, int[] localRow, int row) {
+        int count = 0;
+        for (int i = 0; i < local.size(); i++) {
+            if (localRow[i] == row) {
+                count++;
+            }
+        }
+        final ByteBuffer message = ByteBuffer.allocate(Integer.BYTES + count * PARTICLE_BYTES);
+        message.putInt(count);
+        for (int i = 0; i < local.size(); i++) {
+            if (localRow[i] == row) {
+                message.putInt(ids[i])
+                        .putDouble(local.getX()[i])
+                        .putDouble(local.getY()[i])
+                        .putDouble(local.getRadius()[i]);
+            }
+        }
+        message.flip();
+        return message;
+    }
+
+    /**
+     * Unpacks a halo message into the given arrays, placing its particles in the given local row.
+     *
+     * @param message      The halo message.
+     * @param row          The local row of the halo.
+     * @param shiftY       The shift in the 'y' axis of the particles (when coming from the other side).
+     * @param from         The index from which particles are placed in the arrays.
+     * @param ids          The global index of each particle.
+     * @param x            The 'x' value of each particle's position.
+     * @param y            The 'y' value of each particle's position.
+     * @param radius       The radius of each particle.
+     * @param shifts       The shift in the 'y' axis of each particle.
+     * @param particleCell The local cell of each particle.
+     * @param factor       The amount of cells per side divided by the side length.
+     * @param M            The amount of cells per row.
+     * @return The index after the last placed particle.
+     */
+    private static int unpack(ByteBuffer message, int row, double shiftY, int from, int[] ids, double[] x,
+                              double[] y, double[] radius, double[] shifts, int[] particleCell, double factor,
+                              int M) {
+        final int count = message.getInt();
+        int index = from;
+        for (int k = 0; k < count; k++) {
+            ids[index] = message.getInt();
+            x[index] = message.getDouble();
+            y[index] = message.getDouble();
+            radius[index] = message.getDouble();
+            shifts[index] = shiftY;
+            particleCell[index] = row * M + CellIndexEngine.cellIndex(x[index], factor, M);
+            index++;
+        }
+        return index;
+    }
+}
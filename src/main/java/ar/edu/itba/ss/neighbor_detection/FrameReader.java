@@ -0,0 +1,103 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads particle frames, one after the other, from a binary trajectory file (see {@link FrameWriter}),
+ * through memory mapping.
+ * Only the frame being read is mapped, so the whole trajectory is never loaded into the heap.
+ */
+public class FrameReader implements AutoCloseable {
+
+    /**
+     * The {@link FileChannel} of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The position in the file where the next frame starts.
+     */
+    private long position;
+
+    /**
+     * Constructor.
+     *
+     * @param path The {@link Path} of the file.
+     * @throws IOException If the file can not be opened.
+     */
+    public FrameReader(Path path) throws IOException {
+        Assert.notNull(path, "The path must not be null.");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.position = 0;
+    }
+
+    /**
+     * @return {@code true} if there are more frames to be read, or {@code false} otherwise.
+     * @throws IOException If the size of the file can not be read.
+     */
+    public boolean hasNext() throws IOException {
+        return position < channel.size();
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @return A new {@link ParticleStore} holding the particles of the frame.
+     * @throws IOException If the frame can not be read, or if it is not valid.
+     */
+    public ParticleStore next() throws IOException {
+        return next(null);
+    }
+
+    /**
+     * Reads the next frame, reusing the arrays of the given {@code reuse} store if it has the same amount of
+     * particles and the same side length, so no memory is allocated.
+     *
+     * @param reuse The {@link ParticleStore} whose arrays will be overwritten (can be {@code null}).
+     * @return The {@link ParticleStore} holding the particles of the frame
+     * (i.e {@code reuse}, or a new one if it could not be reused).
+     * @throws IOException If the frame can not be read, or if it is not valid.
+     */
+    public ParticleStore next(ParticleStore reuse) throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("There are no more frames");
+        }
+        if (channel.size() - position < FrameWriter.HEADER_SIZE) {
+            throw new IOException("Truncated frame header at position " + position);
+        }
+        final ByteBuffer header = MappedFiles.map(channel, FileChannel.MapMode.READ_ONLY, position,
+                FrameWriter.HEADER_SIZE);
+        if (header.getInt() != FrameWriter.MAGIC) {
+            throw new IOException("Not a frame at position " + position);
+        }
+        final int amountOfParticles = header.getInt();
+        final double sideLength = header.getDouble();
+        if (amountOfParticles < 0
+                || channel.size() - position - FrameWriter.HEADER_SIZE < 3L * amountOfParticles * Double.BYTES) {
+            throw new IOException("Truncated frame at position " + position);
+        }
+
+        final ParticleStore store = reuse != null && reuse.size() == amountOfParticles
+                && reuse.isSquared() && Double.compare(reuse.getWidth(), sideLength) == 0
+                ? reuse
+                : new ParticleStore(sideLength, new double[amountOfParticles], new double[amountOfParticles],
+                new double[amountOfParticles]);
+        position += FrameWriter.HEADER_SIZE;
+        position = MappedFiles.read(channel, position, store.getX());
+        position = MappedFiles.read(channel, position, store.getY());
+        position = MappedFiles.read(channel, position, store.getRadius());
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,87 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes particle frames into a binary trajectory file, through memory mapping.
+ * <p>
+ * A trajectory file is a sequence of frames, each one with the following layout (little endian):
+ * <ul>
+ * <li>{@code int} magic number ({@link #MAGIC}).</li>
+ * <li>{@code int} amount of particles ({@code N}).</li>
+ * <li>{@code double} side length of the space.</li>
+ * <li>{@code N} {@code double}s with the 'x' value of each particle's position.</li>
+ * <li>{@code N} {@code double}s with the 'y' value of each particle's position.</li>
+ * <li>{@code N} {@code double}s with the radius of each particle.</li>
+ * </ul>
+ */
+public class FrameWriter implements AutoCloseable {
+
+    /**
+     * The magic number that starts each frame.
+     */
+    public static final int MAGIC = 0x43494D46;
+
+    /**
+     * The size of the header of each frame, in bytes.
+     */
+    static final int HEADER_SIZE = Integer.BYTES * 2 + Double.BYTES;
+
+    /**
+     * The {@link FileChannel} of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The position in the file where the next frame will be written.
+     */
+    private long position;
+
+    /**
+     * Constructor.
+     *
+     * @param path   The {@link Path} of the file.
+     * @param append Whether frames are appended to the file (if it exists), or the file is truncated.
+     * @throws IOException If the file can not be opened.
+     */
+    public FrameWriter(Path path, boolean append) throws IOException {
+        Assert.notNull(path, "The path must not be null.");
+        this.channel = append
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.position = channel.size();
+    }
+
+    /**
+     * Writes the given {@code store} as a new frame.
+     *
+     * @param store The {@link ParticleStore} to be written.
+     * @throws IOException              If the frame can not be written.
+     * @throws IllegalArgumentException If the space is not squared (as frames hold a single side length).
+     */
+    public void write(ParticleStore store) throws IOException, IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        store.checkSquared("FrameWriter");
+        final ByteBuffer header = MappedFiles.map(channel, FileChannel.MapMode.READ_WRITE, position, HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(store.size());
+        header.putDouble(store.getSideLength());
+        position += HEADER_SIZE;
+        position = MappedFiles.write(channel, position, store.getX());
+        position = MappedFiles.write(channel, position, store.getY());
+        position = MappedFiles.write(channel, position, store.getRadius());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,310 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+/**
+ * Chooses the amount of cells per side ({@code M}) for the cell index method.
+ * <p>
+ * With {@code N} particles uniformly distributed in {@code M * M} cells, each particle is checked against
+ * half its own cell and four full cells, so the expected amount of pair checks is {@code 4.5 * N^2 / M^2},
+ * while visiting the cells costs {@code 5 * M^2} range lookups.
+ * The chosen {@code M} minimizes {@code pairCheckCost * 4.5 * N^2 / M^2 + cellVisitCost * 5 * M^2},
+ * bounded by the biggest {@code M} for which the side of a cell is greater than
+ * the interaction radius plus twice the biggest particle radius.
+ * Rectangular spaces are planned with {@link #planAxes(ParticleStore, double, BoundaryCondition, BoundaryCondition)},
+ * which chooses the amount of cells along each axis.
+ */
+public class GridPlanner {
+
+    /**
+     * The amount of cells (counting half the own cell) against which each particle is checked.
+     */
+    private static final double CHECKED_CELLS = 4.5;
+
+    /**
+     * The amount of range lookups done per cell.
+     */
+    private static final double LOOKUPS_PER_CELL = 5.0;
+
+    /**
+     * The biggest amount of cells per side, so the amount of cells fits in an {@code int}.
+     */
+    private static final int MAX_CELLS_PER_SIDE = 46340;
+
+    /**
+     * The biggest amount of particles used to calibrate.
+     */
+    private static final int MAX_CALIBRATION_PARTICLES = 50000;
+
+    /**
+     * The relative cost of checking a pair of particles.
+     */
+    private final double pairCheckCost;
+
+    /**
+     * The relative cost of visiting a cell.
+     */
+    private final double cellVisitCost;
+
+    /**
+     * Constructor, using the same cost for checking a pair of particles and for visiting a cell.
+     */
+    public GridPlanner() {
+        this(1.0, 1.0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pairCheckCost The relative cost of checking a pair of particles.
+     * @param cellVisitCost The relative cost of visiting a cell.
+     * @throws IllegalArgumentException If any cost is not positive.
+     */
+    public GridPlanner(double pairCheckCost, double cellVisitCost) throws IllegalArgumentException {
+        if (Double.compare(pairCheckCost, 0.0) <= 0 || Double.compare(cellVisitCost, 0.0) <= 0) {
+            throw new IllegalArgumentException("Costs must be positive");
+        }
+        this.pairCheckCost = pairCheckCost;
+        this.cellVisitCost = cellVisitCost;
+    }
+
+    /**
+     * Creates a {@link GridPlanner} whose costs are measured by running the {@link CellIndexEngine}
+     * over (a prefix of) the given {@code store}, with two different values of {@code M}.
+     * If costs can not be measured (e.g only one value of {@code M} is valid),
+     * a {@link GridPlanner} with the default costs is returned.
+     *
+     * @param store             The {@link ParticleStore} holding the particles (in a squared space).
+     * @param interactionRadius The interaction radius.
+     * @return The calibrated {@link GridPlanner}.
+     * @throws IllegalArgumentException If the space is not squared.
+     */
+    public static GridPlanner calibrate(ParticleStore store, double interactionRadius)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        store.checkSquared("GridPlanner calibration");
+        final ParticleStore sample = sample(store);
+        final int amountOfParticles = sample.size();
+        final int biggestM = maxCellsPerSide(sample.getSideLength(), interactionRadius + 2 * sample.getMaxRadius());
+        final int smallestM = Math.max(1, biggestM / 4);
+        if (amountOfParticles == 0 || biggestM == smallestM) {
+            return new GridPlanner();
+        }
+        // Runs are recorded in their own metrics, so they do not show up in the ones users read
+        final CellIndexEngine engine = new CellIndexEngine(BoundaryCondition.OPEN, new DetectionMetrics());
+        engine.detect(sample, interactionRadius, biggestM); // Warm up
+        final double biggestTime = measure(engine, sample, interactionRadius, biggestM);
+        final double smallestTime = measure(engine, sample, interactionRadius, smallestM);
+
+        // Solve time = pairCheckCost * pairs(M) + cellVisitCost * lookups(M) for both values of M
+        final double n2 = (double) amountOfParticles * amountOfParticles;
+        final double a1 = CHECKED_CELLS * n2 / ((double) biggestM * biggestM);
+        final double b1 = LOOKUPS_PER_CELL * biggestM * biggestM;
+        final double a2 = CHECKED_CELLS * n2 / ((double) smallestM * smallestM);
+        final double b2 = LOOKUPS_PER_CELL * smallestM * smallestM;
+        final double determinant = a1 * b2 - a2 * b1;
+        final double pairCheckCost = (biggestTime * b2 - smallestTime * b1) / determinant;
+        final double cellVisitCost = (a1 * smallestTime - a2 * biggestTime) / determinant;
+        if (!(pairCheckCost > 0) || !(cellVisitCost > 0)) {
+            return new GridPlanner();
+        }
+        return new GridPlanner(pairCheckCost, cellVisitCost);
+    }
+
+    /**
+     * Chooses the amount of cells per side for the given {@code store} and interaction radius,
+     * with open boundary conditions.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @return The chosen amount of cells per side.
+     * @throws IllegalArgumentException If the interaction radius is negative, or if the space is not squared.
+     */
+    public int plan(ParticleStore store, double interactionRadius) throws IllegalArgumentException {
+        return plan(store, interactionRadius, BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Chooses the amount of cells per side for the given {@code store}, interaction radius and boundary conditions.
+     * With periodic boundary conditions, at least 3 cells per side are chosen (as the stencil needs them to wrap
+     * around), unless cells would be too small for that, in which case no grid is valid,
+     * and the biggest amount of cells per side is returned.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @return The chosen amount of cells per side.
+     * @throws IllegalArgumentException If the interaction radius is negative, or if the space is not squared.
+     */
+    public int plan(ParticleStore store, double interactionRadius, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        if (!store.isSquared()) {
+            throw new IllegalArgumentException("The space is not squared, so the amount of cells along each axis " +
+                    "must be planned with planAxes. Values were: width = " + store.getWidth() +
+                    ", height = " + store.getHeight() + ".");
+        }
+        if (Double.compare(interactionRadius, 0) < 0) {
+            throw new IllegalArgumentException("The interaction radius must be positive");
+        }
+        final int biggestM = maxCellsPerSide(store.getSideLength(), interactionRadius + 2 * store.getMaxRadius());
+        final int smallestM = Math.min(biggestM, minCellsPerSide(boundaryCondition));
+        // The derivative of the cost is zero when M^4 = (pairCheckCost * 4.5 * N^2) / (cellVisitCost * 5)
+        final double amountOfParticles = store.size();
+        final double optimal = Math.sqrt(amountOfParticles
+                * Math.sqrt(pairCheckCost * CHECKED_CELLS / (cellVisitCost * LOOKUPS_PER_CELL)));
+        final int lower = Math.max(smallestM, Math.min(biggestM, (int) Math.floor(optimal)));
+        final int upper = Math.max(smallestM, Math.min(biggestM, (int) Math.ceil(optimal)));
+        return expectedCost(store.size(), lower) <= expectedCost(store.size(), upper) ? lower : upper;
+    }
+
+    /**
+     * Chooses the amount of cells along each axis for the given {@code store} and interaction radius,
+     * with open boundary conditions along both axes.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @return The chosen amount of cells along the 'x' axis (i.e {@code Mx}) and along the 'y' axis ({@code My}).
+     * @throws IllegalArgumentException If the interaction radius is negative.
+     * @see #planAxes(ParticleStore, double, BoundaryCondition, BoundaryCondition)
+     */
+    public int[] planAxes(ParticleStore store, double interactionRadius) throws IllegalArgumentException {
+        return planAxes(store, interactionRadius, BoundaryCondition.OPEN, BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Chooses the amount of cells along each axis for the given {@code store}, interaction radius
+     * and boundary conditions.
+     * The expected cost only depends on the total amount of cells, so the optimal total is the same one
+     * as for a squared space with the same amount of particles, and it is split among the axes
+     * so cells are as squared as possible (each axis bounded by its biggest amount of cells).
+     * Along periodic axes, at least 3 cells are chosen (as the stencil needs them to wrap around),
+     * unless cells would be too small for that, as in {@link #plan(ParticleStore, double, BoundaryCondition)}.
+     *
+     * @param store              The {@link ParticleStore} holding the particles.
+     * @param interactionRadius  The interaction radius.
+     * @param xBoundaryCondition The boundary conditions along the 'x' axis.
+     * @param yBoundaryCondition The boundary conditions along the 'y' axis.
+     * @return The chosen amount of cells along the 'x' axis (i.e {@code Mx}) and along the 'y' axis ({@code My}).
+     * @throws IllegalArgumentException If the interaction radius is negative.
+     */
+    public int[] planAxes(ParticleStore store, double interactionRadius, BoundaryCondition xBoundaryCondition,
+                          BoundaryCondition yBoundaryCondition) throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        Assert.notNull(xBoundaryCondition, "The boundary condition along the 'x' axis must not be null.");
+        Assert.notNull(yBoundaryCondition, "The boundary condition along the 'y' axis must not be null.");
+        if (Double.compare(interactionRadius, 0) < 0) {
+            throw new IllegalArgumentException("The interaction radius must be positive");
+        }
+        final double reach = interactionRadius + 2 * store.getMaxRadius();
+        final int biggestMx = maxCellsPerSide(store.getWidth(), reach);
+        final int biggestMy = maxCellsPerSide(store.getHeight(), reach);
+        final double optimal = Math.sqrt(store.size()
+                * Math.sqrt(pairCheckCost * CHECKED_CELLS / (cellVisitCost * LOOKUPS_PER_CELL)));
+        // The side of a squared cell for which there are optimal^2 cells in the whole space
+        final double cellSide = Math.sqrt(store.getWidth() * store.getHeight()) / Math.max(1, optimal);
+        int Mx = (int) Math.max(1, Math.min(biggestMx, Math.round(store.getWidth() / cellSide)));
+        int My = (int) Math.max(1, Math.min(biggestMy, Math.round(store.getHeight() / cellSide)));
+        // When one axis is bounded, the other one takes the remaining cells
+        if (Mx == biggestMx && My < biggestMy) {
+            My = (int) Math.max(1, Math.min(biggestMy, Math.round(optimal * optimal / Mx)));
+        } else if (My == biggestMy && Mx < biggestMx) {
+            Mx = (int) Math.max(1, Math.min(biggestMx, Math.round(optimal * optimal / My)));
+        }
+        Mx = Math.max(Mx, Math.min(biggestMx, minCellsPerSide(xBoundaryCondition)));
+        My = Math.max(My, Math.min(biggestMy, minCellsPerSide(yBoundaryCondition)));
+        return new int[]{Mx, My};
+    }
+
+    /**
+     * Calculates the expected cost of running the cell index method.
+     *
+     * @param amountOfParticles The amount of particles.
+     * @param M                 The amount of cells per side.
+     * @return The expected cost, in the units of the costs of this planner.
+     */
+    public double expectedCost(int amountOfParticles, int M) {
+        final double cells = (double) M * M;
+        final double pairs = M == 1
+                ? amountOfParticles * (amountOfParticles - 1) / 2.0
+                : CHECKED_CELLS * amountOfParticles * (double) amountOfParticles / cells;
+        return pairCheckCost * pairs + cellVisitCost * LOOKUPS_PER_CELL * cells;
+    }
+
+    /**
+     * Calculates the biggest amount of cells per side for which the side of a cell
+     * is greater than the given {@code reach}.
+     *
+     * @param sideLength The length of the side of the space.
+     * @param reach      The biggest distance between the centers of two neighbors
+     *                   (i.e the interaction radius plus twice the biggest particle radius).
+     * @return The biggest amount of cells per side (at least 1).
+     */
+    public static int maxCellsPerSide(double sideLength, double reach) {
+        if (Double.compare(reach, 0.0) <= 0) {
+            return MAX_CELLS_PER_SIDE;
+        }
+        final double M = Math.ceil(sideLength / reach) - 1;
+        return (int) Math.max(1, Math.min(MAX_CELLS_PER_SIDE, M));
+    }
+
+    /**
+     * @param boundaryCondition The boundary conditions of the space.
+     * @return The smallest amount of cells per side the cell index method accepts with the given conditions.
+     */
+    static int minCellsPerSide(BoundaryCondition boundaryCondition) {
+        return boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+    }
+
+    /**
+     * Takes the particles used to calibrate.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @return A {@link ParticleStore} with the same density as the given one, and at most
+     * {@link #MAX_CALIBRATION_PARTICLES} particles (those within a squared region at the lower left corner).
+     */
+    private static ParticleStore sample(ParticleStore store) {
+        if (store.size() <= MAX_CALIBRATION_PARTICLES) {
+            return store;
+        }
+        final double sideLength = store.getSideLength() * Math.sqrt((double) MAX_CALIBRATION_PARTICLES / store.size());
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        int amount = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (x[i] <= sideLength && y[i] <= sideLength) {
+                amount++;
+            }
+        }
+        final double[] sampleX = new double[amount];
+        final double[] sampleY = new double[amount];
+        final double[] sampleRadius = new double[amount];
+        int index = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (x[i] <= sideLength && y[i] <= sideLength) {
+                sampleX[index] = x[i];
+                sampleY[index] = y[i];
+                sampleRadius[index] = radius[i];
+                index++;
+            }
+        }
+        return new ParticleStore(sideLength, sampleX, sampleY, sampleRadius);
+    }
+
+    /**
+     * Measures the time taken by the given {@code engine}.
+     *
+     * @param engine            The {@link NeighborEngine} to be measured.
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @return The elapsed time, in nanoseconds.
+     */
+    private static double measure(NeighborEngine engine, ParticleStore store, double interactionRadius, int M) {
+        final long start = System.nanoTime();
+        engine.detect(store, interactionRadius, M);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,34 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Defines behaviour for an object that carries halo messages between the ranks of a domain decomposition
+ * (see {@link DomainWorker}).
+ * Messages between the same pair of ranks, with the same tag, must be received in the order they were sent.
+ */
+public interface HaloTransport {
+
+    /**
+     * Sends a message, without waiting for it to be received.
+     *
+     * @param source      The rank sending the message.
+     * @param destination The rank to which the message is sent.
+     * @param tag         The tag of the message (used to tell apart messages between the same ranks).
+     * @param message     The message (from its position to its limit).
+     * @throws IOException If the message can not be sent.
+     */
+    void send(int source, int destination, int tag, ByteBuffer message) throws IOException;
+
+    /**
+     * Receives a message, waiting for it to be sent if needed.
+     *
+     * @param source      The rank that sent the message.
+     * @param destination The rank receiving the message.
+     * @param tag         The tag of the message.
+     * @return The message (from its position to its limit).
+     * @throws IOException If the message can not be received.
+     */
+    ByteBuffer receive(int source, int destination, int tag) throws IOException;
+}
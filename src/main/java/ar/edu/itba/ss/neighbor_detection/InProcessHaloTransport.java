@@ -0,0 +1,156 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HaloTransport} for ranks running in the same JVM (e.g as threads), which keeps a queue of messages
+ * per source, destination and tag.
+ * Messages are copied when sent, so senders can reuse their buffers.
+ */
+public class InProcessHaloTransport implements HaloTransport {
+
+    /**
+     * The default time to wait for a message, in milliseconds.
+     */
+    private static final long DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * The time to wait for a message, in milliseconds.
+     */
+    private final long timeout;
+
+    /**
+     * The queue of messages for each source, destination and tag.
+     */
+    private final Map<Channel, BlockingQueue<ByteBuffer>> queues;
+
+    /**
+     * Constructor, using the default timeout.
+     */
+    public InProcessHaloTransport() {
+        this(DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param timeout The time to wait for a message, in milliseconds.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public InProcessHaloTransport(long timeout) throws IllegalArgumentException {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("The timeout must be positive");
+        }
+        this.timeout = timeout;
+        this.queues = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void send(int source, int destination, int tag, ByteBuffer message) {
+        Assert.notNull(message, "The message must not be null.");
+        final ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate()).flip();
+        queueOf(source, destination, tag).add(copy);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws InterruptedIOException If the message is not sent within the timeout,
+     *                                or if the thread is interrupted while waiting for it.
+     */
+    @Override
+    public ByteBuffer receive(int source, int destination, int tag) throws IOException {
+        final ByteBuffer message;
+        try {
+            message = queueOf(source, destination, tag).poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a message from rank " + source);
+        }
+        if (message == null) {
+            throw new InterruptedIOException("Timed out while waiting for a message from rank " + source);
+        }
+        return message;
+    }
+
+    /**
+     * Drops all the messages not received yet (e.g those left by the ranks of a failed run),
+     * so this transport can be used again.
+     */
+    public void clear() {
+        queues.clear();
+    }
+
+    /**
+     * Returns the queue of messages for the given source, destination and tag, creating it if needed.
+     *
+     * @param source      The rank sending the messages.
+     * @param destination The rank receiving the messages.
+     * @param tag         The tag of the messages.
+     * @return The queue of messages.
+     */
+    private BlockingQueue<ByteBuffer> queueOf(int source, int destination, int tag) {
+        return queues.computeIfAbsent(new Channel(source, destination, tag), channel -> new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * The source, destination and tag of a queue of messages.
+     */
+    private static final class Channel {
+
+        /**
+         * The rank sending the messages.
+         */
+        private final int source;
+
+        /**
+         * The rank receiving the messages.
+         */
+        private final int destination;
+
+        /**
+         * The tag of the messages.
+         */
+        private final int tag;
+
+        /**
+         * Constructor.
+         *
+         * @param source      The rank sending the messages.
+         * @param destination The rank receiving the messages.
+         * @param tag         The tag of the messages.
+         */
+        private Channel(int source, int destination, int tag) {
+            this.source = source;
+            this.destination = destination;
+            this.tag = tag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Channel)) {
+                return false;
+            }
+            final Channel channel = (Channel) o;
+            return source == channel.source && destination == channel.destination && tag == channel.tag;
+        }
+
+        @Override
+        public int hashCode() {
+            return (source * 31 + destination) * 31 + tag;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+/**
+ * k-d tree implementation, which splits the particles in halves recursively (along the axis in which they
+ * spread the most), until buckets of about {@link #LEAF_SIZE} particles are left.
+ * Each particle is then checked against the buckets whose bounding box is within reach.
+ * <p>
+ * Unlike a uniform grid, the tree adapts to the density of the particles, so it performs well
+ * with clustered particles, in which most cells would be empty while a few would hold most particles.
+ * Only squared spaces are supported.
+ */
+public class KdTreeEngine implements NeighborEngine {
+
+    /**
+     * The amount of particles in a leaf (it might be one more, as particles are split in halves).
+     */
+    static final int LEAF_SIZE = 8;
+
+    /**
+     * The relative slack added to the reach when pruning with periodic boundary conditions,
+     * so rounding differences between the shifted boxes and the minimum image distances never prune a neighbor.
+     */
+    private static final double PERIODIC_SLACK = 1e-9;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public KdTreeEngine() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public KdTreeEngine(BoundaryCondition boundaryCondition) {
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        this.boundaryCondition = boundaryCondition;
+    }
+
+    @Override
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final PairBuffer pairs = new PairBuffer(store.size());
+        detect(store, interactionRadius, M, pairs);
+        return NeighborList.fromPairs(store.size(), pairs);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote The amount of cells per side is ignored, as no grid is used.
+     */
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        store.checkSquared("KdTreeEngine");
+        validate(store.getSideLength(), interactionRadius, store.getMaxRadius(), boundaryCondition);
+        final Tree tree = new Tree(store);
+        final double sideLength = store.getSideLength();
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        final double maxRadius = store.getMaxRadius();
+        final int[] stack = new int[2 * tree.depth + 2];
+        for (int position = 0; position < tree.size; position++) {
+            final double x = tree.x[position];
+            final double y = tree.y[position];
+            if (!periodic) {
+                query(tree, position, x, y, interactionRadius, false, sideLength, stack, consumer);
+                continue;
+            }
+            // Images of the particle next to the borders it is within reach of (at most 4, as reach < L / 2)
+            final double reach = (interactionRadius + tree.radius[position] + maxRadius) * (1 + PERIODIC_SLACK);
+            final double shiftX = x < reach ? sideLength : x > sideLength - reach ? -sideLength : 0;
+            final double shiftY = y < reach ? sideLength : y > sideLength - reach ? -sideLength : 0;
+            query(tree, position, x, y, interactionRadius, true, sideLength, stack, consumer);
+            if (shiftX != 0) {
+                query(tree, position, x + shiftX, y, interactionRadius, true, sideLength, stack, consumer);
+            }
+            if (shiftY != 0) {
+                query(tree, position, x, y + shiftY, interactionRadius, true, sideLength, stack, consumer);
+            }
+            if (shiftX != 0 && shiftY != 0) {
+                query(tree, position, x + shiftX, y + shiftY, interactionRadius, true, sideLength, stack, consumer);
+            }
+        }
+    }
+
+    /**
+     * Checks that the given parameters are valid for the tree.
+     * With periodic boundary conditions, the interaction radius plus twice the biggest particle radius
+     * (i.e the biggest distance between the centers of two neighbors) must be lower than half the side length,
+     * so each pair of particles has only one image within reach.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param interactionRadius The interaction radius.
+     * @param maxRadius         The biggest particle radius.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    static void validate(double sideLength, double interactionRadius, double maxRadius,
+                         BoundaryCondition boundaryCondition) throws IllegalArgumentException {
+        if (Double.compare(interactionRadius, 0) < 0) {
+            throw new IllegalArgumentException("The interaction radius must be positive");
+        }
+        if (boundaryCondition == BoundaryCondition.PERIODIC
+                && Double.compare(interactionRadius + 2 * maxRadius, sideLength / 2) >= 0) {
+            throw new IllegalArgumentException("With periodic boundary conditions, the interaction radius " +
+                    "plus twice the biggest particle radius must be lower than half the space side length. " +
+                    "Values were: L = " + sideLength + ", r = " + interactionRadius +
+                    ", max radius = " + maxRadius + ".");
+        }
+    }
+
+    /**
+     * Reports the neighbors of the particle at the given tree position that are after it in tree order
+     * (so each pair is reported only once), visiting the nodes whose bounding box is within reach
+     * of the given (maybe shifted) position (i.e the interaction radius plus the radius of the particle
+     * plus the biggest radius in the node, so a few big particles do not widen the search for all the others).
+     *
+     * @param tree              The {@link Tree}.
+     * @param position          The tree position of the particle.
+     * @param x                 The 'x' value of the (maybe shifted) position of the particle.
+     * @param y                 The 'y' value of the (maybe shifted) position of the particle.
+     * @param interactionRadius The interaction radius.
+     * @param periodic          Whether the minimum image convention is applied to distances.
+     * @param sideLength        The length of the side of the space.
+     * @param stack             The stack of nodes to be visited.
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     */
+    private static void query(Tree tree, int position, double x, double y, double interactionRadius,
+                              boolean periodic, double sideLength, int[] stack, PairConsumer consumer) {
+        final double slack = periodic ? 1 + PERIODIC_SLACK : 1;
+        final int particle = tree.ids[position];
+        final double particleX = tree.x[position];
+        final double particleY = tree.y[position];
+        final double particleRadius = tree.radius[position];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            // Nodes holding only particles up to this one were already checked against it
+            if (tree.to[node] <= position + 1) {
+                continue;
+            }
+            final double dx = Math.max(0, Math.max(tree.minX[node] - x, x - tree.maxX[node]));
+            final double dy = Math.max(0, Math.max(tree.minY[node] - y, y - tree.maxY[node]));
+            final double reach = (interactionRadius + particleRadius + tree.maxRadius[node]) * slack;
+            if (dx * dx + dy * dy > reach * reach) {
+                continue;
+            }
+            if (tree.isLeaf(node)) {
+                for (int other = Math.max(tree.from[node], position + 1); other < tree.to[node]; other++) {
+                    final double differenceX = particleX - tree.x[other];
+                    final double differenceY = particleY - tree.y[other];
+                    final double distanceX = periodic ?
+                            BruteForceEngine.minimumImage(differenceX, sideLength) : differenceX;
+                    final double distanceY = periodic ?
+                            BruteForceEngine.minimumImage(differenceY, sideLength) : differenceY;
+                    final double limit = interactionRadius + particleRadius + tree.radius[other];
+                    final double squaredDistance = distanceX * distanceX + distanceY * distanceY;
+                    if (squaredDistance <= limit * limit
+                            && (!periodic || isNearestImage(x - particleX, y - particleY, differenceX, differenceY,
+                            distanceX, distanceY))) {
+                        consumer.accept(particle, tree.ids[other], squaredDistance);
+                    }
+                }
+            } else {
+                stack[top++] = 2 * node + 1;
+                stack[top++] = 2 * node + 2;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the queried image of a particle is the one nearest to another particle,
+     * so a pair found from several images is reported only once.
+     *
+     * @param shiftX      The shift of the queried image in the 'x' axis.
+     * @param shiftY      The shift of the queried image in the 'y' axis.
+     * @param differenceX The difference between the 'x' values of both particles.
+     * @param differenceY The difference between the 'y' values of both particles.
+     * @param distanceX   The minimum image difference between the 'x' values of both particles.
+     * @param distanceY   The minimum image difference between the 'y' values of both particles.
+     * @return {@code true} if the queried image is the nearest one, or {@code false} otherwise.
+     */
+    private static boolean isNearestImage(double shiftX, double shiftY, double differenceX, double differenceY,
+                                          double distanceX, double distanceY) {
+        final boolean shiftedX = distanceX != differenceX;
+        final boolean shiftedY = distanceY != differenceY;
+        return shiftedX == (shiftX != 0) && shiftedY == (shiftY != 0);
+    }
+
+    /**
+     * An implicit k-d tree over the particles of a {@link ParticleStore}, in which node {@code k}
+     * has children {@code 2k + 1} and {@code 2k + 2}, and holds a contiguous range of particles in tree order.
+     */
+    private static final class Tree {
+
+        /**
+         * The amount of particles.
+         */
+        private final int size;
+
+        /**
+         * The depth of the tree.
+         */
+        private final int depth;
+
+        /**
+         * The index of each particle, in tree order.
+         */
+        private final int[] ids;
+
+        /**
+         * The 'x' value of each particle's position, in tree order.
+         */
+        private final double[] x;
+
+        /**
+         * The 'y' value of each particle's position, in tree order.
+         */
+        private final double[] y;
+
+        /**
+         * The radius of each particle, in tree order.
+         */
+        private final double[] radius;
+
+        /**
+         * The first tree position of the particles of each node (inclusive).
+         */
+        private final int[] from;
+
+        /**
+         * The last tree position of the particles of each node (exclusive).
+         */
+        private final int[] to;
+
+        /**
+         * The smallest 'x' value of the particles of each node.
+         */
+        private final double[] minX;
+
+        /**
+         * The biggest 'x' value of the particles of each node.
+         */
+        private final double[] maxX;
+
+        /**
+         * The smallest 'y' value of the particles of each node.
+         */
+        private final double[] minY;
+
+        /**
+         * The biggest 'y' value of the particles of each node.
+         */
+        private final double[] maxY;
+
+        /**
+         * The biggest radius of the particles of each node.
+         */
+        private final double[] maxRadius;
+
+        /**
+         * Constructor, which builds the tree.
+         *
+         * @param store The {@link ParticleStore} holding the particles.
+         */
+        private Tree(ParticleStore store) {
+            this.size = store.size();
+            int levels = 0;
+            while ((size >> levels) > LEAF_SIZE) {
+                levels++;
+            }
+            this.depth = levels;
+            final int amountOfNodes = (2 << depth) - 1;
+            this.ids = new int[size];
+            this.x = store.getX().clone();
+            this.y = store.getY().clone();
+            this.radius = store.getRadius().clone();
+            for (int i = 0; i < size; i++) {
+                ids[i] = i;
+            }
+            this.from = new int[amountOfNodes];
+            this.to = new int[amountOfNodes];
+            this.minX = new double[amountOfNodes];
+            this.maxX = new double[amountOfNodes];
+            this.minY = new double[amountOfNodes];
+            this.maxY = new double[amountOfNodes];
+            this.maxRadius = new double[amountOfNodes];
+            build(0, 0, size, 0);
+        }
+
+        /**
+         * @param node The node.
+         * @return {@code true} if the node is a leaf, or {@code false} otherwise.
+         */
+        private boolean isLeaf(int node) {
+            return 2 * node + 1 >= from.length;
+        }
+
+        /**
+         * Builds the given node (and its descendants), over the given range of tree positions.
+         *
+         * @param node      The node.
+         * @param fromIndex The first tree position of the node (inclusive).
+         * @param toIndex   The last tree position of the node (exclusive).
+         * @param level     The level of the node.
+         */
+        private void build(int node, int fromIndex, int toIndex, int level) {
+            from[node] = fromIndex;
+            to[node] = toIndex;
+            double lowX = Double.POSITIVE_INFINITY;
+            double highX = Double.NEGATIVE_INFINITY;
+            double lowY = Double.POSITIVE_INFINITY;
+            double highY = Double.NEGATIVE_INFINITY;
+            double highRadius = 0;
+            for (int k = fromIndex; k < toIndex; k++) {
+                highRadius = Math.max(highRadius, radius[k]);
+                lowX = Math.min(lowX, x[k]);
+                highX = Math.max(highX, x[k]);
+                lowY = Math.min(lowY, y[k]);
+                highY = Math.max(highY, y[k]);
+            }
+            minX[node] = lowX;
+            maxX[node] = highX;
+            minY[node] = lowY;
+            maxY[node] = highY;
+            maxRadius[node] = highRadius;
+            if (level == depth) {
+                return;
+            }
+            final int middle = (fromIndex + toIndex) >>> 1;
+            select(highX - lowX >= highY - lowY ? x : y, fromIndex, toIndex, middle);
+            build(2 * node + 1, fromIndex, middle, level + 1);
+            build(2 * node + 2, middle, toIndex, level + 1);
+        }
+
+        /**
+         * Partially sorts the given range of tree positions by the given coordinate, so the particle at
+         * {@code k} is the one that would be there if sorted, with no bigger one before, and no smaller one after.
+         *
+         * @param keys      The coordinate values ({@link #x} or {@link #y}).
+         * @param fromIndex The first tree position of the range (inclusive).
+         * @param toIndex   The last tree position of the range (exclusive).
+         * @param k         The tree position to be selected.
+         */
+        private void select(double[] keys, int fromIndex, int toIndex, int k) {
+            int low = fromIndex;
+            int high = toIndex - 1;
+            while (low < high) {
+                final double pivot = keys[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (keys[i] < pivot) {
+                        i++;
+                    }
+                    while (keys[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j) {
+                    high = j;
+                } else if (k >= i) {
+                    low = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Swaps two particles.
+         *
+         * @param a The tree position of one of the particles.
+         * @param b The tree position of the other particle.
+         */
+        private void swap(int a, int b) {
+            final int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            final double swappedX = x[a];
+            x[a] = x[b];
+            x[b] = swappedX;
+            final double swappedY = y[a];
+            y[a] = y[b];
+            y[b] = swappedY;
+            final double swappedRadius = radius[a];
+            radius[a] = radius[b];
+            radius[b] = swappedRadius;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper class to transfer primitive arrays from and to files through {@link FileChannel#map}.
+ * Arrays are transferred in chunks, so files (and arrays) bigger than 2 GB can be handled.
+ * All values are stored in little endian order.
+ */
+final class MappedFiles {
+
+    /**
+     * The biggest amount of bytes mapped at once.
+     */
+    private static final int CHUNK_SIZE = 1 << 28;
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private MappedFiles() {
+    }
+
+    /**
+     * Maps the given region of the file.
+     *
+     * @param channel  The {@link FileChannel} of the file.
+     * @param mode     The mapping mode.
+     * @param position The position of the region in the file.
+     * @param size     The size of the region, in bytes.
+     * @return The mapped region, in little endian order.
+     * @throws IOException If the region can not be mapped.
+     */
+    static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        final MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Writes the given values into the file.
+     *
+     * @param channel  The {@link FileChannel} of the file (opened for reading and writing).
+     * @param position The position in the file where values will be written.
+     * @param values   The values to be written.
+     * @return The position in the file after the written values.
+     * @throws IOException If values can not be written.
+     */
+    static long write(FileChannel channel, long position, double[] values) throws IOException {
+        final int chunk = CHUNK_SIZE / Double.BYTES;
+        for (int from = 0; from < values.length; from += chunk) {
+            final int count = Math.min(chunk, values.length - from);
+            map(channel, FileChannel.MapMode.READ_WRITE, position, (long) count * Double.BYTES)
+                    .asDoubleBuffer().put(values, from, count);
+            position += (long) count * Double.BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Writes the given values into the file.
+     *
+     * @param channel  The {@link FileChannel} of the file (opened for reading and writing).
+     * @param position The position in the file where values will be written.
+     * @param values   The values to be written.
+     * @return The position in the file after the written values.
+     * @throws IOException If values can not be written.
+     */
+    static long write(FileChannel channel, long position, int[] values) throws IOException {
+        final int chunk = CHUNK_SIZE / Integer.BYTES;
+        for (int from = 0; from < values.length; from += chunk) {
+            final int count = Math.min(chunk, values.length - from);
+            map(channel, FileChannel.MapMode.READ_WRITE, position, (long) count * Integer.BYTES)
+                    .asIntBuffer().put(values, from, count);
+            position += (long) count * Integer.BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Reads values from the file into the given array, filling it.
+     *
+     * @param channel  The {@link FileChannel} of the file.
+     * @param position The position in the file from where values will be read.
+     * @param values   The array where values are stored.
+     * @return The position in the file after the read values.
+     * @throws IOException If values can not be read.
+     */
+    static long read(FileChannel channel, long position, double[] values) throws IOException {
+        final int chunk = CHUNK_SIZE / Double.BYTES;
+        for (int from = 0; from < values.length; from += chunk) {
+            final int count = Math.min(chunk, values.length - from);
+            map(channel, FileChannel.MapMode.READ_ONLY, position, (long) count * Double.BYTES)
+                    .asDoubleBuffer().get(values, from, count);
+            position += (long) count * Double.BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Reads values from the file into the given array, filling it.
+     *
+     * @param channel  The {@link FileChannel} of the file.
+     * @param position The position in the file from where values will be read.
+     * @param values   The array where values are stored.
+     * @return The position in the file after the read values.
+     * @throws IOException If values can not be read.
+     */
+    static long read(FileChannel channel, long position, int[] values) throws IOException {
+        final int chunk = CHUNK_SIZE / Integer.BYTES;
+        for (int from = 0; from < values.length; from += chunk) {
+            final int count = Math.min(chunk, values.length - from);
+            map(channel, FileChannel.MapMode.READ_ONLY, position, (long) count * Integer.BYTES)
+                    .asIntBuffer().get(values, from, count);
+            position += (long) count * Integer.BYTES;
+        }
+        return position;
+    }
+}
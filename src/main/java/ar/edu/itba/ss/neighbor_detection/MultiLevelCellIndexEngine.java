@@ -0,0 +1,399 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cell index method implementation for polydisperse particles, which uses a hierarchy of grids.
+ * <p>
+ * Particles are split into levels by radius class (i.e level {@code k} holds those particles whose radius is
+ * at most {@code maxRadius / 2^k}, and greater than {@code maxRadius / 2^(k + 1)}, except for the last level,
+ * which holds all the smaller ones), and each level is binned into its own grid, whose cells only need to be
+ * bigger than the interaction radius plus twice the biggest radius of the level.
+ * This way, a few big particles do not force a coarse grid over the many small ones.
+ * <p>
+ * Pairs within a level are checked with the half stencil of the {@link CellIndexEngine}.
+ * Pairs between levels are checked by looking up each particle of the finer level in the grid of the coarser one,
+ * using the full stencil (i.e the cell in which it falls and its 8 surrounding cells),
+ * as the coarser cells are big enough to cover any pair made of particles of both levels.
+ * Only squared spaces are supported.
+ */
+public class MultiLevelCellIndexEngine implements NeighborEngine {
+
+    /**
+     * The biggest amount of levels.
+     */
+    private static final int MAX_LEVELS = 16;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The {@link GridPlanner} used to choose the amount of cells per side of each level.
+     */
+    private final GridPlanner planner;
+
+    /**
+     * The {@link DetectionMetrics} in which runs are recorded.
+     */
+    private final DetectionMetrics metrics;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public MultiLevelCellIndexEngine() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, using a {@link GridPlanner} with default costs.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public MultiLevelCellIndexEngine(BoundaryCondition boundaryCondition) {
+        this(boundaryCondition, new GridPlanner());
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param planner           The {@link GridPlanner} used to choose the amount of cells per side of each level.
+     */
+    public MultiLevelCellIndexEngine(BoundaryCondition boundaryCondition, GridPlanner planner) {
+        this(boundaryCondition, planner, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param planner           The {@link GridPlanner} used to choose the amount of cells per side of each level.
+     * @param metrics           The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public MultiLevelCellIndexEngine(BoundaryCondition boundaryCondition, GridPlanner planner,
+                                     DetectionMetrics metrics) {
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        Assert.notNull(planner, "The grid planner must not be null.");
+        Assert.notNull(metrics, "The metrics must not be null.");
+        this.boundaryCondition = boundaryCondition;
+        this.planner = planner;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote {@code M} is the biggest amount of cells per side used by any level
+     * (each level uses the amount chosen by the {@link GridPlanner}, bounded by this value).
+     */
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        final PairBuffer pairs = new PairBuffer(store.size());
+        run(store, interactionRadius, M, pairs);
+        final long start = System.nanoTime();
+        final NeighborList neighbors = NeighborList.fromPairs(store.size(), pairs);
+        metrics.recordAssembly(System.nanoTime() - start);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+        return neighbors;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote {@code M} is the biggest amount of cells per side used by any level
+     * (each level uses the amount chosen by the {@link GridPlanner}, bounded by this value).
+     */
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        run(store, interactionRadius, M, consumer);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+    }
+
+    /**
+     * @return The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Splits the particles into levels and checks all pairs, recording the time spent in each phase.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The biggest amount of cells per side.
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    private void run(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        store.checkSquared("MultiLevelCellIndexEngine");
+        if (M <= 0) {
+            throw new IllegalArgumentException("There must be at least one grid per side");
+        }
+        if (Double.compare(interactionRadius, 0) < 0) {
+            throw new IllegalArgumentException("The interaction radius must be positive");
+        }
+
+        final long start = System.nanoTime();
+        final List<Level> levels = split(store, interactionRadius, M);
+        final long binned = System.nanoTime();
+        int maxOccupancy = 0;
+        for (Level level : levels) {
+            maxOccupancy = Math.max(maxOccupancy, level.grid.getMaxOccupancy());
+            metrics.recordOccupancy(level.grid.getCellStart());
+        }
+        metrics.recordBinning(binned - start);
+        // Buffers for the kernel results, owned by this detection
+        final int[] positions = new int[maxOccupancy];
+        final double[] squaredDistances = new double[maxOccupancy];
+
+        for (int fine = 0; fine < levels.size(); fine++) {
+            final Level level = levels.get(fine);
+            detectWithin(level, interactionRadius, consumer);
+            for (int coarse = 0; coarse < fine; coarse++) {
+                detectAcross(level, levels.get(coarse), interactionRadius, positions, squaredDistances, consumer);
+            }
+        }
+        metrics.recordSweep(System.nanoTime() - binned);
+    }
+
+    /**
+     * Splits the particles into levels, binning each of them into its own grid.
+     * Levels are only added while they allow more cells per side than the previous one.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The biggest amount of cells per side.
+     * @return The non empty levels, from the coarsest to the finest.
+     */
+    private List<Level> split(ParticleStore store, double interactionRadius, int M) {
+        final double sideLength = store.getSideLength();
+        final double[] radius = store.getRadius();
+        final int amountOfParticles = store.size();
+
+        // The upper bound of the radius of each level (halving it is exact, so comparisons below are exact too)
+        final double[] bounds = new double[MAX_LEVELS];
+        bounds[0] = store.getMaxRadius();
+        int amountOfLevels = 1;
+        while (amountOfLevels < MAX_LEVELS) {
+            final double bound = bounds[amountOfLevels - 1] / 2;
+            final int previousM = Math.min(M,
+                    GridPlanner.maxCellsPerSide(sideLength, interactionRadius + 2 * bounds[amountOfLevels - 1]));
+            final int nextM = Math.min(M, GridPlanner.maxCellsPerSide(sideLength, interactionRadius + 2 * bound));
+            if (nextM <= previousM) {
+                break;
+            }
+            bounds[amountOfLevels++] = bound;
+        }
+
+        // Assign each particle to its level
+        final int[] particleLevel = new int[amountOfParticles];
+        final int[] sizes = new int[amountOfLevels];
+        for (int i = 0; i < amountOfParticles; i++) {
+            int level = 0;
+            while (level < amountOfLevels - 1 && radius[i] <= bounds[level + 1]) {
+                level++;
+            }
+            particleLevel[i] = level;
+            sizes[level]++;
+        }
+        final int[][] ids = new int[amountOfLevels][];
+        for (int level = 0; level < amountOfLevels; level++) {
+            ids[level] = new int[sizes[level]];
+            sizes[level] = 0;
+        }
+        for (int i = 0; i < amountOfParticles; i++) {
+            final int level = particleLevel[i];
+            ids[level][sizes[level]++] = i;
+        }
+
+        final List<Level> levels = new ArrayList<>(amountOfLevels);
+        for (int level = 0; level < amountOfLevels; level++) {
+            if (ids[level].length > 0) {
+                levels.add(new Level(store, ids[level], interactionRadius, M));
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Checks the pairs of particles within the given {@code level}.
+     *
+     * @param level             The {@link Level} to be checked.
+     * @param interactionRadius The interaction radius.
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     */
+    private void detectWithin(Level level, double interactionRadius, PairConsumer consumer) {
+        final int[] ids = level.ids;
+        final PairConsumer mapped = (i, j, squaredDistance) -> consumer.accept(ids[i], ids[j], squaredDistance);
+        if (boundaryCondition == BoundaryCondition.PERIODIC && level.grid.getM() < 3) {
+            // Too few cells to wrap around with a stencil, so all pairs are checked using the minimum image
+            final ParticleStore store = level.store;
+            final double[] x = store.getX();
+            final double[] y = store.getY();
+            final double[] radius = store.getRadius();
+            final double sideLength = store.getSideLength();
+            long accepted = 0;
+            for (int i = 0; i < store.size(); i++) {
+                for (int j = i + 1; j < store.size(); j++) {
+                    final double dx = BruteForceEngine.minimumImage(x[i] - x[j], sideLength);
+                    final double dy = BruteForceEngine.minimumImage(y[i] - y[j], sideLength);
+                    final double limit = interactionRadius + radius[i] + radius[j];
+                    final double squaredDistance = dx * dx + dy * dy;
+                    if (squaredDistance <= limit * limit) {
+                        mapped.accept(i, j, squaredDistance);
+                        accepted++;
+                    }
+                }
+            }
+            metrics.recordPairs((long) store.size() * (store.size() - 1) / 2, accepted);
+            return;
+        }
+        CellIndexEngine.sweepRows(level.grid, level.store, interactionRadius, boundaryCondition,
+                0, level.grid.getM(), mapped, metrics);
+    }
+
+    /**
+     * Checks the pairs made of a particle of the {@code fine} level and a particle of the {@code coarse} level,
+     * looking up each particle of the former in the grid of the latter.
+     *
+     * @param fine              The {@link Level} with the smaller particles.
+     * @param coarse            The {@link Level} with the bigger particles.
+     * @param interactionRadius The interaction radius.
+     * @param positions         Buffer for the positions of the candidates accepted by the {@link DistanceKernel}.
+     * @param squaredDistances  Buffer for the squared distances of the accepted candidates.
+     * @param consumer          The {@link PairConsumer} to which neighbor pairs are reported.
+     */
+    private void detectAcross(Level fine, Level coarse, double interactionRadius,
+                              int[] positions, double[] squaredDistances, PairConsumer consumer) {
+        final DistanceKernel kernel = DistanceKernels.get();
+        final CellGrid grid = coarse.grid;
+        final double[] coarseX = grid.getSortedX();
+        final double[] coarseY = grid.getSortedY();
+        final double[] coarseRadius = grid.getSortedRadius();
+        final int[] cellStart = grid.getCellStart();
+        final int[] cellParticles = grid.getCellParticles();
+        final int M = grid.getM();
+        final double sideLength = grid.getSideLength();
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+
+        final double[] x = fine.store.getX();
+        final double[] y = fine.store.getY();
+        final double[] radius = fine.store.getRadius();
+        long examined = 0;
+        long totalAccepted = 0;
+        if (periodic && M < 3) {
+            // The full stencil would wrap around onto the same cells more than once,
+            // so all pairs are checked using the minimum image
+            for (int p = 0; p < fine.store.size(); p++) {
+                for (int b = 0; b < cellStart[M * M]; b++) {
+                    final double dx = BruteForceEngine.minimumImage(x[p] - coarseX[b], sideLength);
+                    final double dy = BruteForceEngine.minimumImage(y[p] - coarseY[b], sideLength);
+                    final double limit = interactionRadius + radius[p] + coarseRadius[b];
+                    final double squaredDistance = dx * dx + dy * dy;
+                    if (squaredDistance <= limit * limit) {
+                        consumer.accept(fine.ids[p], coarse.ids[cellParticles[b]], squaredDistance);
+                        totalAccepted++;
+                    }
+                }
+            }
+            metrics.recordPairs((long) fine.store.size() * cellStart[M * M], totalAccepted);
+            return;
+        }
+        for (int p = 0; p < fine.store.size(); p++) {
+            final int cell = grid.cellOf(x[p], y[p]);
+            final int row = cell / M;
+            final int column = cell % M;
+            for (int rowOffset = -1; rowOffset <= 1; rowOffset++) {
+                for (int columnOffset = -1; columnOffset <= 1; columnOffset++) {
+                    int neighborRow = row + rowOffset;
+                    int neighborColumn = column + columnOffset;
+                    double shiftX = 0;
+                    double shiftY = 0;
+                    if (neighborRow < 0 || neighborRow >= M || neighborColumn < 0 || neighborColumn >= M) {
+                        if (!periodic) {
+                            continue;
+                        }
+                        shiftY = neighborRow < 0 ? -sideLength : neighborRow >= M ? sideLength : 0;
+                        shiftX = neighborColumn < 0 ? -sideLength : neighborColumn >= M ? sideLength : 0;
+                        neighborRow = Math.floorMod(neighborRow, M);
+                        neighborColumn = Math.floorMod(neighborColumn, M);
+                    }
+                    final int neighborCell = neighborRow * M + neighborColumn;
+                    final int accepted = kernel.filter(x[p] - shiftX, y[p] - shiftY,
+                            interactionRadius + radius[p], coarseX, coarseY, coarseRadius,
+                            cellStart[neighborCell], cellStart[neighborCell + 1], positions, squaredDistances);
+                    for (int k = 0; k < accepted; k++) {
+                        consumer.accept(fine.ids[p], coarse.ids[cellParticles[positions[k]]], squaredDistances[k]);
+                    }
+                    examined += cellStart[neighborCell + 1] - cellStart[neighborCell];
+                    totalAccepted += accepted;
+                }
+            }
+        }
+        metrics.recordPairs(examined, totalAccepted);
+    }
+
+    /**
+     * A level of the hierarchy (i.e the particles of a radius class, binned into their own grid).
+     */
+    private final class Level {
+
+        /**
+         * The index (in the original store) of each particle of this level.
+         */
+        private final int[] ids;
+
+        /**
+         * The {@link ParticleStore} holding the particles of this level.
+         */
+        private final ParticleStore store;
+
+        /**
+         * The {@link CellGrid} in which the particles of this level are binned.
+         */
+        private final CellGrid grid;
+
+        /**
+         * Constructor.
+         *
+         * @param original          The {@link ParticleStore} holding all the particles.
+         * @param ids               The index (in the {@code original} store) of each particle of this level.
+         * @param interactionRadius The interaction radius.
+         * @param M                 The biggest amount of cells per side.
+         */
+        private Level(ParticleStore original, int[] ids, double interactionRadius, int M) {
+            final double[] x = new double[ids.length];
+            final double[] y = new double[ids.length];
+            final double[] radius = new double[ids.length];
+            for (int k = 0; k < ids.length; k++) {
+                x[k] = original.getX()[ids[k]];
+                y[k] = original.getY()[ids[k]];
+                radius[k] = original.getRadius()[ids[k]];
+            }
+            this.ids = ids;
+            this.store = new ParticleStore(original.getSideLength(), x, y, radius);
+            final int levelM = Math.min(M, planner.plan(store, interactionRadius, boundaryCondition));
+            this.grid = new CellGrid(original.getSideLength(), levelM);
+            this.grid.bin(store);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Calculates the neighbors of each particle for several interaction radii in a single pass of the
+ * {@link CellIndexEngine}, using a grid built for the biggest radius.
+ * <p>
+ * Each reported pair is assigned to the band of the smallest radius for which it is a neighbor,
+ * comparing squared distances in the same way the engine does, so the neighbors of each band
+ * are exactly the ones a detection with its radius would find.
+ * <p>
+ * Entries are bucketed by particle and band with a counting sort (bands are few) instead of being sorted,
+ * so detecting all the radii costs about as much as detecting the biggest one.
+ * Distances are calculated, and buckets are sorted by them, only for the bands the caller asks for
+ * (see {@link BandedNeighborList#sortByDistance(int)}).
+ */
+public class MultiRadiusDetector {
+
+    /**
+     * The biggest amount of radii (so bands fit in a byte).
+     */
+    private static final int MAX_RADII = Byte.MAX_VALUE;
+
+    /**
+     * The amount of particles each parallel task handles.
+     */
+    private static final int BLOCK = 4096;
+
+
+    /**
+     * The {@link CellIndexEngine} that detects pairs for the biggest radius.
+     */
+    private final CellIndexEngine engine;
+
+    /**
+     * Constructor, using open boundary conditions.
+     */
+    public MultiRadiusDetector() {
+        this(BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    public MultiRadiusDetector(BoundaryCondition boundaryCondition) {
+        this(boundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param metrics           The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public MultiRadiusDetector(BoundaryCondition boundaryCondition, DetectionMetrics metrics) {
+        this.engine = new CellIndexEngine(boundaryCondition, metrics);
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store} for all the given radii.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @param radii The interaction radii, in strictly ascending order.
+     * @param M     The amount of cells per side (which must be valid for the biggest radius).
+     * @return A {@link BandedNeighborList} holding the neighbors of each particle, bucketed by band.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public BandedNeighborList detect(ParticleStore store, double[] radii, int M) throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        Assert.notNull(radii, "The radii array must not be null.");
+        if (radii.length == 0 || radii.length > MAX_RADII) {
+            throw new IllegalArgumentException("There must be between 1 and " + MAX_RADII + " radii");
+        }
+        if (!(radii[0] >= 0)) {
+            throw new IllegalArgumentException("Radii must not be negative");
+        }
+        for (int band = 1; band < radii.length; band++) {
+            if (!(radii[band] > radii[band - 1])) {
+                throw new IllegalArgumentException("Radii must be in strictly ascending order");
+            }
+        }
+        final double[] bandRadii = radii.clone();
+        final int bands = bandRadii.length;
+        final int amountOfParticles = store.size();
+        final double[] radius = store.getRadius();
+        final BandedPairBuffer pairs = new BandedPairBuffer(bandRadii, radius, amountOfParticles);
+        engine.detect(store, bandRadii[bands - 1], M, pairs);
+
+        // Entries are placed in CSR form by particle, as NeighborList does, tagged with their band
+        final int amountOfPairs = pairs.size;
+        final int[] first = pairs.first;
+        final int[] second = pairs.second;
+        final byte[] pairBands = pairs.bands;
+        final int[] offsets = new int[amountOfParticles + 1];
+        for (int k = 0; k < amountOfPairs; k++) {
+            offsets[first[k] + 1]++;
+            offsets[second[k] + 1]++;
+        }
+        for (int i = 0; i < amountOfParticles; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int entries = offsets[amountOfParticles];
+        final int[] neighborIds = new int[entries];
+        final byte[] entryBands = new byte[entries];
+        final int[] cursor = Arrays.copyOf(offsets, amountOfParticles);
+        for (int k = 0; k < amountOfPairs; k++) {
+            int position = cursor[first[k]]++;
+            neighborIds[position] = second[k];
+            entryBands[position] = pairBands[k];
+            position = cursor[second[k]]++;
+            neighborIds[position] = first[k];
+            entryBands[position] = pairBands[k];
+        }
+
+        // The entries of each particle are bucketed by band with a counting sort (bands are few), in parallel
+        final int[] bandOffsets = new int[amountOfParticles * bands + 1];
+        bandOffsets[bandOffsets.length - 1] = entries;
+        IntStream.range(0, (amountOfParticles + BLOCK - 1) / BLOCK).parallel().forEach(block -> {
+            final int[] bandCursor = new int[bands];
+            int[] scratch = new int[0];
+            for (int i = block * BLOCK; i < Math.min(amountOfParticles, (block + 1) * BLOCK); i++) {
+                final int from = offsets[i];
+                final int to = offsets[i + 1];
+                Arrays.fill(bandCursor, 0);
+                for (int position = from; position < to; position++) {
+                    bandCursor[entryBands[position]]++;
+                }
+                int start = from;
+                for (int band = 0; band < bands; band++) {
+                    final int count = bandCursor[band];
+                    bandOffsets[i * bands + band] = start;
+                    bandCursor[band] = start - from;
+                    start += count;
+                }
+                if (scratch.length < to - from) {
+                    scratch = new int[Math.max(to - from, scratch.length * 2)];
+                }
+                System.arraycopy(neighborIds, from, scratch, 0, to - from);
+                for (int position = from; position < to; position++) {
+                    neighborIds[from + bandCursor[entryBands[position]]++] = scratch[position - from];
+                }
+            }
+        });
+        // Distances are calculated on demand, so the positions are copied in case the store changes
+        final ParticleStore snapshot = new ParticleStore(store.getWidth(), store.getHeight(),
+                store.getX().clone(), store.getY().clone(), radius.clone());
+        return new BandedNeighborList(bandRadii, bandOffsets, neighborIds, snapshot, engine.getBoundaryCondition());
+    }
+
+    /**
+     * A growable buffer of particle index pairs, together with their band.
+     */
+    private static final class BandedPairBuffer implements PairConsumer {
+
+        /**
+         * The interaction radii, in ascending order.
+         */
+        private final double[] radii;
+
+        /**
+         * The radius of each particle.
+         */
+        private final double[] radius;
+
+        /**
+         * The squared limit of each band when all the particles have the same radius
+         * (or {@code null} if they do not), so no radius is looked up for each pair.
+         */
+        private final double[] squaredLimits;
+
+        /**
+         * The first index of each pair.
+         */
+        private int[] first;
+
+        /**
+         * The second index of each pair.
+         */
+        private int[] second;
+
+        /**
+         * The band of each pair.
+         */
+        private byte[] bands;
+
+        /**
+         * The amount of pairs in this buffer.
+         */
+        private int size;
+
+        /**
+         * Constructor.
+         *
+         * @param radii           The interaction radii, in ascending order.
+         * @param radius          The radius of each particle.
+         * @param initialCapacity The initial amount of pairs this buffer can hold without growing.
+         */
+        private BandedPairBuffer(double[] radii, double[] radius, int initialCapacity) {
+            final int capacity = Math.max(initialCapacity, 1);
+            this.radii = radii;
+            this.radius = radius;
+            this.squaredLimits = monodisperse(radius) ? squaredLimits(radii, radius[0]) : null;
+            this.first = new int[capacity];
+            this.second = new int[capacity];
+            this.bands = new byte[capacity];
+            this.size = 0;
+        }
+
+        @Override
+        public void accept(int i, int j, double squaredDistance) {
+            if (size == first.length) {
+                final int newCapacity = PairBuffer.grownCapacity(size);
+                first = Arrays.copyOf(first, newCapacity);
+                second = Arrays.copyOf(second, newCapacity);
+                bands = Arrays.copyOf(bands, newCapacity);
+            }
+            int band = 0;
+            if (squaredLimits != null) {
+                // Limits are ascending, so the band is the amount of them below the squared distance
+                for (int limit = 0; limit < squaredLimits.length - 1; limit++) {
+                    band += squaredDistance > squaredLimits[limit] ? 1 : 0;
+                }
+            } else {
+                // Same arithmetic as the engine's, so each band matches a detection with its radius
+                final double radiusI = radius[i];
+                final double radiusJ = radius[j];
+                while (band < radii.length - 1) {
+                    final double limit = radii[band] + radiusI + radiusJ;
+                    if (squaredDistance <= limit * limit) {
+                        break;
+                    }
+                    band++;
+                }
+            }
+            first[size] = i;
+            second[size] = j;
+            bands[size] = (byte) band;
+            size++;
+        }
+
+        /**
+         * @param radius The radius of each particle.
+         * @return Whether all the particles have the same radius (and there is at least one).
+         */
+        private static boolean monodisperse(double[] radius) {
+            for (double value : radius) {
+                if (Double.compare(value, radius[0]) != 0) {
+                    return false;
+                }
+            }
+            return radius.length > 0;
+        }
+
+        /**
+         * Calculates the squared limit of each band for particles with the given radius,
+         * with the same arithmetic as the engine's.
+         *
+         * @param radii          The interaction radii, in ascending order.
+         * @param particleRadius The radius of all the particles.
+         * @return The squared limit of each band.
+         */
+        private static double[] squaredLimits(double[] radii, double particleRadius) {
+            final double[] squaredLimits = new double[radii.length];
+            for (int band = 0; band < radii.length; band++) {
+                final double limit = radii[band] + particleRadius + particleRadius;
+                squaredLimits[band] = limit * limit;
+            }
+            return squaredLimits;
+        }
+    }
+}
@@ -2,11 +2,14 @@ package ar.edu.itba.ss.neighbor_detection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 
-import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * Main class
@@ -18,13 +21,27 @@ public class NeighborDetector {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(NeighborDetector.class);
 
+    /**
+     * The CSV file in which batch results are written, unless another one is given.
+     */
+    private static final String DEFAULT_BATCH_OUTPUT = "scenarios.csv";
+
     /**
      * Entry point.
+     * <p>
+     * When the first argument is {@code batch}, the scenario matrix in {@code application.yml}
+     * (or in the YAML file given as third argument) is run, writing results to {@code scenarios.csv}
+     * (or to the CSV file given as second argument). Otherwise, a single random configuration is run.
      *
      * @param args Execution arguments.
      */
     public static void main(String[] args) {
         LOGGER.info("Hello, Cell Index Method!");
+        if (args.length > 0 && "batch".equals(args[0])) {
+            runBatch(args.length > 1 ? args[1] : DEFAULT_BATCH_OUTPUT, args.length > 2 ? args[2] : null);
+            return;
+        }
+        DetectionMetrics.getDefault().register();
         final int integerSide = new Random().nextInt(90) + 10;
         final double percentage = new Random().nextDouble();
         final double sideLength = percentage * integerSide;
@@ -33,300 +50,61 @@ public class NeighborDetector {
         final double interactionRadius = new Random().nextDouble() * 8.0 + 1.0;
 
 
-        final int maxM = (int) Math.floor(sideLength / interactionRadius);
-        final int M = maxM <= 1 ? 1 : new Random().nextInt(maxM) + 1;
+        final int M = new GridPlanner().plan(ParticleStore.fromSpace(space), interactionRadius);
 
         LOGGER.info("Starting algorithm with values: L = {}, M = {}, r = {}, n = {}.",
                 sideLength, M, interactionRadius, amountOfParticles);
         final long startingTime = System.currentTimeMillis();
-        final Map<Particle, List<Particle>> result = getParticles(space, interactionRadius, M);
+        final Map<Particle, List<Particle>> result = getParticles(space, interactionRadius, M, M);
         LOGGER.info("Finished program. Elapsed time: {} secs.", (System.currentTimeMillis() - startingTime) / 1000.0);
+        LOGGER.info("Detection metrics: {}", DetectionMetrics.getDefault());
     }
 
-    private static Map<Particle, List<Particle>> getParticles(Space space, double interactionRadius, int M) {
-        final double spaceSideLength = space.getSideLength();
-        if (M <= 0) {
-            throw new IllegalArgumentException("There must be at least one grid per side");
-        }
-        if (Double.compare(interactionRadius, 0) < 0) {
-            // TODO: check interaction radius == 0 (particles in the exact same position)
-            throw new IllegalArgumentException("The interaction radius must be positive");
-        }
-        if (M != 1 && Double.compare((spaceSideLength / M), interactionRadius) <= 0) {
-            throw new IllegalArgumentException("The interaction radius must be lower than " +
-                    "the space side length divided by the amount of grids per side. " +
-                    "Values were: L = " + spaceSideLength + ", M = " + M + ", r = " + interactionRadius + ".");
-        }
-
-        LOGGER.info("Splitting space into a grid....");
-        // Split space particles into a grid
-        final double factor = M / spaceSideLength;
-        final GridCellFactory gridCellFactory = GridCellFactory.getFactory(M);
-        final Map<GridCell, List<Particle>> grid = space.getParticles().stream()
-                .collect(Collectors.groupingBy(p -> getGridPosition(p, factor, gridCellFactory)));
-        LOGGER.info("Finished splitting space.");
-
-        LOGGER.info("Calculating related particles...");
-        // Transform each grid cell in the List of Particles belonging to the grid,
-        // mapped to the List of Particles in the nearby cells
-        final Map<List<Particle>, List<Particle>> relatedParticles = grid.entrySet()
-                .stream()
-                .collect(Collectors.toMap(Map.Entry::getValue, e -> nearParticles(e.getKey(), grid, M, gridCellFactory)));
-        LOGGER.info("Finished calculating related particles.");
-
-        LOGGER.info("Calculating neighbors...");
-        final Map<Particle, List<Particle>> result = new HashMap<>();
-        // For each <List,List> tuple, perform the following...
-        for (Map.Entry<List<Particle>, List<Particle>> related : relatedParticles.entrySet()) {
-            // A Set to save those particles in the same grid that their distances have been already calculated
-            final Set<Particle> alreadyCalculated = new HashSet<>();
-
-            // For each Particle in the Key List, perform the following...
-            for (Particle particle : related.getKey()) {
-                // Get the Particle's List of neighbors.
-                final List<Particle> neighbors = result.getOrDefault(particle, new LinkedList<>());
-                // Get the Particle's new neighbors, calculating the distance to the possible new neighbors,
-                // and filtering only those whose distance is lower or equal to the interaction radius.
-                final List<Particle> newNeighbors = related.getValue()
-                        .stream()
-                        .parallel() // Perform this operation using parallelism to increase performance
-                        .filter(another -> Double.compare(particle.distanceTo(another), interactionRadius) <= 0)
-                        .collect(Collectors.toList());
-                // Calculate distances to the same grid's particles
-                final List<Particle> sameGridNewNeighbors = related.getKey()
-                        .stream()
-                        .parallel() // Perform this operation using parallelism to increase performance
-                        .filter(another -> !particle.equals(another))
-                        .filter(another -> !alreadyCalculated.contains(another))
-                        .filter(another -> Double.compare(particle.distanceTo(another), interactionRadius) <= 0)
-                        .collect(Collectors.toList());
-                alreadyCalculated.add(particle); // Save this particle in the already calculated set
-
-                // Add all new neighbors.
-                neighbors.addAll(newNeighbors);
-                neighbors.addAll(sameGridNewNeighbors);
-
-                // For each new Neighbor, add the Particle to their list of neighbors
-                for (Particle another : newNeighbors) {
-                    final List<Particle> anotherNeighbors = result.getOrDefault(another, new LinkedList<>());
-                    anotherNeighbors.add(particle);
-                    result.put(another, anotherNeighbors);
-                }
-
-                // Save the List in the result map
-                result.put(particle, neighbors);
-            }
-        }
-        LOGGER.info("Finished calculating neighbors.");
-        return result;
-    }
-
-
-    /**
-     * Method that calculates to which cell a particle belongs to.
-     *
-     * @param particle        The particle to which the calculation must be done.
-     * @param factor          A factor used to calculate the position
-     *                        (i.e space side length / amount of grids per side).
-     * @param gridCellFactory The {@link GridCellFactory} from where {@link GridCell}s will be taken from.
-     * @return The {@link GridCell} to which the particle belongs to.
-     * @implNote The origin of the grid is the lower left corner.
-     */
-    private static GridCell getGridPosition(Particle particle, double factor, GridCellFactory gridCellFactory) {
-        final int row = (int) (particle.getPosition().getY() * factor);
-        final int column = (int) (particle.getPosition().getX() * factor);
-
-        return gridCellFactory.getGridCell(row, column);
-    }
-
-
     /**
-     * Calculates which {@link Particle}s are related to a given {@link GridCell}.
+     * Runs a batch of scenarios, resuming it if the output file already has results.
      *
-     * @param grid             The {@link GridCell} to which the related {@link Particle}s will be calculated.
-     * @param particlesPerCell A {@link Map} holding, for each {@link GridCell},
-     *                         a {@link List} of {@link Particle} that belongs to the said {@link GridCell}.
-     * @param M                Amount of {@link GridCell}s in a space side
-     *                         (used to know how to take into account periodic boundary conditions).
-     * @param gridCellFactory  The {@link GridCellFactory} from where {@link GridCell}s will be taken from.
-     * @return A {@link List} holding those {@link Particle}s related to the given {@code grid}.
+     * @param output The path of the CSV file in which results are written.
+     * @param config The path of the YAML file with the scenario matrix
+     *               (or {@code null} to use {@code application.yml}).
      */
-    private static List<Particle> nearParticles(GridCell grid, Map<GridCell, List<Particle>> particlesPerCell, int M,
-                                                GridCellFactory gridCellFactory) {
-        final Set<GridCell> neighborCells = neighborGridCell(grid, M, gridCellFactory);
-        return particlesPerCell.entrySet().stream()
-                .filter(entry -> neighborCells.contains(entry.getKey()))
-                .map(Map.Entry::getValue)
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
+    private static void runBatch(String output, String config) {
+        final Resource resource = config == null ?
+                new ClassPathResource("application.yml") : new FileSystemResource(config);
+        final List<Scenario> scenarios = ScenarioMatrix.load(resource).getScenarios();
+        final BatchRunner runner = BatchRunner.forAvailableResources();
+        final long startingTime = System.currentTimeMillis();
+        final int run = runner.run(scenarios, Paths.get(output));
+        LOGGER.info("Finished batch of {} scenarios ({} run now). Elapsed time: {} secs.",
+                scenarios.size(), run, (System.currentTimeMillis() - startingTime) / 1000.0);
     }
 
     /**
-     * Calculates which {@link GridCell}s are related (are neighbors) with the given {@code gridCell}.
+     * Calculates the neighbors of each {@link Particle} in the given {@link Space}.
      *
-     * @param gridCell        The {@link GridCell} to which the neighbor cells will be calculated.
-     * @param M               Amount of {@link GridCell}s in a space side
-     *                        (used to know how to take into account periodic boundary conditions)
-     * @param gridCellFactory The {@link GridCellFactory} from where {@link GridCell}s will be taken from.
-     * @return A {@link Set} holding the neighbor {@link GridCell}s of the given {@code gridCell}.
-     */
-    private static Set<GridCell> neighborGridCell(GridCell gridCell, int M, GridCellFactory gridCellFactory) {
-        // Upper grid cell
-        final int upperRow = Math.floorMod(gridCell.getRow() + 1, M);
-        final int upperColumn = Math.floorMod(gridCell.getColumn(), M);
-
-        // Upper-right grid cell coordinates
-        final int upperRightRow = Math.floorMod(gridCell.getRow() + 1, M);
-        final int upperRightColumn = Math.floorMod(gridCell.getColumn() + 1, M);
-
-        // Right grid cell coordinates
-        final int rightRow = Math.floorMod(gridCell.getRow(), M);
-        final int rightColumn = Math.floorMod(gridCell.getColumn() + 1, M);
-
-        // Lower-right grid cell coordinates
-        final int lowerRightRow = Math.floorMod(gridCell.getColumn() - 1, M);
-        final int lowerRightColumn = Math.floorMod(gridCell.getColumn() + 1, M);
-
-        return Stream.of(
-                gridCellFactory.getGridCell(upperRow, upperColumn),
-                gridCellFactory.getGridCell(upperRightRow, upperRightColumn),
-                gridCellFactory.getGridCell(rightRow, rightColumn),
-                gridCellFactory.getGridCell(lowerRightRow, lowerRightColumn)
-        ).collect(Collectors.toSet());
-    }
-
-
-    /**
-     * Bean class representing a position in the grid (i.e a corresponding cell).
+     * @param space             The {@link Space} holding the {@link Particle}s.
+     * @param interactionRadius The interaction radius.
+     * @param Mx                The amount of cells along the 'x' axis.
+     * @param My                The amount of cells along the 'y' axis.
+     * @return A {@link Map} holding, for each {@link Particle}, the {@link List} of its neighbors.
+     * @implNote This is an adapter built on top of the {@link ParallelCellIndexEngine}, which works with indexes.
      */
-    private static final class GridCell {
-
-        /**
-         * The row for this cell.
-         */
-        private final int row;
-
-        /**
-         * The column for this cell.
-         */
-        private final int column;
-
-        /**
-         * Constructor.
-         *
-         * @param row    The row for this cell.
-         * @param column The column for this cell.
-         */
-        private GridCell(int row, int column) {
-            if (row < 0 || column < 0) {
-                throw new IllegalArgumentException("Row and Column must be positive.");
-            }
-            this.row = row;
-            this.column = column;
-        }
-
-        /**
-         * @return The row for this cell.
-         */
-        private int getRow() {
-            return row;
-        }
-
-        /**
-         * @return The column for this cell.
-         */
-        private int getColumn() {
-            return column;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (!(o instanceof GridCell)) {
-                return false;
-            }
-
-            final GridCell gridCell = (GridCell) o;
-
-            return row == gridCell.row && column == gridCell.column;
-        }
+    private static Map<Particle, List<Particle>> getParticles(Space space, double interactionRadius,
+                                                              int Mx, int My) {
+        final List<Particle> particles = space.getParticles();
+        LOGGER.info("Building particle store...");
+        final ParticleStore store = ParticleStore.fromParticles(space.getWidth(), space.getHeight(), particles);
+        LOGGER.info("Finished building particle store.");
 
-        @Override
-        public int hashCode() {
-            return 31 * row + column;
-        }
-    }
-
-    /**
-     * Factory class for {@link GridCell}s, in order to avoid creating a new {@link GridCell} each time it is needed.
-     */
-    private static final class GridCellFactory {
-
-        /**
-         * {@link Map} holding, for each value of {@code M}, the corresponding {@link GridCellFactory}.
-         */
-        private final static Map<Integer, GridCellFactory> factories = new HashMap<>();
-
-        /**
-         * An 2-D array holding each grid cell,
-         * ordered using the {@code row} and {@code column} of the stored {@link GridCell}s.
-         */
-        private final GridCell[][] grid;
-
-        /**
-         * The amount of cells per side.
-         */
-        private final int M;
-
-
-        /**
-         * Constructor.
-         *
-         * @param M The amount of cells per side.
-         */
-        private GridCellFactory(int M) {
-            this.M = M;
-            // Create all GridCells when this factory is created.
-            this.grid = IntStream.range(0, M)
-                    .mapToObj(row ->
-                            IntStream.range(0, M)
-                                    .mapToObj(column -> new GridCell(row, column))
-                                    .toArray(GridCell[]::new))
-                    .toArray(GridCell[][]::new);
-        }
-
-        /**
-         * Retrieves the {@link GridCell} for the given {@code row} and {@code column.}
-         *
-         * @param row    The row of the {@link GridCell}.
-         * @param column The column of the {@link GridCell}.
-         * @return The {@link GridCell} with the given {@code row} and {@code column.}.
-         */
-        private GridCell getGridCell(int row, int column) {
-            if (row < 0 || row >= M || column < 0 || column >= M) {
-                throw new IllegalArgumentException("Row and Column must be values between 0 and " + M + ".");
-            }
-            return grid[row][column];
+        LOGGER.info("Calculating neighbors...");
+        final NeighborList neighbors;
+        try (ParallelCellIndexEngine engine = new ParallelCellIndexEngine()) {
+            neighbors = engine.detect(store, interactionRadius, Mx, My);
         }
+        LOGGER.info("Finished calculating neighbors.");
 
-        /**
-         * Gets a {@link GridCellFactory} for the given {@code M}.
-         *
-         * @param M The amount of cells per side.
-         * @return The {@link GridCellFactory}.
-         * @implNote This is not synchronized but it does not matter because,
-         * in case there are write interferences at most we will have instantiated twice the same factory,
-         * which is not a problem, as the Map will override with the same value for a given key.
-         */
-        private static GridCellFactory getFactory(int M) {
-            GridCellFactory factory = factories.get(M);
-            if (factory == null) {
-                factory = new GridCellFactory(M);
-                factories.put(M, factory);
-            }
-            return factory;
-        }
+        LOGGER.info("Building neighbors map...");
+        final Map<Particle, List<Particle>> result = neighbors.toMap(particles);
+        LOGGER.info("Finished building neighbors map.");
+        return result;
     }
 }
@@ -0,0 +1,36 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Defines behaviour for an object that can calculate the neighbors of each particle in a {@link ParticleStore}.
+ */
+public interface NeighborEngine {
+
+    /**
+     * @return The boundary conditions of the space.
+     */
+    BoundaryCondition getBoundaryCondition();
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store}.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    NeighborList detect(ParticleStore store, double interactionRadius, int M) throws IllegalArgumentException;
+
+    /**
+     * Streams each pair of interacting particles in the given {@code store} to the given {@code consumer},
+     * without building any neighbor list.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param consumer          The {@link PairConsumer} to which each pair is reported (only once).
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException;
+}
@@ -0,0 +1,164 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Neighbors of each particle, stored in compressed sparse row (CSR) form.
+ * The neighbors of particle {@code i} are the values of {@code neighborIds}
+ * between {@code offsets[i]} (inclusive) and {@code offsets[i + 1]} (exclusive), sorted in ascending order.
+ */
+public class NeighborList {
+
+    /**
+     * For each particle, the position in {@code neighborIds} where its neighbors start.
+     * It has one extra value at the end, holding the total amount of neighbor entries.
+     */
+    private final int[] offsets;
+
+    /**
+     * The neighbors of all the particles, one after the other.
+     */
+    private final int[] neighborIds;
+
+    /**
+     * Constructor.
+     *
+     * @param offsets     For each particle, the position in {@code neighborIds} where its neighbors start
+     *                    (with an extra value at the end, holding the length of {@code neighborIds}).
+     * @param neighborIds The neighbors of all the particles, one after the other.
+     * @throws IllegalArgumentException If the arrays are {@code null} or are not consistent.
+     * @implNote The given arrays are not copied.
+     */
+    public NeighborList(int[] offsets, int[] neighborIds) throws IllegalArgumentException {
+        Assert.notNull(offsets, "The offsets array must not be null.");
+        Assert.notNull(neighborIds, "The neighbor ids array must not be null.");
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != neighborIds.length) {
+            throw new IllegalArgumentException("The offsets array is not consistent with the neighbor ids array");
+        }
+        this.offsets = offsets;
+        this.neighborIds = neighborIds;
+    }
+
+    /**
+     * Builds a symmetric {@link NeighborList} from the given {@link PairBuffer}s,
+     * in which each pair is stored only once.
+     *
+     * @param amountOfParticles The amount of particles.
+     * @param buffers           The {@link PairBuffer}s holding the interacting pairs.
+     * @return The built {@link NeighborList}.
+     */
+    static NeighborList fromPairs(int amountOfParticles, PairBuffer... buffers) {
+        return fromPairs(amountOfParticles, false, buffers);
+    }
+
+    /**
+     * Builds a symmetric {@link NeighborList} from the given {@link PairBuffer}s,
+     * in which each pair is stored only once.
+     *
+     * @param amountOfParticles The amount of particles.
+     * @param parallelSort      Whether each particle's neighbors are sorted using a parallel stream
+     *                          (which runs in the {@link java.util.concurrent.ForkJoinPool} calling this method).
+     * @param buffers           The {@link PairBuffer}s holding the interacting pairs.
+     * @return The built {@link NeighborList}.
+     * @implNote The result does not depend on how pairs are split among buffers, nor on their order.
+     */
+    static NeighborList fromPairs(int amountOfParticles, boolean parallelSort, PairBuffer... buffers) {
+        final int[] offsets = new int[amountOfParticles + 1];
+        for (PairBuffer buffer : buffers) {
+            final int[] first = buffer.getFirst();
+            final int[] second = buffer.getSecond();
+            for (int k = 0; k < buffer.size(); k++) {
+                offsets[first[k] + 1]++;
+                offsets[second[k] + 1]++;
+            }
+        }
+        for (int i = 0; i < amountOfParticles; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int[] neighborIds = new int[offsets[amountOfParticles]];
+        final int[] cursor = Arrays.copyOf(offsets, amountOfParticles);
+        for (PairBuffer buffer : buffers) {
+            final int[] first = buffer.getFirst();
+            final int[] second = buffer.getSecond();
+            for (int k = 0; k < buffer.size(); k++) {
+                neighborIds[cursor[first[k]]++] = second[k];
+                neighborIds[cursor[second[k]]++] = first[k];
+            }
+        }
+        final IntStream particles = IntStream.range(0, amountOfParticles);
+        (parallelSort ? particles.parallel() : particles)
+                .forEach(i -> Arrays.sort(neighborIds, offsets[i], offsets[i + 1]));
+        return new NeighborList(offsets, neighborIds);
+    }
+
+    /**
+     * @return The amount of particles.
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return For each particle, the position in the neighbor ids array where its neighbors start
+     * (with an extra value at the end).
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return The neighbors of all the particles, one after the other.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public int[] getNeighborIds() {
+        return neighborIds;
+    }
+
+    /**
+     * @param particle The index of the particle.
+     * @return The amount of neighbors of the given {@code particle}.
+     */
+    public int getNeighborCount(int particle) {
+        return offsets[particle + 1] - offsets[particle];
+    }
+
+    /**
+     * @return The amount of interacting pairs (i.e half the amount of neighbor entries).
+     */
+    public int getPairCount() {
+        return neighborIds.length / 2;
+    }
+
+    /**
+     * Transforms this {@link NeighborList} into a {@link Map} holding,
+     * for each {@link Particle}, the {@link List} of its neighbors.
+     *
+     * @param particles The {@link Particle}s, indexed in the same way as in this {@link NeighborList}.
+     * @return The built {@link Map}.
+     * @throws IllegalArgumentException If the amount of particles does not match.
+     */
+    public Map<Particle, List<Particle>> toMap(List<Particle> particles) throws IllegalArgumentException {
+        Assert.notNull(particles, "The particles list must not be null.");
+        if (particles.size() != size()) {
+            throw new IllegalArgumentException("The amount of particles does not match this neighbor list");
+        }
+        final Particle[] indexed = particles.toArray(new Particle[particles.size()]);
+        final Map<Particle, List<Particle>> result = new HashMap<>(indexed.length * 2);
+        for (int i = 0; i < indexed.length; i++) {
+            final List<Particle> neighbors = new ArrayList<>(getNeighborCount(i));
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                neighbors.add(indexed[neighborIds[k]]);
+            }
+            result.put(indexed[i], neighbors);
+        }
+        return result;
+    }
+}
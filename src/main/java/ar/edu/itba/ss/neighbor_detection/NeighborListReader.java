@@ -0,0 +1,90 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads {@link NeighborList}s, one after the other, from a binary file (see {@link NeighborListWriter}),
+ * through memory mapping.
+ * Only the record being read is mapped, so the whole file is never loaded into the heap.
+ */
+public class NeighborListReader implements AutoCloseable {
+
+    /**
+     * The {@link FileChannel} of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The position in the file where the next record starts.
+     */
+    private long position;
+
+    /**
+     * Constructor.
+     *
+     * @param path The {@link Path} of the file.
+     * @throws IOException If the file can not be opened.
+     */
+    public NeighborListReader(Path path) throws IOException {
+        Assert.notNull(path, "The path must not be null.");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.position = 0;
+    }
+
+    /**
+     * @return {@code true} if there are more records to be read, or {@code false} otherwise.
+     * @throws IOException If the size of the file can not be read.
+     */
+    public boolean hasNext() throws IOException {
+        return position < channel.size();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return The read {@link NeighborList}.
+     * @throws IOException If the record can not be read, or if it is not valid.
+     */
+    public NeighborList next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("There are no more neighbor lists");
+        }
+        if (channel.size() - position < NeighborListWriter.HEADER_SIZE) {
+            throw new IOException("Truncated neighbor list header at position " + position);
+        }
+        final ByteBuffer header = MappedFiles.map(channel, FileChannel.MapMode.READ_ONLY, position,
+                NeighborListWriter.HEADER_SIZE);
+        if (header.getInt() != NeighborListWriter.MAGIC) {
+            throw new IOException("Not a neighbor list at position " + position);
+        }
+        final int amountOfParticles = header.getInt();
+        final long amountOfEntries = header.getLong();
+        if (amountOfParticles < 0 || amountOfEntries < 0 || amountOfEntries > Integer.MAX_VALUE
+                || channel.size() - position - NeighborListWriter.HEADER_SIZE
+                < (amountOfParticles + 1L + amountOfEntries) * Integer.BYTES) {
+            throw new IOException("Truncated or invalid neighbor list at position " + position);
+        }
+        final int[] offsets = new int[amountOfParticles + 1];
+        final int[] neighborIds = new int[(int) amountOfEntries];
+        position += NeighborListWriter.HEADER_SIZE;
+        position = MappedFiles.read(channel, position, offsets);
+        position = MappedFiles.read(channel, position, neighborIds);
+        try {
+            return new NeighborList(offsets, neighborIds);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid neighbor list", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
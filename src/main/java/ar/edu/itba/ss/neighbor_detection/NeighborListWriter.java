@@ -0,0 +1,84 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@link NeighborList}s into a binary file, in CSR form, through memory mapping.
+ * <p>
+ * The file is a sequence of records (e.g one per trajectory frame),
+ * each one with the following layout (little endian):
+ * <ul>
+ * <li>{@code int} magic number ({@link #MAGIC}).</li>
+ * <li>{@code int} amount of particles ({@code N}).</li>
+ * <li>{@code long} amount of neighbor entries ({@code E}).</li>
+ * <li>{@code N + 1} {@code int}s with the offsets.</li>
+ * <li>{@code E} {@code int}s with the neighbor ids.</li>
+ * </ul>
+ */
+public class NeighborListWriter implements AutoCloseable {
+
+    /**
+     * The magic number that starts each record.
+     */
+    public static final int MAGIC = 0x43494D4E;
+
+    /**
+     * The size of the header of each record, in bytes.
+     */
+    static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+
+    /**
+     * The {@link FileChannel} of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The position in the file where the next record will be written.
+     */
+    private long position;
+
+    /**
+     * Constructor.
+     *
+     * @param path   The {@link Path} of the file.
+     * @param append Whether records are appended to the file (if it exists), or the file is truncated.
+     * @throws IOException If the file can not be opened.
+     */
+    public NeighborListWriter(Path path, boolean append) throws IOException {
+        Assert.notNull(path, "The path must not be null.");
+        this.channel = append
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.position = channel.size();
+    }
+
+    /**
+     * Writes the given {@code neighbors} as a new record.
+     *
+     * @param neighbors The {@link NeighborList} to be written.
+     * @throws IOException If the record can not be written.
+     */
+    public void write(NeighborList neighbors) throws IOException {
+        Assert.notNull(neighbors, "The neighbor list must not be null.");
+        final ByteBuffer header = MappedFiles.map(channel, FileChannel.MapMode.READ_WRITE, position, HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(neighbors.size());
+        header.putLong(neighbors.getNeighborIds().length);
+        position += HEADER_SIZE;
+        position = MappedFiles.write(channel, position, neighbors.getOffsets());
+        position = MappedFiles.write(channel, position, neighbors.getNeighborIds());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,119 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer of particle index pairs, backed by primitive arrays.
+ */
+final class PairBuffer implements PairConsumer {
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The biggest capacity (as some JVMs can not allocate arrays of exactly {@link Integer#MAX_VALUE} elements).
+     */
+    static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * The first index of each pair.
+     */
+    private int[] first;
+
+    /**
+     * The second index of each pair.
+     */
+    private int[] second;
+
+    /**
+     * The amount of pairs in this buffer.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    PairBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param initialCapacity The initial amount of pairs this buffer can hold without growing.
+     */
+    PairBuffer(int initialCapacity) {
+        final int capacity = Math.max(initialCapacity, 1);
+        this.first = new int[capacity];
+        this.second = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Adds a pair to this buffer.
+     *
+     * @param i The first index of the pair.
+     * @param j The second index of the pair.
+     * @throws IllegalStateException If the buffer is full and already has the biggest capacity.
+     */
+    void add(int i, int j) throws IllegalStateException {
+        if (size == first.length) {
+            final int newCapacity = grownCapacity(size);
+            first = Arrays.copyOf(first, newCapacity);
+            second = Arrays.copyOf(second, newCapacity);
+        }
+        first[size] = i;
+        second[size] = j;
+        size++;
+    }
+
+    @Override
+    public void accept(int i, int j, double squaredDistance) {
+        add(i, j);
+    }
+
+    /**
+     * Removes all pairs from this buffer, keeping its capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return The amount of pairs in this buffer.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The first index of each pair (only the first {@link #size()} values are meaningful).
+     */
+    int[] getFirst() {
+        return first;
+    }
+
+    /**
+     * @return The second index of each pair (only the first {@link #size()} values are meaningful).
+     */
+    int[] getSecond() {
+        return second;
+    }
+
+    /**
+     * Calculates the capacity to which a full buffer grows, doubling it up to {@link #MAX_CAPACITY}.
+     *
+     * @param size The amount of pairs in the full buffer (i.e its current capacity).
+     * @return The new capacity.
+     * @throws IllegalStateException If the buffer already has the biggest capacity.
+     */
+    static int grownCapacity(int size) throws IllegalStateException {
+        if (size >= MAX_CAPACITY) {
+            throw new IllegalStateException("Can not hold more than " + MAX_CAPACITY + " pairs in a buffer. "
+                    + "Pair count was " + size + ".");
+        }
+        return (int) Math.min(2L * size, MAX_CAPACITY);
+    }
+}
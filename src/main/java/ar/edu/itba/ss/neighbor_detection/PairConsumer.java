@@ -0,0 +1,21 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Represents an operation that accepts a pair of interacting particles.
+ * Each pair is reported only once (i.e either as {@code (i, j)} or as {@code (j, i)}).
+ */
+@FunctionalInterface
+public interface PairConsumer {
+
+    /**
+     * Performs this operation on the given pair of particles.
+     *
+     * @param i               The index of one of the particles.
+     * @param j               The index of the other particle.
+     * @param squaredDistance The squared distance between the centers of both particles.
+     * @implNote The squared distance between centers is reported (instead of the distance between borders),
+     * so no square root is calculated for consumers that do not need it.
+     * The distance between borders is {@code Math.sqrt(squaredDistance) - radius[i] - radius[j]}.
+     */
+    void accept(int i, int j, double squaredDistance);
+}
@@ -0,0 +1,236 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+
+/**
+ * Cell index method implementation that splits the grid into blocks of rows,
+ * which are processed concurrently in a {@link ForkJoinPool}.
+ * Each block collects its pairs in its own buffer, and buffers are merged once all blocks are done,
+ * so the result is the same as the one of the {@link CellIndexEngine}.
+ * As in the {@link CellIndexEngine}, rectangular spaces might be split into {@code Mx} columns and {@code My} rows.
+ */
+public class ParallelCellIndexEngine implements NeighborEngine, AutoCloseable {
+
+    /**
+     * The amount of row blocks created per worker, in order to balance the load among workers.
+     */
+    private static final int BLOCKS_PER_WORKER = 4;
+
+    /**
+     * The {@link ForkJoinPool} in which blocks are processed.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The {@link DetectionMetrics} in which runs are recorded.
+     */
+    private final DetectionMetrics metrics;
+
+    /**
+     * Constructor, using as many workers as available processors, and open boundary conditions.
+     */
+    public ParallelCellIndexEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor, using open boundary conditions.
+     *
+     * @param parallelism The amount of workers.
+     * @throws IllegalArgumentException If the parallelism level is not positive.
+     */
+    public ParallelCellIndexEngine(int parallelism) throws IllegalArgumentException {
+        this(parallelism, BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, recording runs in the default {@link DetectionMetrics}.
+     *
+     * @param parallelism       The amount of workers.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the parallelism level is not positive.
+     */
+    public ParallelCellIndexEngine(int parallelism, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException {
+        this(parallelism, boundaryCondition, DetectionMetrics.getDefault());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism       The amount of workers.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param metrics           The {@link DetectionMetrics} in which runs are recorded.
+     * @throws IllegalArgumentException If the parallelism level is not positive.
+     */
+    public ParallelCellIndexEngine(int parallelism, BoundaryCondition boundaryCondition, DetectionMetrics metrics)
+            throws IllegalArgumentException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism level must be positive");
+        }
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        Assert.notNull(metrics, "The metrics must not be null.");
+        this.pool = new ForkJoinPool(parallelism);
+        this.boundaryCondition = boundaryCondition;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The amount of workers.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    /**
+     * @return The {@link DetectionMetrics} in which runs are recorded.
+     */
+    public DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public NeighborList detect(ParticleStore store, double interactionRadius, int M)
+            throws IllegalArgumentException {
+        return detect(store, interactionRadius, M, M);
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store}.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param Mx                The amount of cells along the 'x' axis (i.e columns).
+     * @param My                The amount of cells along the 'y' axis (i.e rows).
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public NeighborList detect(ParticleStore store, double interactionRadius, int Mx, int My)
+            throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        final PairBuffer[] buffers = new PairBuffer[amountOfBlocks(My)];
+        for (int block = 0; block < buffers.length; block++) {
+            buffers[block] = new PairBuffer(store.size() / buffers.length + 1);
+        }
+        sweep(store, interactionRadius, Mx, My, block -> buffers[block]);
+
+        // Buffers are merged in block order, and neighbors are sorted, so the result is deterministic
+        final long start = System.nanoTime();
+        final NeighborList neighbors = pool.submit(metrics.recordingAllocations(() ->
+                NeighborList.fromPairs(store.size(), true, buffers))).join();
+        metrics.recordAssembly(System.nanoTime() - start);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+        return neighbors;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @implNote The {@code consumer} is called concurrently from several workers, so it must be thread safe.
+     * Use {@link #detectPerBlock(ParticleStore, double, int, IntFunction)} to have a consumer per block.
+     */
+    @Override
+    public void detect(ParticleStore store, double interactionRadius, int M, PairConsumer consumer)
+            throws IllegalArgumentException {
+        Assert.notNull(consumer, "The pair consumer must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        sweep(store, interactionRadius, M, M, block -> consumer);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+    }
+
+    /**
+     * Streams each pair of interacting particles in the given {@code store},
+     * using a different {@link PairConsumer} for each block of rows.
+     * Each consumer is called from a single worker, so it does not need to be thread safe.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param M                 The amount of cells per side.
+     * @param consumers         A function that, given a block number, returns the {@link PairConsumer}
+     *                          to which the pairs of said block are reported. It is called once per block,
+     *                          from the calling thread.
+     * @return The amount of blocks (i.e block numbers go from zero to this value, exclusive).
+     * @throws IllegalArgumentException If any of the parameters is not valid.
+     */
+    public int detectPerBlock(ParticleStore store, double interactionRadius, int M,
+                              IntFunction<PairConsumer> consumers)
+            throws IllegalArgumentException {
+        Assert.notNull(consumers, "The consumers function must not be null.");
+        final long allocated = DetectionMetrics.currentThreadAllocatedBytes();
+        final int amountOfBlocks = sweep(store, interactionRadius, M, M, consumers);
+        metrics.recordRun(DetectionMetrics.currentThreadAllocatedBytes() - allocated);
+        return amountOfBlocks;
+    }
+
+    /**
+     * Bins the particles and sweeps each block of rows as a task in the pool, waiting for all of them to finish,
+     * and recording the time spent in each phase (and the bytes allocated by each task).
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param Mx                The amount of cells along the 'x' axis (i.e columns).
+     * @param My                The amount of cells along the 'y' axis (i.e rows).
+     * @param consumers         A function that, given a block number, returns the {@link PairConsumer}
+     *                          to which the pairs of said block are reported.
+     * @return The amount of blocks.
+     */
+    private int sweep(ParticleStore store, double interactionRadius, int Mx, int My,
+                      IntFunction<PairConsumer> consumers) {
+        Assert.notNull(store, "The particle store must not be null.");
+        CellIndexEngine.validate(store.getWidth(), interactionRadius, store.getMaxRadius(), Mx, boundaryCondition);
+        CellIndexEngine.validate(store.getHeight(), interactionRadius, store.getMaxRadius(), My, boundaryCondition);
+
+        final long start = System.nanoTime();
+        final CellGrid grid = new CellGrid(store.getWidth(), store.getHeight(), Mx, My);
+        grid.bin(store);
+        final long binned = System.nanoTime();
+        metrics.recordBinning(binned - start);
+        metrics.recordOccupancy(grid.getCellStart());
+
+        final int amountOfBlocks = amountOfBlocks(My);
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(amountOfBlocks);
+        for (int block = 0; block < amountOfBlocks; block++) {
+            final int fromRow = (int) ((long) block * My / amountOfBlocks);
+            final int toRow = (int) ((long) (block + 1) * My / amountOfBlocks);
+            final PairConsumer consumer = consumers.apply(block);
+            tasks.add(pool.submit(metrics.recordingAllocations(() ->
+                    CellIndexEngine.sweepRows(grid, store, interactionRadius, boundaryCondition, fromRow, toRow,
+                            consumer, metrics))));
+        }
+        tasks.forEach(ForkJoinTask::join);
+        metrics.recordSweep(System.nanoTime() - binned);
+        return amountOfBlocks;
+    }
+
+    /**
+     * Calculates the amount of blocks of rows in which the grid is split.
+     *
+     * @param rows The amount of rows of the grid.
+     * @return The amount of blocks.
+     */
+    private int amountOfBlocks(int rows) {
+        return Math.max(1, Math.min(rows, pool.getParallelism() * BLOCKS_PER_WORKER));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,254 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Structure-of-arrays storage for the particles of a {@link Space}.
+ * Each particle is identified by its index, which matches its position in the {@link List}
+ * from where this store was built (e.g {@link Space#getParticles()}).
+ */
+public class ParticleStore {
+
+    /**
+     * The width of the space holding these particles (i.e its length along the 'x' axis).
+     */
+    private final double width;
+
+    /**
+     * The height of the space holding these particles (i.e its length along the 'y' axis).
+     */
+    private final double height;
+
+    /**
+     * The 'x' value of each particle's position.
+     */
+    private final double[] x;
+
+    /**
+     * The 'y' value of each particle's position.
+     */
+    private final double[] y;
+
+    /**
+     * The radius of each particle.
+     */
+    private final double[] radius;
+
+    /**
+     * Constructor, for a squared space.
+     *
+     * @param sideLength The length of the side of the space holding these particles.
+     * @param x          The 'x' value of each particle's position.
+     * @param y          The 'y' value of each particle's position.
+     * @param radius     The radius of each particle.
+     * @throws IllegalArgumentException If the side length is not positive,
+     *                                  or if the arrays are {@code null} or have different lengths.
+     * @implNote The given arrays are not copied.
+     */
+    public ParticleStore(double sideLength, double[] x, double[] y, double[] radius)
+            throws IllegalArgumentException {
+        this(sideLength, sideLength, x, y, radius);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param width  The width of the space holding these particles (i.e its length along the 'x' axis).
+     * @param height The height of the space holding these particles (i.e its length along the 'y' axis).
+     * @param x      The 'x' value of each particle's position.
+     * @param y      The 'y' value of each particle's position.
+     * @param radius The radius of each particle.
+     * @throws IllegalArgumentException If the width or the height are not positive,
+     *                                  or if the arrays are {@code null} or have different lengths.
+     * @implNote The given arrays are not copied.
+     */
+    public ParticleStore(double width, double height, double[] x, double[] y, double[] radius)
+            throws IllegalArgumentException {
+        if (Double.compare(width, 0.0) <= 0 || Double.compare(height, 0.0) <= 0) {
+            throw new IllegalArgumentException("The width and the height must be positive");
+        }
+        Assert.notNull(x, "The 'x' array must not be null.");
+        Assert.notNull(y, "The 'y' array must not be null.");
+        Assert.notNull(radius, "The radius array must not be null.");
+        if (x.length != y.length || x.length != radius.length) {
+            throw new IllegalArgumentException("All arrays must have the same length");
+        }
+        this.width = width;
+        this.height = height;
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+    }
+
+    /**
+     * Creates a {@link ParticleStore} from the given {@link Space}.
+     *
+     * @param space The {@link Space} whose particles will be stored.
+     * @return The created {@link ParticleStore}.
+     */
+    public static ParticleStore fromSpace(Space space) {
+        Assert.notNull(space, "The space must not be null.");
+        return fromParticles(space.getWidth(), space.getHeight(), space.getParticles());
+    }
+
+    /**
+     * Creates a {@link ParticleStore} from the given {@link List} of {@link Particle}s, in a squared space.
+     *
+     * @param sideLength The length of the side of the space holding the particles.
+     * @param particles  The {@link Particle}s to be stored. Their indexes will be the ones in this {@link List}.
+     * @return The created {@link ParticleStore}.
+     */
+    public static ParticleStore fromParticles(double sideLength, List<Particle> particles) {
+        return fromParticles(sideLength, sideLength, particles);
+    }
+
+    /**
+     * Creates a {@link ParticleStore} from the given {@link List} of {@link Particle}s.
+     *
+     * @param width     The width of the space holding the particles (i.e its length along the 'x' axis).
+     * @param height    The height of the space holding the particles (i.e its length along the 'y' axis).
+     * @param particles The {@link Particle}s to be stored. Their indexes will be the ones in this {@link List}.
+     * @return The created {@link ParticleStore}.
+     */
+    public static ParticleStore fromParticles(double width, double height, List<Particle> particles) {
+        Assert.notNull(particles, "The particles list must not be null.");
+        final int amountOfParticles = particles.size();
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        final double[] radius = new double[amountOfParticles];
+        int index = 0;
+        for (Particle particle : particles) {
+            x[index] = particle.getPosition().getX();
+            y[index] = particle.getPosition().getY();
+            radius[index] = particle.getRadius();
+            index++;
+        }
+        return new ParticleStore(width, height, x, y, radius);
+    }
+
+    /**
+     * Creates a {@link Space} holding these particles, in the same order.
+     *
+     * @return The created {@link Space}.
+     * @throws IllegalArgumentException If any particle is outside the space.
+     */
+    public Space toSpace() throws IllegalArgumentException {
+        final List<Particle> particles = IntStream.range(0, size())
+                .mapToObj(i -> new Particle(x[i], y[i], radius[i]))
+                .collect(Collectors.toList());
+        return new Space(width, height, particles);
+    }
+
+    /**
+     * @return The length of the side of the space holding these particles.
+     * @throws IllegalStateException If the space is not squared.
+     */
+    public double getSideLength() throws IllegalStateException {
+        if (!isSquared()) {
+            throw new IllegalStateException("The space is not squared. " +
+                    "Values were: width = " + width + ", height = " + height + ".");
+        }
+        return width;
+    }
+
+    /**
+     * @return The width of the space holding these particles (i.e its length along the 'x' axis).
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the space holding these particles (i.e its length along the 'y' axis).
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return {@code true} if the space holding these particles is squared, or {@code false} otherwise.
+     */
+    public boolean isSquared() {
+        return Double.compare(width, height) == 0;
+    }
+
+    /**
+     * Checks that the space holding these particles is squared, for components that only support squared spaces.
+     *
+     * @param component The name of the component, shown in the exception message.
+     * @throws IllegalArgumentException If the space is not squared.
+     */
+    void checkSquared(String component) throws IllegalArgumentException {
+        if (!isSquared()) {
+            throw new IllegalArgumentException("The " + component + " only supports squared spaces " +
+                    "(use a CellIndexEngine or a ParallelCellIndexEngine for rectangular ones). " +
+                    "Values were: width = " + width + ", height = " + height + ".");
+        }
+    }
+
+    /**
+     * @return The amount of particles in this store.
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @return The 'x' value of each particle's position.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return The 'y' value of each particle's position.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return The radius of each particle.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getRadius() {
+        return radius;
+    }
+
+    /**
+     * Moves the given particle to the given position, updating this store in place.
+     *
+     * @param particle The index of the particle.
+     * @param newX     The new 'x' value of the particle's position.
+     * @param newY     The new 'y' value of the particle's position.
+     * @throws IllegalArgumentException If the new position is not part of the space.
+     */
+    public void setPosition(int particle, double newX, double newY) throws IllegalArgumentException {
+        if (newX < 0 || newX > width || newY < 0 || newY > height) {
+            throw new IllegalArgumentException("The new position is not part of the space. " +
+                    "Values were: x = " + newX + ", y = " + newY + ", width = " + width +
+                    ", height = " + height + ".");
+        }
+        x[particle] = newX;
+        y[particle] = newY;
+    }
+
+    /**
+     * @return The biggest radius among all the particles in this store (or zero if it is empty).
+     */
+    public double getMaxRadius() {
+        double maxRadius = 0.0;
+        for (double value : radius) {
+            if (value > maxRadius) {
+                maxRadius = value;
+            }
+        }
+        return maxRadius;
+    }
+}
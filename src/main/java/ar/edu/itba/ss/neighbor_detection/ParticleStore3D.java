@@ -0,0 +1,131 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+/**
+ * Structure-of-arrays storage for particles in a cubic space.
+ * Each particle is identified by its index in the arrays.
+ */
+public class ParticleStore3D {
+
+    /**
+     * The length of the side of the space holding these particles.
+     */
+    private final double sideLength;
+
+    /**
+     * The 'x' value of each particle's position.
+     */
+    private final double[] x;
+
+    /**
+     * The 'y' value of each particle's position.
+     */
+    private final double[] y;
+
+    /**
+     * The 'z' value of each particle's position.
+     */
+    private final double[] z;
+
+    /**
+     * The radius of each particle.
+     */
+    private final double[] radius;
+
+    /**
+     * Constructor.
+     *
+     * @param sideLength The length of the side of the space holding these particles.
+     * @param x          The 'x' value of each particle's position.
+     * @param y          The 'y' value of each particle's position.
+     * @param z          The 'z' value of each particle's position.
+     * @param radius     The radius of each particle.
+     * @throws IllegalArgumentException If the side length is not positive,
+     *                                  if the arrays are {@code null} or have different lengths,
+     *                                  or if any particle is not part of the space.
+     * @implNote The given arrays are not copied.
+     */
+    public ParticleStore3D(double sideLength, double[] x, double[] y, double[] z, double[] radius)
+            throws IllegalArgumentException {
+        if (Double.compare(sideLength, 0.0) <= 0) {
+            throw new IllegalArgumentException("The side length must be positive");
+        }
+        Assert.notNull(x, "The 'x' array must not be null.");
+        Assert.notNull(y, "The 'y' array must not be null.");
+        Assert.notNull(z, "The 'z' array must not be null.");
+        Assert.notNull(radius, "The radius array must not be null.");
+        if (x.length != y.length || x.length != z.length || x.length != radius.length) {
+            throw new IllegalArgumentException("All arrays must have the same length");
+        }
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] < 0 || x[i] > sideLength || y[i] < 0 || y[i] > sideLength || z[i] < 0 || z[i] > sideLength) {
+                throw new IllegalArgumentException("There are particles that are not part of this space");
+            }
+        }
+        this.sideLength = sideLength;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.radius = radius;
+    }
+
+    /**
+     * @return The length of the side of the space holding these particles.
+     */
+    public double getSideLength() {
+        return sideLength;
+    }
+
+    /**
+     * @return The amount of particles in this store.
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @return The 'x' value of each particle's position.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return The 'y' value of each particle's position.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return The 'z' value of each particle's position.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getZ() {
+        return z;
+    }
+
+    /**
+     * @return The radius of each particle.
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public double[] getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return The biggest radius among all the particles in this store (or zero if it is empty).
+     */
+    public double getMaxRadius() {
+        double maxRadius = 0.0;
+        for (double value : radius) {
+            if (value > maxRadius) {
+                maxRadius = value;
+            }
+        }
+        return maxRadius;
+    }
+}
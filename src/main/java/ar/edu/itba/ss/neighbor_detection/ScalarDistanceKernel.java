@@ -0,0 +1,25 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * {@link DistanceKernel} that checks one candidate at a time.
+ */
+public final class ScalarDistanceKernel implements DistanceKernel {
+
+    @Override
+    public int filter(double xi, double yi, double reach, double[] x, double[] y, double[] radius, int from, int to,
+                      int[] positions, double[] squaredDistances) {
+        int count = 0;
+        for (int b = from; b < to; b++) {
+            final double dx = xi - x[b];
+            final double dy = yi - y[b];
+            final double limit = reach + radius[b];
+            final double squaredDistance = dx * dx + dy * dy;
+            if (squaredDistance <= limit * limit) {
+                positions[count] = b;
+                squaredDistances[count] = squaredDistance;
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,195 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Objects;
+
+/**
+ * A configuration of a neighbor detection run (i.e space, particles, interaction radius and grid),
+ * whose particles are generated from a seed, so it can be run again with the same results.
+ */
+public final class Scenario {
+
+    /**
+     * The length of the side of the space.
+     */
+    private final double sideLength;
+
+    /**
+     * The amount of particles.
+     */
+    private final int amountOfParticles;
+
+    /**
+     * The interaction radius.
+     */
+    private final double interactionRadius;
+
+    /**
+     * The biggest particle radius (radii are uniformly distributed between zero and this value).
+     */
+    private final double maxRadius;
+
+    /**
+     * The amount of cells per side (or zero if it must be planned with a {@link GridPlanner}).
+     */
+    private final int M;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The seed from which particles are generated.
+     */
+    private final long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles.
+     * @param interactionRadius The interaction radius.
+     * @param maxRadius         The biggest particle radius.
+     * @param M                 The amount of cells per side (or zero if it must be planned with a {@link GridPlanner}).
+     * @param boundaryCondition The boundary conditions of the space.
+     * @param seed              The seed from which particles are generated.
+     * @throws IllegalArgumentException If any value is out of range.
+     */
+    public Scenario(double sideLength, int amountOfParticles, double interactionRadius, double maxRadius, int M,
+                    BoundaryCondition boundaryCondition, long seed) throws IllegalArgumentException {
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        if (!(sideLength > 0)) {
+            throw new IllegalArgumentException("The side length must be positive");
+        }
+        if (amountOfParticles < 0) {
+            throw new IllegalArgumentException("The amount of particles must not be negative");
+        }
+        if (!(interactionRadius >= 0) || !(maxRadius >= 0)) {
+            throw new IllegalArgumentException("The interaction radius and the particles radius must not be negative");
+        }
+        if (M < 0) {
+            throw new IllegalArgumentException("The amount of cells per side must not be negative");
+        }
+        this.sideLength = sideLength;
+        this.amountOfParticles = amountOfParticles;
+        this.interactionRadius = interactionRadius;
+        this.maxRadius = maxRadius;
+        this.M = M;
+        this.boundaryCondition = boundaryCondition;
+        this.seed = seed;
+    }
+
+    /**
+     * @return The length of the side of the space.
+     */
+    public double getSideLength() {
+        return sideLength;
+    }
+
+    /**
+     * @return The amount of particles.
+     */
+    public int getAmountOfParticles() {
+        return amountOfParticles;
+    }
+
+    /**
+     * @return The interaction radius.
+     */
+    public double getInteractionRadius() {
+        return interactionRadius;
+    }
+
+    /**
+     * @return The biggest particle radius.
+     */
+    public double getMaxRadius() {
+        return maxRadius;
+    }
+
+    /**
+     * @return The amount of cells per side (or zero if it must be planned with a {@link GridPlanner}).
+     */
+    public int getM() {
+        return M;
+    }
+
+    /**
+     * @return The boundary conditions of the space.
+     */
+    public BoundaryCondition getBoundaryCondition() {
+        return boundaryCondition;
+    }
+
+    /**
+     * @return The seed from which particles are generated.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Generates the particles of this scenario, uniformly distributed in the space.
+     * The same particles are generated each time.
+     *
+     * @return A {@link ParticleStore} holding the generated particles.
+     */
+    public ParticleStore generate() {
+        return new SpaceGenerator(seed).generate(sideLength, amountOfParticles, 0.0, maxRadius);
+    }
+
+    /**
+     * Estimates the memory needed to run this scenario, including the particles, the grid and the neighbor list.
+     *
+     * @return The estimated amount of bytes.
+     */
+    public long estimatedBytes() {
+        // Three doubles per particle, plus sorted copies and grid indexes
+        final long perParticle = 3 * Double.BYTES * 2 + 3 * Integer.BYTES;
+        final double reach = interactionRadius + 2 * maxRadius;
+        final double neighborsPerParticle = Math.min(amountOfParticles,
+                amountOfParticles * Math.PI * reach * reach / (sideLength * sideLength));
+        // Each pair is buffered (two ints), and then stored once per particle
+        final double perNeighbor = Integer.BYTES * 2;
+        return (long) (amountOfParticles * (perParticle + neighborsPerParticle * perNeighbor))
+                + (long) Integer.BYTES * (M == 0 ? amountOfParticles : (long) M * M);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Scenario)) {
+            return false;
+        }
+        final Scenario scenario = (Scenario) o;
+        return Double.compare(scenario.sideLength, sideLength) == 0
+                && amountOfParticles == scenario.amountOfParticles
+                && Double.compare(scenario.interactionRadius, interactionRadius) == 0
+                && Double.compare(scenario.maxRadius, maxRadius) == 0
+                && M == scenario.M
+                && boundaryCondition == scenario.boundaryCondition
+                && seed == scenario.seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sideLength, amountOfParticles, interactionRadius, maxRadius, M, boundaryCondition, seed);
+    }
+
+    @Override
+    public String toString() {
+        return "Scenario{" +
+                "sideLength=" + sideLength +
+                ", amountOfParticles=" + amountOfParticles +
+                ", interactionRadius=" + interactionRadius +
+                ", maxRadius=" + maxRadius +
+                ", M=" + M +
+                ", boundaryCondition=" + boundaryCondition +
+                ", seed=" + seed +
+                '}';
+    }
+}
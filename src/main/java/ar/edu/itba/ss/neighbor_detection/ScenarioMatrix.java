@@ -0,0 +1,303 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.beans.factory.config.YamlProcessor;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A matrix of {@link Scenario}s, made of all combinations of a list of values for each parameter.
+ * <p>
+ * Matrices are read from the {@code batch} section of a YAML file (such as {@code application.yml}),
+ * in which each parameter is a comma separated list of values:
+ * <pre>
+ * batch:
+ *     side-lengths: 50, 100
+ *     amounts-of-particles: 1000, 10000
+ *     interaction-radii: 1, 2.5
+ *     max-radii: 0, 0.25
+ *     cells-per-side: 0
+ *     boundary-conditions: open, periodic
+ *     seeds: 1, 2, 3
+ * </pre>
+ * As in Spring Boot, documents can be restricted to some profiles with {@code spring.profiles},
+ * and values in documents of the active profiles override the ones in documents without profiles.
+ * A value of zero cells per side means that it is planned with a {@link GridPlanner}.
+ * <p>
+ * An optional {@code max-estimated-bytes} value drops the combinations whose
+ * {@link Scenario#estimatedBytes() estimated memory} is bigger than it
+ * (e.g many particles in a small space with a big interaction radius, which would never fit in the heap).
+ */
+public final class ScenarioMatrix {
+
+    /**
+     * The prefix of the matrix properties.
+     */
+    private static final String PREFIX = "batch.";
+
+    /**
+     * The property holding the active profiles.
+     */
+    private static final String ACTIVE_PROFILES = "spring.profiles.active";
+
+    /**
+     * The property holding the profiles of a document.
+     */
+    private static final String DOCUMENT_PROFILES = "spring.profiles";
+
+    /**
+     * The optional property holding the biggest estimated memory of the built scenarios (without the prefix).
+     */
+    private static final String MAX_ESTIMATED_BYTES = "max-estimated-bytes";
+
+    /**
+     * The side lengths.
+     */
+    private final List<Double> sideLengths;
+
+    /**
+     * The amounts of particles.
+     */
+    private final List<Integer> amountsOfParticles;
+
+    /**
+     * The interaction radii.
+     */
+    private final List<Double> interactionRadii;
+
+    /**
+     * The biggest particle radii.
+     */
+    private final List<Double> maxRadii;
+
+    /**
+     * The amounts of cells per side (zero meaning planned).
+     */
+    private final List<Integer> cellsPerSide;
+
+    /**
+     * The boundary conditions.
+     */
+    private final List<BoundaryCondition> boundaryConditions;
+
+    /**
+     * The seeds.
+     */
+    private final List<Long> seeds;
+
+    /**
+     * The biggest estimated memory of the built scenarios, in bytes.
+     */
+    private final long maxEstimatedBytes;
+
+    /**
+     * Constructor, keeping all the combinations.
+     *
+     * @param sideLengths        The side lengths.
+     * @param amountsOfParticles The amounts of particles.
+     * @param interactionRadii   The interaction radii.
+     * @param maxRadii           The biggest particle radii.
+     * @param cellsPerSide       The amounts of cells per side (zero meaning planned).
+     * @param boundaryConditions The boundary conditions.
+     * @param seeds              The seeds.
+     * @throws IllegalArgumentException If any list is empty.
+     */
+    public ScenarioMatrix(List<Double> sideLengths, List<Integer> amountsOfParticles, List<Double> interactionRadii,
+                          List<Double> maxRadii, List<Integer> cellsPerSide,
+                          List<BoundaryCondition> boundaryConditions, List<Long> seeds)
+            throws IllegalArgumentException {
+        this(sideLengths, amountsOfParticles, interactionRadii, maxRadii, cellsPerSide, boundaryConditions, seeds,
+                Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sideLengths        The side lengths.
+     * @param amountsOfParticles The amounts of particles.
+     * @param interactionRadii   The interaction radii.
+     * @param maxRadii           The biggest particle radii.
+     * @param cellsPerSide       The amounts of cells per side (zero meaning planned).
+     * @param boundaryConditions The boundary conditions.
+     * @param seeds              The seeds.
+     * @param maxEstimatedBytes  The biggest estimated memory of the built scenarios, in bytes
+     *                           (combinations estimated to need more are dropped).
+     * @throws IllegalArgumentException If any list is empty, or if the biggest estimated memory is not positive.
+     */
+    public ScenarioMatrix(List<Double> sideLengths, List<Integer> amountsOfParticles, List<Double> interactionRadii,
+                          List<Double> maxRadii, List<Integer> cellsPerSide,
+                          List<BoundaryCondition> boundaryConditions, List<Long> seeds, long maxEstimatedBytes)
+            throws IllegalArgumentException {
+        if (maxEstimatedBytes <= 0) {
+            throw new IllegalArgumentException("The biggest estimated memory must be positive");
+        }
+        this.sideLengths = validate(sideLengths, "side lengths");
+        this.amountsOfParticles = validate(amountsOfParticles, "amounts of particles");
+        this.interactionRadii = validate(interactionRadii, "interaction radii");
+        this.maxRadii = validate(maxRadii, "max radii");
+        this.cellsPerSide = validate(cellsPerSide, "cells per side");
+        this.boundaryConditions = validate(boundaryConditions, "boundary conditions");
+        this.seeds = validate(seeds, "seeds");
+        this.maxEstimatedBytes = maxEstimatedBytes;
+    }
+
+    /**
+     * Reads a matrix from the given YAML resource, using the profiles active in it
+     * (i.e those in the {@code spring.profiles.active} system property, or else in the resource itself).
+     *
+     * @param resource The YAML {@link Resource}.
+     * @return The read matrix.
+     * @throws IllegalArgumentException If any parameter is missing or not valid.
+     */
+    public static ScenarioMatrix load(Resource resource) throws IllegalArgumentException {
+        Assert.notNull(resource, "The resource must not be null.");
+        String profiles = System.getProperty(ACTIVE_PROFILES);
+        if (profiles == null) {
+            profiles = read(resource, Collections.emptySet()).getProperty(ACTIVE_PROFILES, "");
+        }
+        return load(resource, StringUtils.commaDelimitedListToStringArray(profiles));
+    }
+
+    /**
+     * Reads a matrix from the given YAML resource, using the given profiles.
+     *
+     * @param resource The YAML {@link Resource}.
+     * @param profiles The active profiles.
+     * @return The read matrix.
+     * @throws IllegalArgumentException If any parameter is missing or not valid.
+     */
+    public static ScenarioMatrix load(Resource resource, String... profiles) throws IllegalArgumentException {
+        Assert.notNull(resource, "The resource must not be null.");
+        Assert.notNull(profiles, "The profiles must not be null.");
+        final Set<String> activeProfiles = Arrays.stream(profiles)
+                .map(StringUtils::trimWhitespace)
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toSet());
+        final Properties properties = read(resource, activeProfiles);
+        return new ScenarioMatrix(
+                values(properties, "side-lengths", Double::valueOf),
+                values(properties, "amounts-of-particles", Integer::valueOf),
+                values(properties, "interaction-radii", Double::valueOf),
+                values(properties, "max-radii", Double::valueOf),
+                values(properties, "cells-per-side", Integer::valueOf),
+                values(properties, "boundary-conditions",
+                        value -> BoundaryCondition.valueOf(value.toUpperCase(Locale.ROOT))),
+                values(properties, "seeds", Long::valueOf),
+                properties.containsKey(PREFIX + MAX_ESTIMATED_BYTES) ?
+                        values(properties, MAX_ESTIMATED_BYTES, Long::valueOf).get(0) : Long.MAX_VALUE);
+    }
+
+    /**
+     * Builds all the {@link Scenario}s of this matrix, varying seeds first (and side lengths last),
+     * except for those estimated to need more memory than the biggest allowed.
+     *
+     * @return The {@link List} of {@link Scenario}s.
+     * @throws IllegalArgumentException If any combination of values is not a valid {@link Scenario}.
+     */
+    public List<Scenario> getScenarios() throws IllegalArgumentException {
+        final List<Scenario> scenarios = new ArrayList<>();
+        for (double sideLength : sideLengths) {
+            for (int amountOfParticles : amountsOfParticles) {
+                for (double interactionRadius : interactionRadii) {
+                    for (double maxRadius : maxRadii) {
+                        for (int M : cellsPerSide) {
+                            for (BoundaryCondition boundaryCondition : boundaryConditions) {
+                                for (long seed : seeds) {
+                                    final Scenario scenario = new Scenario(sideLength, amountOfParticles,
+                                            interactionRadius, maxRadius, M, boundaryCondition, seed);
+                                    if (scenario.estimatedBytes() <= maxEstimatedBytes) {
+                                        scenarios.add(scenario);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Reads the properties of the documents of the given resource that match the given profiles.
+     *
+     * @param resource The YAML {@link Resource}.
+     * @param profiles The active profiles.
+     * @return The read {@link Properties}.
+     */
+    private static Properties read(Resource resource, Set<String> profiles) {
+        final YamlPropertiesFactoryBean factory = new YamlPropertiesFactoryBean();
+        factory.setResources(resource);
+        // Documents without profiles abstain, so they are always used (and overridden by matching ones)
+        factory.setDocumentMatchers(properties -> {
+            final Set<String> documentProfiles = new TreeSet<>();
+            properties.stringPropertyNames().stream()
+                    .filter(name -> name.equals(DOCUMENT_PROFILES) || name.startsWith(DOCUMENT_PROFILES + "["))
+                    .map(properties::getProperty)
+                    .flatMap(value -> Arrays.stream(StringUtils.commaDelimitedListToStringArray(value)))
+                    .map(StringUtils::trimWhitespace)
+                    .forEach(documentProfiles::add);
+            if (documentProfiles.isEmpty()) {
+                return YamlProcessor.MatchStatus.ABSTAIN;
+            }
+            return documentProfiles.stream().anyMatch(profiles::contains) ?
+                    YamlProcessor.MatchStatus.FOUND : YamlProcessor.MatchStatus.NOT_FOUND;
+        });
+        return factory.getObject();
+    }
+
+    /**
+     * Parses the comma separated values of the given matrix property.
+     *
+     * @param properties The read {@link Properties}.
+     * @param name       The property name (without the prefix).
+     * @param parser     A {@link Function} that parses each value.
+     * @param <T>        The concrete type of the values.
+     * @return The parsed values.
+     * @throws IllegalArgumentException If the property is missing, or any value is not valid.
+     */
+    private static <T> List<T> values(Properties properties, String name, Function<String, T> parser)
+            throws IllegalArgumentException {
+        final String value = properties.getProperty(PREFIX + name);
+        if (!StringUtils.hasText(value)) {
+            throw new IllegalArgumentException("Missing scenario property: " + PREFIX + name);
+        }
+        try {
+            return Arrays.stream(StringUtils.commaDelimitedListToStringArray(value))
+                    .map(StringUtils::trimWhitespace)
+                    .map(parser)
+                    .collect(Collectors.toList());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid scenario property: " + PREFIX + name + " = " + value, e);
+        }
+    }
+
+    /**
+     * Checks that the given list of values is not empty, returning an immutable copy of it.
+     *
+     * @param values      The values.
+     * @param description A description of the values, used in the error message.
+     * @param <T>         The concrete type of the values.
+     * @return An immutable copy of the values.
+     * @throws IllegalArgumentException If the list is empty.
+     */
+    private static <T> List<T> validate(List<T> values, String description) throws IllegalArgumentException {
+        Assert.notNull(values, "The " + description + " must not be null.");
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one value of " + description);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(values));
+    }
+}
@@ -5,19 +5,22 @@ import org.springframework.util.Assert;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * Represents a space in which the simulation is done.
- * Note that this is a squared space.
+ * Note that this is a rectangular space, which is squared unless a width and a height are given.
  */
 public class Space {
 
     /**
-     * The length of the side of this space.
+     * The length of this space in the 'x' axis.
      */
-    private final double sideLength;
+    private final double width;
+
+    /**
+     * The length of this space in the 'y' axis.
+     */
+    private final double height;
 
     /**
      * The particles in this space.
@@ -34,17 +37,59 @@ public class Space {
      *                                  or if any particle in the {@code particles} list is not part of this space.
      */
     public Space(double sideLength, List<Particle> particles) throws IllegalArgumentException {
-        validateSideLength(sideLength);
-        validateParticlesList(particles, sideLength);
-        this.sideLength = sideLength;
+        this(sideLength, sideLength, particles);
+    }
+
+    /**
+     * Constructor for a rectangular space.
+     *
+     * @param width     The length of this space in the 'x' axis.
+     * @param height    The length of this space in the 'y' axis.
+     * @param particles The particles in this space.
+     * @throws IllegalArgumentException If the width or the height is not positive,
+     *                                  if the {@code particles} list is {@code null},
+     *                                  or if any particle in the {@code particles} list is not part of this space.
+     */
+    public Space(double width, double height, List<Particle> particles) throws IllegalArgumentException {
+        validateSideLength(width);
+        validateSideLength(height);
+        validateParticlesList(particles, width, height);
+        this.width = width;
+        this.height = height;
         this.particles = particles;
     }
 
     /**
      * @return The length of the side of this space.
+     * @throws IllegalStateException If this space is not squared.
      */
-    public double getSideLength() {
-        return sideLength;
+    public double getSideLength() throws IllegalStateException {
+        if (!isSquared()) {
+            throw new IllegalStateException("The space is not squared. " +
+                    "Values were: width = " + width + ", height = " + height + ".");
+        }
+        return width;
+    }
+
+    /**
+     * @return The length of this space in the 'x' axis.
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The length of this space in the 'y' axis.
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * @return {@code true} if the width and the height of this space are the same, or {@code false} otherwise.
+     */
+    public boolean isSquared() {
+        return Double.compare(width, height) == 0;
     }
 
     /**
@@ -66,20 +111,30 @@ public class Space {
      */
     public static Space randomSpace(double sideLength, int amountOfParticles, boolean allPointLikeParticles)
             throws IllegalArgumentException {
+        return randomSpace(sideLength, amountOfParticles, allPointLikeParticles, new Random().nextLong());
+    }
+
+    /**
+     * Creates a random space given a side length, an amount of particles and a seed,
+     * so the same space is created each time the same values are given.
+     * A flag can be set in order to control if particles are point-like or if they have a radius.
+     *
+     * @param sideLength            The length of the side of the generated space.
+     * @param amountOfParticles     The amount of particles the space will have.
+     * @param allPointLikeParticles A flag that indicates if the randomly created particles have radius or not.
+     * @param seed                  The seed from which particles are generated.
+     * @return The generated space.
+     * @throws IllegalArgumentException If the side length is not positive, or if the amount of particles is negative.
+     * @implNote Particles are generated in parallel by a {@link SpaceGenerator}.
+     */
+    public static Space randomSpace(double sideLength, int amountOfParticles, boolean allPointLikeParticles,
+                                    long seed) throws IllegalArgumentException {
         validateSideLength(sideLength);
         if (amountOfParticles < 0) {
             throw new IllegalArgumentException("The amount of particles must not be negative.");
         }
-        final List<Particle> particles = IntStream.range(0, amountOfParticles)
-                .mapToObj(idx -> {
-                    final double xPosition = new Random().nextDouble() * sideLength;
-                    final double yPosition = new Random().nextDouble() * sideLength;
-                    final double radius = allPointLikeParticles ? 0.0 : new Random().nextDouble() * sideLength;
-
-                    return new Particle(xPosition, yPosition, radius);
-                })
-                .collect(Collectors.toList());
-        return new Space(sideLength, particles);
+        final double maxRadius = allPointLikeParticles ? 0.0 : sideLength;
+        return new SpaceGenerator(seed).generate(sideLength, amountOfParticles, 0.0, maxRadius).toSpace();
     }
 
     /**
@@ -97,19 +152,20 @@ public class Space {
     /**
      * Checks if the given {@code particles} {@link List} is legal.
      *
-     * @param particles  The {@code particles} {@link List} to be validated.
-     * @param sideLength The side length, which states a limit for the particles position.
+     * @param particles The {@code particles} {@link List} to be validated.
+     * @param width     The width, which states a limit for the particles position in the 'x' axis.
+     * @param height    The height, which states a limit for the particles position in the 'y' axis.
      * @throws IllegalArgumentException In case the list is not valid.
      */
-    private static void validateParticlesList(List<Particle> particles, double sideLength)
+    private static void validateParticlesList(List<Particle> particles, double width, double height)
             throws IllegalArgumentException {
         Assert.notNull(particles, "The particles list must not be null.");
         final long legalParticlesAmount = particles.stream()
                 .map(Particle::getPosition)
                 .filter(point -> point.getX() >= 0)
-                .filter(point -> point.getX() <= sideLength)
+                .filter(point -> point.getX() <= width)
                 .filter(point -> point.getY() >= 0)
-                .filter(point -> point.getY() <= sideLength)
+                .filter(point -> point.getY() <= height)
                 .count();
         if (legalParticlesAmount != particles.size()) {
             throw new IllegalArgumentException("There are particles that are not part of this space");
@@ -0,0 +1,199 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Generates random particles from a seed, so the same particles are generated each time.
+ * <p>
+ * Particles can be generated in parallel (with their positions uniformly distributed, so they might overlap),
+ * or as hard disks (i.e without overlapping), placing them one by one and rejecting overlapping placements.
+ */
+public class SpaceGenerator {
+
+    /**
+     * The amount of particles generated by each task when generating in parallel.
+     */
+    static final int CHUNK_SIZE = 1 << 14;
+
+    /**
+     * The amount of placements tried for each particle before giving up in hard disk mode.
+     */
+    private static final int MAX_ATTEMPTS = 10_000;
+
+    /**
+     * The seed from which particles are generated.
+     */
+    private final long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param seed The seed from which particles are generated.
+     */
+    public SpaceGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return The seed from which particles are generated.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Generates particles with uniformly distributed positions and radii, which might overlap.
+     * <p>
+     * Particles are generated in parallel, in chunks of {@link #CHUNK_SIZE}, each of them with its own random
+     * generator split from the seeded one in chunk order, so results do not depend on the amount of threads.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles.
+     * @param minRadius         The smallest particle radius.
+     * @param maxRadius         The biggest particle radius.
+     * @return A {@link ParticleStore} holding the generated particles.
+     * @throws IllegalArgumentException If any value is out of range.
+     */
+    public ParticleStore generate(double sideLength, int amountOfParticles, double minRadius, double maxRadius)
+            throws IllegalArgumentException {
+        validate(sideLength, amountOfParticles, minRadius, maxRadius);
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        final double[] radius = new double[amountOfParticles];
+        final int amountOfChunks = (amountOfParticles + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final SplittableRandom root = new SplittableRandom(seed);
+        final SplittableRandom[] randoms = new SplittableRandom[amountOfChunks];
+        for (int chunk = 0; chunk < amountOfChunks; chunk++) {
+            randoms[chunk] = root.split();
+        }
+        IntStream.range(0, amountOfChunks).parallel().forEach(chunk -> {
+            final SplittableRandom random = randoms[chunk];
+            final int to = Math.min(amountOfParticles, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < to; i++) {
+                x[i] = random.nextDouble() * sideLength;
+                y[i] = random.nextDouble() * sideLength;
+                radius[i] = nextRadius(random, minRadius, maxRadius);
+            }
+        });
+        return new ParticleStore(sideLength, x, y, radius);
+    }
+
+    /**
+     * Generates hard disks (i.e particles that do not overlap), by random sequential addition:
+     * each particle is placed at a uniformly distributed position, which is rejected if it overlaps
+     * an already placed particle.
+     * <p>
+     * Placed particles are kept in a grid of cells whose side is bigger than the biggest particle diameter,
+     * so each placement is checked only against the particles in the neighboring cells.
+     * Placements depend on the previous ones, so particles are generated in the calling thread.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles.
+     * @param minRadius         The smallest particle radius.
+     * @param maxRadius         The biggest particle radius.
+     * @param boundaryCondition The boundary conditions of the space (with periodic ones,
+     *                          particles must not overlap the images of the others either).
+     * @return A {@link ParticleStore} holding the generated particles.
+     * @throws IllegalArgumentException If any value is out of range.
+     * @throws IllegalStateException    If a particle can not be placed (i.e the space is too crowded).
+     */
+    public ParticleStore generateNonOverlapping(double sideLength, int amountOfParticles, double minRadius,
+                                                double maxRadius, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException, IllegalStateException {
+        validate(sideLength, amountOfParticles, minRadius, maxRadius);
+        Assert.notNull(boundaryCondition, "The boundary condition must not be null.");
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        // Cells bigger than a diameter, but not many more than particles
+        final int M = Math.min(GridPlanner.maxCellsPerSide(sideLength, 2 * maxRadius),
+                Math.max(1, (int) Math.sqrt(amountOfParticles)));
+        final double factor = M / sideLength;
+        final int[] head = new int[M * M];
+        final int[] next = new int[amountOfParticles];
+        Arrays.fill(head, -1);
+
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        final double[] radius = new double[amountOfParticles];
+        final SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < amountOfParticles; i++) {
+            radius[i] = nextRadius(random, minRadius, maxRadius);
+            int attempts = 0;
+            boolean overlaps;
+            do {
+                if (attempts++ == MAX_ATTEMPTS) {
+                    throw new IllegalStateException("Could not place particle " + i + " after " + MAX_ATTEMPTS
+                            + " attempts. The space is too crowded");
+                }
+                x[i] = random.nextDouble() * sideLength;
+                y[i] = random.nextDouble() * sideLength;
+                overlaps = false;
+                final int row = CellIndexEngine.cellIndex(y[i], factor, M);
+                final int column = CellIndexEngine.cellIndex(x[i], factor, M);
+                // With less than 3 cells per side, neighboring cells would wrap onto the same ones, so all are checked
+                final int fromRow = M < 3 ? 0 : periodic ? row - 1 : Math.max(0, row - 1);
+                final int toRow = M < 3 ? M - 1 : periodic ? row + 1 : Math.min(M - 1, row + 1);
+                final int fromColumn = M < 3 ? 0 : periodic ? column - 1 : Math.max(0, column - 1);
+                final int toColumn = M < 3 ? M - 1 : periodic ? column + 1 : Math.min(M - 1, column + 1);
+                for (int neighborRow = fromRow; neighborRow <= toRow && !overlaps; neighborRow++) {
+                    for (int neighborColumn = fromColumn; neighborColumn <= toColumn && !overlaps; neighborColumn++) {
+                        final int cell = Math.floorMod(neighborRow, M) * M + Math.floorMod(neighborColumn, M);
+                        for (int j = head[cell]; j != -1 && !overlaps; j = next[j]) {
+                            double dx = x[i] - x[j];
+                            double dy = y[i] - y[j];
+                            if (periodic) {
+                                dx = BruteForceEngine.minimumImage(dx, sideLength);
+                                dy = BruteForceEngine.minimumImage(dy, sideLength);
+                            }
+                            final double contact = radius[i] + radius[j];
+                            overlaps = dx * dx + dy * dy < contact * contact;
+                        }
+                    }
+                }
+            } while (overlaps);
+            final int cell = CellIndexEngine.cellIndex(y[i], factor, M) * M
+                    + CellIndexEngine.cellIndex(x[i], factor, M);
+            next[i] = head[cell];
+            head[cell] = i;
+        }
+        return new ParticleStore(sideLength, x, y, radius);
+    }
+
+    /**
+     * Generates a radius uniformly distributed between the given values.
+     *
+     * @param random    The {@link SplittableRandom} used to generate the radius.
+     * @param minRadius The smallest particle radius.
+     * @param maxRadius The biggest particle radius.
+     * @return The generated radius.
+     */
+    private static double nextRadius(SplittableRandom random, double minRadius, double maxRadius) {
+        return minRadius == maxRadius ? minRadius : minRadius + random.nextDouble() * (maxRadius - minRadius);
+    }
+
+    /**
+     * Checks that the given generation parameters are valid.
+     *
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles.
+     * @param minRadius         The smallest particle radius.
+     * @param maxRadius         The biggest particle radius.
+     * @throws IllegalArgumentException If any value is out of range.
+     */
+    private static void validate(double sideLength, int amountOfParticles, double minRadius, double maxRadius)
+            throws IllegalArgumentException {
+        if (Double.compare(sideLength, 0.0) <= 0) {
+            throw new IllegalArgumentException("The side length must be positive");
+        }
+        if (amountOfParticles < 0) {
+            throw new IllegalArgumentException("The amount of particles must not be negative");
+        }
+        if (!(minRadius >= 0) || !(maxRadius >= minRadius)) {
+            throw new IllegalArgumentException("Radii must not be negative, and the biggest must not be smaller"
+                    + " than the smallest");
+        }
+    }
+}
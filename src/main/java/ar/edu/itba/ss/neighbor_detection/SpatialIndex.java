@@ -0,0 +1,453 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable grid of {@code M * M} cells over the particles of a space, which answers radius
+ * and k-nearest queries by expanding rings of cells around the queried position.
+ * <p>
+ * Distances are measured as in {@link Particle#distanceTo(Particle)} (i.e between borders):
+ * from a point to a particle, the distance is the distance to its center minus its radius,
+ * and from a particle to another one, both radii are subtracted.
+ * Particles are identified by their index in the {@link ParticleStore} (or {@link Space}) the index was built from.
+ * <p>
+ * Instances never change once built, so they can be queried concurrently from any amount of threads.
+ * Single queries write their results into caller-supplied buffers, so they do not allocate memory.
+ *
+ * @implNote Open boundary conditions are assumed (i.e distances do not wrap around the borders),
+ * and only squared spaces are supported.
+ */
+public final class SpatialIndex {
+
+    /**
+     * The length of the side of the space.
+     */
+    private final double sideLength;
+
+    /**
+     * The amount of cells per side.
+     */
+    private final int M;
+
+    /**
+     * The amount of cells per side divided by the side length.
+     */
+    private final double factor;
+
+    /**
+     * The biggest particle radius.
+     */
+    private final double maxRadius;
+
+    /**
+     * For each cell, the position in {@code cellParticles} where its particles start (with an extra value at the end).
+     */
+    private final int[] cellStart;
+
+    /**
+     * The particle indexes, sorted by cell.
+     */
+    private final int[] cellParticles;
+
+    /**
+     * The 'x' value of each particle's position, sorted by cell.
+     */
+    private final double[] sortedX;
+
+    /**
+     * The 'y' value of each particle's position, sorted by cell.
+     */
+    private final double[] sortedY;
+
+    /**
+     * The radius of each particle, sorted by cell.
+     */
+    private final double[] sortedRadius;
+
+    /**
+     * The 'x' value of each particle's position, by particle index.
+     */
+    private final double[] x;
+
+    /**
+     * The 'y' value of each particle's position, by particle index.
+     */
+    private final double[] y;
+
+    /**
+     * The radius of each particle, by particle index.
+     */
+    private final double[] radius;
+
+    /**
+     * Constructor.
+     *
+     * @param store The {@link ParticleStore} holding the particles (copied, so later changes are not seen).
+     * @param M     The amount of cells per side.
+     * @throws IllegalArgumentException If {@code M} is not positive.
+     */
+    private SpatialIndex(ParticleStore store, int M) throws IllegalArgumentException {
+        final CellGrid grid = new CellGrid(store.getSideLength(), M);
+        grid.bin(store);
+        final int amountOfParticles = store.size();
+        this.sideLength = store.getSideLength();
+        this.M = M;
+        this.factor = M / sideLength;
+        this.maxRadius = store.getMaxRadius();
+        this.cellStart = grid.getCellStart().clone();
+        this.cellParticles = Arrays.copyOf(grid.getCellParticles(), amountOfParticles);
+        this.sortedX = Arrays.copyOf(grid.getSortedX(), amountOfParticles);
+        this.sortedY = Arrays.copyOf(grid.getSortedY(), amountOfParticles);
+        this.sortedRadius = Arrays.copyOf(grid.getSortedRadius(), amountOfParticles);
+        this.x = store.getX().clone();
+        this.y = store.getY().clone();
+        this.radius = store.getRadius().clone();
+    }
+
+    /**
+     * Builds a {@link SpatialIndex} over the particles of the given {@code store}.
+     *
+     * @param store The {@link ParticleStore} holding the particles (copied, so later changes are not seen).
+     * @param M     The amount of cells per side (any positive value is valid, as cells are expanded as needed).
+     * @return The built {@link SpatialIndex}.
+     * @throws IllegalArgumentException If {@code M} is not positive, or if the space is not squared.
+     */
+    public static SpatialIndex of(ParticleStore store, int M) throws IllegalArgumentException {
+        Assert.notNull(store, "The particle store must not be null.");
+        store.checkSquared("SpatialIndex");
+        return new SpatialIndex(store, M);
+    }
+
+    /**
+     * Builds a {@link SpatialIndex} over the particles of the given {@link Space}
+     * (identified by their position in {@link Space#getParticles()}).
+     *
+     * @param space The {@link Space} holding the particles.
+     * @param M     The amount of cells per side (any positive value is valid, as cells are expanded as needed).
+     * @return The built {@link SpatialIndex}.
+     * @throws IllegalArgumentException If {@code M} is not positive, or if the space is not squared.
+     */
+    public static SpatialIndex of(Space space, int M) throws IllegalArgumentException {
+        return of(ParticleStore.fromSpace(space), M);
+    }
+
+    /**
+     * @return The amount of indexed particles.
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @return The amount of cells per side.
+     */
+    public int getM() {
+        return M;
+    }
+
+    /**
+     * Finds the particles whose distance to the given point is at most {@code distance}.
+     *
+     * @param pointX   The 'x' value of the point.
+     * @param pointY   The 'y' value of the point.
+     * @param distance The biggest distance.
+     * @param ids      The buffer where the found particle indexes are written (in no particular order).
+     * @return The amount of found particles, which might be bigger than the buffer length
+     * (in which case only the first found particles are written, and the query should be repeated with a bigger one).
+     * @throws IllegalArgumentException If the distance is negative.
+     */
+    public int withinDistance(double pointX, double pointY, double distance, int[] ids)
+            throws IllegalArgumentException {
+        Assert.notNull(ids, "The ids buffer must not be null.");
+        checkDistance(distance);
+        return within(pointX, pointY, 0, distance, -1, ids, 0, ids.length);
+    }
+
+    /**
+     * Finds the particles (other than the given one) whose distance to the given particle is at most
+     * {@code distance} (i.e its neighbors for that interaction radius).
+     *
+     * @param particle The index of the particle.
+     * @param distance The biggest distance.
+     * @param ids      The buffer where the found particle indexes are written (in no particular order).
+     * @return The amount of found particles, which might be bigger than the buffer length
+     * (in which case only the first found particles are written, and the query should be repeated with a bigger one).
+     * @throws IllegalArgumentException If the particle index is not valid, or if the distance is negative.
+     */
+    public int withinDistance(int particle, double distance, int[] ids) throws IllegalArgumentException {
+        Assert.notNull(ids, "The ids buffer must not be null.");
+        checkParticle(particle);
+        checkDistance(distance);
+        return within(x[particle], y[particle], radius[particle], distance, particle, ids, 0, ids.length);
+    }
+
+    /**
+     * Finds the particles (other than each given one) whose distance to each of the given particles is at most
+     * {@code distance}, writing the results of all particles one after the other.
+     *
+     * @param particles The indexes of the particles.
+     * @param distance  The biggest distance.
+     * @param offsets   A buffer with one position per particle, plus one, where the position in {@code ids}
+     *                  where the results of each particle start is written (with the total at the end).
+     * @param ids       The buffer where the found particle indexes are written.
+     * @return The total amount of found particles, which might be bigger than the buffer length
+     * (in which case only those results that fit are written, and the query should be repeated with a bigger one).
+     * @throws IllegalArgumentException If any particle index is not valid, if the distance is negative,
+     *                                  or if the offsets buffer is too small.
+     */
+    public int withinDistance(int[] particles, double distance, int[] offsets, int[] ids)
+            throws IllegalArgumentException {
+        Assert.notNull(particles, "The particles must not be null.");
+        Assert.notNull(offsets, "The offsets buffer must not be null.");
+        Assert.notNull(ids, "The ids buffer must not be null.");
+        checkDistance(distance);
+        if (offsets.length < particles.length + 1) {
+            throw new IllegalArgumentException("The offsets buffer must have one position per particle, plus one");
+        }
+        int total = 0;
+        for (int q = 0; q < particles.length; q++) {
+            final int particle = particles[q];
+            checkParticle(particle);
+            offsets[q] = total;
+            total += within(x[particle], y[particle], radius[particle], distance, particle, ids, total, ids.length);
+        }
+        offsets[particles.length] = total;
+        return total;
+    }
+
+    /**
+     * Finds the {@code k} particles nearest to the given point.
+     *
+     * @param pointX    The 'x' value of the point.
+     * @param pointY    The 'y' value of the point.
+     * @param k         The amount of particles to be found.
+     * @param ids       The buffer where the found particle indexes are written, from the nearest one
+     *                  (at least {@code k} long).
+     * @param distances The buffer where the distance to each found particle is written (at least {@code k} long).
+     * @return The amount of found particles (lower than {@code k} only if there are not enough particles).
+     * @throws IllegalArgumentException If {@code k} is not positive, or if the buffers are too small.
+     */
+    public int nearest(double pointX, double pointY, int k, int[] ids, double[] distances)
+            throws IllegalArgumentException {
+        checkNearestBuffers(1, k, ids, distances);
+        return nearest(pointX, pointY, 0, k, -1, ids, distances, 0);
+    }
+
+    /**
+     * Finds the {@code k} particles nearest to the given particle (other than itself).
+     *
+     * @param particle  The index of the particle.
+     * @param k         The amount of particles to be found.
+     * @param ids       The buffer where the found particle indexes are written, from the nearest one
+     *                  (at least {@code k} long).
+     * @param distances The buffer where the distance to each found particle is written (at least {@code k} long).
+     * @return The amount of found particles (lower than {@code k} only if there are not enough particles).
+     * @throws IllegalArgumentException If the particle index is not valid, if {@code k} is not positive,
+     *                                  or if the buffers are too small.
+     */
+    public int nearest(int particle, int k, int[] ids, double[] distances) throws IllegalArgumentException {
+        checkParticle(particle);
+        checkNearestBuffers(1, k, ids, distances);
+        return nearest(x[particle], y[particle], radius[particle], k, particle, ids, distances, 0);
+    }
+
+    /**
+     * Finds the {@code k} particles nearest to each of the given particles (other than itself).
+     * The results of particle {@code q} are written from position {@code q * k} of the buffers
+     * (with index {@code -1} and infinite distance in the positions that could not be filled).
+     * Particles are queried in parallel, in the common {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @param particles The indexes of the particles.
+     * @param k         The amount of particles to be found for each particle.
+     * @param ids       The buffer where the found particle indexes are written (at least {@code k} per particle).
+     * @param distances The buffer where the distance to each found particle is written
+     *                  (at least {@code k} per particle).
+     * @throws IllegalArgumentException If any particle index is not valid, if {@code k} is not positive,
+     *                                  or if the buffers are too small.
+     */
+    public void nearest(int[] particles, int k, int[] ids, double[] distances) throws IllegalArgumentException {
+        Assert.notNull(particles, "The particles must not be null.");
+        checkNearestBuffers(particles.length, k, ids, distances);
+        for (int particle : particles) {
+            checkParticle(particle);
+        }
+        IntStream.range(0, particles.length).parallel().forEach(q -> {
+            final int particle = particles[q];
+            nearest(x[particle], y[particle], radius[particle], k, particle, ids, distances, q * k);
+        });
+    }
+
+    /**
+     * Finds the particles whose distance to the given position is at most {@code distance}.
+     *
+     * @param pointX     The 'x' value of the position.
+     * @param pointY     The 'y' value of the position.
+     * @param selfRadius The radius of the querying particle (zero for a point).
+     * @param distance   The biggest distance.
+     * @param exclude    The index of the particle to be excluded (or {@code -1}).
+     * @param ids        The buffer where the found particle indexes are written.
+     * @param from       The position of the buffer from which indexes are written.
+     * @param to         The length of the buffer to be used.
+     * @return The amount of found particles (even those that did not fit in the buffer).
+     */
+    private int within(double pointX, double pointY, double selfRadius, double distance, int exclude,
+                       int[] ids, int from, int to) {
+        final double reach = distance + selfRadius + maxRadius;
+        final int fromRow = clamp(pointY - reach);
+        final int toRow = clamp(pointY + reach);
+        final int fromColumn = clamp(pointX - reach);
+        final int toColumn = clamp(pointX + reach);
+        int count = 0;
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int cell = row * M + fromColumn; cell <= row * M + toColumn; cell++) {
+                for (int b = cellStart[cell]; b < cellStart[cell + 1]; b++) {
+                    final double dx = pointX - sortedX[b];
+                    final double dy = pointY - sortedY[b];
+                    final double limit = distance + selfRadius + sortedRadius[b];
+                    if (dx * dx + dy * dy <= limit * limit && cellParticles[b] != exclude) {
+                        if (from + count < to) {
+                            ids[from + count] = cellParticles[b];
+                        }
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the {@code k} particles nearest to the given position, visiting rings of cells around it
+     * until no unvisited particle can be nearer than the {@code k}-th found one.
+     *
+     * @param pointX     The 'x' value of the position.
+     * @param pointY     The 'y' value of the position.
+     * @param selfRadius The radius of the querying particle (zero for a point).
+     * @param k          The amount of particles to be found.
+     * @param exclude    The index of the particle to be excluded (or {@code -1}).
+     * @param ids        The buffer where the found particle indexes are written, from the nearest one.
+     * @param distances  The buffer where the distance to each found particle is written.
+     * @param from       The position of the buffers from which results are written.
+     * @return The amount of found particles.
+     */
+    private int nearest(double pointX, double pointY, double selfRadius, int k, int exclude,
+                        int[] ids, double[] distances, int from) {
+        Arrays.fill(ids, from, from + k, -1);
+        Arrays.fill(distances, from, from + k, Double.POSITIVE_INFINITY);
+        final int centerRow = clamp(pointY);
+        final int centerColumn = clamp(pointX);
+        final double cellSide = sideLength / M;
+        int found = 0;
+        for (int ring = 0; ring < M; ring++) {
+            final int fromRow = Math.max(0, centerRow - ring);
+            final int toRow = Math.min(M - 1, centerRow + ring);
+            for (int row = fromRow; row <= toRow; row++) {
+                // Inner rows of the ring only have its leftmost and rightmost cells
+                final boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                final int step = edgeRow ? 1 : 2 * ring;
+                for (int column = centerColumn - ring; column <= centerColumn + ring; column += step) {
+                    if (column < 0 || column >= M) {
+                        continue;
+                    }
+                    final int cell = row * M + column;
+                    for (int b = cellStart[cell]; b < cellStart[cell + 1]; b++) {
+                        if (cellParticles[b] == exclude) {
+                            continue;
+                        }
+                        final double dx = pointX - sortedX[b];
+                        final double dy = pointY - sortedY[b];
+                        final double distance = Math.sqrt(dx * dx + dy * dy) - selfRadius - sortedRadius[b];
+                        if (found < k || distance < distances[from + k - 1]) {
+                            found = Math.min(k, found + 1);
+                            insert(cellParticles[b], distance, ids, distances, from, from + found);
+                        }
+                    }
+                }
+            }
+            // Unvisited cells are at least 'ring' cells away from the queried position
+            if (found == k && distances[from + k - 1] <= ring * cellSide - selfRadius - maxRadius) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Inserts a result into the sorted results, dropping the last one.
+     *
+     * @param id        The particle index.
+     * @param distance  The distance to the particle.
+     * @param ids       The buffer with the found particle indexes.
+     * @param distances The buffer with the distance to each found particle.
+     * @param from      The position where the results start.
+     * @param to        The position where the results end (the last one is overwritten).
+     */
+    private static void insert(int id, double distance, int[] ids, double[] distances, int from, int to) {
+        int position = to - 1;
+        while (position > from && distances[position - 1] > distance) {
+            ids[position] = ids[position - 1];
+            distances[position] = distances[position - 1];
+            position--;
+        }
+        ids[position] = id;
+        distances[position] = distance;
+    }
+
+    /**
+     * Calculates the row or column for the given coordinate, clamped to the grid.
+     *
+     * @param coordinate The coordinate value (which might be outside the space).
+     * @return The row or column, between 0 and {@code M - 1}.
+     */
+    private int clamp(double coordinate) {
+        return Math.max(0, CellIndexEngine.cellIndex(Math.max(0, coordinate), factor, M));
+    }
+
+    /**
+     * Checks that the given particle index is valid.
+     *
+     * @param particle The particle index.
+     * @throws IllegalArgumentException If the index is not valid.
+     */
+    private void checkParticle(int particle) throws IllegalArgumentException {
+        if (particle < 0 || particle >= x.length) {
+            throw new IllegalArgumentException("Particle " + particle + " is not indexed");
+        }
+    }
+
+    /**
+     * Checks that the given distance is valid.
+     *
+     * @param distance The distance.
+     * @throws IllegalArgumentException If the distance is negative.
+     */
+    private static void checkDistance(double distance) throws IllegalArgumentException {
+        if (!(distance >= 0)) {
+            throw new IllegalArgumentException("The distance must not be negative");
+        }
+    }
+
+    /**
+     * Checks that the given buffers can hold the results of a k-nearest query.
+     *
+     * @param queries   The amount of queries.
+     * @param k         The amount of particles to be found per query.
+     * @param ids       The buffer for the found particle indexes.
+     * @param distances The buffer for the distance to each found particle.
+     * @throws IllegalArgumentException If {@code k} is not positive, or if the buffers are too small.
+     */
+    private static void checkNearestBuffers(int queries, int k, int[] ids, double[] distances)
+            throws IllegalArgumentException {
+        Assert.notNull(ids, "The ids buffer must not be null.");
+        Assert.notNull(distances, "The distances buffer must not be null.");
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        if (ids.length < (long) queries * k || distances.length < (long) queries * k) {
+            throw new IllegalArgumentException("The buffers must have at least k positions per query");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * Reorders the particles of a {@link ParticleStore} along a Z-order (i.e Morton) curve over the cells of a grid,
+ * so particles that are close in space are also close in memory.
+ * For rectangular spaces, the grid has {@code M} cells along each axis (so cells are rectangular too).
+ * <p>
+ * The reorderer keeps the permutation between the reordered store and the original one,
+ * so results can be mapped back to the original particle indexes.
+ * In time-stepped simulations, {@link #reorderIfNeeded(ParticleStore)} sorts the particles again
+ * only when their order has degraded (i.e when too many consecutive particles are no longer in curve order,
+ * at the granularity of small blocks of cells, so particles moving to a nearby cell do not count).
+ */
+public class SpatialReorderer {
+
+    /**
+     * The default fraction of consecutive particles out of curve order from which particles are sorted again.
+     */
+    private static final double DEFAULT_DEGRADATION_THRESHOLD = 0.1;
+
+    /**
+     * The amount of bits per axis dropped from the keys when checking whether the order has degraded
+     * (i.e particles moving within blocks of {@code 8 * 8} cells do not count as out of order).
+     */
+    private static final int BLOCK_BITS = 3;
+
+    /**
+     * The amount of bits used to store the particle index next to its key when sorting.
+     */
+    private static final int INDEX_BITS = 31;
+
+    /**
+     * The amount of cells per side of the grid over which the curve is drawn.
+     */
+    private final int M;
+
+    /**
+     * The fraction of consecutive particles out of curve order from which particles are sorted again.
+     */
+    private final double degradationThreshold;
+
+    /**
+     * For each particle of the reordered store, its index in the original store
+     * (or {@code null} if no store was reordered yet).
+     */
+    private int[] permutation;
+
+    /**
+     * The amount of times particles were sorted.
+     */
+    private int amountOfSorts;
+
+    /**
+     * Constructor, using the default degradation threshold.
+     *
+     * @param M The amount of cells per side of the grid over which the curve is drawn.
+     * @throws IllegalArgumentException If {@code M} is not positive.
+     */
+    public SpatialReorderer(int M) throws IllegalArgumentException {
+        this(M, DEFAULT_DEGRADATION_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param M                    The amount of cells per side of the grid over which the curve is drawn.
+     * @param degradationThreshold The fraction of consecutive particles out of curve order
+     *                             from which particles are sorted again (between 0 and 1).
+     * @throws IllegalArgumentException If {@code M} is not positive, or if the threshold is not between 0 and 1.
+     */
+    public SpatialReorderer(int M, double degradationThreshold) throws IllegalArgumentException {
+        if (M <= 0) {
+            throw new IllegalArgumentException("There must be at least one grid per side");
+        }
+        if (!(degradationThreshold >= 0 && degradationThreshold <= 1)) {
+            throw new IllegalArgumentException("The degradation threshold must be between 0 and 1");
+        }
+        this.M = M;
+        this.degradationThreshold = degradationThreshold;
+        this.permutation = null;
+        this.amountOfSorts = 0;
+    }
+
+    /**
+     * Sorts the particles of the given {@code store} along the curve, starting a new permutation
+     * (i.e the given {@code store} is taken as the original one).
+     *
+     * @param store The {@link ParticleStore} holding the particles in their original order.
+     * @return A new {@link ParticleStore} with the particles in curve order.
+     */
+    public ParticleStore reorder(ParticleStore store) {
+        Assert.notNull(store, "The particle store must not be null.");
+        final int[] identity = new int[store.size()];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        permutation = identity;
+        return sort(store);
+    }
+
+    /**
+     * Sorts the particles of the given (already reordered) {@code store} again, only if their order has degraded.
+     * If no store was reordered yet, or if the amount of particles changed, the given {@code store}
+     * is taken as the original one (as in {@link #reorder(ParticleStore)}).
+     *
+     * @param store The {@link ParticleStore} returned by the last reorder, with updated positions.
+     * @return The same {@code store} if its order is still good, or a new {@link ParticleStore} in curve order.
+     */
+    public ParticleStore reorderIfNeeded(ParticleStore store) {
+        Assert.notNull(store, "The particle store must not be null.");
+        if (permutation == null || permutation.length != store.size()) {
+            return reorder(store);
+        }
+        return outOfOrderFraction(store) > degradationThreshold ? sort(store) : store;
+    }
+
+    /**
+     * Calculates the fraction of consecutive particles that are out of curve order
+     * (i.e whose block of cells comes before the block of cells of the previous particle along the curve).
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @return The fraction of consecutive particles out of curve order (between 0 and 1).
+     */
+    public double outOfOrderFraction(ParticleStore store) {
+        Assert.notNull(store, "The particle store must not be null.");
+        if (store.size() < 2) {
+            return 0;
+        }
+        final double xFactor = M / store.getWidth();
+        final double yFactor = M / store.getHeight();
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        int outOfOrder = 0;
+        long previous = key(x[0], y[0], xFactor, yFactor) >> (2 * BLOCK_BITS);
+        for (int i = 1; i < store.size(); i++) {
+            final long current = key(x[i], y[i], xFactor, yFactor) >> (2 * BLOCK_BITS);
+            if (current < previous) {
+                outOfOrder++;
+            }
+            previous = current;
+        }
+        return (double) outOfOrder / (store.size() - 1);
+    }
+
+    /**
+     * Maps the given {@link NeighborList} (calculated over the last reordered store) back to
+     * the original particle indexes.
+     *
+     * @param reordered The {@link NeighborList} calculated over the reordered store.
+     * @return The {@link NeighborList} with the original particle indexes (with neighbors sorted by index).
+     * @throws IllegalArgumentException If no store was reordered yet,
+     *                                  or if the amount of particles does not match the reordered store.
+     */
+    public NeighborList toOriginal(NeighborList reordered) throws IllegalArgumentException {
+        Assert.notNull(reordered, "The neighbor list must not be null.");
+        if (permutation == null || permutation.length != reordered.size()) {
+            throw new IllegalArgumentException("The neighbor list does not match the reordered particles");
+        }
+        final int amountOfParticles = reordered.size();
+        final int[] reorderedOffsets = reordered.getOffsets();
+        final int[] reorderedIds = reordered.getNeighborIds();
+        final int[] offsets = new int[amountOfParticles + 1];
+        for (int p = 0; p < amountOfParticles; p++) {
+            offsets[permutation[p] + 1] = reorderedOffsets[p + 1] - reorderedOffsets[p];
+        }
+        for (int i = 0; i < amountOfParticles; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int[] neighborIds = new int[reorderedIds.length];
+        for (int p = 0; p < amountOfParticles; p++) {
+            final int from = offsets[permutation[p]];
+            int position = from;
+            for (int k = reorderedOffsets[p]; k < reorderedOffsets[p + 1]; k++) {
+                neighborIds[position++] = permutation[reorderedIds[k]];
+            }
+            Arrays.sort(neighborIds, from, position);
+        }
+        return new NeighborList(offsets, neighborIds);
+    }
+
+    /**
+     * @return For each particle of the last reordered store, its index in the original store
+     * (or {@code null} if no store was reordered yet).
+     * @implNote The backing array is returned (i.e it is not copied).
+     */
+    public int[] getPermutation() {
+        return permutation;
+    }
+
+    /**
+     * @return The amount of times particles were sorted.
+     */
+    public int getAmountOfSorts() {
+        return amountOfSorts;
+    }
+
+    /**
+     * Sorts the particles of the given {@code store} along the curve, composing the permutation.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @return A new {@link ParticleStore} with the particles in curve order.
+     * @implNote Particles with the same key keep their relative order.
+     */
+    private ParticleStore sort(ParticleStore store) {
+        final int amountOfParticles = store.size();
+        final double xFactor = M / store.getWidth();
+        final double yFactor = M / store.getHeight();
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+
+        // Keys take 32 bits at most, so the key and the index fit together in a positive long
+        final long[] keyed = new long[amountOfParticles];
+        for (int i = 0; i < amountOfParticles; i++) {
+            keyed[i] = (key(x[i], y[i], xFactor, yFactor) << INDEX_BITS) | i;
+        }
+        Arrays.parallelSort(keyed);
+
+        final double[] sortedX = new double[amountOfParticles];
+        final double[] sortedY = new double[amountOfParticles];
+        final double[] sortedRadius = new double[amountOfParticles];
+        final int[] sortedPermutation = new int[amountOfParticles];
+        final long indexMask = (1L << INDEX_BITS) - 1;
+        for (int position = 0; position < amountOfParticles; position++) {
+            final int i = (int) (keyed[position] & indexMask);
+            sortedX[position] = x[i];
+            sortedY[position] = y[i];
+            sortedRadius[position] = radius[i];
+            sortedPermutation[position] = permutation[i];
+        }
+        permutation = sortedPermutation;
+        amountOfSorts++;
+        return new ParticleStore(store.getWidth(), store.getHeight(), sortedX, sortedY, sortedRadius);
+    }
+
+    /**
+     * Calculates the Z-order key of the cell containing the given position
+     * (i.e the bits of its row and column, interleaved).
+     *
+     * @param x       The 'x' value of the position.
+     * @param y       The 'y' value of the position.
+     * @param xFactor The amount of cells per side divided by the width of the space.
+     * @param yFactor The amount of cells per side divided by the height of the space.
+     * @return The key of the cell.
+     */
+    private long key(double x, double y, double xFactor, double yFactor) {
+        return spread(CellIndexEngine.cellIndex(y, yFactor, M)) << 1 | spread(CellIndexEngine.cellIndex(x, xFactor, M));
+    }
+
+    /**
+     * Spreads the lower 16 bits of the given value, so there is an empty bit between each of them.
+     *
+     * @param value The value to be spread (lower than {@code 2^16}).
+     * @return The spread value.
+     */
+    private static long spread(int value) {
+        long spread = value & 0xFFFFL;
+        spread = (spread | (spread << 8)) & 0x00FF00FFL;
+        spread = (spread | (spread << 4)) & 0x0F0F0F0FL;
+        spread = (spread | (spread << 2)) & 0x33333333L;
+        spread = (spread | (spread << 1)) & 0x55555555L;
+        return spread;
+    }
+}
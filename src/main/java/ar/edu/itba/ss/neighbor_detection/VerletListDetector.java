@@ -0,0 +1,270 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * Stateful neighbor detector for time-stepped simulations (i.e Verlet lists).
+ * Neighbor lists are built with an extended radius ({@code interactionRadius + skin}),
+ * and they are rebuilt only when some particle has moved more than half the skin since the last build.
+ * Between rebuilds, the cached lists are just filtered using the actual interaction radius.
+ * Rectangular spaces are supported as long as the engine supports them (e.g the {@link CellIndexEngine}
+ * and the {@link ParallelCellIndexEngine}, using {@code M} cells along each axis).
+ */
+public class VerletListDetector {
+
+    /**
+     * The {@link NeighborEngine} used to build the neighbor lists.
+     */
+    private final NeighborEngine engine;
+
+    /**
+     * The interaction radius.
+     */
+    private final double interactionRadius;
+
+    /**
+     * The extra distance added to the interaction radius when building the neighbor lists.
+     */
+    private final double skin;
+
+    /**
+     * The amount of cells per side.
+     */
+    private final int M;
+
+    /**
+     * The boundary conditions of the space.
+     */
+    private final BoundaryCondition boundaryCondition;
+
+    /**
+     * The neighbor lists built with the extended radius (or {@code null} if they were never built).
+     */
+    private NeighborList cached;
+
+    /**
+     * The 'x' value of each particle's position when the neighbor lists were last built.
+     */
+    private double[] referenceX;
+
+    /**
+     * The 'y' value of each particle's position when the neighbor lists were last built.
+     */
+    private double[] referenceY;
+
+    /**
+     * Scratch buffer where the kept neighbors are written while filtering,
+     * as long as the cached neighbor lists (so it is only reallocated when they are rebuilt with more entries).
+     */
+    private int[] filteredIds;
+
+    /**
+     * The amount of times the neighbor lists were built.
+     */
+    private int amountOfBuilds;
+
+    /**
+     * Constructor, using a {@link CellIndexEngine} with open boundary conditions to build the neighbor lists.
+     *
+     * @param interactionRadius The interaction radius.
+     * @param skin              The extra distance added to the interaction radius when building the neighbor lists.
+     * @param M                 The amount of cells per side.
+     * @throws IllegalArgumentException If the skin is negative.
+     */
+    public VerletListDetector(double interactionRadius, double skin, int M) throws IllegalArgumentException {
+        this(interactionRadius, skin, M, BoundaryCondition.OPEN);
+    }
+
+    /**
+     * Constructor, using a {@link CellIndexEngine} to build the neighbor lists.
+     *
+     * @param interactionRadius The interaction radius.
+     * @param skin              The extra distance added to the interaction radius when building the neighbor lists.
+     * @param M                 The amount of cells per side.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @throws IllegalArgumentException If the skin is negative.
+     */
+    public VerletListDetector(double interactionRadius, double skin, int M, BoundaryCondition boundaryCondition)
+            throws IllegalArgumentException {
+        this(new CellIndexEngine(boundaryCondition), interactionRadius, skin, M);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param engine            The {@link NeighborEngine} used to build the neighbor lists
+     *                          (whose boundary conditions are also used to filter them).
+     * @param interactionRadius The interaction radius.
+     * @param skin              The extra distance added to the interaction radius when building the neighbor lists.
+     * @param M                 The amount of cells per side.
+     * @throws IllegalArgumentException If the skin is negative.
+     */
+    public VerletListDetector(NeighborEngine engine, double interactionRadius, double skin, int M)
+            throws IllegalArgumentException {
+        Assert.notNull(engine, "The engine must not be null.");
+        Assert.notNull(engine.getBoundaryCondition(), "The boundary condition must not be null.");
+        if (Double.compare(skin, 0.0) < 0) {
+            throw new IllegalArgumentException("The skin must not be negative");
+        }
+        this.engine = engine;
+        this.boundaryCondition = engine.getBoundaryCondition();
+        this.interactionRadius = interactionRadius;
+        this.skin = skin;
+        this.M = M;
+        this.cached = null;
+        this.filteredIds = new int[0];
+        this.amountOfBuilds = 0;
+    }
+
+    /**
+     * Calculates the neighbors of each particle in the given {@code store}, with their current positions.
+     * The neighbor lists are rebuilt if this is the first call, if the amount of particles changed,
+     * or if any particle moved more than half the skin since the last build.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     * @implNote Only the arrays of the returned {@link NeighborList} are allocated, as the cached neighbor lists
+     * are filtered into a buffer that is kept between calls.
+     */
+    public NeighborList detect(ParticleStore store) {
+        prepare(store);
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final int[] cachedOffsets = cached.getOffsets();
+        final int[] cachedIds = cached.getNeighborIds();
+        final int amountOfParticles = cached.size();
+        final double width = store.getWidth();
+        final double height = store.getHeight();
+        final int[] offsets = new int[amountOfParticles + 1];
+        int count = 0;
+        for (int i = 0; i < amountOfParticles; i++) {
+            for (int k = cachedOffsets[i]; k < cachedOffsets[i + 1]; k++) {
+                final int j = cachedIds[k];
+                final double limit = interactionRadius + radius[i] + radius[j];
+                if (squaredDistance(x, y, i, j, width, height) <= limit * limit) {
+                    filteredIds[count++] = j;
+                }
+            }
+            offsets[i + 1] = count;
+        }
+        return new NeighborList(offsets, Arrays.copyOf(filteredIds, count));
+    }
+
+    /**
+     * Streams each pair of interacting particles in the given {@code store}, with their current positions,
+     * to the given {@code consumer}, without building any neighbor list.
+     * The neighbor lists are rebuilt in the same cases as in {@link #detect(ParticleStore)}.
+     *
+     * @param store    The {@link ParticleStore} holding the particles.
+     * @param consumer The {@link PairConsumer} to which each pair is reported (only once).
+     * @implNote Nothing is allocated unless the neighbor lists are rebuilt.
+     */
+    public void detect(ParticleStore store, PairConsumer consumer) {
+        Assert.notNull(consumer, "The consumer must not be null.");
+        prepare(store);
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final int[] cachedOffsets = cached.getOffsets();
+        final int[] cachedIds = cached.getNeighborIds();
+        final int amountOfParticles = cached.size();
+        final double width = store.getWidth();
+        final double height = store.getHeight();
+        for (int i = 0; i < amountOfParticles; i++) {
+            for (int k = cachedOffsets[i]; k < cachedOffsets[i + 1]; k++) {
+                final int j = cachedIds[k];
+                if (j > i) {
+                    final double limit = interactionRadius + radius[i] + radius[j];
+                    final double squaredDistance = squaredDistance(x, y, i, j, width, height);
+                    if (squaredDistance <= limit * limit) {
+                        consumer.accept(i, j, squaredDistance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The amount of times the neighbor lists were built.
+     */
+    public int getAmountOfBuilds() {
+        return amountOfBuilds;
+    }
+
+    /**
+     * Rebuilds the neighbor lists if this is the first call, if the amount of particles changed,
+     * or if any particle moved more than half the skin since the last build.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     */
+    private void prepare(ParticleStore store) {
+        Assert.notNull(store, "The particle store must not be null.");
+        if (cached == null || cached.size() != store.size() || movedTooMuch(store)) {
+            rebuild(store);
+        }
+    }
+
+    /**
+     * Builds the neighbor lists with the extended radius, saving the actual positions as reference.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     */
+    private void rebuild(ParticleStore store) {
+        cached = engine.detect(store, interactionRadius + skin, M);
+        referenceX = store.getX().clone();
+        referenceY = store.getY().clone();
+        if (filteredIds.length < cached.getNeighborIds().length) {
+            filteredIds = new int[cached.getNeighborIds().length];
+        }
+        amountOfBuilds++;
+    }
+
+    /**
+     * Checks whether any particle moved more than half the skin since the last build.
+     * With periodic boundary conditions, displacements are calculated with the minimum image convention,
+     * so wrapping around a border does not force a rebuild.
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @return {@code true} if the neighbor lists must be rebuilt, or {@code false} otherwise.
+     */
+    private boolean movedTooMuch(ParticleStore store) {
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double width = store.getWidth();
+        final double height = store.getHeight();
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        final double limit = (skin / 2) * (skin / 2);
+        for (int i = 0; i < x.length; i++) {
+            final double dx = periodic
+                    ? BruteForceEngine.minimumImage(x[i] - referenceX[i], width) : x[i] - referenceX[i];
+            final double dy = periodic
+                    ? BruteForceEngine.minimumImage(y[i] - referenceY[i], height) : y[i] - referenceY[i];
+            if (dx * dx + dy * dy > limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the squared distance between the centers of two particles,
+     * using the minimum image convention with periodic boundary conditions.
+     *
+     * @param x      The 'x' value of each particle's position.
+     * @param y      The 'y' value of each particle's position.
+     * @param i      The index of one of the particles.
+     * @param j      The index of the other particle.
+     * @param width  The width of the space (i.e its length along the 'x' axis).
+     * @param height The height of the space (i.e its length along the 'y' axis).
+     * @return The squared distance.
+     */
+    private double squaredDistance(double[] x, double[] y, int i, int j, double width, double height) {
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        final double dx = periodic ? BruteForceEngine.minimumImage(x[i] - x[j], width) : x[i] - x[j];
+        final double dy = periodic ? BruteForceEngine.minimumImage(y[i] - y[j], height) : y[i] - y[j];
+        return dx * dx + dy * dy;
+    }
+}
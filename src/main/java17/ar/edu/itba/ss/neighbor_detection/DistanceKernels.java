@@ -0,0 +1,40 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+/**
+ * Provides the {@link DistanceKernel} to be used in this JVM.
+ *
+ * @implNote This is the Java 17 version, which provides a {@link ScalarDistanceKernel} unless the
+ * {@value #VECTOR_KERNEL_PROPERTY} system property is {@code true} and the {@code jdk.incubator.vector} module
+ * is available (i.e {@code --add-modules jdk.incubator.vector}), in which case a {@link VectorDistanceKernel}
+ * is provided. The vector kernel is opt-in because, on JDK 17, it was measured to be slower than the scalar one
+ * (accepted candidates must be compacted one lane at a time), so it is kept to be measured on other JDKs and
+ * hardware (see {@code DistanceKernelBenchmark}).
+ */
+public final class DistanceKernels {
+
+    /**
+     * The system property that enables the {@link VectorDistanceKernel}.
+     */
+    public static final String VECTOR_KERNEL_PROPERTY = "neighbor_detection.vectorKernel";
+
+    /**
+     * The kernel to be used.
+     */
+    private static final DistanceKernel KERNEL = Boolean.getBoolean(VECTOR_KERNEL_PROPERTY)
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            ? new VectorDistanceKernel()
+            : new ScalarDistanceKernel();
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private DistanceKernels() {
+    }
+
+    /**
+     * @return The best {@link DistanceKernel} available in this JVM.
+     */
+    public static DistanceKernel get() {
+        return KERNEL;
+    }
+}
@@ -0,0 +1,70 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link DistanceKernel} that uses the Vector API, checking as many candidates per instruction
+ * as the preferred vector size allows (e.g 4 with AVX2, 8 with AVX-512).
+ * <p>
+ * The last candidates are also checked with a whole vector when the arrays have room after {@code to}
+ * (see {@link CellIndexEngine#KERNEL_PADDING}), discarding the lanes past it, so short blocks are vectorized too.
+ * Otherwise, they are checked one at a time.
+ */
+public final class VectorDistanceKernel implements DistanceKernel {
+
+    /**
+     * The vector species used.
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public int filter(double xi, double yi, double reach, double[] x, double[] y, double[] radius, int from, int to,
+                      int[] positions, double[] squaredDistances) {
+        final int length = SPECIES.length();
+        // A vector starting at b reads candidates up to b + length, and stores squared distances up to
+        // count + length (where count is at most b - from), so both must fit in the arrays
+        final int room = Math.min(Math.min(x.length, y.length), Math.min(radius.length, from + squaredDistances.length));
+        final int vectorBound = Math.min(to, room - length + 1);
+        final DoubleVector vxi = DoubleVector.broadcast(SPECIES, xi);
+        final DoubleVector vyi = DoubleVector.broadcast(SPECIES, yi);
+        int count = 0;
+        int b = from;
+        for (; b < vectorBound; b += length) {
+            final DoubleVector dx = vxi.sub(DoubleVector.fromArray(SPECIES, x, b));
+            final DoubleVector dy = vyi.sub(DoubleVector.fromArray(SPECIES, y, b));
+            final DoubleVector limit = DoubleVector.fromArray(SPECIES, radius, b).add(reach);
+            final DoubleVector squared = dx.mul(dx).add(dy.mul(dy));
+            // Masks are only tested as a whole (turning them into bits is not intrinsified in every JDK),
+            // and the lanes of vectors with any accepted candidate are then checked one at a time
+            if (squared.compare(VectorOperators.LE, limit.mul(limit)).anyTrue()) {
+                // Store all lanes after the accepted ones (there is always room for them), and then compact them
+                final int base = count;
+                squared.intoArray(squaredDistances, base);
+                final int lanes = Math.min(length, to - b);
+                for (int lane = 0; lane < lanes; lane++) {
+                    final double squaredDistance = squaredDistances[base + lane];
+                    final double laneLimit = reach + radius[b + lane];
+                    if (squaredDistance <= laneLimit * laneLimit) {
+                        positions[count] = b + lane;
+                        squaredDistances[count] = squaredDistance;
+                        count++;
+                    }
+                }
+            }
+        }
+        for (; b < to; b++) {
+            final double dx = xi - x[b];
+            final double dy = yi - y[b];
+            final double limit = reach + radius[b];
+            final double squaredDistance = dx * dx + dy * dy;
+            if (squaredDistance <= limit * limit) {
+                positions[count] = b;
+                squaredDistances[count] = squaredDistance;
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,61 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the engines chosen by the {@link AdaptiveEngine}, and that their results match the {@link BruteForceEngine}.
+ */
+public class AdaptiveEngineTest {
+
+    /**
+     * The engine used when all pairs are checked.
+     */
+    private final NeighborEngine bruteForceEngine = new BruteForceEngine();
+
+    /**
+     * The engine used when the grid is well balanced.
+     */
+    private final NeighborEngine cellIndexEngine = new CellIndexEngine();
+
+    /**
+     * The engine used when the grid is unbalanced.
+     */
+    private final NeighborEngine treeEngine = new KdTreeEngine();
+
+    /**
+     * The tested engine.
+     */
+    private final AdaptiveEngine engine = new AdaptiveEngine(bruteForceEngine, cellIndexEngine, treeEngine);
+
+    @Test
+    public void choosesTreeForClusteredParticlesInCoarseGrids() {
+        final double sideLength = 100;
+        final ParticleStore store = TestParticles.clustered(3, sideLength, 8000, 0.1);
+        final int M = 5;
+        assertSame(treeEngine, engine.select(store, 1, M));
+        assertSameNeighbors("clustered", new BruteForceEngine().detect(store, 1, M), engine.detect(store, 1, M));
+    }
+
+    @Test
+    public void choosesCellIndexForUniformParticlesInFineGrids() {
+        final double sideLength = 100;
+        final ParticleStore store = TestParticles.withBorders(3, sideLength, 8000, 0.1);
+        final int M = GridPlanner.maxCellsPerSide(sideLength, 1 + 2 * store.getMaxRadius());
+        assertSame(cellIndexEngine, engine.select(store, 1, M));
+        assertSameNeighbors("uniform", new BruteForceEngine().detect(store, 1, M), engine.detect(store, 1, M));
+    }
+
+    @Test
+    public void choosesBruteForceForFewParticles() {
+        final ParticleStore store = TestParticles.withBorders(3, 10, KdTreeEngine.LEAF_SIZE, 0.1);
+        assertSame(bruteForceEngine, engine.select(store, 1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEnginesWithDifferentBoundaryConditions() {
+        new AdaptiveEngine(bruteForceEngine, new CellIndexEngine(BoundaryCondition.PERIODIC), treeEngine);
+    }
+}
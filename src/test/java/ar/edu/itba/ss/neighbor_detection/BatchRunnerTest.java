@@ -0,0 +1,116 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link BatchRunner} records each scenario once, resuming batches from their CSV file.
+ */
+public class BatchRunnerTest {
+
+    /**
+     * Small scenarios, which run fast.
+     */
+    private static final List<Scenario> SCENARIOS = Arrays.asList(
+            new Scenario(10, 100, 1, 0.1, 0, BoundaryCondition.OPEN, 1),
+            new Scenario(10, 100, 1, 0.1, 0, BoundaryCondition.OPEN, 2),
+            new Scenario(10, 100, 1, 0.1, 0, BoundaryCondition.PERIODIC, 1),
+            new Scenario(10, 100, 1, 0.1, 0, BoundaryCondition.PERIODIC, 2));
+
+    /**
+     * The amount of CSV columns.
+     */
+    private static final int COLUMNS = BatchRunner.HEADER.split(",").length;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void skipsScenariosAlreadyRun() throws IOException {
+        final Path output = folder.getRoot().toPath().resolve("results.csv");
+        final BatchRunner runner = new BatchRunner(2);
+        assertEquals(SCENARIOS.size(), runner.run(SCENARIOS, output));
+        assertEquals(0, runner.run(SCENARIOS, output));
+        final List<String> rows = rows(output);
+        assertEquals(SCENARIOS.size(), rows.size());
+        rows.forEach(row -> assertEquals(row, "ok", status(row)));
+    }
+
+    @Test
+    public void resumesAfterTruncatedLastRow() throws IOException {
+        final Path output = folder.getRoot().toPath().resolve("results.csv");
+        final BatchRunner runner = new BatchRunner(2);
+        runner.run(SCENARIOS, output);
+        final List<String> rows = rows(output);
+        // Simulates a crash while writing the third row
+        final String truncated = BatchRunner.HEADER + System.lineSeparator()
+                + rows.get(0) + System.lineSeparator()
+                + rows.get(1) + System.lineSeparator()
+                + rows.get(2).substring(0, rows.get(2).length() / 2);
+        Files.write(output, truncated.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(SCENARIOS.size() - 2, runner.run(SCENARIOS, output));
+        final List<String> resumed = rows(output);
+        assertEquals(SCENARIOS.size(), resumed.size());
+        assertEquals(rows.subList(0, 2), resumed.subList(0, 2));
+        assertEquals("Each scenario must be recorded once", SCENARIOS.size(),
+                resumed.stream().map(row -> row.substring(0, row.lastIndexOf(",ok"))).distinct().count());
+        resumed.forEach(row -> {
+            assertEquals(row, COLUMNS, row.split(",", -1).length);
+            assertEquals(row, "ok", status(row));
+        });
+    }
+
+    @Test
+    public void recordsFailedScenariosOnce() throws IOException {
+        final Path output = folder.getRoot().toPath().resolve("results.csv");
+        final List<Scenario> scenarios = Arrays.asList(
+                // Too many cells for the interaction radius
+                new Scenario(10, 100, 1, 0.1, 100, BoundaryCondition.OPEN, 1),
+                // Too big for the memory budget
+                new Scenario(10, 1000000, 1, 0.1, 0, BoundaryCondition.OPEN, 1),
+                SCENARIOS.get(0));
+        final BatchRunner runner = new BatchRunner(2, 1 << 26);
+        assertEquals(scenarios.size(), runner.run(scenarios, output));
+        assertEquals(0, runner.run(scenarios, output));
+
+        final List<String> rows = rows(output);
+        assertEquals(scenarios.size(), rows.size());
+        final List<String> statuses = rows.stream().map(BatchRunnerTest::status).sorted().collect(Collectors.toList());
+        assertTrue(statuses.toString(), statuses.get(0).startsWith("error: "));
+        assertTrue(statuses.toString(), statuses.stream().anyMatch(status -> status.contains("memory budget")));
+        assertEquals(statuses.toString(), "ok", statuses.get(2));
+        rows.forEach(row -> assertEquals(row, COLUMNS, row.split(",", -1).length));
+    }
+
+    /**
+     * @param output The {@link Path} of the CSV file.
+     * @return The rows of the given file, without the header.
+     * @throws IOException If the file can not be read.
+     */
+    private static List<String> rows(Path output) throws IOException {
+        final List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(BatchRunner.HEADER, lines.get(0));
+        return lines.subList(1, lines.size());
+    }
+
+    /**
+     * @param row A CSV row.
+     * @return The status column of the given row.
+     */
+    private static String status(String row) {
+        return row.substring(row.lastIndexOf(',') + 1);
+    }
+}
@@ -0,0 +1,148 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes frames and neighbor lists to temporary files and reads them back.
+ */
+public class BinaryFilesTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTheWrittenFrames() throws IOException {
+        final Path path = folder.newFile("frames.bin").toPath();
+        final ParticleStore[] frames = {
+                TestParticles.withBorders(1, 20, 500, 0.3),
+                new ParticleStore(20, new double[0], new double[0], new double[0]),
+                TestParticles.clustered(2, 30, 800, 0.2),
+        };
+        try (FrameWriter writer = new FrameWriter(path, false)) {
+            writer.write(frames[0]);
+            writer.write(frames[1]);
+        }
+        // Appended frames go after the existing ones
+        try (FrameWriter writer = new FrameWriter(path, true)) {
+            writer.write(frames[2]);
+        }
+        try (FrameReader reader = new FrameReader(path)) {
+            for (ParticleStore expected : frames) {
+                assertSameFrame(expected, reader.next());
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void reusesTheStoreOfTheSameShape() throws IOException {
+        final Path path = folder.newFile("frames.bin").toPath();
+        final ParticleStore first = TestParticles.withBorders(1, 20, 500, 0.3);
+        final ParticleStore second = TestParticles.withBorders(2, 20, 500, 0.3);
+        try (FrameWriter writer = new FrameWriter(path, false)) {
+            writer.write(first);
+            writer.write(second);
+        }
+        try (FrameReader reader = new FrameReader(path)) {
+            final ParticleStore store = reader.next();
+            assertSameFrame(first, store);
+            assertSame(store, reader.next(store));
+            assertSameFrame(second, store);
+        }
+    }
+
+    @Test
+    public void readsTheWrittenNeighborLists() throws IOException {
+        final Path path = folder.newFile("neighbors.bin").toPath();
+        final NeighborList[] lists = {
+                new CellIndexEngine(BoundaryCondition.PERIODIC).detect(TestParticles.withBorders(1, 20, 500, 0.3),
+                        1, 10),
+                // No particles at all
+                new NeighborList(new int[]{0}, new int[0]),
+                // Particle 1 has no neighbors
+                new NeighborList(new int[]{0, 1, 1, 2}, new int[]{2, 0}),
+                // Particles without any neighbor
+                new NeighborList(new int[]{0, 0, 0}, new int[0]),
+        };
+        try (NeighborListWriter writer = new NeighborListWriter(path, false)) {
+            writer.write(lists[0]);
+            writer.write(lists[1]);
+        }
+        try (NeighborListWriter writer = new NeighborListWriter(path, true)) {
+            writer.write(lists[2]);
+            writer.write(lists[3]);
+        }
+        try (NeighborListReader reader = new NeighborListReader(path)) {
+            for (int k = 0; k < lists.length; k++) {
+                assertSameNeighbors("record " + k, lists[k], reader.next());
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedRecords() throws IOException {
+        final Path frames = folder.newFile("frames.bin").toPath();
+        try (FrameWriter writer = new FrameWriter(frames, false)) {
+            writer.write(TestParticles.withBorders(1, 20, 100, 0.3));
+        }
+        truncate(frames);
+        try (FrameReader reader = new FrameReader(frames)) {
+            reader.next();
+            fail("A truncated frame must not be read");
+        } catch (IOException expected) {
+            // Expected
+        }
+
+        final Path neighbors = folder.newFile("neighbors.bin").toPath();
+        try (NeighborListWriter writer = new NeighborListWriter(neighbors, false)) {
+            writer.write(new NeighborList(new int[]{0, 1, 1, 2}, new int[]{2, 0}));
+        }
+        truncate(neighbors);
+        try (NeighborListReader reader = new NeighborListReader(neighbors)) {
+            reader.next();
+            fail("A truncated neighbor list must not be read");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * Asserts that both {@link ParticleStore}s hold the same particles, in the same space.
+     *
+     * @param expected The expected {@link ParticleStore}.
+     * @param actual   The actual {@link ParticleStore}.
+     */
+    private static void assertSameFrame(ParticleStore expected, ParticleStore actual) {
+        assertEquals(expected.getSideLength(), actual.getSideLength(), 0);
+        assertArrayEquals(expected.getX(), actual.getX(), 0);
+        assertArrayEquals(expected.getY(), actual.getY(), 0);
+        assertArrayEquals(expected.getRadius(), actual.getRadius(), 0);
+    }
+
+    /**
+     * Drops the last byte of the given file.
+     *
+     * @param path The {@link Path} of the file.
+     * @throws IOException If the file can not be truncated.
+     */
+    private static void truncate(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link CellIndexEngine3D} against a brute force check of every pair of particles.
+ */
+public class CellIndexEngine3DTest {
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void recordsRunsInMetrics() {
+        final DetectionMetrics metrics = new DetectionMetrics();
+        final CellIndexEngine3D engine = new CellIndexEngine3D(BoundaryCondition.PERIODIC, metrics);
+        final NeighborList neighbors = engine.detect(withCorners(1, 10, 500, 0.2), 1, 5);
+        assertEquals(neighbors.getPairCount(), metrics.getAcceptedPairs());
+        assertTrue(metrics.getExaminedPairs() >= metrics.getAcceptedPairs());
+        engine.detect(withCorners(2, 10, 500, 0.2), 1, 4, (i, j, squaredDistance) -> {
+        });
+        assertEquals(2, metrics.getRuns());
+        assertEquals(5 * 5 * 5 + 4 * 4 * 4, metrics.getCells());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLessThanThreeCellsWithPeriodicBoundaries() {
+        new CellIndexEngine3D(BoundaryCondition.PERIODIC).detect(withCorners(1, 10, 50, 0.5), 1, 2);
+    }
+
+    /**
+     * Runs the {@link CellIndexEngine3D} with the biggest valid grid, half of it, and the smallest one,
+     * comparing with a brute force check.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final CellIndexEngine3D engine = new CellIndexEngine3D(boundaryCondition);
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int seed = 0; seed < 8; seed++) {
+            final double sideLength = 10 + seed;
+            final double interactionRadius = 0.25 + 0.5 * (seed % 4);
+            final ParticleStore3D store = withCorners(seed, sideLength, 200 + 100 * seed, 0.3);
+            final int biggestM = GridPlanner.maxCellsPerSide(sideLength,
+                    interactionRadius + 2 * store.getMaxRadius());
+            final NeighborList expected = bruteForce(store, interactionRadius, boundaryCondition);
+            for (int M : new int[]{biggestM, Math.max(minimumM, biggestM / 2), minimumM}) {
+                assertSameNeighbors(boundaryCondition + ", seed " + seed + ", M " + M, expected,
+                        engine.detect(store, interactionRadius, M));
+            }
+        }
+    }
+
+    /**
+     * Generates particles uniformly distributed in a cubic space, the first ones laying on its corners
+     * (which are all images of the same point with periodic boundary conditions).
+     *
+     * @param seed              The seed from which particles are generated.
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles (at least 8).
+     * @param maxRadius         The biggest particle radius (radii are uniformly distributed up to this value).
+     * @return A {@link ParticleStore3D} holding the generated particles.
+     */
+    private static ParticleStore3D withCorners(long seed, double sideLength, int amountOfParticles,
+                                               double maxRadius) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        final double[] z = new double[amountOfParticles];
+        final double[] radius = new double[amountOfParticles];
+        for (int i = 0; i < amountOfParticles; i++) {
+            x[i] = random.nextDouble() * sideLength;
+            y[i] = random.nextDouble() * sideLength;
+            z[i] = random.nextDouble() * sideLength;
+            radius[i] = random.nextDouble() * maxRadius;
+        }
+        for (int corner = 0; corner < 8; corner++) {
+            x[corner] = (corner & 1) * sideLength;
+            y[corner] = ((corner >> 1) & 1) * sideLength;
+            z[corner] = ((corner >> 2) & 1) * sideLength;
+        }
+        return new ParticleStore3D(sideLength, x, y, z, radius);
+    }
+
+    /**
+     * Checks every pair of particles, applying the minimum image convention with periodic boundary conditions.
+     *
+     * @param store             The {@link ParticleStore3D} holding the particles.
+     * @param interactionRadius The interaction radius.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     */
+    private static NeighborList bruteForce(ParticleStore3D store, double interactionRadius,
+                                           BoundaryCondition boundaryCondition) {
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] z = store.getZ();
+        final double[] radius = store.getRadius();
+        final double sideLength = store.getSideLength();
+        final boolean periodic = boundaryCondition == BoundaryCondition.PERIODIC;
+        final PairBuffer pairs = new PairBuffer();
+        for (int i = 0; i < store.size(); i++) {
+            for (int j = i + 1; j < store.size(); j++) {
+                double dx = x[i] - x[j];
+                double dy = y[i] - y[j];
+                double dz = z[i] - z[j];
+                if (periodic) {
+                    dx = BruteForceEngine.minimumImage(dx, sideLength);
+                    dy = BruteForceEngine.minimumImage(dy, sideLength);
+                    dz = BruteForceEngine.minimumImage(dz, sideLength);
+                }
+                final double squaredDistance = dx * dx + dy * dy + dz * dz;
+                final double limit = interactionRadius + radius[i] + radius[j];
+                if (squaredDistance <= limit * limit) {
+                    pairs.accept(i, j, squaredDistance);
+                }
+            }
+        }
+        return NeighborList.fromPairs(store.size(), pairs);
+    }
+}
@@ -0,0 +1,151 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link CellIndexEngine} against the {@link BruteForceEngine}.
+ */
+public class CellIndexEngineTest {
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void wrapsParticlesOnOppositeBordersAndCorners() {
+        final double sideLength = 10;
+        final ParticleStore store = new ParticleStore(sideLength,
+                new double[]{0, sideLength, sideLength, 0, 5},
+                new double[]{0, sideLength, 0, sideLength, 5},
+                new double[5]);
+        final NeighborList periodic = new CellIndexEngine(BoundaryCondition.PERIODIC).detect(store, 0.5, 5);
+        // All corners are images of the same point
+        assertArrayEquals(new int[]{1, 2, 3}, neighbors(periodic, 0));
+        assertEquals(0, periodic.getNeighborCount(4));
+        final NeighborList open = new CellIndexEngine(BoundaryCondition.OPEN).detect(store, 0.5, 5);
+        assertEquals(0, open.getPairCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCellsSmallerThanTheReach() {
+        new CellIndexEngine().detect(TestParticles.withBorders(1, 10, 50, 0.5), 1, 9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLessThanThreeCellsWithPeriodicBoundaries() {
+        new CellIndexEngine(BoundaryCondition.PERIODIC).detect(TestParticles.withBorders(1, 10, 50, 0.5), 1, 2);
+    }
+
+    @Test
+    public void matchesBruteForceInRectangularSpaces() {
+        final BoundaryCondition[] boundaryConditions = {BoundaryCondition.OPEN, BoundaryCondition.PERIODIC};
+        for (BoundaryCondition xBoundaryCondition : boundaryConditions) {
+            for (BoundaryCondition yBoundaryCondition : boundaryConditions) {
+                checkRectangularAgainstBruteForce(xBoundaryCondition, yBoundaryCondition);
+            }
+        }
+    }
+
+    @Test
+    public void recordsRectangularRunsInMetrics() {
+        final DetectionMetrics metrics = new DetectionMetrics();
+        final CellIndexEngine engine = new CellIndexEngine(BoundaryCondition.PERIODIC, BoundaryCondition.OPEN,
+                metrics);
+        final ParticleStore store = TestParticles.rectangular(3, 40, 10, 500, 0.3);
+        final NeighborList neighbors = engine.detect(store, 1, 20, 5);
+        assertEquals(1, metrics.getRuns());
+        assertEquals(20 * 5, metrics.getCells());
+        assertEquals(neighbors.getPairCount(), metrics.getAcceptedPairs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void squaredOnlyEnginesRejectRectangularSpaces() {
+        new BruteForceEngine().detect(TestParticles.rectangular(1, 20, 10, 50, 0.1), 1, 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void hasNoSingleBoundaryConditionWhenAxesDiffer() {
+        new CellIndexEngine(BoundaryCondition.PERIODIC, BoundaryCondition.OPEN).getBoundaryCondition();
+    }
+
+    /**
+     * Runs the {@link CellIndexEngine} over rectangular spaces (wider and taller ones),
+     * with the biggest valid amount of cells along each axis and the smallest one,
+     * comparing with a brute force check that applies the minimum image convention along periodic axes only.
+     *
+     * @param xBoundaryCondition The boundary conditions along the 'x' axis.
+     * @param yBoundaryCondition The boundary conditions along the 'y' axis.
+     */
+    private static void checkRectangularAgainstBruteForce(BoundaryCondition xBoundaryCondition,
+                                                          BoundaryCondition yBoundaryCondition) {
+        final CellIndexEngine engine = new CellIndexEngine(xBoundaryCondition, yBoundaryCondition);
+        final int minimumMx = xBoundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        final int minimumMy = yBoundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int seed = 0; seed < 6; seed++) {
+            final double width = seed % 2 == 0 ? 40 : 9;
+            final double height = seed % 2 == 0 ? 9 : 40;
+            final double interactionRadius = 0.25 + 0.5 * (seed % 3);
+            final ParticleStore store = TestParticles.rectangular(seed, width, height, 300 + 100 * seed, 0.3);
+            final double reach = interactionRadius + 2 * store.getMaxRadius();
+            final NeighborList expected = TestParticles.bruteForce(store, interactionRadius,
+                    xBoundaryCondition, yBoundaryCondition);
+            final int biggestMx = GridPlanner.maxCellsPerSide(width, reach);
+            final int biggestMy = GridPlanner.maxCellsPerSide(height, reach);
+            for (int Mx : new int[]{biggestMx, minimumMx}) {
+                for (int My : new int[]{biggestMy, minimumMy}) {
+                    assertSameNeighbors(xBoundaryCondition + " x " + yBoundaryCondition + ", seed " + seed
+                                    + ", Mx " + Mx + ", My " + My,
+                            expected, engine.detect(store, interactionRadius, Mx, My));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the {@link CellIndexEngine} over uniform and clustered particles, with the biggest valid grid,
+     * half of it, and (with open boundaries) a single cell, comparing with the {@link BruteForceEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int seed = 0; seed < 12; seed++) {
+            final double sideLength = 20 + seed;
+            final double interactionRadius = 0.25 + 0.5 * (seed % 4);
+            final ParticleStore store = seed % 2 == 0
+                    ? TestParticles.withBorders(seed, sideLength, 50 + 60 * seed, 0.4)
+                    : TestParticles.clustered(seed, sideLength, 50 + 60 * seed, 0.2);
+            final int biggestM = GridPlanner.maxCellsPerSide(sideLength,
+                    interactionRadius + 2 * store.getMaxRadius());
+            final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                    .detect(store, interactionRadius, minimumM);
+            for (int M : new int[]{biggestM, Math.max(minimumM, biggestM / 2), minimumM}) {
+                final NeighborList actual = new CellIndexEngine(boundaryCondition)
+                        .detect(store, interactionRadius, M);
+                assertSameNeighbors(boundaryCondition + ", seed " + seed + ", M " + M, expected, actual);
+            }
+        }
+    }
+
+    /**
+     * @param neighborList The {@link NeighborList}.
+     * @param particle     The index of the particle.
+     * @return The neighbors of the given particle.
+     */
+    private static int[] neighbors(NeighborList neighborList, int particle) {
+        return Arrays.copyOfRange(neighborList.getNeighborIds(),
+                neighborList.getOffsets()[particle], neighborList.getOffsets()[particle + 1]);
+    }
+}
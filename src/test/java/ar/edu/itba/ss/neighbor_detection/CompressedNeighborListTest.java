@@ -0,0 +1,91 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link CompressedNeighborList} holds the same neighbors as a {@link NeighborList}.
+ */
+public class CompressedNeighborListTest {
+
+    /**
+     * A buffer shift small enough to split the encoded data of the tested particles among several buffers.
+     */
+    private static final int SMALL_BUFFER_SHIFT = 10;
+
+    @Test
+    public void roundTripsNeighborList() {
+        final ParticleStore store = TestParticles.clustered(4, 30, 3000, 0.3);
+        final NeighborList expected = new CellIndexEngine(BoundaryCondition.PERIODIC).detect(store, 1, 10);
+        for (int bufferShift : new int[]{CompressedNeighborList.DEFAULT_BUFFER_SHIFT, SMALL_BUFFER_SHIFT}) {
+            for (boolean offHeap : new boolean[]{false, true}) {
+                final String message = "shift " + bufferShift + ", off-heap " + offHeap;
+                final CompressedNeighborList compressed = CompressedNeighborList.of(expected, offHeap, bufferShift);
+                assertEquals(message, offHeap, compressed.isOffHeap());
+                assertEquals(message, expected.getNeighborIds().length, compressed.getEntryCount());
+                assertSameNeighbors(message, expected, compressed.toNeighborList());
+                final int[] destination = new int[store.size()];
+                for (int i = 0; i < store.size(); i++) {
+                    final int[] neighbors = Arrays.copyOfRange(expected.getNeighborIds(),
+                            expected.getOffsets()[i], expected.getOffsets()[i + 1]);
+                    assertEquals(message, neighbors.length, compressed.getNeighborCount(i));
+                    assertArrayEquals(message, neighbors, compressed.getNeighbors(i));
+                    final int count = compressed.getNeighbors(i, destination);
+                    assertArrayEquals(message, neighbors, Arrays.copyOf(destination, count));
+                }
+            }
+        }
+        assertTrue(CompressedNeighborList.of(expected, false, SMALL_BUFFER_SHIFT).getBufferCount() > 1);
+    }
+
+    @Test
+    public void chunkedDetectionMatchesBruteForceWithOpenBoundaries() {
+        checkChunkedDetection(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void chunkedDetectionMatchesBruteForceWithPeriodicBoundaries() {
+        checkChunkedDetection(BoundaryCondition.PERIODIC);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsRecordsBiggerThanBuffers() {
+        final ParticleStore store = TestParticles.withBorders(1, 10, 500, 0.1);
+        CompressedNeighborList.of(new BruteForceEngine().detect(store, 2, 1), false, 4);
+    }
+
+    /**
+     * Detects neighbors in chunks of several sizes (from a few dozen chunks to all the particles at once),
+     * comparing the decompressed result with the {@link BruteForceEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkChunkedDetection(BoundaryCondition boundaryCondition) {
+        final CellIndexEngine engine = new CellIndexEngine(boundaryCondition);
+        for (int seed = 0; seed < 4; seed++) {
+            final double sideLength = 25;
+            final ParticleStore store = seed % 2 == 0
+                    ? TestParticles.withBorders(seed, sideLength, 500 + 500 * seed, 0.3)
+                    : TestParticles.clustered(seed, sideLength, 500 + 500 * seed, 0.3);
+            final NeighborList expected = new BruteForceEngine(boundaryCondition).detect(store, 1, 3);
+            final int M = GridPlanner.maxCellsPerSide(sideLength, 1 + 2 * store.getMaxRadius());
+            final int entries = expected.getNeighborIds().length;
+            for (int chunkEntries : new int[]{entries / 40, entries / 3, Integer.MAX_VALUE}) {
+                for (int bufferShift : new int[]{CompressedNeighborList.DEFAULT_BUFFER_SHIFT, SMALL_BUFFER_SHIFT}) {
+                    final CompressedNeighborList compressed = CompressedNeighborList.detect(engine, store, 1, M,
+                            seed % 2 == 0, Math.max(1, chunkEntries), bufferShift);
+                    final String message = boundaryCondition + ", seed " + seed + ", chunks of " + chunkEntries
+                            + ", shift " + bufferShift;
+                    assertEquals(message, expected.getNeighborIds().length, compressed.getEntryCount());
+                    assertSameNeighbors(message, expected, compressed.toNeighborList());
+                }
+            }
+        }
+    }
+}
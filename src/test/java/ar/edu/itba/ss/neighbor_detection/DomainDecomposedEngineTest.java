@@ -0,0 +1,157 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the {@link DomainDecomposedEngine} against the {@link BruteForceEngine}.
+ */
+public class DomainDecomposedEngineTest {
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void streamsEachPairOnce() {
+        final ParticleStore store = TestParticles.withBorders(7, 30, 2000, 0.3);
+        final NeighborList expected = new BruteForceEngine(BoundaryCondition.PERIODIC).detect(store, 1, 3);
+        final AtomicLong pairs = new AtomicLong();
+        try (DomainDecomposedEngine engine = new DomainDecomposedEngine(3, BoundaryCondition.PERIODIC)) {
+            engine.detect(store, 1, 18, (i, j, squaredDistance) -> pairs.incrementAndGet());
+        }
+        assertEquals(expected.getPairCount(), pairs.get());
+    }
+
+    @Test
+    public void streamsTheSameSquaredDistancesAsTheCellIndexEngine() {
+        final ParticleStore store = TestParticles.withBorders(11, 30, 2000, 0.3);
+        final Map<Long, Double> expected = new ConcurrentHashMap<>();
+        final Map<Long, Double> actual = new ConcurrentHashMap<>();
+        new CellIndexEngine(BoundaryCondition.PERIODIC)
+                .detect(store, 1, 18, (i, j, squaredDistance) -> expected.put(pairKey(i, j), squaredDistance));
+        try (DomainDecomposedEngine engine = new DomainDecomposedEngine(3, BoundaryCondition.PERIODIC)) {
+            engine.detect(store, 1, 18, (i, j, squaredDistance) -> actual.put(pairKey(i, j), squaredDistance));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void recordsTheSameMetricsAsTheCellIndexEngine() {
+        final ParticleStore store = TestParticles.clustered(5, 30, 2000, 0.3);
+        final DetectionMetrics expected = new DetectionMetrics();
+        final DetectionMetrics actual = new DetectionMetrics();
+        new CellIndexEngine(BoundaryCondition.PERIODIC, expected).detect(store, 1, 18);
+        try (DomainDecomposedEngine engine = new DomainDecomposedEngine(3, InProcessHaloTransport::new,
+                BoundaryCondition.PERIODIC, actual)) {
+            engine.detect(store, 1, 18);
+        }
+        assertEquals(1, actual.getRuns());
+        assertEquals(expected.getCells(), actual.getCells());
+        assertArrayEquals(expected.getOccupancyHistogram(), actual.getOccupancyHistogram());
+        assertEquals(expected.getExaminedPairs(), actual.getExaminedPairs());
+        assertEquals(expected.getAcceptedPairs(), actual.getAcceptedPairs());
+    }
+
+    @Test
+    public void dropsMessagesOfFailedRuns() {
+        final ParticleStore store = TestParticles.withBorders(3, 30, 2000, 0.3);
+        final NeighborList expected = new BruteForceEngine(BoundaryCondition.PERIODIC).detect(store, 1, 3);
+        final AtomicInteger runs = new AtomicInteger();
+        // In the first run, rank 0 fails before receiving the halos sent to it
+        try (DomainDecomposedEngine engine = new DomainDecomposedEngine(3, () -> runs.getAndIncrement() == 0
+                ? new FailingTransport(0) : new InProcessHaloTransport(), BoundaryCondition.PERIODIC)) {
+            try {
+                engine.detect(store, 1, 18);
+                fail("The first run must fail");
+            } catch (UncheckedIOException e) {
+                // Expected
+            }
+            assertSameNeighbors("run after a failed one", expected, engine.detect(store, 1, 18));
+        }
+    }
+
+    /**
+     * @param i The index of a particle.
+     * @param j The index of another particle.
+     * @return A key identifying the pair, regardless of the order of the particles.
+     */
+    private static long pairKey(int i, int j) {
+        return ((long) Math.min(i, j) << Integer.SIZE) | Math.max(i, j);
+    }
+
+    /**
+     * Runs the {@link DomainDecomposedEngine} with several amounts of ranks (so slabs meet at different rows)
+     * over uniform and clustered particles, comparing with the {@link BruteForceEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int ranks : new int[]{1, 2, 3, 5}) {
+            try (DomainDecomposedEngine engine = new DomainDecomposedEngine(ranks, boundaryCondition)) {
+                for (int seed = 0; seed < 6; seed++) {
+                    final double sideLength = 25;
+                    final double interactionRadius = 0.5 + 0.5 * (seed % 3);
+                    final ParticleStore store = seed % 2 == 0
+                            ? TestParticles.withBorders(seed, sideLength, 100 + 150 * seed, 0.3)
+                            : TestParticles.clustered(seed, sideLength, 100 + 150 * seed, 0.3);
+                    final int biggestM = GridPlanner.maxCellsPerSide(sideLength,
+                            interactionRadius + 2 * store.getMaxRadius());
+                    final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                            .detect(store, interactionRadius, minimumM);
+                    for (int M : new int[]{biggestM, Math.max(Math.max(minimumM, ranks), biggestM / 3)}) {
+                        assertSameNeighbors(boundaryCondition + ", " + ranks + " ranks, seed " + seed
+                                + ", M " + M, expected, engine.detect(store, interactionRadius, M));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link InProcessHaloTransport} that fails when the given rank receives a message.
+     */
+    private static final class FailingTransport extends InProcessHaloTransport {
+
+        /**
+         * The rank that fails.
+         */
+        private final int failingRank;
+
+        /**
+         * Constructor.
+         *
+         * @param failingRank The rank that fails.
+         */
+        private FailingTransport(int failingRank) {
+            this.failingRank = failingRank;
+        }
+
+        @Override
+        public ByteBuffer receive(int source, int destination, int tag) throws IOException {
+            if (destination == failingRank) {
+                throw new IOException("Rank " + failingRank + " can not receive messages");
+            }
+            return super.receive(source, destination, tag);
+        }
+    }
+}
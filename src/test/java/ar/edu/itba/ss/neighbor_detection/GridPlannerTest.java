@@ -0,0 +1,57 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the amounts of cells per side chosen by the {@link GridPlanner}.
+ */
+public class GridPlannerTest {
+
+    @Test
+    public void plansAtLeastThreeCellsWithPeriodicBoundaries() {
+        // Few particles, so the optimal amount of cells per side is below 3
+        final ParticleStore store = TestParticles.withBorders(1, 20, 3, 0.1);
+        final GridPlanner planner = new GridPlanner();
+        assertTrue(planner.plan(store, 1.0) < 3);
+        final int M = planner.plan(store, 1.0, BoundaryCondition.PERIODIC);
+        assertTrue(M >= 3);
+        new CellIndexEngine(BoundaryCondition.PERIODIC).detect(store, 1.0, M);
+    }
+
+    @Test
+    public void plansTheBiggestAmountWhenThreeCellsDoNotFit() {
+        final ParticleStore store = TestParticles.withBorders(1, 10, 3, 0.1);
+        assertEquals(2, new GridPlanner().plan(store, 4.0, BoundaryCondition.PERIODIC));
+    }
+
+    @Test
+    public void plansAtLeastThreeCellsAlongPeriodicAxes() {
+        // A thin space, whose height only fits 2 cells when planned as if it was open
+        final ParticleStore store = TestParticles.rectangular(1, 100, 5, 100, 0);
+        final GridPlanner planner = new GridPlanner();
+        assertTrue(planner.planAxes(store, 1.0)[1] < 3);
+        final int[] cells = planner.planAxes(store, 1.0, BoundaryCondition.PERIODIC, BoundaryCondition.PERIODIC);
+        assertTrue(cells[0] >= 3);
+        assertTrue(cells[1] >= 3);
+        new CellIndexEngine(BoundaryCondition.PERIODIC).detect(store, 1.0, cells[0], cells[1]);
+        // Only the periodic axis is raised
+        final int[] mixed = planner.planAxes(store, 1.0, BoundaryCondition.OPEN, BoundaryCondition.PERIODIC);
+        assertEquals(cells[1], mixed[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRectangularSpacesWhenPlanningASingleAmount() {
+        new GridPlanner().plan(TestParticles.rectangular(1, 100, 5, 100, 0), 1.0);
+    }
+
+    @Test
+    public void calibrationDoesNotRecordIntoTheDefaultMetrics() {
+        final ParticleStore store = TestParticles.withBorders(1, 100, 5000, 0.1);
+        final long before = DetectionMetrics.getDefault().getRuns();
+        GridPlanner.calibrate(store, 1.0);
+        assertEquals(before, DetectionMetrics.getDefault().getRuns());
+    }
+}
@@ -0,0 +1,79 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link KdTreeEngine} against the {@link BruteForceEngine}.
+ */
+public class KdTreeEngineTest {
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void wrapsReachesUpToHalfTheSide() {
+        final double sideLength = 10;
+        final ParticleStore store = TestParticles.withBorders(5, sideLength, 300, 0.2);
+        final double interactionRadius = sideLength / 2 - 2 * store.getMaxRadius() - 0.01;
+        final NeighborList expected = TestParticles.bruteForce(store, interactionRadius,
+                BoundaryCondition.PERIODIC, BoundaryCondition.PERIODIC);
+        assertSameNeighbors("reach close to half the side", expected,
+                new KdTreeEngine(BoundaryCondition.PERIODIC).detect(store, interactionRadius, 1));
+    }
+
+    @Test
+    public void streamsEachPairOnce() {
+        final ParticleStore store = TestParticles.clustered(7, 30, 2000, 0.3);
+        final NeighborList expected = new BruteForceEngine(BoundaryCondition.PERIODIC).detect(store, 1, 3);
+        final AtomicLong pairs = new AtomicLong();
+        new KdTreeEngine(BoundaryCondition.PERIODIC).detect(store, 1, 1, (i, j, squaredDistance) -> pairs.incrementAndGet());
+        assertEquals(expected.getPairCount(), pairs.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeInteractionRadius() {
+        new KdTreeEngine().detect(TestParticles.withBorders(1, 10, 50, 0.5), -1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsReachOfHalfTheSideWithPeriodicBoundaries() {
+        final ParticleStore store = TestParticles.withBorders(1, 10, 50, 0.5);
+        new KdTreeEngine(BoundaryCondition.PERIODIC).detect(store, 5 - 2 * store.getMaxRadius(), 1);
+    }
+
+    /**
+     * Runs the {@link KdTreeEngine} over uniform and clustered particles (with amounts of cells per side
+     * that would not be valid for a grid, as the tree ignores them), comparing with the {@link BruteForceEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final KdTreeEngine engine = new KdTreeEngine(boundaryCondition);
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int seed = 0; seed < 12; seed++) {
+            final double sideLength = 20 + seed;
+            final double interactionRadius = 0.25 + 0.5 * (seed % 4);
+            final ParticleStore store = seed % 2 == 0
+                    ? TestParticles.withBorders(seed, sideLength, 50 + 100 * seed, 0.4)
+                    : TestParticles.clustered(seed, sideLength, 50 + 100 * seed, 0.2);
+            final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                    .detect(store, interactionRadius, minimumM);
+            for (int M : new int[]{1, 1000}) {
+                assertSameNeighbors(boundaryCondition + ", seed " + seed + ", M " + M, expected,
+                        engine.detect(store, interactionRadius, M));
+            }
+        }
+    }
+}
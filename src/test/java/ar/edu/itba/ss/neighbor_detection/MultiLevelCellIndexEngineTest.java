@@ -0,0 +1,65 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+
+/**
+ * Checks the {@link MultiLevelCellIndexEngine} against the {@link BruteForceEngine}.
+ */
+public class MultiLevelCellIndexEngineTest {
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    /**
+     * Runs the {@link MultiLevelCellIndexEngine} over polydisperse particles (mostly small ones,
+     * plus a few particles whose radius is many times bigger, so several levels are built),
+     * comparing with the {@link BruteForceEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        final MultiLevelCellIndexEngine engine = new MultiLevelCellIndexEngine(boundaryCondition);
+        for (int seed = 0; seed < 10; seed++) {
+            final double sideLength = 40;
+            final double interactionRadius = 0.2 + 0.3 * (seed % 3);
+            final ParticleStore store = polydisperse(seed, sideLength, 300 + 200 * seed);
+            final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                    .detect(store, interactionRadius, minimumM);
+            final int biggestM = GridPlanner.maxCellsPerSide(sideLength, interactionRadius);
+            assertSameNeighbors(boundaryCondition + ", seed " + seed, expected,
+                    engine.detect(store, interactionRadius, biggestM));
+        }
+    }
+
+    /**
+     * Generates particles with radii spanning two orders of magnitude.
+     *
+     * @param seed              The seed from which particles are generated.
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles.
+     * @return A {@link ParticleStore} holding the generated particles.
+     */
+    private static ParticleStore polydisperse(long seed, double sideLength, int amountOfParticles) {
+        final ParticleStore store = TestParticles.withBorders(seed, sideLength, amountOfParticles, 0.05);
+        final SplittableRandom random = new SplittableRandom(seed);
+        final double[] radius = store.getRadius();
+        for (int i = 0; i < radius.length; i++) {
+            if (random.nextInt(20) == 0) {
+                radius[i] = 0.5 + random.nextDouble() * 2.5;
+            }
+        }
+        return store;
+    }
+}
@@ -0,0 +1,94 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link MultiRadiusDetector} against the {@link BruteForceEngine}.
+ */
+public class MultiRadiusDetectorTest {
+
+    /**
+     * The interaction radii.
+     */
+    private static final double[] RADII = {0.25, 0.75, 1.5};
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void matchesBruteForceWithEqualRadii() {
+        for (BoundaryCondition boundaryCondition : BoundaryCondition.values()) {
+            final ParticleStore store = TestParticles.withBorders(5, 30, 2000, 0);
+            Arrays.fill(store.getRadius(), 0.15);
+            final BandedNeighborList banded = new MultiRadiusDetector(boundaryCondition)
+                    .detect(store, RADII, GridPlanner.maxCellsPerSide(30, RADII[RADII.length - 1] + 0.3));
+            for (int band = 0; band < RADII.length; band++) {
+                assertSameNeighbors(boundaryCondition + ", band " + band,
+                        new BruteForceEngine(boundaryCondition).detect(store, RADII[band], 3),
+                        banded.toNeighborList(band));
+            }
+        }
+    }
+
+    @Test
+    public void sortsBandsByDistance() {
+        final ParticleStore store = TestParticles.withBorders(3, 25, 1500, 0.3);
+        final BandedNeighborList banded = new MultiRadiusDetector(BoundaryCondition.PERIODIC)
+                .detect(store, RADII, GridPlanner.maxCellsPerSide(25, RADII[2] + 2 * store.getMaxRadius()));
+        for (int band = 0; band < RADII.length; band++) {
+            banded.sortByDistance(band);
+        }
+        final int[] bandOffsets = banded.getBandOffsets();
+        final double[] distances = banded.getDistances();
+        final double[] radius = store.getRadius();
+        for (int i = 0; i < banded.size(); i++) {
+            final int from = bandOffsets[i * RADII.length];
+            final int to = bandOffsets[(i + 1) * RADII.length];
+            for (int position = from; position < to; position++) {
+                final int j = banded.getNeighborIds()[position];
+                final double dx = BruteForceEngine.minimumImage(store.getX()[i] - store.getX()[j], 25);
+                final double dy = BruteForceEngine.minimumImage(store.getY()[i] - store.getY()[j], 25);
+                assertEquals(Math.sqrt(dx * dx + dy * dy) - radius[i] - radius[j], distances[position], 1e-12);
+                assertTrue("particle " + i, position == from || distances[position - 1] <= distances[position]);
+            }
+        }
+    }
+
+    /**
+     * Runs the {@link MultiRadiusDetector} over uniform and clustered particles,
+     * comparing the neighbors of each band with the {@link BruteForceEngine} run with its radius.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        final MultiRadiusDetector detector = new MultiRadiusDetector(boundaryCondition);
+        for (int seed = 0; seed < 6; seed++) {
+            final double sideLength = 30;
+            final ParticleStore store = seed % 2 == 0
+                    ? TestParticles.withBorders(seed, sideLength, 400 + 300 * seed, 0.3)
+                    : TestParticles.clustered(seed, sideLength, 400 + 300 * seed, 0.3);
+            final int M = GridPlanner.maxCellsPerSide(sideLength, RADII[RADII.length - 1] + 2 * store.getMaxRadius());
+            final BandedNeighborList banded = detector.detect(store, RADII, M);
+            for (int band = 0; band < RADII.length; band++) {
+                final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                        .detect(store, RADII[band], minimumM);
+                assertSameNeighbors(boundaryCondition + ", seed " + seed + ", band " + band, expected,
+                        banded.toNeighborList(band));
+            }
+        }
+    }
+}
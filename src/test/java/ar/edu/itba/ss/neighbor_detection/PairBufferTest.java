@@ -0,0 +1,45 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how the {@link PairBuffer} grows.
+ */
+public class PairBufferTest {
+
+    @Test
+    public void doublesItsCapacityWhenFull() {
+        final PairBuffer buffer = new PairBuffer(3);
+        for (int k = 0; k < 7; k++) {
+            buffer.add(k, k + 1);
+        }
+        assertEquals(7, buffer.size());
+        assertEquals(12, buffer.getFirst().length);
+        for (int k = 0; k < 7; k++) {
+            assertEquals(k, buffer.getFirst()[k]);
+            assertEquals(k + 1, buffer.getSecond()[k]);
+        }
+    }
+
+    @Test
+    public void capsItsCapacityInsteadOfOverflowing() {
+        assertEquals(2048, PairBuffer.grownCapacity(1024));
+        // Doubling these would overflow an int
+        assertEquals(PairBuffer.MAX_CAPACITY, PairBuffer.grownCapacity(1 << 30));
+        assertEquals(PairBuffer.MAX_CAPACITY, PairBuffer.grownCapacity(PairBuffer.MAX_CAPACITY - 1));
+    }
+
+    @Test
+    public void failsWhenItCanNotGrowAnyMore() {
+        try {
+            PairBuffer.grownCapacity(PairBuffer.MAX_CAPACITY);
+            fail("A buffer with the biggest capacity must not grow");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(String.valueOf(PairBuffer.MAX_CAPACITY)));
+        }
+    }
+}
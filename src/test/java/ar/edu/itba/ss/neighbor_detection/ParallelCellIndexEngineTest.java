@@ -0,0 +1,103 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link ParallelCellIndexEngine} against the {@link BruteForceEngine}.
+ */
+public class ParallelCellIndexEngineTest {
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void streamsEachPairOnce() {
+        final ParticleStore store = TestParticles.withBorders(7, 30, 2000, 0.3);
+        final NeighborList expected = new BruteForceEngine(BoundaryCondition.PERIODIC).detect(store, 1, 3);
+        final AtomicLong pairs = new AtomicLong();
+        try (ParallelCellIndexEngine engine = new ParallelCellIndexEngine(4, BoundaryCondition.PERIODIC)) {
+            engine.detect(store, 1, 18, (i, j, squaredDistance) -> pairs.incrementAndGet());
+        }
+        assertEquals(expected.getPairCount(), pairs.get());
+    }
+
+    @Test
+    public void recordsTheBytesAllocatedByWorkers() {
+        final ParticleStore store = TestParticles.withBorders(9, 30, 2000, 0.3);
+        final DetectionMetrics metrics = new DetectionMetrics();
+        Assume.assumeTrue("The JVM must measure allocated bytes", metrics.getAllocatedBytes() >= 0);
+        final AtomicLong pairs = new AtomicLong();
+        final byte[][] sinks = new byte[64][];
+        try (ParallelCellIndexEngine engine = new ParallelCellIndexEngine(4, BoundaryCondition.PERIODIC, metrics)) {
+            // Consumers are called from the workers, so the allocated bytes are only seen by measuring them
+            engine.detectPerBlock(store, 1, 18, block -> (i, j, squaredDistance) -> {
+                sinks[block] = new byte[1024];
+                pairs.incrementAndGet();
+            });
+        }
+        assertTrue("Allocated bytes: " + metrics.getAllocatedBytes(),
+                metrics.getAllocatedBytes() >= pairs.get() * 1024);
+    }
+
+    @Test
+    public void matchesBruteForceInRectangularSpaces() {
+        for (BoundaryCondition boundaryCondition : BoundaryCondition.values()) {
+            try (ParallelCellIndexEngine engine = new ParallelCellIndexEngine(3, boundaryCondition)) {
+                for (int seed = 0; seed < 4; seed++) {
+                    final double width = seed % 2 == 0 ? 40 : 9;
+                    final double height = seed % 2 == 0 ? 9 : 40;
+                    final ParticleStore store = TestParticles.rectangular(seed, width, height, 400, 0.3);
+                    final double reach = 1 + 2 * store.getMaxRadius();
+                    final int Mx = GridPlanner.maxCellsPerSide(width, reach);
+                    final int My = GridPlanner.maxCellsPerSide(height, reach);
+                    assertSameNeighbors(boundaryCondition + ", seed " + seed,
+                            TestParticles.bruteForce(store, 1, boundaryCondition, boundaryCondition),
+                            engine.detect(store, 1, Mx, My));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the {@link ParallelCellIndexEngine} with several amounts of workers (so blocks of rows
+     * meet at different places) over uniform and clustered particles, comparing with the {@link BruteForceEngine}.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int parallelism : new int[]{1, 2, 3, 8}) {
+            try (ParallelCellIndexEngine engine = new ParallelCellIndexEngine(parallelism, boundaryCondition)) {
+                for (int seed = 0; seed < 8; seed++) {
+                    final double sideLength = 25;
+                    final double interactionRadius = 0.5 + 0.5 * (seed % 3);
+                    final ParticleStore store = seed % 2 == 0
+                            ? TestParticles.withBorders(seed, sideLength, 100 + 150 * seed, 0.3)
+                            : TestParticles.clustered(seed, sideLength, 100 + 150 * seed, 0.3);
+                    final int biggestM = GridPlanner.maxCellsPerSide(sideLength,
+                            interactionRadius + 2 * store.getMaxRadius());
+                    final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                            .detect(store, interactionRadius, minimumM);
+                    for (int M : new int[]{biggestM, Math.max(minimumM, biggestM / 3)}) {
+                        assertSameNeighbors(boundaryCondition + ", " + parallelism + " workers, seed " + seed
+                                + ", M " + M, expected, engine.detect(store, interactionRadius, M));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link ScenarioMatrix} read from {@code application.yml}.
+ */
+public class ScenarioMatrixTest {
+
+    @Test
+    public void buildsAllCombinationsByDefault() {
+        final List<Scenario> scenarios = ScenarioMatrix.load(new ClassPathResource("application.yml"), "dev")
+                .getScenarios();
+        assertEquals(2 * 2 * 2 * 2 * 2 * 3, scenarios.size());
+    }
+
+    @Test
+    public void sweepDropsInfeasibleCombinations() {
+        final List<Scenario> scenarios = ScenarioMatrix.load(new ClassPathResource("application.yml"), "sweep")
+                .getScenarios();
+        assertFalse(scenarios.isEmpty());
+        scenarios.forEach(scenario -> assertTrue(scenario.toString(), scenario.estimatedBytes() <= 2_000_000_000L));
+        assertFalse("A million particles in a side of 100 with a radius of 4 must be dropped",
+                scenarios.contains(new Scenario(100, 1000000, 4, 0.5, 0, BoundaryCondition.OPEN, 1)));
+        assertTrue(scenarios.contains(new Scenario(400, 1000000, 0.5, 0, 0, BoundaryCondition.OPEN, 1)));
+    }
+}
@@ -0,0 +1,127 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the reproducibility of the {@link SpaceGenerator}, and the placement of hard disks.
+ */
+public class SpaceGeneratorTest {
+
+    /**
+     * The length of the side of the space.
+     */
+    private static final double SIDE_LENGTH = 40;
+
+    @Test
+    public void generatesTheSameSpaceFromTheSameSeed() {
+        // More than a chunk, so several random generators are split from the seeded one
+        final int amountOfParticles = 2 * SpaceGenerator.CHUNK_SIZE + 100;
+        assertSameSpace(new SpaceGenerator(7).generate(SIDE_LENGTH, amountOfParticles, 0.1, 0.3),
+                new SpaceGenerator(7).generate(SIDE_LENGTH, amountOfParticles, 0.1, 0.3));
+        for (BoundaryCondition boundaryCondition : BoundaryCondition.values()) {
+            assertSameSpace(new SpaceGenerator(7).generateNonOverlapping(SIDE_LENGTH, 500, 0.2, 0.5,
+                    boundaryCondition),
+                    new SpaceGenerator(7).generateNonOverlapping(SIDE_LENGTH, 500, 0.2, 0.5, boundaryCondition));
+        }
+    }
+
+    @Test
+    public void generatesDifferentSpacesFromDifferentSeeds() {
+        final int amountOfParticles = 2 * SpaceGenerator.CHUNK_SIZE + 100;
+        assertDifferentSpaces(new SpaceGenerator(7).generate(SIDE_LENGTH, amountOfParticles, 0.1, 0.3),
+                new SpaceGenerator(8).generate(SIDE_LENGTH, amountOfParticles, 0.1, 0.3));
+        assertDifferentSpaces(new SpaceGenerator(7).generateNonOverlapping(SIDE_LENGTH, 500, 0.2, 0.5,
+                BoundaryCondition.OPEN),
+                new SpaceGenerator(8).generateNonOverlapping(SIDE_LENGTH, 500, 0.2, 0.5, BoundaryCondition.OPEN));
+    }
+
+    @Test
+    public void placesHardDisksWithoutOverlaps() {
+        for (BoundaryCondition boundaryCondition : BoundaryCondition.values()) {
+            for (long seed = 0; seed < 3; seed++) {
+                // Dense enough so many placements are rejected (a packing fraction of about 0.35)
+                final ParticleStore store = new SpaceGenerator(seed)
+                        .generateNonOverlapping(SIDE_LENGTH, 700, 0.3, 0.7, boundaryCondition);
+                assertEquals(700, store.size());
+                assertNoOverlaps(boundaryCondition + ", seed " + seed, store,
+                        boundaryCondition == BoundaryCondition.PERIODIC);
+            }
+        }
+    }
+
+    @Test
+    public void failsWhenDisksDoNotFit() {
+        // The disks would cover more area than the space has
+        final int amountOfParticles = 100;
+        final double radius = 1;
+        assertTrue(amountOfParticles * Math.PI * radius * radius > 10 * 10);
+        for (BoundaryCondition boundaryCondition : BoundaryCondition.values()) {
+            try {
+                new SpaceGenerator(1).generateNonOverlapping(10, amountOfParticles, radius, radius, boundaryCondition);
+                fail("An infeasible packing must not be generated with " + boundaryCondition + " boundaries");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("too crowded"));
+            }
+        }
+    }
+
+    /**
+     * Asserts that both {@link ParticleStore}s hold the same particles, in the same order.
+     *
+     * @param expected The expected {@link ParticleStore}.
+     * @param actual   The actual {@link ParticleStore}.
+     */
+    private static void assertSameSpace(ParticleStore expected, ParticleStore actual) {
+        assertArrayEquals(expected.getX(), actual.getX(), 0);
+        assertArrayEquals(expected.getY(), actual.getY(), 0);
+        assertArrayEquals(expected.getRadius(), actual.getRadius(), 0);
+    }
+
+    /**
+     * Asserts that the given {@link ParticleStore}s do not hold the same particles.
+     *
+     * @param some  A {@link ParticleStore}.
+     * @param other Another {@link ParticleStore}.
+     */
+    private static void assertDifferentSpaces(ParticleStore some, ParticleStore other) {
+        assertFalse(Arrays.equals(some.getX(), other.getX()));
+        assertFalse(Arrays.equals(some.getY(), other.getY()));
+        assertFalse(Arrays.equals(some.getRadius(), other.getRadius()));
+    }
+
+    /**
+     * Checks every pair of particles, asserting that none of them overlap,
+     * and that all particles are inside the space.
+     *
+     * @param message  The message shown when particles overlap.
+     * @param store    The {@link ParticleStore} holding the particles.
+     * @param periodic Whether the images of the particles must be taken into account.
+     */
+    private static void assertNoOverlaps(String message, ParticleStore store, boolean periodic) {
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        for (int i = 0; i < store.size(); i++) {
+            assertTrue(message + " (inside)", x[i] >= 0 && x[i] < SIDE_LENGTH && y[i] >= 0 && y[i] < SIDE_LENGTH);
+            for (int j = i + 1; j < store.size(); j++) {
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                if (periodic) {
+                    dx = BruteForceEngine.minimumImage(dx, SIDE_LENGTH);
+                    dy = BruteForceEngine.minimumImage(dy, SIDE_LENGTH);
+                }
+                final double contact = radius[i] + radius[j];
+                assertFalse(message + ": particles " + i + " and " + j + " overlap",
+                        dx * dx + dy * dy < contact * contact);
+            }
+        }
+    }
+}
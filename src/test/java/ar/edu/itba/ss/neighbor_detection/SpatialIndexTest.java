@@ -0,0 +1,258 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the radius and k-nearest queries of the {@link SpatialIndex} against a brute force scan.
+ */
+public class SpatialIndexTest {
+
+    /**
+     * The length of the side of the space.
+     */
+    private static final double SIDE_LENGTH = 20;
+
+    /**
+     * The amounts of cells per side with which indexes are built (from a single cell to cells smaller than particles).
+     */
+    private static final int[] CELLS_PER_SIDE = {1, 7, 40};
+
+    @Test
+    public void findsTheNeighborsOfEachParticle() {
+        for (ParticleStore store : stores()) {
+            for (double distance : new double[]{0, 0.7, 2.5}) {
+                final NeighborList expected = TestParticles.bruteForce(store, distance,
+                        BoundaryCondition.OPEN, BoundaryCondition.OPEN);
+                for (int M : CELLS_PER_SIDE) {
+                    final SpatialIndex index = SpatialIndex.of(store, M);
+                    final int[] ids = new int[store.size()];
+                    for (int i = 0; i < store.size(); i++) {
+                        final int found = index.withinDistance(i, distance, ids);
+                        final int[] actual = Arrays.copyOf(ids, found);
+                        Arrays.sort(actual);
+                        assertArrayEquals("M " + M + ", distance " + distance + ", particle " + i,
+                                neighbors(expected, i), actual);
+                    }
+                    // All particles at once
+                    final int[] particles = new int[store.size()];
+                    Arrays.setAll(particles, i -> i);
+                    final int[] offsets = new int[store.size() + 1];
+                    final int[] allIds = new int[2 * expected.getPairCount()];
+                    assertEquals(allIds.length, index.withinDistance(particles, distance, offsets, allIds));
+                    for (int i = 0; i < store.size(); i++) {
+                        final int[] actual = Arrays.copyOfRange(allIds, offsets[i], offsets[i + 1]);
+                        Arrays.sort(actual);
+                        assertArrayEquals("M " + M + ", batch, particle " + i, neighbors(expected, i), actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsTheParticlesNearPoints() {
+        for (ParticleStore store : stores()) {
+            for (int M : CELLS_PER_SIDE) {
+                final SpatialIndex index = SpatialIndex.of(store, M);
+                final int[] ids = new int[store.size()];
+                for (double[] point : points(M)) {
+                    for (double distance : new double[]{0, 0.5, 3}) {
+                        final int found = index.withinDistance(point[0], point[1], distance, ids);
+                        final int[] actual = Arrays.copyOf(ids, found);
+                        Arrays.sort(actual);
+                        assertArrayEquals("M " + M + ", point " + Arrays.toString(point) + ", distance " + distance,
+                                bruteForceWithin(store, point[0], point[1], distance), actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsTheNearestParticlesToPoints() {
+        for (ParticleStore store : stores()) {
+            for (int M : CELLS_PER_SIDE) {
+                final SpatialIndex index = SpatialIndex.of(store, M);
+                for (double[] point : points(M)) {
+                    for (int k : new int[]{1, 5, store.size(), store.size() + 3}) {
+                        final int[] ids = new int[k];
+                        final double[] distances = new double[k];
+                        final int found = index.nearest(point[0], point[1], k, ids, distances);
+                        checkNearest("M " + M + ", point " + Arrays.toString(point) + ", k " + k,
+                                bruteForceDistances(store, point[0], point[1], 0, -1), k, found, ids, distances,
+                                store, point[0], point[1], 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsTheNearestParticlesToEachParticle() {
+        for (ParticleStore store : stores()) {
+            for (int M : CELLS_PER_SIDE) {
+                final SpatialIndex index = SpatialIndex.of(store, M);
+                for (int k : new int[]{1, 4, store.size() + 2}) {
+                    final int[] particles = new int[store.size()];
+                    Arrays.setAll(particles, i -> i);
+                    final int[] allIds = new int[store.size() * k];
+                    final double[] allDistances = new double[store.size() * k];
+                    index.nearest(particles, k, allIds, allDistances);
+                    final int[] ids = new int[k];
+                    final double[] distances = new double[k];
+                    for (int i = 0; i < store.size(); i++) {
+                        final double x = store.getX()[i];
+                        final double y = store.getY()[i];
+                        final double radius = store.getRadius()[i];
+                        final String message = "M " + M + ", k " + k + ", particle " + i;
+                        final double[] expected = bruteForceDistances(store, x, y, radius, i);
+                        final int found = index.nearest(i, k, ids, distances);
+                        checkNearest(message, expected, k, found, ids, distances, store, x, y, radius);
+                        assertArrayEquals(message + " (batch ids)", ids, Arrays.copyOfRange(allIds, i * k, i * k + k));
+                        assertArrayEquals(message + " (batch distances)", distances,
+                                Arrays.copyOfRange(allDistances, i * k, i * k + k), 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRectangularSpaces() {
+        SpatialIndex.of(TestParticles.rectangular(1, 2 * SIDE_LENGTH, SIDE_LENGTH, 100, 0.3), 5);
+    }
+
+    /**
+     * @return Uniform and clustered particles, with some of them on the borders and corners of the space.
+     */
+    private static ParticleStore[] stores() {
+        return new ParticleStore[]{
+                TestParticles.withBorders(1, SIDE_LENGTH, 300, 0.3),
+                TestParticles.clustered(2, SIDE_LENGTH, 300, 0.3),
+        };
+    }
+
+    /**
+     * @param M The amount of cells per side.
+     * @return Points on the corners and edges of the cells of a grid with {@code M} cells per side,
+     * together with the center and the corners of the space, and points outside of it.
+     */
+    private static double[][] points(int M) {
+        final double cellSide = SIDE_LENGTH / M;
+        final int middle = M / 2;
+        return new double[][]{
+                {middle * cellSide, middle * cellSide},
+                {middle * cellSide, (middle + 0.5) * cellSide},
+                {Math.nextDown(middle * cellSide), Math.nextUp(middle * cellSide)},
+                {SIDE_LENGTH / 2, SIDE_LENGTH / 2},
+                {0, 0},
+                {SIDE_LENGTH, SIDE_LENGTH},
+                {0, SIDE_LENGTH},
+                {-1.5, SIDE_LENGTH / 3},
+                {SIDE_LENGTH + 4, -2},
+        };
+    }
+
+    /**
+     * Checks the results of a k-nearest query against the distances to all particles.
+     *
+     * @param message    The message shown when the results are not the expected ones.
+     * @param expected   The sorted distances to all particles (but the queried one).
+     * @param k          The amount of particles to be found.
+     * @param found      The amount of found particles.
+     * @param ids        The found particle indexes.
+     * @param distances  The distance to each found particle.
+     * @param store      The {@link ParticleStore} holding the particles.
+     * @param x          The 'x' value of the queried position.
+     * @param y          The 'y' value of the queried position.
+     * @param selfRadius The radius of the queried particle (zero for a point).
+     */
+    private static void checkNearest(String message, double[] expected, int k, int found, int[] ids,
+                                     double[] distances, ParticleStore store, double x, double y,
+                                     double selfRadius) {
+        assertEquals(message + " (found)", Math.min(k, expected.length), found);
+        assertArrayEquals(message + " (distances)", Arrays.copyOf(expected, found),
+                Arrays.copyOf(distances, found), 0);
+        // Ties might be broken in any order, so each id is checked against its distance
+        for (int position = 0; position < found; position++) {
+            assertEquals(message + " (id at " + position + ")", distances[position],
+                    distance(store, x, y, selfRadius, ids[position]), 0);
+        }
+        for (int position = found; position < k; position++) {
+            assertEquals(message + " (unfilled id)", -1, ids[position]);
+            assertEquals(message + " (unfilled distance)", Double.POSITIVE_INFINITY, distances[position], 0);
+        }
+    }
+
+    /**
+     * @param store    The {@link ParticleStore} holding the particles.
+     * @param x        The 'x' value of the point.
+     * @param y        The 'y' value of the point.
+     * @param distance The biggest distance.
+     * @return The sorted indexes of the particles whose distance to the point is at most {@code distance}.
+     */
+    private static int[] bruteForceWithin(ParticleStore store, double x, double y, double distance) {
+        final double[] radius = store.getRadius();
+        final int[] ids = new int[store.size()];
+        int found = 0;
+        for (int i = 0; i < store.size(); i++) {
+            final double dx = x - store.getX()[i];
+            final double dy = y - store.getY()[i];
+            final double limit = distance + radius[i];
+            if (dx * dx + dy * dy <= limit * limit) {
+                ids[found++] = i;
+            }
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+    /**
+     * @param store      The {@link ParticleStore} holding the particles.
+     * @param x          The 'x' value of the queried position.
+     * @param y          The 'y' value of the queried position.
+     * @param selfRadius The radius of the queried particle (zero for a point).
+     * @param exclude    The index of the queried particle (or {@code -1}).
+     * @return The sorted distances to all particles but the excluded one.
+     */
+    private static double[] bruteForceDistances(ParticleStore store, double x, double y, double selfRadius,
+                                                int exclude) {
+        final double[] distances = new double[exclude < 0 ? store.size() : store.size() - 1];
+        int count = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (i != exclude) {
+                distances[count++] = distance(store, x, y, selfRadius, i);
+            }
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    /**
+     * @param store      The {@link ParticleStore} holding the particles.
+     * @param x          The 'x' value of the queried position.
+     * @param y          The 'y' value of the queried position.
+     * @param selfRadius The radius of the queried particle (zero for a point).
+     * @param particle   The index of a particle.
+     * @return The distance between the borders of the queried particle (or point) and the given particle.
+     */
+    private static double distance(ParticleStore store, double x, double y, double selfRadius, int particle) {
+        final double dx = x - store.getX()[particle];
+        final double dy = y - store.getY()[particle];
+        return Math.sqrt(dx * dx + dy * dy) - selfRadius - store.getRadius()[particle];
+    }
+
+    /**
+     * @param neighbors A {@link NeighborList}.
+     * @param particle  The index of a particle.
+     * @return The neighbors of the given particle.
+     */
+    private static int[] neighbors(NeighborList neighbors, int particle) {
+        return Arrays.copyOfRange(neighbors.getNeighborIds(), neighbors.getOffsets()[particle],
+                neighbors.getOffsets()[particle + 1]);
+    }
+}
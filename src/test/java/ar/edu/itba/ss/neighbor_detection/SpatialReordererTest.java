@@ -0,0 +1,112 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the permutations kept by the {@link SpatialReorderer}, and when it sorts particles again.
+ */
+public class SpatialReordererTest {
+
+    /**
+     * The length of the side of the space.
+     */
+    private static final double SIDE_LENGTH = 30;
+
+    /**
+     * The amount of cells per side of the grid over which the curve is drawn.
+     */
+    private static final int M = 64;
+
+    /**
+     * The fraction of consecutive particles out of curve order from which particles are sorted again.
+     */
+    private static final double THRESHOLD = 0.1;
+
+    @Test
+    public void mapsNeighborsBackToTheOriginalIndexes() {
+        final ParticleStore[] stores = {
+                TestParticles.withBorders(1, SIDE_LENGTH, 1500, 0.3),
+                TestParticles.clustered(2, SIDE_LENGTH, 1500, 0.3),
+                TestParticles.rectangular(3, 2 * SIDE_LENGTH, SIDE_LENGTH / 2, 1500, 0.3),
+        };
+        final CellIndexEngine engine = new CellIndexEngine(BoundaryCondition.PERIODIC);
+        for (ParticleStore store : stores) {
+            final SpatialReorderer reorderer = new SpatialReorderer(M, THRESHOLD);
+            final ParticleStore reordered = reorderer.reorder(store);
+            assertEquals(0, reorderer.outOfOrderFraction(reordered), 0);
+            final int[] permutation = reorderer.getPermutation();
+            for (int p = 0; p < store.size(); p++) {
+                assertEquals(store.getX()[permutation[p]], reordered.getX()[p], 0);
+                assertEquals(store.getY()[permutation[p]], reordered.getY()[p], 0);
+                assertEquals(store.getRadius()[permutation[p]], reordered.getRadius()[p], 0);
+            }
+            assertSameNeighbors("round trip", engine.detect(store, 1, 6, 6),
+                    reorderer.toOriginal(engine.detect(reordered, 1, 6, 6)));
+        }
+    }
+
+    @Test
+    public void sortsAgainOnlyAboveTheThreshold() {
+        final ParticleStore store = TestParticles.withBorders(4, SIDE_LENGTH, 2000, 0.3);
+        final SpatialReorderer reorderer = new SpatialReorderer(M, THRESHOLD);
+        final ParticleStore reordered = reorderer.reorder(store);
+        assertEquals(1, reorderer.getAmountOfSorts());
+        assertSame(reordered, reorderer.reorderIfNeeded(reordered));
+
+        // A couple of far away particles swapping places is below the threshold
+        swap(reordered, 0, reordered.size() - 1);
+        swap(reordered, 1, reordered.size() - 2);
+        final double fraction = reorderer.outOfOrderFraction(reordered);
+        assertTrue(fraction > 0 && fraction <= THRESHOLD);
+        assertSame(reordered, reorderer.reorderIfNeeded(reordered));
+        assertEquals(1, reorderer.getAmountOfSorts());
+
+        // Shuffling all particles is above it
+        final Random random = new Random(4);
+        for (int i = reordered.size() - 1; i > 0; i--) {
+            swap(reordered, i, random.nextInt(i + 1));
+        }
+        assertTrue(reorderer.outOfOrderFraction(reordered) > THRESHOLD);
+        final ParticleStore sorted = reorderer.reorderIfNeeded(reordered);
+        assertNotSame(reordered, sorted);
+        assertEquals(2, reorderer.getAmountOfSorts());
+        assertEquals(0, reorderer.outOfOrderFraction(sorted), 0);
+
+        // The composed permutation still maps back to the original indexes
+        final double[] x = new double[store.size()];
+        final double[] y = new double[store.size()];
+        final double[] radius = new double[store.size()];
+        final int[] permutation = reorderer.getPermutation();
+        for (int p = 0; p < sorted.size(); p++) {
+            x[permutation[p]] = sorted.getX()[p];
+            y[permutation[p]] = sorted.getY()[p];
+            radius[permutation[p]] = sorted.getRadius()[p];
+        }
+        final CellIndexEngine engine = new CellIndexEngine(BoundaryCondition.OPEN);
+        assertSameNeighbors("after sorting again",
+                engine.detect(new ParticleStore(SIDE_LENGTH, x, y, radius), 1, 15),
+                reorderer.toOriginal(engine.detect(sorted, 1, 15)));
+    }
+
+    /**
+     * Swaps the positions of the given particles (their radii are kept).
+     *
+     * @param store The {@link ParticleStore} holding the particles.
+     * @param i     The index of a particle.
+     * @param j     The index of another particle.
+     */
+    private static void swap(ParticleStore store, int i, int j) {
+        final double x = store.getX()[i];
+        final double y = store.getY()[i];
+        store.setPosition(i, store.getX()[j], store.getY()[j]);
+        store.setPosition(j, x, y);
+    }
+}
@@ -0,0 +1,170 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Particle configurations and assertions shared by the engine tests.
+ */
+final class TestParticles {
+
+    /**
+     * Private constructor, as this is a utility class.
+     */
+    private TestParticles() {
+    }
+
+    /**
+     * Generates particles uniformly distributed in a squared space, some of them laying on
+     * (or very close to) the borders and corners, where cells wrap around with periodic boundary conditions.
+     *
+     * @param seed              The seed from which particles are generated.
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles (at least 8).
+     * @param maxRadius         The biggest particle radius (radii are uniformly distributed up to this value).
+     * @return A {@link ParticleStore} holding the generated particles.
+     */
+    static ParticleStore withBorders(long seed, double sideLength, int amountOfParticles, double maxRadius) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        final double[] radius = new double[amountOfParticles];
+        for (int i = 0; i < amountOfParticles; i++) {
+            x[i] = random.nextDouble() * sideLength;
+            y[i] = random.nextDouble() * sideLength;
+            radius[i] = random.nextDouble() * maxRadius;
+        }
+        final double epsilon = sideLength * 1e-9;
+        final double[][] borders = {
+                {0, 0}, {sideLength, sideLength}, {sideLength, 0}, {0, sideLength},
+                {epsilon, sideLength / 2}, {sideLength - epsilon, sideLength / 2},
+                {sideLength / 2, 0}, {sideLength / 2, sideLength},
+        };
+        for (int k = 0; k < borders.length && k < amountOfParticles; k++) {
+            x[k] = borders[k][0];
+            y[k] = borders[k][1];
+        }
+        return new ParticleStore(sideLength, x, y, radius);
+    }
+
+    /**
+     * Generates particles uniformly distributed in a rectangular space, some of them laying on
+     * (or very close to) the borders and corners, where cells wrap around along periodic axes.
+     *
+     * @param seed              The seed from which particles are generated.
+     * @param width             The width of the space (i.e its length along the 'x' axis).
+     * @param height            The height of the space (i.e its length along the 'y' axis).
+     * @param amountOfParticles The amount of particles (at least 8).
+     * @param maxRadius         The biggest particle radius (radii are uniformly distributed up to this value).
+     * @return A {@link ParticleStore} holding the generated particles.
+     */
+    static ParticleStore rectangular(long seed, double width, double height, int amountOfParticles,
+                                     double maxRadius) {
+        final ParticleStore unit = withBorders(seed, 1, amountOfParticles, 0);
+        final SplittableRandom random = new SplittableRandom(seed);
+        final double[] x = unit.getX();
+        final double[] y = unit.getY();
+        final double[] radius = unit.getRadius();
+        for (int i = 0; i < amountOfParticles; i++) {
+            x[i] = Math.min(x[i] * width, width);
+            y[i] = Math.min(y[i] * height, height);
+            radius[i] = random.nextDouble() * maxRadius;
+        }
+        return new ParticleStore(width, height, x, y, radius);
+    }
+
+    /**
+     * Generates particles packed into a few small gaussian clusters (wrapped into the space).
+     *
+     * @param seed              The seed from which particles are generated.
+     * @param sideLength        The length of the side of the space.
+     * @param amountOfParticles The amount of particles.
+     * @param maxRadius         The biggest particle radius (radii are uniformly distributed up to this value).
+     * @return A {@link ParticleStore} holding the generated particles.
+     */
+    static ParticleStore clustered(long seed, double sideLength, int amountOfParticles, double maxRadius) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final Random gaussian = new Random(seed);
+        final double[] centerX = new double[4];
+        final double[] centerY = new double[4];
+        for (int c = 0; c < centerX.length; c++) {
+            centerX[c] = random.nextDouble() * sideLength;
+            centerY[c] = random.nextDouble() * sideLength;
+        }
+        final double[] x = new double[amountOfParticles];
+        final double[] y = new double[amountOfParticles];
+        final double[] radius = new double[amountOfParticles];
+        for (int i = 0; i < amountOfParticles; i++) {
+            final int c = random.nextInt(centerX.length);
+            x[i] = wrap(centerX[c] + gaussian.nextGaussian() * sideLength / 30, sideLength);
+            y[i] = wrap(centerY[c] + gaussian.nextGaussian() * sideLength / 30, sideLength);
+            radius[i] = random.nextDouble() * maxRadius;
+        }
+        return new ParticleStore(sideLength, x, y, radius);
+    }
+
+    /**
+     * Checks every pair of particles, applying the minimum image convention along periodic axes.
+     * Unlike the {@link BruteForceEngine}, it works for rectangular spaces and for any reach below half their sides.
+     *
+     * @param store              The {@link ParticleStore} holding the particles.
+     * @param interactionRadius  The interaction radius.
+     * @param xBoundaryCondition The boundary conditions along the 'x' axis.
+     * @param yBoundaryCondition The boundary conditions along the 'y' axis.
+     * @return A {@link NeighborList} holding the neighbors of each particle.
+     */
+    static NeighborList bruteForce(ParticleStore store, double interactionRadius,
+                                   BoundaryCondition xBoundaryCondition, BoundaryCondition yBoundaryCondition) {
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        final double[] radius = store.getRadius();
+        final PairBuffer pairs = new PairBuffer();
+        for (int i = 0; i < store.size(); i++) {
+            for (int j = i + 1; j < store.size(); j++) {
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                if (xBoundaryCondition == BoundaryCondition.PERIODIC) {
+                    dx = BruteForceEngine.minimumImage(dx, store.getWidth());
+                }
+                if (yBoundaryCondition == BoundaryCondition.PERIODIC) {
+                    dy = BruteForceEngine.minimumImage(dy, store.getHeight());
+                }
+                final double squaredDistance = dx * dx + dy * dy;
+                final double limit = (interactionRadius + radius[i]) + radius[j];
+                if (squaredDistance <= limit * limit) {
+                    pairs.accept(i, j, squaredDistance);
+                }
+            }
+        }
+        return NeighborList.fromPairs(store.size(), pairs);
+    }
+
+    /**
+     * Asserts that both {@link NeighborList}s hold the same neighbors for each particle.
+     *
+     * @param message  The message shown when they differ.
+     * @param expected The expected {@link NeighborList}.
+     * @param actual   The actual {@link NeighborList}.
+     */
+    static void assertSameNeighbors(String message, NeighborList expected, NeighborList actual) {
+        assertEquals(message + " (particles)", expected.size(), actual.size());
+        assertEquals(message + " (pairs)", expected.getPairCount(), actual.getPairCount());
+        assertArrayEquals(message + " (offsets)", expected.getOffsets(), actual.getOffsets());
+        assertArrayEquals(message + " (neighbors)", expected.getNeighborIds(), actual.getNeighborIds());
+    }
+
+    /**
+     * Wraps the given coordinate into the space.
+     *
+     * @param coordinate The coordinate.
+     * @param sideLength The length of the side of the space.
+     * @return The wrapped coordinate, between zero (inclusive) and the side length (exclusive).
+     */
+    private static double wrap(double coordinate, double sideLength) {
+        final double wrapped = coordinate % sideLength;
+        return wrapped < 0 ? Math.min(wrapped + sideLength, Math.nextDown(sideLength)) : wrapped;
+    }
+}
@@ -0,0 +1,138 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static ar.edu.itba.ss.neighbor_detection.TestParticles.assertSameNeighbors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link VerletListDetector} against the {@link BruteForceEngine} while particles move.
+ */
+public class VerletListDetectorTest {
+
+    /**
+     * The length of the side of the space.
+     */
+    private static final double SIDE_LENGTH = 20;
+
+    /**
+     * The interaction radius.
+     */
+    private static final double INTERACTION_RADIUS = 1;
+
+    /**
+     * The extra distance added to the interaction radius when building the neighbor lists.
+     */
+    private static final double SKIN = 0.4;
+
+    /**
+     * The amount of steps simulated.
+     */
+    private static final int STEPS = 40;
+
+    @Test
+    public void matchesBruteForceWithOpenBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.OPEN);
+    }
+
+    @Test
+    public void matchesBruteForceWithPeriodicBoundaries() {
+        checkAgainstBruteForce(BoundaryCondition.PERIODIC);
+    }
+
+    @Test
+    public void usesTheBoundaryConditionsOfTheEngine() {
+        final ParticleStore store = TestParticles.withBorders(3, SIDE_LENGTH, 800, 0.2);
+        final VerletListDetector detector = new VerletListDetector(new CellIndexEngine(BoundaryCondition.PERIODIC),
+                INTERACTION_RADIUS, SKIN, cellsPerSide(store));
+        assertSameNeighbors("periodic engine",
+                new BruteForceEngine(BoundaryCondition.PERIODIC).detect(store, INTERACTION_RADIUS, 3),
+                detector.detect(store));
+    }
+
+    @Test
+    public void matchesBruteForceInRectangularSpaces() {
+        for (BoundaryCondition boundaryCondition : BoundaryCondition.values()) {
+            final ParticleStore store = TestParticles.rectangular(5, 3 * SIDE_LENGTH, SIDE_LENGTH / 2, 600, 0.2);
+            final VerletListDetector detector = new VerletListDetector(INTERACTION_RADIUS, SKIN,
+                    cellsPerSide(store) / 2, boundaryCondition);
+            assertSameNeighbors(boundaryCondition + " rectangle",
+                    TestParticles.bruteForce(store, INTERACTION_RADIUS, boundaryCondition, boundaryCondition),
+                    detector.detect(store));
+        }
+    }
+
+    /**
+     * Moves uniform and clustered particles during several steps (some of them across the borders),
+     * comparing the neighbors calculated by the {@link VerletListDetector} at each step, both as a list
+     * and streamed, with the {@link BruteForceEngine} run over the actual positions.
+     *
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void checkAgainstBruteForce(BoundaryCondition boundaryCondition) {
+        final int minimumM = boundaryCondition == BoundaryCondition.PERIODIC ? 3 : 1;
+        for (int seed = 0; seed < 4; seed++) {
+            final ParticleStore store = seed % 2 == 0
+                    ? TestParticles.withBorders(seed, SIDE_LENGTH, 400 + 200 * seed, 0.2)
+                    : TestParticles.clustered(seed, SIDE_LENGTH, 400 + 200 * seed, 0.2);
+            final VerletListDetector detector = new VerletListDetector(INTERACTION_RADIUS, SKIN,
+                    cellsPerSide(store), boundaryCondition);
+            final Random random = new Random(seed);
+            for (int step = 0; step < STEPS; step++) {
+                final String message = boundaryCondition + ", seed " + seed + ", step " + step;
+                final NeighborList expected = new BruteForceEngine(boundaryCondition)
+                        .detect(store, INTERACTION_RADIUS, minimumM);
+                assertSameNeighbors(message, expected, detector.detect(store));
+                final long[] pairs = new long[1];
+                detector.detect(store, (i, j, squaredDistance) -> pairs[0]++);
+                assertEquals(message + " (streamed pairs)", expected.getPairCount(), pairs[0]);
+                move(store, random, boundaryCondition);
+            }
+            assertTrue("Lists must be reused between steps", detector.getAmountOfBuilds() < STEPS);
+            assertTrue("Lists must be rebuilt when particles move", detector.getAmountOfBuilds() > 1);
+        }
+    }
+
+    /**
+     * Moves each particle a random displacement of up to a tenth of the skin in each axis.
+     * With open boundaries, particles are kept inside the space, while with periodic ones,
+     * they wrap around the borders.
+     *
+     * @param store             The {@link ParticleStore} holding the particles.
+     * @param random            The {@link Random} used to generate displacements.
+     * @param boundaryCondition The boundary conditions of the space.
+     */
+    private static void move(ParticleStore store, Random random, BoundaryCondition boundaryCondition) {
+        final double[] x = store.getX();
+        final double[] y = store.getY();
+        for (int i = 0; i < store.size(); i++) {
+            final double newX = x[i] + (2 * random.nextDouble() - 1) * SKIN / 10;
+            final double newY = y[i] + (2 * random.nextDouble() - 1) * SKIN / 10;
+            store.setPosition(i, place(newX, boundaryCondition), place(newY, boundaryCondition));
+        }
+    }
+
+    /**
+     * @param coordinate        The coordinate.
+     * @param boundaryCondition The boundary conditions of the space.
+     * @return The coordinate wrapped around (with periodic boundaries) or clamped to (with open ones) the space.
+     */
+    private static double place(double coordinate, BoundaryCondition boundaryCondition) {
+        if (boundaryCondition == BoundaryCondition.PERIODIC) {
+            final double wrapped = coordinate - Math.floor(coordinate / SIDE_LENGTH) * SIDE_LENGTH;
+            return wrapped < SIDE_LENGTH ? wrapped : 0;
+        }
+        return Math.min(Math.max(coordinate, 0), Math.nextDown(SIDE_LENGTH));
+    }
+
+    /**
+     * @param store The {@link ParticleStore} holding the particles.
+     * @return The biggest valid amount of cells per side for the extended radius.
+     */
+    private static int cellsPerSide(ParticleStore store) {
+        return GridPlanner.maxCellsPerSide(SIDE_LENGTH, INTERACTION_RADIUS + SKIN + 2 * store.getMaxRadius());
+    }
+}
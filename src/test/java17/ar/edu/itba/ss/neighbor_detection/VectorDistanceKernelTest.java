@@ -0,0 +1,96 @@
+package ar.edu.itba.ss.neighbor_detection;
+
+import jdk.incubator.vector.DoubleVector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link VectorDistanceKernel} against the {@link ScalarDistanceKernel} on the same gathered buffers.
+ */
+public class VectorDistanceKernelTest {
+
+    /**
+     * The amount of lanes of the vectors used by the {@link VectorDistanceKernel}.
+     */
+    private static final int LANES = DoubleVector.SPECIES_PREFERRED.length();
+
+    @Test
+    public void matchesTheScalarKernelWithPaddedBuffers() {
+        // As gathered by the CellIndexEngine, so the last candidates are checked with a whole vector
+        checkAgainstScalarKernel(CellIndexEngine.KERNEL_PADDING);
+    }
+
+    @Test
+    public void matchesTheScalarKernelWithoutPadding() {
+        // Vectors can not read past the last candidate, so those after the last whole vector are checked one by one
+        checkAgainstScalarKernel(0);
+    }
+
+    @Test
+    public void acceptsCandidatesExactlyAtTheLimit() {
+        final int candidates = 3 * LANES + 1;
+        final double[] x = new double[candidates + CellIndexEngine.KERNEL_PADDING];
+        final double[] y = new double[candidates + CellIndexEngine.KERNEL_PADDING];
+        final double[] radius = new double[candidates + CellIndexEngine.KERNEL_PADDING];
+        for (int b = 0; b < candidates; b++) {
+            // Every other candidate is exactly at the limit (the reach plus its radius), the rest are just past it
+            x[b] = b % 2 == 0 ? 5 : Math.nextUp(5.0);
+            radius[b] = 1;
+        }
+        final int[] vectorPositions = new int[candidates];
+        final double[] vectorDistances = new double[candidates + CellIndexEngine.KERNEL_PADDING];
+        final int accepted = new VectorDistanceKernel().filter(0, 0, 4, x, y, radius, 0, candidates,
+                vectorPositions, vectorDistances);
+        assertEquals((candidates + 1) / 2, accepted);
+        for (int k = 0; k < accepted; k++) {
+            assertEquals(2 * k, vectorPositions[k]);
+            assertEquals(25, vectorDistances[k], 0);
+        }
+    }
+
+    /**
+     * Filters gathered blocks of every length from zero to a few vectors (so most of them are not a multiple of
+     * the vector length), starting at different positions, with both kernels, comparing their results.
+     *
+     * @param padding The extra room left at the end of the buffers.
+     */
+    private static void checkAgainstScalarKernel(int padding) {
+        final DistanceKernel scalar = new ScalarDistanceKernel();
+        final DistanceKernel vector = new VectorDistanceKernel();
+        final Random random = new Random(LANES);
+        for (int length = 0; length <= 4 * LANES + 3; length++) {
+            for (int from = 0; from <= LANES + 1; from++) {
+                final int to = from + length;
+                final double[] x = new double[to + padding];
+                final double[] y = new double[to + padding];
+                final double[] radius = new double[to + padding];
+                // Candidates around the checked particle, about half of them within its reach
+                for (int b = 0; b < x.length; b++) {
+                    x[b] = 10 + (2 * random.nextDouble() - 1) * 3;
+                    y[b] = 10 + (2 * random.nextDouble() - 1) * 3;
+                    radius[b] = random.nextDouble() * 0.5;
+                }
+                final double reach = 1.5 + random.nextDouble() * 0.5;
+                final int[] scalarPositions = new int[length];
+                final double[] scalarDistances = new double[length + padding];
+                final int[] vectorPositions = new int[length];
+                final double[] vectorDistances = new double[length + padding];
+                final int expected = scalar.filter(10, 10, reach, x, y, radius, from, to,
+                        scalarPositions, scalarDistances);
+                final int actual = vector.filter(10, 10, reach, x, y, radius, from, to,
+                        vectorPositions, vectorDistances);
+                final String message = "length " + length + ", from " + from + ", padding " + padding;
+                assertEquals(message + " (accepted)", expected, actual);
+                assertArrayEquals(message + " (positions)", Arrays.copyOf(scalarPositions, expected),
+                        Arrays.copyOf(vectorPositions, actual));
+                assertArrayEquals(message + " (squared distances)", Arrays.copyOf(scalarDistances, expected),
+                        Arrays.copyOf(vectorDistances, actual), 0);
+            }
+        }
+    }
+}